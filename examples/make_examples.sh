@@ -1,12 +1,16 @@
 #!/usr/bin/env bash
 
-# usage: . make_examples.sh -b/--build -dz/--debugz3
+# usage: . make_examples.sh -b/--build -dz/--debugz3 -s/--strategy <strategy>
 # where if build we call mvn package, and OW do not
 # where if debugz3 we set LOG_Z3 to true, otherwise false
+# where if strategy is given (e.g. optimize or quantified) we solve with it
+# and leave the jimple files in modifiedClasses/<strategy>, so that
+# the results of two strategies can be compared with diff -r
 # Must be using java8
 
 BUILD=false;
 DEBUG_Z3="";
+STRATEGY="";
 
 # parse arguments following
 # https://stackoverflow.com/questions/192249/how-do-i-parse-command-line-arguments-in-bash
@@ -21,6 +25,11 @@ while [[ $# -gt 0 ]]; do
            DEBUG_Z3=" -debugZ3";
            shift
            ;;
+        -s|--strategy)
+           STRATEGY="$2";
+           shift # past arg
+           shift # past value
+           ;;
    esac
 done
 
@@ -41,6 +50,11 @@ BUILD_DIR=`realpath "build/"`;
 SOURCE_DIR=`realpath "."`;
 # where to leave jimple files
 OUT_DIR=`realpath "./modifiedClasses"`;
+STRATEGY_ARG="";
+if [[ -n "${STRATEGY}" ]] ; then
+    OUT_DIR="${OUT_DIR}/${STRATEGY}";
+    STRATEGY_ARG=" -strategy ${STRATEGY}";
+fi
 PATH_TO_Z3=`realpath "/usr/lib/"`;
 JAR=`realpath "../target/lockPlacementBenchmarks-0.0.1-SNAPSHOT.jar"`;
 
@@ -64,7 +78,7 @@ for targetFile in `find ${SOURCE_DIR} -type f -name "targets.txt" -not -wholenam
     LD_LIBRARY_PATH="${PATH_TO_Z3}" \
         java -Dorg.slf4j.simpleLogger.defaultLogLevel=${LOG_LEVEL} \
              -Djava.library.path="${PATH_TO_Z3}" \
-             -jar "${JAR}" ${targetFile} ${DEBUG_Z3} \
+             -jar "${JAR}" ${targetFile} ${DEBUG_Z3} ${STRATEGY_ARG} \
                            -- -d ${OUT_DIR} -f jimple -cp ${JIMPLE_CP} -pp;
     echo "** Jimple file in directory ${OUT_DIR}"; echo
 done
@@ -2,10 +2,20 @@ package edu.utexas.cs.utopia.lockPlacementBenchmarks;
 
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Properties;
+
+import edu.utexas.cs.utopia.lockPlacementBenchmarks.zeroOneILPPlacement.CandidateLocks;
+import edu.utexas.cs.utopia.lockPlacementBenchmarks.zeroOneILPPlacement.PlacementEngine;
+import edu.utexas.cs.utopia.lockPlacementBenchmarks.zeroOneILPPlacement.PointerAnalysisType;
+import edu.utexas.cs.utopia.lockPlacementBenchmarks.zeroOneILPPlacement.ProblemFormat;
+import edu.utexas.cs.utopia.lockPlacementBenchmarks.zeroOneILPPlacement.SolveStrategy;
+import edu.utexas.cs.utopia.lockPlacementBenchmarks.zeroOneILPPlacement.Z3Backend;
 
 /**
  * Based on edu.utexas.cs.utopia.cfpchecker.CmdLine by kferles
@@ -16,7 +26,30 @@ public class CmdLine
 {
     private int localCost = 1;
     private int globalCost = 2;
+    // lock costs from -costConfig, unless given explicitly
+    private String costConfig = null;
+    private boolean explicitLocalCost = false, explicitGlobalCost = false;
+    // the costs from -costConfig are relative to segment weights scaled by this
+    private int segmentWeightScale = 1;
     private boolean debugZ3 = false;
+    private SolveStrategy solveStrategy = SolveStrategy.QUANTIFIED;
+    private boolean decompose = false;
+    private boolean lazyAlias = false;
+    private PointerAnalysisType pointerAnalysis = PointerAnalysisType.PESSIMISTIC;
+    private boolean readWrite = false;
+    private String profile = null;
+    private boolean instrumentProfile = false;
+    private boolean holdTime = false;
+    private int maxGlobalLocks = 0;
+    private PlacementEngine engine = PlacementEngine.AUTO;
+    private int heuristicThreshold = 200;
+    private long heuristicBudget = 10000;
+    private long timeout = 0;
+    private String solverCmd = null;
+    private List<String> portfolio = null;
+    private ProblemFormat solverFormat = ProblemFormat.OPB;
+    private String cacheDir = null;
+    private int numThreads = Runtime.getRuntime().availableProcessors();
 	private boolean isHelp = false;
     private List<String> targetClasses = new ArrayList<String>();
     
@@ -28,7 +61,66 @@ public class CmdLine
           .append("targetsFile                  text file of of target class names, one on each line\n")
           .append("-lc, -localCost localCost    An integer to weight the conflict from a local lock, default 1\n")
           .append("-gc, -globalCost globalCost  An integer to weight the conflict from a global lock, default 2\n")
-          .append("-debugZ3                     log the Z3 formula at the debug level")
+          .append("-costConfig file             Read localCost and globalCost (unless given\n")
+          .append("                             explicitly) from a file written by\n")
+          .append("                             CostCalibration, which measures them on this machine.\n")
+          .append("                             Segment weights are scaled to match their units,\n")
+          .append("                             and so is an explicit localCost or globalCost\n")
+          .append("-s, -strategy strategy       How to minimize the lock cost, one of\n")
+          .append("                             optimize (Z3 Optimize engine) or\n")
+          .append("                             quantified (forall-quantified minimality, default) or\n")
+          .append("                             bound_tightening (bisection on the cost)\n")
+          .append("-portfolio spec,spec,...     Race several Z3 configurations on each monitor,\n")
+          .append("                             taking the first optimal answer. A spec is\n")
+          .append("                             strategy[:engine=maxSatEngine][:seed=randomSeed],\n")
+          .append("                             e.g. optimize,optimize:engine=pd-maxres,quantified\n")
+          .append("-solverCmd cmd               Solve the 0-1 ILP with a solver binary instead of\n")
+          .append("                             Z3, e.g. \"roundingsat {file}\". {file} is replaced\n")
+          .append("                             by the problem file, {solution} by a file the\n")
+          .append("                             solver may write its solution to\n")
+          .append("-solverFormat format         The format -solverCmd reads, one of opb (default),\n")
+          .append("                             wcnf, or lp\n")
+          .append("-timeout millis              An integer deadline for the 0-1 ILP solver in\n")
+          .append("                             milliseconds, 0 (default) for none. On timeout,\n")
+          .append("                             the best assignment found so far is used\n")
+          .append("-cacheDir dir                reuse lock placements of unchanged monitors,\n")
+          .append("                             caching them in dir (ILP placements only if\n")
+          .append("                             proven optimal), and warm start the solve\n")
+          .append("                             of edited monitors from their last placement\n")
+          .append("-decompose                   solve independent groups of LValues separately\n")
+          .append("-globalLocks k|auto          Encode at most k interchangeable global locks\n")
+          .append("                             instead of one per LValue. auto uses the number\n")
+          .append("                             of alias-connected LValue groups, which keeps\n")
+          .append("                             the optimum\n")
+          .append("-lazyAlias                   add alias constraints to the 0-1 ILP only once\n")
+          .append("                             a solution violates them\n")
+          .append("-pta analysis                The pointer analysis deciding which LValues\n")
+          .append("                             alias, one of pessimistic (all may alias,\n")
+          .append("                             default), optimistic (unsound), or spark\n")
+          .append("                             (Soot's Spark points-to sets, which runs\n")
+          .append("                             Soot in whole-program mode)\n")
+          .append("-readWrite                   use read/write locks, so atomic segments which\n")
+          .append("                             only read through a lock do not conflict\n")
+          .append("-instrumentProfile           count entries to each atomic segment in the\n")
+          .append("                             output, writing them at exit to the file named\n")
+          .append("                             by the system property lockPlacement.profile\n")
+          .append("-profile file                weight the conflict of each pair of atomic\n")
+          .append("                             segments by their frequencies, as counted\n")
+          .append("                             by -instrumentProfile\n")
+          .append("-holdTime                    weight the conflict of each pair of atomic\n")
+          .append("                             segments by their statically estimated lengths\n")
+          .append("-e, -engine engine           How to place locks, one of ilp (exact),\n")
+          .append("                             heuristic (greedy + local search), or\n")
+          .append("                             auto (heuristic above -heuristicThreshold, default)\n")
+          .append("-heuristicThreshold numLVals An integer number of LValues above which auto uses\n")
+          .append("                             the heuristic engine, default 200\n")
+          .append("-heuristicBudget millis      An integer time budget for the heuristic engine's\n")
+          .append("                             local search in milliseconds, default 10000\n")
+          .append("-t, -threads numThreads      An integer bound on the number of solver threads,\n")
+          .append("                             shared by monitors solved in parallel, and on\n")
+          .append("                             the number of threads analyzing a monitor,\n")
+          .append("                             default the number of available processors\n")
+          .append("-debugZ3                     log the Z3 formula at the debug level\n")
           .append("-h, --help:                  print this message and exit\n");
 
         return rv.toString();
@@ -63,11 +155,134 @@ public class CmdLine
             	case "-lc":
             	case "-localCost":
             		localCost = Integer.parseInt(args[++i]);
+            		explicitLocalCost = true;
             		++i;
             		break;
             	case "-gc":
             	case "-globalCost":
             		globalCost = Integer.parseInt(args[++i]);
+            		explicitGlobalCost = true;
+            		++i;
+            		break;
+            	case "-costConfig":
+            		costConfig = args[++i];
+            		++i;
+            		break;
+            	case "-s":
+            	case "-strategy":
+            		try {
+            			solveStrategy = SolveStrategy.valueOf(args[++i].toUpperCase());
+            		}
+            		catch(IllegalArgumentException e) {
+            			parseError = "Invalid strategy: " + args[i];
+            			break parseLoop;
+            		}
+            		++i;
+            		break;
+            	case "-portfolio":
+            		portfolio = Arrays.asList(args[++i].split(","));
+            		for(String spec : portfolio) {
+            			try {
+            				Z3Backend.parse(spec, false);
+            			}
+            			catch(IllegalArgumentException e) {
+            				parseError = "Invalid portfolio entry " + spec + ": " + e.getMessage();
+            				break parseLoop;
+            			}
+            		}
+            		++i;
+            		break;
+            	case "-solverCmd":
+            		solverCmd = args[++i];
+            		++i;
+            		break;
+            	case "-solverFormat":
+            		try {
+            			solverFormat = ProblemFormat.valueOf(args[++i].toUpperCase());
+            		}
+            		catch(IllegalArgumentException e) {
+            			parseError = "Invalid solver format: " + args[i];
+            			break parseLoop;
+            		}
+            		++i;
+            		break;
+            	case "-timeout":
+            		timeout = Long.parseLong(args[++i]);
+            		++i;
+            		break;
+            	case "-cacheDir":
+            		cacheDir = args[++i];
+            		++i;
+            		break;
+            	case "-decompose":
+            		decompose = true;
+            		++i;
+            		break;
+            	case "-globalLocks":
+            		if(args[++i].equals("auto")) {
+            			maxGlobalLocks = CandidateLocks.AUTO_GLOBAL_LOCKS;
+            		}
+            		else {
+            			maxGlobalLocks = Integer.parseInt(args[i]);
+            			if(maxGlobalLocks < 1) {
+            				parseError = "Invalid number of global locks: " + args[i];
+            				break parseLoop;
+            			}
+            		}
+            		++i;
+            		break;
+            	case "-lazyAlias":
+            		lazyAlias = true;
+            		++i;
+            		break;
+            	case "-pta":
+            		try {
+            			pointerAnalysis = PointerAnalysisType.valueOf(args[++i].toUpperCase());
+            		}
+            		catch(IllegalArgumentException e) {
+            			parseError = "Invalid pointer analysis: " + args[i];
+            			break parseLoop;
+            		}
+            		++i;
+            		break;
+            	case "-readWrite":
+            		readWrite = true;
+            		++i;
+            		break;
+            	case "-instrumentProfile":
+            		instrumentProfile = true;
+            		++i;
+            		break;
+            	case "-profile":
+            		profile = args[++i];
+            		++i;
+            		break;
+            	case "-holdTime":
+            		holdTime = true;
+            		++i;
+            		break;
+            	case "-e":
+            	case "-engine":
+            		try {
+            			engine = PlacementEngine.valueOf(args[++i].toUpperCase());
+            		}
+            		catch(IllegalArgumentException e) {
+            			parseError = "Invalid engine: " + args[i];
+            			break parseLoop;
+            		}
+            		++i;
+            		break;
+            	case "-heuristicThreshold":
+            		heuristicThreshold = Integer.parseInt(args[++i]);
+            		++i;
+            		break;
+            	case "-heuristicBudget":
+            		heuristicBudget = Long.parseLong(args[++i]);
+            		++i;
+            		break;
+            	case "-t":
+            	case "-threads":
+            		numThreads = Integer.parseInt(args[++i]);
             		++i;
             		break;
             	case "-debugZ3":
@@ -83,10 +298,81 @@ public class CmdLine
                     break parseLoop;
             }
         }
+        
+        if(parseError == null && costConfig != null) {
+        	parseError = loadCostConfig();
+        }
 
         return parseError;
     }
     
+    /**
+     * Set the lock costs which were not given explicitly from
+     * costConfig, using those of read/write locks if readWrite
+     * 
+     * @return an error message, or null if there is none
+     */
+    private String loadCostConfig() {
+    	Properties config = new Properties();
+    	try (InputStream in = Files.newInputStream(Paths.get(costConfig))) {
+    		config.load(in);
+    	}
+    	catch(IOException e) {
+    		return "Failed to read cost config " + costConfig + ": " + e.getMessage();
+    	}
+    	String prefix = readWrite ? CostCalibration.READ_WRITE_PREFIX : "";
+    	try {
+    		if(!explicitLocalCost) {
+    			localCost = Integer.parseInt(getCost(config, prefix + CostCalibration.LOCAL_COST));
+    		}
+    		if(!explicitGlobalCost) {
+    			globalCost = Integer.parseInt(getCost(config, prefix + CostCalibration.GLOBAL_COST));
+    		}
+    		// Files from before the scale was written are unscaled
+    		if(!explicitLocalCost || !explicitGlobalCost) {
+    			segmentWeightScale = Integer.parseInt(config.getProperty(prefix + CostCalibration.WEIGHT_SCALE,
+    																	 "1").trim());
+    			if(segmentWeightScale < 1 || segmentWeightScale > CostCalibration.MAX_WEIGHT_SCALE) {
+    				throw new IllegalArgumentException(CostCalibration.WEIGHT_SCALE + " must be in [1, " +
+    												   CostCalibration.MAX_WEIGHT_SCALE + "]");
+    			}
+    			if(explicitLocalCost) {
+    				localCost = scaleCost(localCost, segmentWeightScale);
+    			}
+    			if(explicitGlobalCost) {
+    				globalCost = scaleCost(globalCost, segmentWeightScale);
+    			}
+    		}
+    	}
+    	catch(IllegalArgumentException e) {
+    		return "Invalid cost config " + costConfig + ": " + e.getMessage();
+    	}
+    	return null;
+    }
+    
+    /**
+     * An explicit cost is in units of an unscaled conflict, and scaling
+     * the segment weights by weightScale scales each conflict by weightScale^2
+     * 
+     * @return cost in units of a scaled conflict
+     */
+    private static int scaleCost(int cost, int weightScale) {
+    	long scaled = (long) cost * weightScale * weightScale;
+    	if(scaled > Integer.MAX_VALUE) {
+    		throw new IllegalArgumentException("cost " + cost + " is too large for " +
+    										   CostCalibration.WEIGHT_SCALE + " " + weightScale);
+    	}
+    	return (int) scaled;
+    }
+    
+    private static String getCost(Properties config, String key) {
+    	String cost = config.getProperty(key);
+    	if(cost == null) {
+    		throw new IllegalArgumentException("missing " + key);
+    	}
+    	return cost.trim();
+    }
+    
     public List<String> getTargetClasses() {
     	return targetClasses;
     }
@@ -110,10 +396,157 @@ public class CmdLine
 		return globalCost;
 	}
 
+	/**
+	 * @return the factor to scale the weight of each atomic segment
+	 *         by, so that conflicts are in the units of the lock costs
+	 */
+	public int getSegmentWeightScale() {
+		return segmentWeightScale;
+	}
+
 	/**
 	 * @return true iff debugZ3 is set
 	 */
 	public boolean getDebugZ3() {
 		return debugZ3;
 	}
+
+	/**
+	 * @return the strategy used to minimize lock cost
+	 */
+	public SolveStrategy getSolveStrategy() {
+		return solveStrategy;
+	}
+
+	/**
+	 * @return the Z3 configurations to race (see
+	 *         {@link Z3Backend#parse(String, boolean)}), or null
+	 *         to use a single solver
+	 */
+	public List<String> getPortfolio() {
+		return portfolio;
+	}
+
+	/**
+	 * @return the command running an external 0-1 ILP solver,
+	 *         or null to use Z3
+	 */
+	public String getSolverCmd() {
+		return solverCmd;
+	}
+
+	/**
+	 * @return the format the external solver reads
+	 */
+	public ProblemFormat getSolverFormat() {
+		return solverFormat;
+	}
+
+	/**
+	 * @return the 0-1 ILP solve deadline in milliseconds, or 0 for none
+	 */
+	public long getTimeout() {
+		return timeout;
+	}
+
+	/**
+	 * @return the directory of the lock placement cache,
+	 *         or null if there is no cache
+	 */
+	public String getCacheDir() {
+		return cacheDir;
+	}
+
+	/**
+	 * @return true iff the lock placement problem should be
+	 *         split into independent components
+	 */
+	public boolean getDecompose() {
+		return decompose;
+	}
+
+	/**
+	 * @return the number of global locks to encode,
+	 *         {@link CandidateLocks#AUTO_GLOBAL_LOCKS}, or 0
+	 *         for one per LValue
+	 */
+	public int getMaxGlobalLocks() {
+		return maxGlobalLocks;
+	}
+
+	/**
+	 * @return true iff alias constraints should be added to the
+	 *         0-1 ILP once a solution violates them
+	 */
+	public boolean getLazyAlias() {
+		return lazyAlias;
+	}
+
+	/**
+	 * @return the pointer analysis deciding which LValues alias
+	 */
+	public PointerAnalysisType getPointerAnalysis() {
+		return pointerAnalysis;
+	}
+
+	/**
+	 * @return true iff locks should be read/write locks
+	 */
+	public boolean getReadWrite() {
+		return readWrite;
+	}
+
+	/**
+	 * @return the profile of atomic segment frequencies,
+	 *         or null if there is none
+	 */
+	public String getProfile() {
+		return profile;
+	}
+
+	/**
+	 * @return true iff the output should count entries
+	 *         to each atomic segment
+	 */
+	public boolean getInstrumentProfile() {
+		return instrumentProfile;
+	}
+
+	/**
+	 * @return true iff conflicts should be weighted by the estimated
+	 *         hold times of atomic segments
+	 */
+	public boolean getHoldTime() {
+		return holdTime;
+	}
+
+	/**
+	 * @return the engine used to place locks
+	 */
+	public PlacementEngine getEngine() {
+		return engine;
+	}
+
+	/**
+	 * @return the number of LValues above which the AUTO engine
+	 *         uses the heuristic engine
+	 */
+	public int getHeuristicThreshold() {
+		return heuristicThreshold;
+	}
+
+	/**
+	 * @return the time budget of the heuristic engine in milliseconds
+	 */
+	public long getHeuristicBudget() {
+		return heuristicBudget;
+	}
+
+	/**
+	 * @return the maximum number of solver threads, and of threads
+	 *         analyzing a monitor
+	 */
+	public int getNumThreads() {
+		return numThreads;
+	}
 }
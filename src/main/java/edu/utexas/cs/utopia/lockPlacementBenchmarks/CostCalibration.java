@@ -0,0 +1,288 @@
+package edu.utexas.cs.utopia.lockPlacementBenchmarks;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.utexas.cs.utopia.lockPlacementBenchmarks.zeroOneILPPlacement.LockPlacementInstance;
+import edu.utexas.cs.utopia.lockPlacementBenchmarks.zeroOneILPPlacement.SegmentProfile;
+import edu.utexas.cs.utopia.lockPlacementBenchmarks.zeroOneILPPlacement.instrumentation.TwoPhaseLockManager;
+
+/**
+ * Measure what the locks emitted by the instrumentation cost on this
+ * machine, and write lock costs for the 0-1 ILP objective to a
+ * properties file which {@link CmdLine} loads with -costConfig.
+ *
+ * Command line interface:
+ *
+ * java -cp lockPlacementBenchmarks.jar edu.utexas.cs.utopia.lockPlacementBenchmarks.CostCalibration [configFile]
+ *
+ * The objective weights a conflict of atomic segments a and b by
+ * (weight of a) * (weight of b), see {@link LockPlacementInstance#cost},
+ * where the weights average about 1 (see {@link SegmentProfile}).
+ * Costs are measured in units of a conflict, i.e. the extra time of a
+ * contended acquisition over an uncontended one:
+ *   - every lock adds an uncontended acquire/release, including the
+ *     {@link TwoPhaseLockManager} bookkeeping
+ *   - local locks are also a field of every object of the LValue's
+ *     class, so add the cost of allocating and initializing a lock.
+ *     Global locks are one field of the monitor, so this is negligible.
+ * A lock usually costs a fraction of a conflict, which would round
+ * to 1 and lose the ratio of the local and global costs. So the
+ * segment weights are scaled by the smallest k (written as
+ * {@value #WEIGHT_SCALE}) for which the global cost is at least
+ * {@value #COST_RESOLUTION} units of a conflict/k^2, and costs are
+ * given in those units. The measurements are written to the file
+ * as well.
+ *
+ * @author Ben_Sepanski
+ *
+ */
+public class CostCalibration {
+	private static Logger log = LoggerFactory.getLogger(CostCalibration.class);
+	public static final String DEFAULT_CONFIG = "lockCosts.properties";
+	// keys of the lock costs in the config file
+	public static final String LOCAL_COST = "localCost",
+							   GLOBAL_COST = "globalCost",
+							   WEIGHT_SCALE = "segmentWeightScale",
+							   READ_WRITE_PREFIX = "readWrite.";
+	// the largest segment weight scale written to (or accepted from) a config file
+	public static final int MAX_WEIGHT_SCALE = 100;
+	// the least global cost, unless the weight scale would exceed MAX_WEIGHT_SCALE
+	private static final int COST_RESOLUTION = 10;
+
+	private static final int WARMUP_ITERS = 200000,
+							 ITERS = 2000000,
+							 CONTENDED_ITERS = 200000,
+							 NUM_ALLOCATED = 100000,
+							 NUM_TRIALS = 5;
+
+	// Keep results live so the JIT cannot drop the measured work
+	private static volatile Object sink;
+
+	/**
+	 * Makes a fresh lock of the measured type
+	 */
+	private interface LockFactory {
+		Object newLock();
+	}
+
+	/**
+	 * Acquires and releases a lock of the measured type
+	 */
+	private interface LockUser {
+		void acquireRelease(TwoPhaseLockManager manager, Object lock);
+	}
+
+	public static void main(String[] args) {
+		String configFile = args.length > 0 ? args[0] : DEFAULT_CONFIG;
+		Properties config = new Properties();
+
+		calibrate("", config,
+			new LockFactory() {
+				@Override public Object newLock() {
+					return new ReentrantLock();
+				}
+			},
+			new LockUser() {
+				@Override public void acquireRelease(TwoPhaseLockManager manager, Object lock) {
+					if(manager == null) {
+						((Lock) lock).lock();
+						((Lock) lock).unlock();
+						return;
+					}
+					manager.enterAtomicSegment();
+					manager.obtainLock((ReentrantLock) lock);
+					manager.exitAtomicSegment();
+				}
+			});
+		// Contention comes from writers, so measure the write lock
+		calibrate(READ_WRITE_PREFIX, config,
+			new LockFactory() {
+				@Override public Object newLock() {
+					return new ReentrantReadWriteLock();
+				}
+			},
+			new LockUser() {
+				@Override public void acquireRelease(TwoPhaseLockManager manager, Object lock) {
+					if(manager == null) {
+						((ReentrantReadWriteLock) lock).writeLock().lock();
+						((ReentrantReadWriteLock) lock).writeLock().unlock();
+						return;
+					}
+					manager.enterAtomicSegment();
+					manager.obtainWriteLock((ReentrantReadWriteLock) lock);
+					manager.exitAtomicSegment();
+				}
+			});
+
+		try(OutputStream out = Files.newOutputStream(Paths.get(configFile))) {
+			config.store(out, "Lock costs measured by " + CostCalibration.class.getName() +
+							  " on " + Runtime.getRuntime().availableProcessors() + " processors");
+		}
+		catch(IOException e) {
+			throw new RuntimeException("Failed to write " + configFile, e);
+		}
+		log.info("Wrote lock costs to " + configFile);
+	}
+
+	/**
+	 * Measure one type of lock and put its costs (and measurements)
+	 * into config, with keys starting with prefix
+	 */
+	private static void calibrate(String prefix,
+								  Properties config,
+								  LockFactory factory,
+								  LockUser user) {
+		TwoPhaseLockManager manager = new TwoPhaseLockManager();
+		double rawNs = best(factory, user, null);
+		double acquireNs = best(factory, user, manager);
+		double contendedNs = contended(factory, user);
+		double conflictNs = Math.max(contendedNs - acquireNs, 1);
+		double initNs = allocationNs(factory);
+		long bytes = bytesPerLock(factory);
+
+		// scaling the segment weights by k scales each conflict by k^2
+		long weightScale = 1;
+		while(weightScale < MAX_WEIGHT_SCALE
+			  && weightScale * weightScale * acquireNs / conflictNs < COST_RESOLUTION) {
+			++weightScale;
+		}
+		long conflictScale = weightScale * weightScale,
+			 globalCost = Math.max(1, Math.round(conflictScale * acquireNs / conflictNs)),
+			 localCost = Math.max(1, Math.round(conflictScale * (acquireNs + initNs) / conflictNs));
+		log.info(prefix + "lock: uncontended " + format(rawNs) + " ns, with bookkeeping " +
+				 format(acquireNs) + " ns, contended " + format(contendedNs) + " ns, " +
+				 "initialization " + format(initNs) + " ns, " + bytes + " bytes");
+
+		config.setProperty(prefix + LOCAL_COST, Long.toString(localCost));
+		config.setProperty(prefix + GLOBAL_COST, Long.toString(globalCost));
+		config.setProperty(prefix + WEIGHT_SCALE, Long.toString(weightScale));
+		config.setProperty(prefix + "uncontendedNs", format(rawNs));
+		config.setProperty(prefix + "bookkeepingNs", format(Math.max(acquireNs - rawNs, 0)));
+		config.setProperty(prefix + "contendedNs", format(contendedNs));
+		config.setProperty(prefix + "initializationNs", format(initNs));
+		config.setProperty(prefix + "bytesPerLock", Long.toString(bytes));
+	}
+
+	/**
+	 * @return the least time of an uncontended acquire/release
+	 *         over NUM_TRIALS trials, after warming up
+	 */
+	private static double best(LockFactory factory,
+							   LockUser user,
+							   TwoPhaseLockManager manager) {
+		uncontended(factory, user, manager, WARMUP_ITERS);
+		double best = Double.MAX_VALUE;
+		for(int t = 0; t < NUM_TRIALS; ++t) {
+			best = Math.min(best, uncontended(factory, user, manager, ITERS));
+		}
+		return best;
+	}
+
+	/**
+	 * @return the time of an uncontended acquire/release in ns
+	 */
+	private static double uncontended(LockFactory factory,
+									  LockUser user,
+									  TwoPhaseLockManager manager,
+									  int iters) {
+		Object lock = factory.newLock();
+		long start = System.nanoTime();
+		for(int i = 0; i < iters; ++i) {
+			user.acquireRelease(manager, lock);
+		}
+		return (double) (System.nanoTime() - start) / iters;
+	}
+
+	/**
+	 * @return the time of an acquire/release in ns while every
+	 *         processor (at least 2 threads) uses the same lock
+	 */
+	private static double contended(LockFactory factory, final LockUser user) {
+		final Object lock = factory.newLock();
+		final TwoPhaseLockManager manager = new TwoPhaseLockManager();
+		int numThreads = Math.max(2, Runtime.getRuntime().availableProcessors());
+		final CountDownLatch ready = new CountDownLatch(numThreads),
+							 go = new CountDownLatch(1);
+		Thread threads[] = new Thread[numThreads];
+		for(int t = 0; t < numThreads; ++t) {
+			threads[t] = new Thread() {
+				@Override public void run() {
+					ready.countDown();
+					try {
+						go.await();
+					}
+					catch(InterruptedException e) {
+						return;
+					}
+					for(int i = 0; i < CONTENDED_ITERS; ++i) {
+						user.acquireRelease(manager, lock);
+					}
+				}
+			};
+			threads[t].start();
+		}
+		try {
+			ready.await();
+			long start = System.nanoTime();
+			go.countDown();
+			for(Thread thread : threads) {
+				thread.join();
+			}
+			// Acquisitions are serialized, so each took this long
+			return (double) (System.nanoTime() - start) / ((long) numThreads * CONTENDED_ITERS);
+		}
+		catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while calibrating", e);
+		}
+	}
+
+	/**
+	 * @return the time to allocate and initialize a lock in ns
+	 */
+	private static double allocationNs(LockFactory factory) {
+		Object locks[] = new Object[NUM_ALLOCATED];
+		double best = Double.MAX_VALUE;
+		for(int t = 0; t < NUM_TRIALS; ++t) {
+			long start = System.nanoTime();
+			for(int i = 0; i < NUM_ALLOCATED; ++i) {
+				locks[i] = factory.newLock();
+			}
+			best = Math.min(best, (double) (System.nanoTime() - start) / NUM_ALLOCATED);
+			sink = locks[t];
+		}
+		return best;
+	}
+
+	/**
+	 * @return the approximate heap size of a lock in bytes
+	 */
+	private static long bytesPerLock(LockFactory factory) {
+		Runtime runtime = Runtime.getRuntime();
+		Object locks[] = new Object[NUM_ALLOCATED];
+		System.gc();
+		long before = runtime.totalMemory() - runtime.freeMemory();
+		for(int i = 0; i < NUM_ALLOCATED; ++i) {
+			locks[i] = factory.newLock();
+		}
+		System.gc();
+		long after = runtime.totalMemory() - runtime.freeMemory();
+		sink = locks;
+		return Math.max(0, (after - before) / NUM_ALLOCATED);
+	}
+
+	private static String format(double ns) {
+		return String.format("%.1f", ns);
+	}
+}
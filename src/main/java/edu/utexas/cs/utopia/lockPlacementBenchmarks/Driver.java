@@ -4,21 +4,44 @@ import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.nio.file.Paths;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.microsoft.z3.Context;
-
+import edu.utexas.cs.utopia.lockPlacementBenchmarks.zeroOneILPPlacement.CandidateLocks;
+import edu.utexas.cs.utopia.lockPlacementBenchmarks.zeroOneILPPlacement.DecomposedLockPlacement;
+import edu.utexas.cs.utopia.lockPlacementBenchmarks.zeroOneILPPlacement.ExternalSolverBackend;
+import edu.utexas.cs.utopia.lockPlacementBenchmarks.zeroOneILPPlacement.HeuristicLockPlacement;
 import edu.utexas.cs.utopia.lockPlacementBenchmarks.zeroOneILPPlacement.LockConstraintProblem;
+import edu.utexas.cs.utopia.lockPlacementBenchmarks.zeroOneILPPlacement.LockPlacement;
+import edu.utexas.cs.utopia.lockPlacementBenchmarks.zeroOneILPPlacement.LockPlacementCache;
+import edu.utexas.cs.utopia.lockPlacementBenchmarks.zeroOneILPPlacement.LockPlacementInstance;
+import edu.utexas.cs.utopia.lockPlacementBenchmarks.zeroOneILPPlacement.OptimisticPointerAnalysis;
 import edu.utexas.cs.utopia.lockPlacementBenchmarks.zeroOneILPPlacement.PessimisticPointerAnalysis;
+import edu.utexas.cs.utopia.lockPlacementBenchmarks.zeroOneILPPlacement.PlacementEngine;
+import edu.utexas.cs.utopia.lockPlacementBenchmarks.zeroOneILPPlacement.PointerAnalysisType;
+import edu.utexas.cs.utopia.lockPlacementBenchmarks.zeroOneILPPlacement.PortfolioBackend;
+import edu.utexas.cs.utopia.lockPlacementBenchmarks.zeroOneILPPlacement.SegmentProfile;
+import edu.utexas.cs.utopia.lockPlacementBenchmarks.zeroOneILPPlacement.SolverBackend;
+import edu.utexas.cs.utopia.lockPlacementBenchmarks.zeroOneILPPlacement.SolveTimeoutException;
+import edu.utexas.cs.utopia.lockPlacementBenchmarks.zeroOneILPPlacement.SparkPointerAnalysis;
+import edu.utexas.cs.utopia.lockPlacementBenchmarks.zeroOneILPPlacement.Z3Backend;
 import edu.utexas.cs.utopia.lockPlacementBenchmarks.zeroOneILPPlacement.analysis.MonitorAnalysis;
+import edu.utexas.cs.utopia.lockPlacementBenchmarks.zeroOneILPPlacement.analysis.PointerAnalysis;
+import edu.utexas.cs.utopia.lockPlacementBenchmarks.zeroOneILPPlacement.analysis.SegmentHoldTimeEstimator;
 import edu.utexas.cs.utopia.lockPlacementBenchmarks.zeroOneILPPlacement.instrumentation.AtomicSegmentMarker;
 import edu.utexas.cs.utopia.lockPlacementBenchmarks.zeroOneILPPlacement.instrumentation.LockInserter;
 import edu.utexas.cs.utopia.lockPlacementBenchmarks.zeroOneILPPlacement.instrumentation.TwoPhaseLockManager;
@@ -119,6 +142,12 @@ public class Driver
 
         // Do not convert code to BAF
         sootCmdLine.set_output_format(Options.output_format_jimple);
+        // Spark needs the bodies of library methods. It runs from its own
+        // entry points, so skip the whole-program call graph pack
+        if(cmdLine.getPointerAnalysis() == PointerAnalysisType.SPARK) {
+        	sootCmdLine.set_whole_program(true);
+        	sootCmdLine.setPhaseOption("cg", "enabled:false");
+        }
         
         // Load relevant classes, set class in monitor file as applications
         log.debug("adding/loading classes to soot");
@@ -129,6 +158,7 @@ public class Driver
         Scene.v().addBasicClass(TwoPhaseLockManager.class.getName(), SootClass.BODIES);
         // We need these because we're working with explicit monitors
         Scene.v().addBasicClass("java.util.concurrent.locks.ReentrantLock", SootClass.BODIES);
+        Scene.v().addBasicClass("java.util.concurrent.locks.ReentrantReadWriteLock", SootClass.BODIES);
         Scene.v().addBasicClass("java.util.concurrent.locks.Condition", SootClass.BODIES);
         // Now load application classes from the command line
         for(String className : cmdLine.getTargetClasses()) {
@@ -143,24 +173,73 @@ public class Driver
 
         Instant start = Instant.now();
         
-        // TODO : make this a command line option, actually do an analysis
         // Get pointer analysis
-        //PointerAnalysis ptrAnalysis = new OptimisticPointerAnalysis();
-        PessimisticPointerAnalysis ptrAnalysis = new PessimisticPointerAnalysis();
-        int localCost = cmdLine.getLocalCost(),
-        	globalCost = cmdLine.getGlobalCost();
-        boolean logZ3 = cmdLine.getDebugZ3();
+        PointerAnalysis ptrAnalysis = makePointerAnalysis(cmdLine);
         
         log.info("Performing analyses");
         List<MonitorAnalysis> monitorAnalyses = new ArrayList<>();
-        List<LockConstraintProblem> lockProblems = new ArrayList<>();
-        for(String className : cmdLine.getTargetClasses()) {
-        	SootClass targetClass = Scene.v().getSootClass(className);
-        	MonitorAnalysis mtrAnalysis = new MonitorAnalysis(targetClass, ptrAnalysis);
-        	Context ctx = new Context();
-        	LockConstraintProblem lockPrb = new LockConstraintProblem(ctx, mtrAnalysis, localCost, globalCost, logZ3);
-        	monitorAnalyses.add(mtrAnalysis);
-        	lockProblems.add(lockPrb);
+        List<LockPlacement> lockProblems = new ArrayList<>();
+        LockPlacementCache cache = null;
+        if(cmdLine.getCacheDir() != null) {
+        	cache = new LockPlacementCache(Paths.get(cmdLine.getCacheDir()));
+        }
+        SegmentProfile profile = null;
+        if(cmdLine.getProfile() != null) {
+        	profile = SegmentProfile.load(Paths.get(cmdLine.getProfile()));
+        }
+        // Soot is not thread-safe, so monitors are analyzed here one at
+        // a time (only the per-method passes over the unit graphs of a
+        // monitor are spread over the analysis pool), while the lock placement
+        // problems are solved by a bounded pool.
+        // Every solve closes its solver context, so memory does not
+        // grow with the number of targets.
+        int numTargets = cmdLine.getTargetClasses().size();
+        int numWorkers = Math.max(1, Math.min(cmdLine.getNumThreads(), numTargets));
+        int threadsPerSolve = Math.max(1, cmdLine.getNumThreads() / numWorkers);
+        ExecutorService solvePool = Executors.newFixedThreadPool(numWorkers);
+        ForkJoinPool analysisPool = new ForkJoinPool(Math.max(1, cmdLine.getNumThreads()));
+        List<Future<LockPlacement>> solves = new ArrayList<>();
+        try {
+	        for(String className : cmdLine.getTargetClasses()) {
+	        	SootClass targetClass = Scene.v().getSootClass(className);
+	        	MonitorAnalysis mtrAnalysis = new MonitorAnalysis(targetClass, ptrAnalysis, analysisPool);
+	        	// Calibrated lock costs are in units of a conflict of segments
+	        	// whose weights are scaled by the segment weight scale
+	        	int weightScale = cmdLine.getSegmentWeightScale();
+	        	int segmentWeights[] = null;
+	        	if(profile != null || cmdLine.getHoldTime()) {
+	        		segmentWeights = SegmentProfile.toWeights(getUtilizations(mtrAnalysis, profile,
+	        																  cmdLine.getHoldTime()),
+	        												  weightScale);
+	        	}
+	        	else if(weightScale != 1) {
+	        		segmentWeights = new int[mtrAnalysis.getAtomicSegments().size()];
+	        		Arrays.fill(segmentWeights, weightScale);
+	        	}
+	        	LockPlacementInstance instance = new LockPlacementInstance(mtrAnalysis,
+	        															   cmdLine.getReadWrite(),
+	        															   segmentWeights);
+	        	monitorAnalyses.add(mtrAnalysis);
+	        	solves.add(solvePool.submit(new MonitorSolve(className, instance, cmdLine,
+	        												 cache, threadsPerSolve)));
+	        }
+	        for(Future<LockPlacement> solve : solves) {
+	        	lockProblems.add(solve.get());
+	        }
+        }
+        catch(ExecutionException e) {
+        	if(e.getCause() instanceof RuntimeException) {
+        		throw (RuntimeException) e.getCause();
+        	}
+        	throw new RuntimeException("Failed to place locks", e.getCause());
+        }
+        catch(InterruptedException e) {
+        	Thread.currentThread().interrupt();
+        	throw new RuntimeException("Interrupted while placing locks", e);
+        }
+        finally {
+        	solvePool.shutdownNow();
+        	analysisPool.shutdown();
         }
         
         // Add and apply our transformers!
@@ -173,11 +252,16 @@ public class Driver
         	
         	// get our analysis
         	MonitorAnalysis mtrAnalysis = monitorAnalyses.get(i);
-        	LockConstraintProblem lockProb = lockProblems.get(i);
+        	LockPlacement lockProb = lockProblems.get(i);
         	
             // Mark the atomic segments
         	log.debug("Marking atomic segments");
-            AtomicSegmentMarker atomicMarker = new AtomicSegmentMarker(mtrAnalysis.getAtomicSegments());
+            List<String> profiledSegmentKeys = null;
+            if(cmdLine.getInstrumentProfile()) {
+            	profiledSegmentKeys = mtrAnalysis.getAtomicSegmentKeys();
+            }
+            AtomicSegmentMarker atomicMarker = new AtomicSegmentMarker(mtrAnalysis.getAtomicSegments(),
+            														   profiledSegmentKeys);
             Transform atomicMarkerT = new Transform("jtp.atomicSegmentMarker." + className,
             										   atomicMarker);
             jtpPack.add(atomicMarkerT);
@@ -188,7 +272,8 @@ public class Driver
         	log.debug("Inserting locks!");
             LockInserter lockInsert = new LockInserter(lockProb.getLockAssignment(),
             										   lockProb.getAssignedToGlobal(),
-            										   mtrAnalysis);
+            										   mtrAnalysis,
+            										   cmdLine.getReadWrite());
             Transform lockInsertT = new Transform("jtp.lockInsertion." + targetClass.getName(),
             									  lockInsert);
             jtpPack.add(lockInsertT);
@@ -237,6 +322,244 @@ public class Driver
         System.out.println("Total exec: " + Duration.between(start, end));
     }
     
+    /**
+     * Place the locks of one monitor, reusing a cached placement
+     * if there is one
+     */
+    private static class MonitorSolve implements Callable<LockPlacement> {
+    	private final String className;
+    	private final LockPlacementInstance instance;
+    	private final CmdLine cmdLine;
+    	private final LockPlacementCache cache;
+    	private final int numThreads;
+    	
+    	/**
+    	 * @param className the monitor
+    	 * @param instance the lock placement problem of the monitor
+    	 * @param cmdLine the command line arguments
+    	 * @param cache the cache of lock placements, or null
+    	 * @param numThreads the number of threads the solve may use
+    	 */
+    	MonitorSolve(String className,
+    				 LockPlacementInstance instance,
+    				 CmdLine cmdLine,
+    				 LockPlacementCache cache,
+    				 int numThreads) {
+    		this.className = className;
+    		this.instance = instance;
+    		this.cmdLine = cmdLine;
+    		this.cache = cache;
+    		this.numThreads = numThreads;
+    	}
+    	
+		@Override
+		public LockPlacement call() {
+        	PlacementEngine engine = chooseEngine(instance, cmdLine);
+        	LockPlacement lockPrb = null;
+        	String fingerprint = null, method = null;
+        	if(cache != null) {
+        		fingerprint = instance.fingerprint(cmdLine.getLocalCost(), cmdLine.getGlobalCost());
+        		method = describeMethod(engine, cmdLine);
+        		lockPrb = cache.load(instance, fingerprint, method);
+        	}
+        	if(lockPrb == null) {
+        		LockPlacement warmStart = null;
+        		if(cache != null) {
+        			warmStart = cache.loadPrevious(className, instance);
+        		}
+        		lockPrb = placeLocks(instance, engine, cmdLine, numThreads, warmStart);
+        		if(cache != null && isCacheable(lockPrb, engine)) {
+        			cache.store(fingerprint, method, lockPrb);
+        		}
+        	}
+        	else {
+        		log.info("Reusing cached lock placement for " + className);
+        	}
+        	if(cache != null) {
+        		cache.storePrevious(className, instance, lockPrb);
+        	}
+        	log.info("Lock placement for " + className + " costs " +
+        			 instance.cost(lockPrb.getLockAssignment(),
+        					 	   lockPrb.getAssignedToGlobal(),
+        					 	   cmdLine.getLocalCost(),
+        					 	   cmdLine.getGlobalCost()));
+        	return lockPrb;
+		}
+    }
+    
+    /**
+     * @return the pointer analysis selected on the command line
+     */
+    private static PointerAnalysis makePointerAnalysis(CmdLine cmdLine) {
+    	switch(cmdLine.getPointerAnalysis()) {
+    	case OPTIMISTIC:
+    		return new OptimisticPointerAnalysis();
+    	case SPARK:
+    		log.info("Running Spark points-to analysis");
+    		List<SootClass> monitorClasses = new ArrayList<>();
+    		for(String className : cmdLine.getTargetClasses()) {
+    			monitorClasses.add(Scene.v().getSootClass(className));
+    		}
+    		return new SparkPointerAnalysis(monitorClasses);
+    	default:
+    		return new PessimisticPointerAnalysis();
+    	}
+    }
+    
+    /**
+     * @return the engine to place locks for instance with, resolving
+     *         AUTO by the number of LValues
+     */
+    private static PlacementEngine chooseEngine(LockPlacementInstance instance, CmdLine cmdLine) {
+        PlacementEngine engine = cmdLine.getEngine();
+        if(engine == PlacementEngine.AUTO) {
+        	engine = instance.getNumLValues() > cmdLine.getHeuristicThreshold()
+        			? PlacementEngine.HEURISTIC
+        			: PlacementEngine.ILP;
+        }
+        return engine;
+    }
+    
+    /**
+     * Estimate the utilization of each atomic segment, i.e. its
+     * frequency times its hold time
+     * 
+     * @param mtrAnalysis the analysis of the monitor
+     * @param profile the measured frequencies, or null to assume
+     *                segments are equally frequent
+     * @param holdTime true iff hold times should be estimated,
+     *                 otherwise segments are assumed equally long
+     * @return the *a*th entry is the utilization of atomic segment *a*
+     */
+    private static double[] getUtilizations(MonitorAnalysis mtrAnalysis,
+    										SegmentProfile profile,
+    										boolean holdTime) {
+    	int numSegs = mtrAnalysis.getAtomicSegments().size();
+    	double utilizations[] = new double[numSegs];
+    	Arrays.fill(utilizations, 1);
+    	if(profile != null) {
+    		utilizations = profile.getEntryCounts(mtrAnalysis.getAtomicSegmentKeys());
+    	}
+    	if(holdTime) {
+    		double holdTimes[] = new SegmentHoldTimeEstimator(mtrAnalysis.getAtomicSegments())
+    									.getHoldTimes();
+    		for(int a = 0; a < numSegs; ++a) {
+    			utilizations[a] *= holdTimes[a];
+    		}
+    	}
+    	return utilizations;
+    }
+    
+    /**
+     * @return a name for the options which determine the lock
+     *         placement found by engine, e.g. "ilp-optimize-decompose"
+     */
+    private static String describeMethod(PlacementEngine engine, CmdLine cmdLine) {
+    	if(engine == PlacementEngine.HEURISTIC) {
+    		return "heuristic-budget" + cmdLine.getHeuristicBudget();
+    	}
+    	StringBuilder method = new StringBuilder("ilp-");
+    	method.append(makeBackend(cmdLine).getName());
+    	if(cmdLine.getDecompose()) {
+    		method.append("-decompose");
+    	}
+    	if(cmdLine.getTimeout() > 0) {
+    		method.append("-timeout").append(cmdLine.getTimeout());
+    	}
+    	if(cmdLine.getLazyAlias()) {
+    		method.append("-lazyAlias");
+    	}
+    	if(cmdLine.getMaxGlobalLocks() == CandidateLocks.AUTO_GLOBAL_LOCKS) {
+    		method.append("-globalLocksAuto");
+    	}
+    	else if(cmdLine.getMaxGlobalLocks() > 0) {
+    		method.append("-globalLocks").append(cmdLine.getMaxGlobalLocks());
+    	}
+    	return method.toString();
+    }
+    
+    /**
+     * A placement may only be reused by later runs if it is
+     * the answer engine gives: the ILP engine's placement only
+     * if it is proven optimal, not a heuristic fallback after a
+     * timeout or the cheapest assignment found in time.
+     * 
+     * @return true iff lockPrb should be cached as the answer of engine
+     */
+    private static boolean isCacheable(LockPlacement lockPrb, PlacementEngine engine) {
+    	if(engine == PlacementEngine.HEURISTIC) {
+    		return lockPrb instanceof HeuristicLockPlacement;
+    	}
+    	if(lockPrb instanceof LockConstraintProblem) {
+    		return ((LockConstraintProblem) lockPrb).isOptimal();
+    	}
+    	if(lockPrb instanceof DecomposedLockPlacement) {
+    		return ((DecomposedLockPlacement) lockPrb).isOptimal();
+    	}
+    	return false;
+    }
+    
+    /**
+     * @return the 0-1 ILP solver selected on the command line
+     */
+    private static SolverBackend makeBackend(CmdLine cmdLine) {
+    	if(cmdLine.getSolverCmd() != null) {
+    		return new ExternalSolverBackend(cmdLine.getSolverFormat(), cmdLine.getSolverCmd());
+    	}
+    	if(cmdLine.getPortfolio() != null) {
+    		List<SolverBackend> backends = new ArrayList<>();
+    		for(String spec : cmdLine.getPortfolio()) {
+    			backends.add(Z3Backend.parse(spec, cmdLine.getDebugZ3()));
+    		}
+    		return new PortfolioBackend(backends);
+    	}
+    	return new Z3Backend(cmdLine.getSolveStrategy(), cmdLine.getDebugZ3());
+    }
+    
+    /**
+     * Place locks with engine and the options selected on the command line
+     * 
+     * @param instance the lock placement problem
+     * @param engine ILP or HEURISTIC
+     * @param cmdLine the command line arguments
+     * @param numThreads the number of threads the solve may use
+     * @param warmStart the previous lock placement of the monitor
+     *                  to start the ILP engine from, or null
+     * @return the lock placement
+     */
+    private static LockPlacement placeLocks(LockPlacementInstance instance,
+    										PlacementEngine engine,
+    										CmdLine cmdLine,
+    										int numThreads,
+    										LockPlacement warmStart) {
+        int localCost = cmdLine.getLocalCost(),
+        	globalCost = cmdLine.getGlobalCost();
+        
+        if(engine == PlacementEngine.HEURISTIC) {
+        	log.info("Placing locks for " + instance.getNumLValues() + " LValues heuristically");
+        	return new HeuristicLockPlacement(instance, localCost, globalCost,
+        									  cmdLine.getHeuristicBudget());
+        }
+        try {
+	        SolverBackend backend = makeBackend(cmdLine);
+	        if(cmdLine.getDecompose()) {
+	        	return new DecomposedLockPlacement(instance, localCost, globalCost,
+	        									   backend, numThreads,
+	        									   cmdLine.getTimeout(), cmdLine.getLazyAlias(),
+	        									   warmStart, cmdLine.getMaxGlobalLocks());
+	        }
+	        return new LockConstraintProblem(instance, localCost, globalCost,
+	        								 backend, cmdLine.getTimeout(),
+	        								 cmdLine.getLazyAlias(), warmStart,
+	        								 cmdLine.getMaxGlobalLocks());
+        }
+        catch(SolveTimeoutException e) {
+        	log.warn(e.getMessage() + ", placing locks heuristically instead");
+        	return new HeuristicLockPlacement(instance, localCost, globalCost,
+        									  cmdLine.getHeuristicBudget());
+        }
+    }
+    
     /**
      * If we modified cls, we will want to write it out
      * @param cls
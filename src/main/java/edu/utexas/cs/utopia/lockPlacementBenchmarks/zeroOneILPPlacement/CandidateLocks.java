@@ -0,0 +1,322 @@
+package edu.utexas.cs.utopia.lockPlacementBenchmarks.zeroOneILPPlacement;
+
+import java.util.BitSet;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.utexas.cs.utopia.lockPlacementBenchmarks.zeroOneILPPlacement.analysis.AliasRelation;
+import edu.utexas.cs.utopia.lockPlacementBenchmarks.zeroOneILPPlacement.analysis.BitMatrix;
+
+/**
+ * The (lvalue, lock) pairs which may appear in a lock assignment.
+ *
+ * LValue i may be assigned local lock j unless
+ *   - j is an ArrayRef
+ *   - j is primitive (primitives have no local locks)
+ *   - i MAY_ALIAS some other LValue
+ *   - j is out of scope in an atomic segment accessing i
+ *   - i TopoAccessedBefore j
+ *
+ * LValue i may be assigned global lock j unless j is an ArrayRef.
+ * (For MAY_ALIAS'ed LValues, the alias constraint is still needed:
+ * it forces them onto the same global lock.)
+ *
+ * Every other pair is always false, so it never needs to be
+ * encoded as a variable.
+ *
+ * This also acts as a presolve for the 0-1 ILP:
+ *   - MUST_ALIAS'ed LValues have identical locks, so each of them
+ *     may only use the locks all of them may use
+ *   - an LValue with exactly one candidate lock is fixed to it,
+ *     so its variable is just true
+ *   - locks no LValue may use never appear in the encoding
+ *
+ * MUST_ALIAS'ed LValues end up with identical candidates, so an
+ * encoding may share one row of variables between each MUST_ALIAS
+ * class (see {@link #getRepresentative(int)}).
+ *
+ * Global locks are just labels: every LValue may use every one of
+ * them, so they are interchangeable. The number of global locks may
+ * therefore be bounded by some k, keeping only the first k labels
+ * as global lock slots. Every alias-connected group of LValues uses
+ * at most one global lock, so bounding by the number of such groups
+ * loses no solutions up to relabeling (see {@link #AUTO_GLOBAL_LOCKS}).
+ *
+ * @author Ben_Sepanski
+ *
+ */
+public class CandidateLocks {
+	private static Logger log = LoggerFactory.getLogger(CandidateLocks.class);
+	/** Bound the global locks by the number of alias-connected groups */
+	public static final int AUTO_GLOBAL_LOCKS = -1;
+	
+	private final int n;
+	// localRows[i] holds {j | i may be assigned local lock j},
+	// localCols[j] holds {i | i may be assigned local lock j}
+	private final BitSet localRows[], localCols[];
+	// same for global locks
+	private final BitSet globalRows[], globalCols[];
+	// fixed.get(i) iff i has exactly one candidate lock
+	private final BitSet fixed;
+	// the least LValue MUST_ALIAS'ed to each LValue
+	private final int representative[];
+	// the labels of the global lock slots if the number of global
+	// locks is bounded, else null
+	private final int globalSlots[];
+
+	/**
+	 * Compute the candidate locks of every LValue in the instance
+	 *
+	 * @param instance the lock placement problem
+	 */
+	public CandidateLocks(LockPlacementInstance instance) {
+		this(instance, 0);
+	}
+
+	/**
+	 * Compute the candidate locks of every LValue in the instance
+	 * with at most maxGlobalLocks global locks
+	 *
+	 * @param instance the lock placement problem
+	 * @param maxGlobalLocks the number of global lock slots,
+	 *                       {@link #AUTO_GLOBAL_LOCKS}, or 0 for
+	 *                       one global lock per LValue
+	 */
+	public CandidateLocks(LockPlacementInstance instance, int maxGlobalLocks) {
+		this.n = instance.getNumLValues();
+		localRows = new BitSet[n];
+		localCols = new BitSet[n];
+		globalRows = new BitSet[n];
+		globalCols = new BitSet[n];
+
+		// Which locks exist at all?
+		BitSet hasLocal = new BitSet(n),
+			   hasGlobal = new BitSet(n);
+		for(int j = 0; j < n; ++j) {
+			if(instance.isArrayRef(j)) continue;
+			hasGlobal.set(j);
+			if(!instance.isPrimitive(j)) {
+				hasLocal.set(j);
+			}
+		}
+
+		// May-aliased LValues cannot use local locks
+		BitSet mayAlias = new BitSet(n);
+		for(int i1 = 0; i1 < n; ++i1) {
+			for(int i2 = i1+1; i2 < n; ++i2) {
+				if(instance.getAliasRelation(i1, i2) == AliasRelation.MAY_ALIAS) {
+					mayAlias.set(i1);
+					mayAlias.set(i2);
+				}
+			}
+		}
+
+		// Keep only the first k global locks
+		if(maxGlobalLocks != 0) {
+			int k = maxGlobalLocks;
+			if(k == AUTO_GLOBAL_LOCKS) {
+				UnionFind aliased = new UnionFind(n);
+				for(int i1 = 0; i1 < n; ++i1) {
+					for(int i2 = i1+1; i2 < n; ++i2) {
+						if(instance.getAliasRelation(i1, i2) != AliasRelation.NOT_ALIAS) {
+							aliased.union(i1, i2);
+						}
+					}
+				}
+				k = aliased.getClasses().size();
+			}
+			k = Math.min(k, hasGlobal.cardinality());
+			globalSlots = new int[k];
+			int j = hasGlobal.nextSetBit(0);
+			for(int s = 0; s < k; ++s, j = hasGlobal.nextSetBit(j+1)) {
+				globalSlots[s] = j;
+			}
+			hasGlobal.clear(j < 0 ? n : j, n);
+			log.debug("Bounded global locks to " + k + " slots");
+		}
+		else {
+			globalSlots = null;
+		}
+
+		for(int i = 0; i < n; ++i) {
+			globalRows[i] = (BitSet) hasGlobal.clone();
+			localRows[i] = mayAlias.get(i) ? new BitSet(n) : (BitSet) hasLocal.clone();
+		}
+
+		// Local locks must be in scope
+		List<List<Integer>> accessedIn = instance.getAccessedLValues();
+		BitMatrix outOfScope = instance.getOutOfScope();
+		for(int atomicSegIndex = 0; atomicSegIndex < accessedIn.size(); ++atomicSegIndex) {
+			BitSet segOutOfScope = outOfScope.getRow(atomicSegIndex);
+			for(int i : accessedIn.get(atomicSegIndex)) {
+				localRows[i].andNot(segOutOfScope);
+			}
+		}
+
+		// Local locks must respect the accessed-before order
+		BitMatrix topoAccBefore = instance.getTopoAccBefore();
+		for(int i = 0; i < n; ++i) {
+			localRows[i].andNot(topoAccBefore.getRow(i));
+		}
+
+		int numUnitPairs = 2 * n * n - count(localRows) - count(globalRows);
+
+		// MUST_ALIAS'ed LValues may only use their common candidates
+		UnionFind mustAlias = new UnionFind(n);
+		for(int i1 = 0; i1 < n; ++i1) {
+			for(int i2 = i1+1; i2 < n; ++i2) {
+				if(instance.getAliasRelation(i1, i2) == AliasRelation.MUST_ALIAS) {
+					mustAlias.union(i1, i2);
+				}
+			}
+		}
+		int numBeforeAlias = count(localRows) + count(globalRows);
+		representative = new int[n];
+		for(List<Integer> aliasClass : mustAlias.getClasses()) {
+			for(int i : aliasClass) {
+				representative[i] = aliasClass.get(0);
+			}
+			if(aliasClass.size() == 1) continue;
+			BitSet local = (BitSet) localRows[aliasClass.get(0)].clone(),
+				   global = (BitSet) globalRows[aliasClass.get(0)].clone();
+			for(int i : aliasClass) {
+				local.and(localRows[i]);
+				global.and(globalRows[i]);
+			}
+			for(int i : aliasClass) {
+				localRows[i] = (BitSet) local.clone();
+				globalRows[i] = (BitSet) global.clone();
+			}
+		}
+		int numAliasPairs = numBeforeAlias - count(localRows) - count(globalRows);
+
+		// Fix LValues with only one candidate lock
+		fixed = new BitSet(n);
+		for(int i = 0; i < n; ++i) {
+			if(localRows[i].cardinality() + globalRows[i].cardinality() == 1) {
+				fixed.set(i);
+			}
+		}
+
+		// Build the columns from the rows
+		for(int j = 0; j < n; ++j) {
+			localCols[j] = new BitSet(n);
+			globalCols[j] = new BitSet(n);
+		}
+		for(int i = 0; i < n; ++i) {
+			for(int j = localRows[i].nextSetBit(0); j >= 0; j = localRows[i].nextSetBit(j+1)) {
+				localCols[j].set(i);
+			}
+			for(int j = globalRows[i].nextSetBit(0); j >= 0; j = globalRows[i].nextSetBit(j+1)) {
+				globalCols[j].set(i);
+			}
+		}
+
+		if(log.isDebugEnabled()) {
+			int numUnusedLocks = 0;
+			for(int j = 0; j < n; ++j) {
+				if(localCols[j].isEmpty()) ++numUnusedLocks;
+				if(globalCols[j].isEmpty()) ++numUnusedLocks;
+			}
+			log.debug("Presolve: " + numUnitPairs + " (lvalue, lock) pairs ruled out directly, " +
+					  numAliasPairs + " by must-aliasing, " +
+					  fixed.cardinality() + " of " + n + " LValues fixed, " +
+					  numUnusedLocks + " of " + (2 * n) + " locks unusable, " +
+					  numCandidates() + " pairs left");
+		}
+	}
+
+	/**
+	 * @return the total cardinality of rows
+	 */
+	private static int count(BitSet rows[]) {
+		int count = 0;
+		for(BitSet row : rows) {
+			count += row.cardinality();
+		}
+		return count;
+	}
+
+	/**
+	 * @return the number of LValues
+	 */
+	public int size() {
+		return n;
+	}
+
+	/**
+	 * @return true iff i may be assigned local lock j
+	 */
+	public boolean isLocalCandidate(int i, int j) {
+		return localRows[i].get(j);
+	}
+
+	/**
+	 * @return true iff i may be assigned global lock j
+	 */
+	public boolean isGlobalCandidate(int i, int j) {
+		return globalRows[i].get(j);
+	}
+
+	/**
+	 * @return true iff i has exactly one candidate lock, i.e. it
+	 *         is assigned that lock in every feasible assignment
+	 */
+	public boolean isFixed(int i) {
+		return fixed.get(i);
+	}
+
+	/**
+	 * @return the least LValue MUST_ALIAS'ed to i, which has exactly
+	 *         the same candidate locks as i
+	 */
+	public int getRepresentative(int i) {
+		return representative[i];
+	}
+
+	/**
+	 * @return {i | i may be assigned local lock j}. Do not modify.
+	 */
+	public BitSet getLocalUsers(int j) {
+		return localCols[j];
+	}
+
+	/**
+	 * @return {i | i may be assigned global lock j}. Do not modify.
+	 */
+	public BitSet getGlobalUsers(int j) {
+		return globalCols[j];
+	}
+
+	/**
+	 * @return the labels of the global lock slots in order, or null
+	 *         if the number of global locks is not bounded. Every
+	 *         LValue may use every slot. Do not modify.
+	 */
+	public int[] getGlobalSlots() {
+		return globalSlots;
+	}
+
+	/**
+	 * @return the number of (lvalue, lock) pairs which may be true,
+	 *         counting local and global locks separately
+	 */
+	public int numCandidates() {
+		return count(localRows) + count(globalRows);
+	}
+
+	/**
+	 * @return the number of (lvalue, lock) pairs which need a variable,
+	 *         i.e. the candidates of representatives which are not fixed
+	 */
+	public int numVariables() {
+		int count = 0;
+		for(int i = fixed.nextClearBit(0); i < n; i = fixed.nextClearBit(i+1)) {
+			if(representative[i] != i) continue;
+			count += localRows[i].cardinality() + globalRows[i].cardinality();
+		}
+		return count;
+	}
+}
@@ -0,0 +1,369 @@
+package edu.utexas.cs.utopia.lockPlacementBenchmarks.zeroOneILPPlacement;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.utexas.cs.utopia.lockPlacementBenchmarks.zeroOneILPPlacement.analysis.AliasRelation;
+
+/**
+ * Split a lock placement problem into independent components
+ * and solve each one with its own {@link LockConstraintProblem}
+ * on a thread pool.
+ *
+ * Two LValues are in the same component if they are accessed in
+ * the same atomic segment, or may be aliased. Accessed-before edges
+ * only relate LValues accessed in the same atomic segment, so they
+ * never connect two components.
+ *
+ * Each component may only use the locks of its own LValues. This
+ * loses nothing for the constraints or the conflict cost, but a
+ * lock shared between components would count only once towards
+ * the lock cost. After merging the component solutions, we
+ * therefore greedily merge global locks from different components
+ * whenever the saved globalCost exceeds the weight of the conflicts
+ * it adds.
+ * Local locks are never merged across components, so the result
+ * can cost more than the optimum of the undivided problem.
+ *
+ * @author Ben_Sepanski
+ *
+ */
+public class DecomposedLockPlacement implements LockPlacement {
+	private static Logger log = LoggerFactory.getLogger(DecomposedLockPlacement.class);
+
+	// i is assigned to lock of lockAssignment.get(i)
+	private final List<Integer> lockAssignment = new ArrayList<>();
+	// i is assigned to a global lock iff assignedToGlobal.get(i)
+	private final List<Boolean> assignedToGlobal = new ArrayList<>();
+	// true iff every component's assignment is proven to be of minimal cost
+	private boolean optimal = true;
+
+	/**
+	 * Decompose instance and solve the components
+	 *
+	 * @param instance the lock placement problem
+	 * @param localCost the cost of a local lock
+	 * @param globalCost the cost of a global lock
+	 * @param backend the solver each component is solved with
+	 * @param numThreads the maximum number of components to solve at once
+	 * @param timeoutMillis how long to solve all components for in
+	 *                      milliseconds, or 0 for no timeout
+	 * @param lazyAlias true iff MAY_ALIAS constraints should only be
+	 *                  added once an assignment violates them
+	 * @param warmStart a previous lock assignment (see
+	 *                  {@link LockConstraintProblem}), or null
+	 * @param maxGlobalLocks a bound on the number of global locks
+	 *                       of each component (see {@link CandidateLocks})
+	 * @throws SolveTimeoutException if some component has no
+	 *                               assignment in time
+	 */
+	public DecomposedLockPlacement(final LockPlacementInstance instance,
+								   final int localCost,
+								   final int globalCost,
+								   final SolverBackend backend,
+								   int numThreads,
+								   long timeoutMillis,
+								   final boolean lazyAlias,
+								   LockPlacement warmStart,
+								   final int maxGlobalLocks) {
+		final long deadline = System.nanoTime() + timeoutMillis * 1000000L;
+		final boolean hasDeadline = timeoutMillis > 0;
+		int n = instance.getNumLValues();
+		List<List<Integer>> components = getComponents(instance);
+		log.debug("Split " + n + " LValues into " + components.size() + " components");
+
+		// Each component needs a lock which is not an ArrayRef
+		for(List<Integer> component : components) {
+			boolean hasLock = false;
+			for(int i : component) {
+				hasLock |= !instance.isArrayRef(i);
+			}
+			if(!hasLock) {
+				log.debug("Component " + component + " has no lock of its own, " +
+						  "solving without decomposition");
+				List<Integer> all = new ArrayList<>();
+				for(int i = 0; i < n; ++i) {
+					all.add(i);
+				}
+				components = Collections.singletonList(all);
+				break;
+			}
+		}
+		// Start the biggest components first
+		Collections.sort(components, new Comparator<List<Integer>>() {
+			@Override
+			public int compare(List<Integer> c1, List<Integer> c2) {
+				return c2.size() - c1.size();
+			}
+		});
+
+		/// Solve each component //////////////////////////////////////////////
+		List<LockConstraintProblem> solutions = new ArrayList<>();
+		numThreads = Math.max(1, Math.min(numThreads, components.size()));
+		ExecutorService pool = Executors.newFixedThreadPool(numThreads);
+		try {
+			List<Future<LockConstraintProblem>> futures = new ArrayList<>();
+			for(List<Integer> component : components) {
+				final LockPlacementInstance subInstance = components.size() > 1
+						? instance.restrict(component)
+						: instance;
+				final LockPlacement subWarmStart = warmStart != null
+						? restrictWarmStart(warmStart, component)
+						: null;
+				futures.add(pool.submit(new Callable<LockConstraintProblem>() {
+					@Override
+					public LockConstraintProblem call() {
+						// Components share the deadline, so a component which
+						// has to wait for a thread gets less time
+						long remaining = 0;
+						if(hasDeadline) {
+							remaining = Math.max(1, (deadline - System.nanoTime()) / 1000000L);
+						}
+						return new LockConstraintProblem(subInstance,
+														 localCost,
+														 globalCost,
+														 backend,
+														 remaining,
+														 lazyAlias,
+														 subWarmStart,
+														 maxGlobalLocks);
+					}
+				}));
+			}
+			for(Future<LockConstraintProblem> future : futures) {
+				solutions.add(future.get());
+				optimal &= solutions.get(solutions.size() - 1).isOptimal();
+			}
+		}
+		catch(ExecutionException e) {
+			if(e.getCause() instanceof SolveTimeoutException) {
+				throw (SolveTimeoutException) e.getCause();
+			}
+			throw new RuntimeException("Failed to solve component", e.getCause());
+		}
+		catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while solving components", e);
+		}
+		finally {
+			pool.shutdownNow();
+		}
+		///////////////////////////////////////////////////////////////////////
+
+		/// Translate the component solutions back ////////////////////////////
+		int lock[] = new int[n];
+		boolean global[] = new boolean[n];
+		for(int c = 0; c < components.size(); ++c) {
+			List<Integer> component = components.get(c);
+			LockConstraintProblem solution = solutions.get(c);
+			for(int i = 0; i < component.size(); ++i) {
+				lock[component.get(i)] = component.get(solution.getLockAssignment().get(i));
+				global[component.get(i)] = solution.getAssignedToGlobal().get(i);
+			}
+		}
+		if(components.size() > 1) {
+			mergeGlobalLocks(instance, globalCost, components, lock, global);
+		}
+		for(int i = 0; i < n; ++i) {
+			lockAssignment.add(lock[i]);
+			assignedToGlobal.add(global[i]);
+		}
+		///////////////////////////////////////////////////////////////////////
+	}
+
+	/**
+	 * Restrict a warm start to a component, as in
+	 * {@link LockPlacementInstance#restrict(List)}. LValues whose
+	 * lock lies outside the component are left uncovered (null).
+	 */
+	private static LockPlacement restrictWarmStart(LockPlacement warmStart,
+												   List<Integer> component) {
+		final List<Integer> subLock = new ArrayList<>();
+		final List<Boolean> subGlobal = new ArrayList<>();
+		for(int i : component) {
+			Integer lock = warmStart.getLockAssignment().get(i);
+			int subLockID = lock == null ? -1 : component.indexOf(lock);
+			subLock.add(subLockID >= 0 ? subLockID : null);
+			subGlobal.add(subLockID >= 0 ? warmStart.getAssignedToGlobal().get(i) : null);
+		}
+		return new LockPlacement() {
+			@Override
+			public List<Integer> getLockAssignment() {
+				return subLock;
+			}
+
+			@Override
+			public List<Boolean> getAssignedToGlobal() {
+				return subGlobal;
+			}
+		};
+	}
+
+	/**
+	 * @return the connected components of the instance
+	 */
+	private static List<List<Integer>> getComponents(LockPlacementInstance instance) {
+		int n = instance.getNumLValues();
+		UnionFind components = new UnionFind(n);
+		for(List<Integer> accessed : instance.getAccessedLValues()) {
+			for(int i : accessed) {
+				components.union(accessed.get(0), i);
+			}
+		}
+		for(int i1 = 0; i1 < n; ++i1) {
+			for(int i2 = i1+1; i2 < n; ++i2) {
+				if(instance.getAliasRelation(i1, i2) != AliasRelation.NOT_ALIAS) {
+					components.union(i1, i2);
+				}
+			}
+		}
+		return components.getClasses();
+	}
+
+	/**
+	 * Greedily merge pairs of global locks which came from different
+	 * components as long as that lowers the cost. Merging global locks
+	 * g and h saves globalCost, and adds a conflict (weighted as in
+	 * {@link LockPlacementInstance#cost}) for every pair of atomic
+	 * segments using g and h respectively, one of which writes through
+	 * its lock, which did not already conflict on a global lock.
+	 *
+	 * Global locks have no scope or ordering constraints, and aliased
+	 * LValues are always in the same component and so move together,
+	 * so merging global locks is always feasible.
+	 *
+	 * @param instance the lock placement problem
+	 * @param globalCost the cost of a global lock
+	 * @param components the components
+	 * @param lock lock[i] is the lock of LValue i, modified in place
+	 * @param global global[i] iff LValue i has a global lock
+	 */
+	private static void mergeGlobalLocks(LockPlacementInstance instance,
+										 int globalCost,
+										 List<List<Integer>> components,
+										 int lock[],
+										 boolean global[]) {
+		int n = instance.getNumLValues();
+		int numAtomic = instance.getNumAtomicSegments();
+		int componentOf[] = new int[n];
+		for(int c = 0; c < components.size(); ++c) {
+			for(int i : components.get(c)) {
+				componentOf[i] = c;
+			}
+		}
+		// global lock g -> segments using it, and the components using it
+		List<Integer> globalLocks = new ArrayList<>();
+		BitSet usedBy[] = new BitSet[n],
+			   usedByComponents[] = new BitSet[n];
+		// segment -> global locks it uses, and writes through
+		BitSet segGlobal[] = new BitSet[numAtomic],
+			   segWritesGlobal[] = new BitSet[numAtomic];
+		for(int a = 0; a < numAtomic; ++a) {
+			segGlobal[a] = new BitSet(n);
+			segWritesGlobal[a] = new BitSet(n);
+			for(int i : instance.getWrittenLValues().get(a)) {
+				if(global[i]) {
+					segWritesGlobal[a].set(lock[i]);
+				}
+			}
+			for(int i : instance.getAccessedLValues().get(a)) {
+				if(!global[i]) continue;
+				int g = lock[i];
+				if(usedBy[g] == null) {
+					globalLocks.add(g);
+					usedBy[g] = new BitSet(numAtomic);
+					usedByComponents[g] = new BitSet(components.size());
+				}
+				usedBy[g].set(a);
+				usedByComponents[g].set(componentOf[i]);
+				segGlobal[a].set(g);
+			}
+		}
+
+		int numMerged = 0;
+		while(true) {
+			// Find the merge which saves the most
+			long bestSavings = 0;
+			int bestG = -1, bestH = -1;
+			for(int gIndex = 0; gIndex < globalLocks.size(); ++gIndex) {
+				int g = globalLocks.get(gIndex);
+				for(int hIndex = gIndex+1; hIndex < globalLocks.size(); ++hIndex) {
+					int h = globalLocks.get(hIndex);
+					if(usedByComponents[g].intersects(usedByComponents[h])) continue;
+					long newConflicts = 0;
+					for(int a = usedBy[g].nextSetBit(0); a >= 0; a = usedBy[g].nextSetBit(a+1)) {
+						for(int b = usedBy[h].nextSetBit(0); b >= 0; b = usedBy[h].nextSetBit(b+1)) {
+							// Read locks do not conflict with each other
+							if(!segWritesGlobal[a].get(g) && !segWritesGlobal[b].get(h)) continue;
+							if(segGlobal[a].intersects(segWritesGlobal[b])
+							   || segWritesGlobal[a].intersects(segGlobal[b])) continue;
+							newConflicts += (long) instance.getSegmentWeight(a) * instance.getSegmentWeight(b);
+						}
+					}
+					long savings = globalCost - newConflicts;
+					if(savings > bestSavings) {
+						bestSavings = savings;
+						bestG = g;
+						bestH = h;
+					}
+				}
+			}
+			if(bestG < 0) break;
+			// Merge h into g
+			for(int i = 0; i < n; ++i) {
+				if(global[i] && lock[i] == bestH) {
+					lock[i] = bestG;
+				}
+			}
+			for(int a = usedBy[bestH].nextSetBit(0); a >= 0; a = usedBy[bestH].nextSetBit(a+1)) {
+				segGlobal[a].clear(bestH);
+				segGlobal[a].set(bestG);
+				if(segWritesGlobal[a].get(bestH)) {
+					segWritesGlobal[a].clear(bestH);
+					segWritesGlobal[a].set(bestG);
+				}
+			}
+			usedBy[bestG].or(usedBy[bestH]);
+			usedByComponents[bestG].or(usedByComponents[bestH]);
+			globalLocks.remove(Integer.valueOf(bestH));
+			++numMerged;
+		}
+		log.debug("Merged " + numMerged + " global locks across components");
+	}
+
+	/**
+	 * @return true iff every component's lock assignment is proven to
+	 *         be of minimal cost. The merged placement may still cost
+	 *         more than the optimum of the undivided problem.
+	 */
+	public boolean isOptimal() {
+		return optimal;
+	}
+
+	/**
+	 * @return the lockAssignment: i assigned to lockAssignment.get(i)
+	 */
+	@Override
+	public List<Integer> getLockAssignment() {
+		return lockAssignment;
+	}
+
+	/**
+	 * @return i given a global lock iff assignedToGlobal.get(i)
+	 */
+	@Override
+	public List<Boolean> getAssignedToGlobal() {
+		return assignedToGlobal;
+	}
+}
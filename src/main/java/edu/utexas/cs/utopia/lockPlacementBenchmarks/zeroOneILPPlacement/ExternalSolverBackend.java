@@ -0,0 +1,268 @@
+package edu.utexas.cs.utopia.lockPlacementBenchmarks.zeroOneILPPlacement;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Solve {@link PseudoBooleanProblem}s with a solver binary: write the
+ * problem to a temporary file (see {@link ProblemWriter}), run the
+ * solver on it, and read the assignment back.
+ *
+ * The command is split on whitespace. {file} is replaced by the problem
+ * file (or the file is appended if there is no {file}), and {solution}
+ * by a file the solver may write its solution to. The solution is read
+ * from that file if the command mentions it, and from the solver's
+ * standard output otherwise. We understand
+ *   - competition output ("s OPTIMUM FOUND", "v x1 -x2 ...",
+ *     "v 1 -2 ..." or "v 10..."), as printed by OPB and WCNF solvers
+ *   - lines with a variable name x(v) followed by its value, as in
+ *     the solution files of most LP solvers
+ * The assignment is checked against the problem, so an unparseable
+ * answer is an error rather than a wrong lock placement.
+ *
+ * On timeout or {@link #interrupt(Thread)} the solver is asked
+ * to stop, and we use whatever assignment it printed.
+ *
+ * @author Ben_Sepanski
+ *
+ */
+public class ExternalSolverBackend implements SolverBackend {
+	private static Logger log = LoggerFactory.getLogger(ExternalSolverBackend.class);
+	private static final Pattern VAR_NAME = Pattern.compile("x\\d+"),
+								 NUMBER = Pattern.compile("-?\\d+(\\.\\d*)?([eE][-+]?\\d+)?"),
+								 BITS = Pattern.compile("[01]+"),
+								 // "optimal" as a whole word, e.g. "Optimal - objective value 4"
+								 // (cbc), "INTEGER OPTIMAL SOLUTION FOUND" (glpsol) or
+								 // "Model status : Optimal" (HiGHS), but not "INTEGER NON-OPTIMAL",
+								 // "suboptimal" or "not optimal"
+								 LP_OPTIMAL = Pattern.compile("(?i)(?<![\\w-])(?<!not )(?<!no )optimal(?![\\w-])");
+	// how long a solver may take to exit after being asked to stop
+	private static final long EXIT_GRACE_MILLIS = 1000;
+
+	private final ProblemFormat format;
+	private final String command;
+	// The solver process run by each thread
+	private final Map<Thread, Process> running = new HashMap<>();
+
+	/**
+	 * @param format the format the solver reads
+	 * @param command the command running the solver
+	 */
+	public ExternalSolverBackend(ProblemFormat format, String command) {
+		this.format = format;
+		this.command = command;
+	}
+
+	@Override
+	public String getName() {
+		String binary = command.trim().split("\\s+")[0];
+		return format.getExtension() + "-" + new File(binary).getName();
+	}
+
+	@Override
+	public PseudoBooleanSolution solve(PseudoBooleanProblem problem, long timeoutMillis) {
+		if(problem.isTriviallyInfeasible()) {
+			throw new RuntimeException("Infeasible 0-1 ILP problem");
+		}
+		Path problemFile = null, solutionFile = null, outputFile = null;
+		try {
+			problemFile = Files.createTempFile("lockPlacement", "." + format.getExtension());
+			solutionFile = Files.createTempFile("lockPlacement", ".sol");
+			outputFile = Files.createTempFile("lockPlacement", ".out");
+			try(BufferedWriter out = Files.newBufferedWriter(problemFile, StandardCharsets.UTF_8)) {
+				ProblemWriter.write(problem, format, out);
+			}
+
+			// Build the command line
+			List<String> args = new ArrayList<>();
+			boolean hasFile = false, hasSolution = false;
+			for(String arg : command.trim().split("\\s+")) {
+				hasFile |= arg.contains("{file}");
+				hasSolution |= arg.contains("{solution}");
+				args.add(arg.replace("{file}", problemFile.toString())
+							.replace("{solution}", solutionFile.toString()));
+			}
+			if(!hasFile) {
+				args.add(problemFile.toString());
+			}
+
+			log.debug("Running " + args);
+			ProcessBuilder builder = new ProcessBuilder(args);
+			builder.redirectErrorStream(true);
+			builder.redirectOutput(outputFile.toFile());
+			Process process;
+			synchronized(running) {
+				if(Thread.currentThread().isInterrupted()) {
+					throw new InterruptedException();
+				}
+				process = builder.start();
+				running.put(Thread.currentThread(), process);
+			}
+			boolean timedOut;
+			try {
+				timedOut = !waitFor(process, timeoutMillis);
+			}
+			catch(InterruptedException e) {
+				process.destroyForcibly();
+				throw e;
+			}
+			finally {
+				synchronized(running) {
+					running.remove(Thread.currentThread());
+				}
+			}
+			if(timedOut) {
+				log.debug("Solver timed out, stopping it");
+				process.destroy();
+				if(!process.waitFor(EXIT_GRACE_MILLIS, TimeUnit.MILLISECONDS)) {
+					process.destroyForcibly().waitFor();
+				}
+			}
+
+			List<String> lines = Files.readAllLines(hasSolution ? solutionFile : outputFile,
+													StandardCharsets.UTF_8);
+			if(hasSolution) {
+				// status lines may still be on stdout
+				lines.addAll(Files.readAllLines(outputFile, StandardCharsets.UTF_8));
+			}
+			return parse(problem, lines, timedOut);
+		}
+		catch(IOException e) {
+			throw new RuntimeException("Failed to run solver " + command, e);
+		}
+		catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while running solver " + command, e);
+		}
+		finally {
+			for(Path file : new Path[] {problemFile, solutionFile, outputFile}) {
+				try {
+					if(file != null) Files.deleteIfExists(file);
+				}
+				catch(IOException e) {
+					log.warn("Failed to delete " + file + ": " + e.getMessage());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Stop the solver run by solvingThread
+	 */
+	@Override
+	public void interrupt(Thread solvingThread) {
+		synchronized(running) {
+			Process process = running.get(solvingThread);
+			if(process != null) {
+				process.destroy();
+			}
+			else {
+				// The solver has not been started yet
+				solvingThread.interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Wait for process to finish
+	 *
+	 * @param timeoutMillis how long to wait, or 0 to wait forever
+	 * @return true iff the process finished
+	 */
+	private static boolean waitFor(Process process, long timeoutMillis) throws InterruptedException {
+		if(timeoutMillis <= 0) {
+			process.waitFor();
+			return true;
+		}
+		return process.waitFor(timeoutMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Read the assignment out of the solver output
+	 *
+	 * @param problem the problem solved
+	 * @param lines the solver output
+	 * @param timedOut true iff the solver was stopped early
+	 * @return the solution
+	 */
+	private PseudoBooleanSolution parse(PseudoBooleanProblem problem,
+										List<String> lines,
+										boolean timedOut) {
+		int numVars = problem.getNumVars();
+		boolean values[] = new boolean[numVars + 1];
+		boolean sawValue = false, optimal = false;
+		for(String line : lines) {
+			String tokens[] = line.trim().split("\\s+");
+			if(tokens.length == 0) continue;
+			if(tokens[0].equals("s")) {
+				if(line.contains("UNSATISFIABLE")) {
+					throw new RuntimeException("Infeasible 0-1 ILP problem");
+				}
+				// the pseudo-Boolean and MaxSAT competitions' "s OPTIMUM FOUND"
+				optimal |= tokens.length == 3 && tokens[1].equals("OPTIMUM") && tokens[2].equals("FOUND");
+			}
+			else if(tokens[0].equals("v")) {
+				if(tokens.length == 2 && BITS.matcher(tokens[1]).matches()) {
+					// "v 0110...": value of variable v is character v-1
+					for(int v = 1; v <= numVars && v <= tokens[1].length(); ++v) {
+						values[v] = tokens[1].charAt(v-1) == '1';
+					}
+					sawValue = true;
+					continue;
+				}
+				for(int t = 1; t < tokens.length; ++t) {
+					String lit = tokens[t];
+					boolean negated = lit.startsWith("-") || lit.startsWith("~");
+					if(negated) lit = lit.substring(1);
+					if(lit.startsWith("x")) lit = lit.substring(1);
+					try {
+						int v = Integer.parseInt(lit);
+						if(v >= 1 && v <= numVars) {
+							values[v] = !negated;
+							sawValue = true;
+						}
+					}
+					catch(NumberFormatException e) {
+						// not a literal
+					}
+				}
+			}
+			else if(format == ProblemFormat.LP) {
+				optimal |= LP_OPTIMAL.matcher(line).find();
+				for(int t = 0; t + 1 < tokens.length; ++t) {
+					if(!VAR_NAME.matcher(tokens[t]).matches()
+					   || !NUMBER.matcher(tokens[t+1]).matches()) continue;
+					int v = Integer.parseInt(tokens[t].substring(1));
+					if(v >= 1 && v <= numVars) {
+						values[v] = Double.parseDouble(tokens[t+1]) >= 0.5;
+						sawValue = true;
+					}
+					break;
+				}
+			}
+		}
+
+		if((!sawValue && numVars > 0) || !problem.isSatisfied(values)) {
+			if(timedOut) {
+				throw new SolveTimeoutException("Solver " + command + " found no lock assignment in time");
+			}
+			throw new RuntimeException("Solver " + command + " returned no feasible assignment");
+		}
+		long cost = problem.objectiveValue(values);
+		long lowerBound = optimal && !timedOut ? cost : problem.getObjectiveOffset();
+		return new PseudoBooleanSolution(values, cost, lowerBound, getName());
+	}
+}
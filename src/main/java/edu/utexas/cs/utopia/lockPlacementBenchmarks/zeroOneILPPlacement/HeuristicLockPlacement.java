@@ -0,0 +1,444 @@
+package edu.utexas.cs.utopia.lockPlacementBenchmarks.zeroOneILPPlacement;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.utexas.cs.utopia.lockPlacementBenchmarks.zeroOneILPPlacement.analysis.AliasRelation;
+
+/**
+ * A pure-Java lock placement for monitors too large for the
+ * exact 0-1 ILP.
+ *
+ * Aliased LValues must share their lock (MUST_ALIAS'ed LValues have
+ * identical locks, MAY_ALIAS'ed LValues the same global lock), so we
+ * group aliased LValues and assign locks group by group. Each group
+ * may use
+ * 	 - a local lock which is a candidate for every LValue in the group
+ *     (see {@link CandidateLocks}), unless the group is MAY_ALIAS'ed
+ *   - any global lock
+ * so every assignment we build satisfies the same constraints as
+ * {@link LockConstraintProblem}.
+ *
+ * We start from a greedy assignment and improve it by local search
+ * (move one group to its best lock, perturbing randomly
+ * when no move helps) until the time budget runs out.
+ *
+ * @author Ben_Sepanski
+ *
+ */
+public class HeuristicLockPlacement implements LockPlacement {
+	private static Logger log = LoggerFactory.getLogger(HeuristicLockPlacement.class);
+	// Groups moved at random when local search gets stuck
+	private static final int PERTURBATION_SIZE = 3;
+
+	// i is assigned to lock of lockAssignment.get(i)
+	private final List<Integer> lockAssignment = new ArrayList<>();
+	// i is assigned to a global lock iff assignedToGlobal.get(i)
+	private final List<Boolean> assignedToGlobal = new ArrayList<>();
+	private final long cost;
+
+	/// Problem ///////////////////////////////////////////////////////////////
+	private final int n, numAtomic;
+	private final int localCost, globalCost;
+	// groups of aliased LValues
+	private final List<List<Integer>> groups;
+	// (segment, number of group members accessed in segment,
+	//  number of group members written to in segment) for each group
+	private final int groupSegs[][], groupSegCounts[][], groupSegWriteCounts[][];
+	// weight of each atomic segment
+	private final int segWeights[];
+	// local locks available to each group
+	private final int localOptions[][];
+	// locks which can be global locks
+	private final int globalLabels[];
+	///////////////////////////////////////////////////////////////////////////
+
+	/// State /////////////////////////////////////////////////////////////////
+	// Locks are coded as 2 * j for local lock j, 2 * j + 1 for global lock j
+	// lock of each group, or -1 if unassigned
+	private final int groupLock[];
+	// number of LValues using each lock
+	private final int lockUsers[];
+	// segments using each lock: lockSegs.get(code) maps each segment a
+	// using lock code to {number of LValues in a using lock code,
+	// number of those which a writes to}
+	private final List<Map<Integer, int[]>> lockSegs;
+	// number of local/global locks shared by two segments a < b, at least
+	// one of which writes through the lock, keyed by pairKey(a, b).
+	// Pairs sharing no such lock are absent.
+	private final Map<Long, Integer> sharedLocal = new HashMap<>(),
+									 sharedGlobal = new HashMap<>();
+	private long curCost = 0;
+	///////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Find a feasible lock placement for instance
+	 *
+	 * @param instance the lock placement problem
+	 * @param localCost the cost of a local lock
+	 * @param globalCost the cost of a global lock
+	 * @param timeBudgetMillis how long to spend improving the greedy
+	 *                         assignment
+	 */
+	public HeuristicLockPlacement(LockPlacementInstance instance,
+								  int localCost,
+								  int globalCost,
+								  long timeBudgetMillis) {
+		long deadline = System.nanoTime() + timeBudgetMillis * 1000000L;
+		this.n = instance.getNumLValues();
+		this.numAtomic = instance.getNumAtomicSegments();
+		this.localCost = localCost;
+		this.globalCost = globalCost;
+		this.segWeights = new int[numAtomic];
+		for(int a = 0; a < numAtomic; ++a) {
+			segWeights[a] = instance.getSegmentWeight(a);
+		}
+
+		/// Group aliased LValues and compute their options ///////////////////
+		UnionFind aliasClasses = new UnionFind(n);
+		for(int i1 = 0; i1 < n; ++i1) {
+			for(int i2 = i1+1; i2 < n; ++i2) {
+				if(instance.getAliasRelation(i1, i2) != AliasRelation.NOT_ALIAS) {
+					aliasClasses.union(i1, i2);
+				}
+			}
+		}
+		this.groups = aliasClasses.getClasses();
+		int numGroups = groups.size();
+
+		List<Integer> labels = new ArrayList<>();
+		for(int j = 0; j < n; ++j) {
+			if(!instance.isArrayRef(j)) labels.add(j);
+		}
+		if(labels.isEmpty() && n > 0) {
+			throw new RuntimeException("Infeasible lock placement problem: no LValue can be a lock");
+		}
+		this.globalLabels = toArray(labels);
+
+		CandidateLocks candidates = new CandidateLocks(instance);
+		List<List<Integer>> segsOf = new ArrayList<>(),
+							writtenSegsOf = new ArrayList<>();
+		for(int i = 0; i < n; ++i) {
+			segsOf.add(new ArrayList<Integer>());
+			writtenSegsOf.add(new ArrayList<Integer>());
+		}
+		for(int a = 0; a < numAtomic; ++a) {
+			for(int i : instance.getAccessedLValues().get(a)) {
+				segsOf.get(i).add(a);
+			}
+			for(int i : instance.getWrittenLValues().get(a)) {
+				writtenSegsOf.get(i).add(a);
+			}
+		}
+		this.localOptions = new int[numGroups][];
+		this.groupSegs = new int[numGroups][];
+		this.groupSegCounts = new int[numGroups][];
+		this.groupSegWriteCounts = new int[numGroups][];
+		int countInSeg[] = new int[numAtomic],
+			writeCountInSeg[] = new int[numAtomic];
+		for(int g = 0; g < numGroups; ++g) {
+			BitSet local = new BitSet(n);
+			local.set(0, n);
+			List<Integer> segs = new ArrayList<>();
+			for(int i : groups.get(g)) {
+				for(int j = 0; j < n; ++j) {
+					if(!candidates.isLocalCandidate(i, j)) local.clear(j);
+				}
+				for(int a : segsOf.get(i)) {
+					if(countInSeg[a]++ == 0) segs.add(a);
+				}
+				for(int a : writtenSegsOf.get(i)) {
+					writeCountInSeg[a]++;
+				}
+			}
+			localOptions[g] = new int[local.cardinality()];
+			int index = 0;
+			for(int j = local.nextSetBit(0); j >= 0; j = local.nextSetBit(j+1)) {
+				localOptions[g][index++] = j;
+			}
+			groupSegs[g] = toArray(segs);
+			groupSegCounts[g] = new int[segs.size()];
+			groupSegWriteCounts[g] = new int[segs.size()];
+			for(int s = 0; s < segs.size(); ++s) {
+				groupSegCounts[g][s] = countInSeg[segs.get(s)];
+				groupSegWriteCounts[g][s] = writeCountInSeg[segs.get(s)];
+				countInSeg[segs.get(s)] = 0;
+				writeCountInSeg[segs.get(s)] = 0;
+			}
+		}
+		///////////////////////////////////////////////////////////////////////
+
+		/// Initialize an empty assignment ////////////////////////////////////
+		this.groupLock = new int[numGroups];
+		this.lockUsers = new int[2 * n];
+		this.lockSegs = new ArrayList<>(2 * n);
+		for(int code = 0; code < 2 * n; ++code) {
+			lockSegs.add(new HashMap<Integer, int[]>());
+		}
+		///////////////////////////////////////////////////////////////////////
+
+		/// Greedy: assign groups with the most segments first ////////////////
+		List<Integer> order = new ArrayList<>();
+		for(int g = 0; g < numGroups; ++g) {
+			groupLock[g] = -1;
+			order.add(g);
+		}
+		Collections.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer g1, Integer g2) {
+				return groupSegs[g2].length - groupSegs[g1].length;
+			}
+		});
+		for(int g : order) {
+			assign(g, bestOption(g));
+		}
+		long greedyCost = curCost;
+		///////////////////////////////////////////////////////////////////////
+
+		/// Local search until out of time ////////////////////////////////////
+		Random rand = new Random(0);
+		int bestGroupLock[] = groupLock.clone();
+		long bestCost = curCost;
+		int numPasses = 0;
+		search:
+		while(numGroups > 0 && System.nanoTime() < deadline) {
+			++numPasses;
+			boolean improved = false;
+			Collections.shuffle(order, rand);
+			for(int g : order) {
+				if(System.nanoTime() >= deadline) break search;
+				int prevLock = groupLock[g];
+				long prevCost = curCost;
+				unassign(g);
+				int option = bestOption(g);
+				assign(g, option);
+				if(curCost < prevCost) {
+					improved = true;
+				}
+				else if(option != prevLock) {
+					unassign(g);
+					assign(g, prevLock);
+				}
+			}
+			if(curCost < bestCost) {
+				bestCost = curCost;
+				bestGroupLock = groupLock.clone();
+			}
+			// Stuck in a local minimum: move some groups at random
+			if(!improved) {
+				for(int p = 0; p < PERTURBATION_SIZE; ++p) {
+					int g = rand.nextInt(numGroups);
+					unassign(g);
+					assign(g, randomOption(g, rand));
+				}
+			}
+		}
+		if(curCost < bestCost) {
+			bestCost = curCost;
+			bestGroupLock = groupLock.clone();
+		}
+		///////////////////////////////////////////////////////////////////////
+
+		this.cost = bestCost;
+		log.debug("Heuristic lock placement: greedy cost " + greedyCost +
+				  ", best cost " + bestCost + " after " + numPasses + " passes");
+		int lockOf[] = new int[n];
+		for(int g = 0; g < numGroups; ++g) {
+			for(int i : groups.get(g)) {
+				lockOf[i] = bestGroupLock[g];
+			}
+		}
+		for(int i = 0; i < n; ++i) {
+			lockAssignment.add(lockOf[i] / 2);
+			assignedToGlobal.add(lockOf[i] % 2 == 1);
+		}
+	}
+
+	/**
+	 * @return the cheapest lock for (currently unassigned) group g,
+	 *         given the locks of the other groups
+	 */
+	private int bestOption(int g) {
+		int best = -1;
+		long bestCost = Long.MAX_VALUE;
+		for(int code : options(g)) {
+			assign(g, code);
+			if(curCost < bestCost) {
+				bestCost = curCost;
+				best = code;
+			}
+			unassign(g);
+		}
+		return best;
+	}
+
+	/**
+	 * @return a random lock for group g
+	 */
+	private int randomOption(int g, Random rand) {
+		List<Integer> options = options(g);
+		return options.get(rand.nextInt(options.size()));
+	}
+
+	/**
+	 * The locks group g may use: its local options (none if
+	 * the group is MAY_ALIAS'ed), any global lock
+	 * already in use, and one unused global lock (all unused
+	 * global locks are interchangeable)
+	 *
+	 * @return the lock codes group g may use
+	 */
+	private List<Integer> options(int g) {
+		List<Integer> options = new ArrayList<>();
+		for(int j : localOptions[g]) {
+			options.add(2 * j);
+		}
+		boolean addedUnused = false;
+		for(int j : globalLabels) {
+			int code = 2 * j + 1;
+			if(lockUsers[code] > 0) {
+				options.add(code);
+			}
+			else if(!addedUnused) {
+				options.add(code);
+				addedUnused = true;
+			}
+		}
+		return options;
+	}
+
+	/**
+	 * Assign (currently unassigned) group g to lock code, updating
+	 * the cost
+	 */
+	private void assign(int g, int code) {
+		groupLock[g] = code;
+		int lockCost = code % 2 == 1 ? globalCost : localCost;
+		Map<Long, Integer> shared = code % 2 == 1 ? sharedGlobal : sharedLocal;
+		if(lockUsers[code] == 0) curCost += lockCost;
+		lockUsers[code] += groups.get(g).size();
+		for(int s = 0; s < groupSegs[g].length; ++s) {
+			updateSegment(groupSegs[g][s], code,
+						  groupSegCounts[g][s], groupSegWriteCounts[g][s], shared);
+		}
+	}
+
+	/**
+	 * Remove group g from its lock, updating the cost
+	 */
+	private void unassign(int g) {
+		int code = groupLock[g];
+		groupLock[g] = -1;
+		int lockCost = code % 2 == 1 ? globalCost : localCost;
+		Map<Long, Integer> shared = code % 2 == 1 ? sharedGlobal : sharedLocal;
+		lockUsers[code] -= groups.get(g).size();
+		if(lockUsers[code] == 0) curCost -= lockCost;
+		for(int s = 0; s < groupSegs[g].length; ++s) {
+			updateSegment(groupSegs[g][s], code,
+						  -groupSegCounts[g][s], -groupSegWriteCounts[g][s], shared);
+		}
+	}
+
+	/**
+	 * Add count users (writeCount of them writing) of lock code
+	 * to segment a, updating which segments conflict and the cost.
+	 * Two segments conflict on a lock if both use it and at least
+	 * one of them writes through it.
+	 */
+	private void updateSegment(int a, int code, int count, int writeCount, Map<Long, Integer> shared) {
+		Map<Integer, int[]> users = lockSegs.get(code);
+		int counts[] = users.get(a);
+		if(counts == null) {
+			counts = new int[2];
+			users.put(a, counts);
+		}
+		boolean used = counts[0] > 0,
+				written = counts[1] > 0;
+		counts[0] += count;
+		counts[1] += writeCount;
+		boolean nowUsed = counts[0] > 0,
+				nowWritten = counts[1] > 0;
+		if(used != nowUsed || written != nowWritten) {
+			for(Map.Entry<Integer, int[]> user : users.entrySet()) {
+				int b = user.getKey();
+				if(b == a) continue;
+				boolean bWrites = user.getValue()[1] > 0;
+				boolean conflicted = used && (written || bWrites),
+						conflicts = nowUsed && (nowWritten || bWrites);
+				if(conflicts && !conflicted) {
+					share(shared, a, b, 1);
+				}
+				else if(conflicted && !conflicts) {
+					share(shared, a, b, -1);
+				}
+			}
+		}
+		if(!nowUsed) {
+			users.remove(a);
+		}
+	}
+
+	/**
+	 * Add delta to the number of locks in shared which segments a and b
+	 * share, updating the cost when they start or stop sharing one
+	 */
+	private void share(Map<Long, Integer> shared, int a, int b, int delta) {
+		long key = a < b ? pairKey(a, b) : pairKey(b, a);
+		Integer prev = shared.get(key);
+		int now = (prev == null ? 0 : prev) + delta;
+		if(prev == null) {
+			curCost += (long) segWeights[a] * segWeights[b];
+		}
+		if(now == 0) {
+			shared.remove(key);
+			curCost -= (long) segWeights[a] * segWeights[b];
+		}
+		else {
+			shared.put(key, now);
+		}
+	}
+
+	private long pairKey(int a, int b) {
+		return (long) a * numAtomic + b;
+	}
+
+	private static int[] toArray(List<Integer> list) {
+		int arr[] = new int[list.size()];
+		for(int i = 0; i < arr.length; ++i) {
+			arr[i] = list.get(i);
+		}
+		return arr;
+	}
+
+	/**
+	 * @return the cost of the lock placement
+	 */
+	public long getCost() {
+		return cost;
+	}
+
+	/**
+	 * @return the lockAssignment: i assigned to lockAssignment.get(i)
+	 */
+	@Override
+	public List<Integer> getLockAssignment() {
+		return lockAssignment;
+	}
+
+	/**
+	 * @return i given a global lock iff assignedToGlobal.get(i)
+	 */
+	@Override
+	public List<Boolean> getAssignedToGlobal() {
+		return assignedToGlobal;
+	}
+}
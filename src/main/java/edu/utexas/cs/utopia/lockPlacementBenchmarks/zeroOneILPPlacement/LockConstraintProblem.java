@@ -6,20 +6,8 @@ import java.util.List;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.microsoft.z3.ArithExpr;
-import com.microsoft.z3.BoolExpr;
-import com.microsoft.z3.Context;
-import com.microsoft.z3.Expr;
-import com.microsoft.z3.IntExpr;
-import com.microsoft.z3.Model;
-import com.microsoft.z3.Solver;
-import com.microsoft.z3.Status;
+import edu.utexas.cs.utopia.lockPlacementBenchmarks.zeroOneILPPlacement.analysis.AliasRelation;
 
-import edu.utexas.cs.utopia.lockPlacementBenchmarks.zeroOneILPPlacement.analysis.LValueBox;
-import edu.utexas.cs.utopia.lockPlacementBenchmarks.zeroOneILPPlacement.analysis.MonitorAnalysis;
-import edu.utexas.cs.utopia.lockPlacementBenchmarks.zeroOneILPPlacement.analysis.PointerAnalysis;
-import soot.PrimType;
-import soot.jimple.ArrayRef;
 
 /**
  * Given
@@ -45,377 +33,323 @@ import soot.jimple.ArrayRef;
  * a lock associated to an ArrayRef because... it's complicated
  * and I don't totally know how to deal with it :(
  * 
+ * Both of these, along with the scope and ordering constraints,
+ * only rule out individual (lvalue, lock) pairs. Rather than
+ * asserting them, we never create variables for the ruled out
+ * pairs (see {@link CandidateLocks}).
+ * 
+ * The problem is encoded as a solver-neutral
+ * {@link PseudoBooleanProblem} (see {@link LockPlacementEncoding}),
+ * and minimized by a {@link SolverBackend}: Z3 (according to a
+ * {@link SolveStrategy}), or a solver binary reading OPB, WCNF
+ * or LP files.
+ * 
+ * The MAY_ALIAS constraints may be added lazily: we solve without
+ * them, add those the assignment violates, and re-solve until no
+ * constraint is violated. Every solve minimizes over a relaxation of
+ * the full problem, so its lower bound holds for the full problem too.
+ * If a solve is not proven optimal, or time runs out, while some
+ * constraint is still violated, each alias-connected group of LValues
+ * with a violated constraint is moved onto one global lock instead,
+ * and the repaired assignment is used as a non-optimal one.
+ * 
+ * Given a timeout, the backend returns the cheapest assignment
+ * found in time, along with the best proven lower bound
+ * on the cost. If no assignment was found at all, a
+ * {@link SolveTimeoutException} is thrown.
+ * 
+ * A previous lock assignment (e.g. from before the monitor was edited)
+ * may be given as a warm start. LValues it does not cover are
+ * completed greedily, and if the result is feasible it is hinted to
+ * the backend as an upper bound, and used whenever the backend finds
+ * nothing cheaper in time.
+ * 
  * @author Ben_Sepanski
  *
  */
-public class LockConstraintProblem {
+public class LockConstraintProblem implements LockPlacement {
 	private static Logger log = LoggerFactory.getLogger(LockConstraintProblem.class);
 	
 	// i is assigned to lock of lockAssignment.get(i)
 	private final List<Integer> lockAssignment = new ArrayList<>();
 	// i is assigned to a global lock iff assignedToGlobal.get(i)
 	private final List<Boolean> assignedToGlobal = new ArrayList<>();
+	// cost of the assignment, and the best proven lower bound on the
+	// cost of any assignment
+	private final long cost, lowerBound;
 	
-	public LockConstraintProblem(Context ctx,
-			  					 MonitorAnalysis mtrAnalysis,
+	/**
+	 * Solve the lock placement problem
+	 * 
+	 * @param instance the lock placement problem
+	 * @param localCost the cost of a local lock
+	 * @param globalCost the cost of a global lock
+	 * @param backend the solver to minimize the cost with
+	 * @param timeoutMillis how long to solve for in milliseconds,
+	 *                      or 0 for no timeout
+	 * @throws SolveTimeoutException if no assignment is found in time
+	 */
+	public LockConstraintProblem(LockPlacementInstance instance,
 								 int localCost,
 								 int globalCost,
-								 boolean logZ3) {
-		log.debug("Building lock vars and alternate lock vars");
-		int n = mtrAnalysis.getLValues().size();
-		// Build variables to hold our lock assignments and an
-		// alternative
-		BoolExpr localLockVars[][] = new BoolExpr[n][n],
-		         globalLockVars[][] = new BoolExpr[n][n],
-				 altLocalLockVars[][] = new BoolExpr[n][n],
-				 altGlobalLockVars[][] = new BoolExpr[n][n];
-
-		for(int i = 0; i < n; ++i) {
-			for(int j = 0; j < n; ++j) {
-				localLockVars[i][j] = ctx.mkBoolConst(getLocalName(i, j, false));
-				globalLockVars[i][j] = ctx.mkBoolConst(getGlobalName(i, j, false));
-				altLocalLockVars[i][j] = ctx.mkBoolConst(getLocalName(i, j, true));
-				altGlobalLockVars[i][j] = ctx.mkBoolConst(getGlobalName(i, j, true));
+								 SolverBackend backend,
+								 long timeoutMillis) {
+		this(instance, localCost, globalCost, backend, timeoutMillis, false, null, 0);
+	}
+	
+	/**
+	 * Solve the lock placement problem
+	 * 
+	 * @param instance the lock placement problem
+	 * @param localCost the cost of a local lock
+	 * @param globalCost the cost of a global lock
+	 * @param backend the solver to minimize the cost with
+	 * @param timeoutMillis how long to solve for in milliseconds,
+	 *                      or 0 for no timeout
+	 * @param lazyAlias true iff MAY_ALIAS constraints should only be
+	 *                  added once an assignment violates them
+	 * @param warmStart a previous lock assignment, whose entries
+	 *                  may be null for LValues it does not cover,
+	 *                  or null if there is none
+	 * @param maxGlobalLocks a bound on the number of global locks (see
+	 *                       {@link CandidateLocks#CandidateLocks(LockPlacementInstance, int)})
+	 * @throws SolveTimeoutException if no assignment is found in time
+	 */
+	public LockConstraintProblem(LockPlacementInstance instance,
+								 int localCost,
+								 int globalCost,
+								 SolverBackend backend,
+								 long timeoutMillis,
+								 boolean lazyAlias,
+								 LockPlacement warmStart,
+								 int maxGlobalLocks) {
+		log.debug("Computing candidate locks");
+		int n = instance.getNumLValues();
+		CandidateLocks candidates = new CandidateLocks(instance, maxGlobalLocks);
+		log.debug(candidates.numCandidates() + " of " + (2 * n * n) +
+				  " (lvalue, lock) pairs are feasible, " +
+				  candidates.numVariables() + " need a variable");
+		if(log.isDebugEnabled()) {
+			int numReps = 0;
+			for(int i = 0; i < n; ++i) {
+				if(candidates.getRepresentative(i) == i) ++numReps;
 			}
+			log.debug("Compressed " + n + " LValues into " + numReps + " must-alias classes and " +
+					  instance.getNumAtomicSegments() + " atomic segments into " +
+					  instance.getSegmentClasses().size() + " segment classes");
 		}
-
-		// Build constraints and cost
-		log.debug("Building constraints in z3");
-		BoolExpr constraints = buildConstraints(ctx,
-												mtrAnalysis,
-												localLockVars,
-												globalLockVars,
-												logZ3),
-				altConstraints = buildConstraints(ctx,
-												  mtrAnalysis,
-												  altLocalLockVars,
-												  altGlobalLockVars,
-												  false);
-		ArithExpr cost = buildCost(ctx,
-								   mtrAnalysis,
-								   localCost,
-								   globalCost,
-								   localLockVars,
-								   globalLockVars),
-			altCost = buildCost(ctx,
-							    mtrAnalysis,
-							    localCost,
-							    globalCost,
-							    altLocalLockVars,
-							    altGlobalLockVars);
 		
-		// Our solution must minimize the lock cost (conflict + numLocks),
-		// i.e. any other setting satisfying the constraints
-		// must cost at least as much
-		BoolExpr allAlts[] = new BoolExpr[2 * n * n];
-		int index = 0;
-		for(int i = 0; i < n; ++i) {
-			for(int j = 0; j < n; ++j) {
-				allAlts[index++] = altLocalLockVars[i][j];
-				allAlts[index++] = altGlobalLockVars[i][j];
+		log.debug("Encoding lock placement problem");
+		LockPlacementEncoding encoding = new LockPlacementEncoding(instance,
+																   candidates,
+																   localCost,
+																   globalCost,
+																   lazyAlias);
+		PseudoBooleanProblem problem = encoding.getProblem();
+		boolean hint[] = null;
+		if(warmStart != null) {
+			hint = completeWarmStart(instance, candidates, warmStart, encoding);
+			if(hint != null) {
+				problem.setHint(hint);
+				log.debug("Warm starting from a lock assignment of cost " +
+						  problem.objectiveValue(hint));
+			}
+			else {
+				log.debug("Ignoring infeasible warm start");
 			}
 		}
-		Solver solver = ctx.mkSolver();
-		solver.add(
-			constraints,
-			ctx.mkForall(allAlts,
-						 ctx.mkImplies(altConstraints,
-								 	   ctx.mkLe(cost, altCost)
-								 	   ),
-						 1, null, null,
-						 ctx.mkSymbol("MinimizingQuant"),
-						 ctx.mkSymbol("minimizingSkolem")
-						 )
-		);
-		
-		// solve constraints
-		log.debug("Checking satisfiability");
-		if(log.isDebugEnabled() && logZ3) {
-			log.debug("Solver: \n" + solver.toString());
+		log.debug("Solving with " + backend.getName() + ": " + problem.getNumVars() +
+				  " variables, " + problem.getClauses().size() + " clauses, " +
+				  problem.getExactlyOne().size() + " exactly-one constraints, " +
+				  problem.getNumObjectiveTerms() + " objective terms");
+		long deadline = System.nanoTime() + timeoutMillis * 1000000L;
+		PseudoBooleanSolution solution = null;
+		try {
+			solution = backend.solve(problem, timeoutMillis);
+			int numAdded;
+			while(lazyAlias && (numAdded = encoding.addViolatedAliasConstraints(solution)) > 0) {
+				long remaining = (deadline - System.nanoTime()) / 1000000L;
+				if(!solution.isOptimal() || (timeoutMillis > 0 && remaining <= 0)) {
+					log.debug("Out of time before satisfying the alias constraints, " +
+							  "repairing the assignment");
+					solution = repairAliasing(instance, candidates, encoding, solution);
+					break;
+				}
+				log.debug("Added " + numAdded + " violated alias constraints, re-solving with " +
+						  problem.getClauses().size() + " clauses");
+				solution = backend.solve(problem, timeoutMillis > 0 ? remaining : 0);
+			}
+		}
+		catch(SolveTimeoutException e) {
+			if(hint == null) {
+				throw e;
+			}
+			log.debug(e.getMessage() + ", using the warm start");
+			solution = null;
 		}
-		if(solver.check() == Status.UNKNOWN) {
-			throw new RuntimeException("0-1 ILP solve failed");
+		// Fall back on the warm start if the backend found nothing cheaper
+		if(hint != null && (solution == null || solution.getCost() > problem.objectiveValue(hint))) {
+			long hintLowerBound = solution == null ? problem.getObjectiveOffset()
+												   : solution.getLowerBound();
+			solution = new PseudoBooleanSolution(hint,
+												 problem.objectiveValue(hint),
+												 hintLowerBound,
+												 "warm start");
 		}
-		else if(solver.check() == Status.UNSATISFIABLE) {
-			throw new RuntimeException("Infeasible 0-1 ILP problem");
+		
+		this.cost = solution.getCost();
+		this.lowerBound = solution.getLowerBound();
+		if(!solution.isOptimal()) {
+			log.info("Out of time: using a lock assignment of cost " + cost +
+					 ", the optimum costs at least " + lowerBound);
 		}
 		
 		/// translate into lock placement /////////////////////////////////////
 		log.debug("Translating solution into lock assignment");
-		Model solution = solver.getModel();
-		if(log.isDebugEnabled() && logZ3) {
-			log.debug("Model : \n" + solution.toString());
-		}
-		for(int i = 0; i < n; ++i) {
-			boolean assignedLock = false;
-			for(int j = 0; j < n; ++j) {
-				Expr localIJ = solution.getConstInterp(localLockVars[i][j]);
-				Expr globalIJ = solution.getConstInterp(globalLockVars[i][j]);
-				if(localIJ.getBoolValue().toInt() > 0) {
-					if(assignedLock == true) {
-						throw new RuntimeException("LValue " + i + " assigned to multiple locks");
-					}
-					assignedLock = true;
-					this.lockAssignment.add(j);
-					this.assignedToGlobal.add(false);
-				}
-				else if(globalIJ.getBoolValue().toInt() > 0) {
-					if(assignedLock == true) {
-						throw new RuntimeException("LValue " + i + " assigned to multiple locks");
-					}
-					assignedLock = true;
-					this.lockAssignment.add(j);
-					this.assignedToGlobal.add(true);
-				}
-			}
-			if(!assignedLock) {
-				throw new RuntimeException("LValue " + i + " not assigned to any lock");
-			}
-		}
+		encoding.decode(solution, lockAssignment, assignedToGlobal);
 		///////////////////////////////////////////////////////////////////////
 	}
 	
 	/**
+	 * Make solution satisfy the MAY_ALIAS constraints by moving each
+	 * alias-connected group of LValues containing a pair on different
+	 * locks onto the global lock of one of its members (every LValue
+	 * may use every global lock).
 	 * 
-	 * @param ctx
-	 * @param mtrAnalysis
-	 * @param local
-	 * @param global
-	 * @param logZ3
-	 * @return
+	 * @return the repaired solution, with the lower bound of solution
+	 * @throws SolveTimeoutException if the repaired assignment is infeasible
 	 */
-	private BoolExpr buildConstraints(Context ctx,
-									  MonitorAnalysis mtrAnalysis,
-									  BoolExpr local[][],
-									  BoolExpr global[][],
-									  boolean logZ3) {		
-		int n = mtrAnalysis.getLValues().size();
-		// make a constraint that says each lVal must have a lock
-		BoolExpr atLeastOneLockSet = ctx.mkTrue();
-		for(int i = 0; i < n; ++i) {
-			BoolExpr atLeastOneLockFori = ctx.mkFalse();
-			for(int j = 0; j < n; ++j) {
-				atLeastOneLockFori = ctx.mkOr(atLeastOneLockFori,
-											  local[i][j],
-											  global[i][j]);
-			}
-			atLeastOneLockSet = ctx.mkAnd(atLeastOneLockSet, atLeastOneLockFori);
-		}
-		BoolExpr constraints = atLeastOneLockSet;
-		if(log.isDebugEnabled() && logZ3) {
-			Solver debugSolv = ctx.mkSolver();
-			debugSolv.add(atLeastOneLockSet);
-			log.debug("At least one lock set: \n" + debugSolv.toString().replace("\n", "    \n"));
-		}
+	private static PseudoBooleanSolution repairAliasing(LockPlacementInstance instance,
+														CandidateLocks candidates,
+														LockPlacementEncoding encoding,
+														PseudoBooleanSolution solution) {
+		int n = instance.getNumLValues();
+		List<Integer> lock = new ArrayList<>();
+		List<Boolean> global = new ArrayList<>();
+		encoding.decode(solution, lock, global);
 		
-		// Primitive LValues do not have local locks, so code that into
-		// the constraints. 
-		// At the same time, make constraints that say no lval may be assigned 
-		// to an array reference as its lock
-		BoolExpr primitiveAndArrayHandler = ctx.mkTrue();
-		for(int j = 0; j < n; ++j) {
-			LValueBox lvb = mtrAnalysis.getLValues().get(j);
-			if(lvb.getValue() instanceof ArrayRef) {
-				for(int i = 0; i < n; ++i) {
-					primitiveAndArrayHandler = ctx.mkAnd(primitiveAndArrayHandler,
-														 ctx.mkNot(local[i][j]),
-														 ctx.mkNot(global[i][j]));
-				}
-			}
-			else if(lvb.getValue().getType() instanceof PrimType) {
-				for(int i = 0; i < n; ++i) {
-					primitiveAndArrayHandler = ctx.mkAnd(primitiveAndArrayHandler,
-										    			 ctx.mkNot(local[i][j]));
-				}
-			}
-		}
-		constraints = ctx.mkAnd(constraints, primitiveAndArrayHandler);
-		if(log.isDebugEnabled() && logZ3) {
-			Solver debugSolv = ctx.mkSolver();
-			debugSolv.add(primitiveAndArrayHandler);
-			log.debug("Primitives and array handling: \n" + debugSolv.toString().replace("\n", "    \n"));
-		}
-		
-		// Add constraints that say if two lValues are may-aliased
-		// they cannot be assigned local locks and must have the same
-		// global lock,
-		// and if two lValues are
-		// MUST-aliased, they must have identical locks
-		BoolExpr aliasConstraints = ctx.mkTrue();
-		PointerAnalysis ptrAnalysis = mtrAnalysis.getPtrAnalysis();
+		UnionFind aliased = new UnionFind(n);
 		for(int i1 = 0; i1 < n; ++i1) {
-			LValueBox lvb1 = mtrAnalysis.getLValues().get(i1);
 			for(int i2 = i1+1; i2 < n; ++i2) {
-				LValueBox lvb2 = mtrAnalysis.getLValues().get(i2);
-				switch(ptrAnalysis.getAliasRelation(lvb1, lvb2)) {
-				case MAY_ALIAS:
-					for(int j = 0; j < n; ++j) {
-						BoolExpr notLoc = ctx.mkNot(local[i1][j]);
-						notLoc = ctx.mkAnd(ctx.mkNot(local[i2][j]));
-						BoolExpr sameGlob = ctx.mkIff(global[i1][j], global[i2][j]);
-						aliasConstraints = ctx.mkAnd(aliasConstraints, notLoc, sameGlob);
-					}
-					break;
-				case MUST_ALIAS:
-					for(int j = 0; j < n; ++j) {
-						BoolExpr sameLoc = ctx.mkIff(local[i1][j], local[i2][j]);
-						BoolExpr sameGlob = ctx.mkIff(global[i1][j], global[i2][j]);
-						aliasConstraints = ctx.mkAnd(aliasConstraints, sameLoc, sameGlob);
-					}
-					break;
-				default:
+				if(instance.getAliasRelation(i1, i2) != AliasRelation.NOT_ALIAS) {
+					aliased.union(i1, i2);
 				}
 			}
 		}
-		constraints = ctx.mkAnd(constraints, aliasConstraints);
-		if(log.isDebugEnabled() && logZ3) {
-			Solver debugSolv = ctx.mkSolver();
-			debugSolv.add(aliasConstraints);
-			log.debug("Alias constraints: \n" + debugSolv.toString().replace("\n", "    \n"));
-		}
-		
-		// Make sure local locks are in scope:
-		BoolExpr scopeConstraints = ctx.mkTrue();
-		List<List<Integer>> accessedIn = mtrAnalysis.getAccessedLValues();
-		List<List<Integer>> outOfScope = mtrAnalysis.getOutOfScope();
-		int numAtomic = mtrAnalysis.getAtomicSegments().size();
-		for(int atomicSegIndex = 0; atomicSegIndex < numAtomic; ++atomicSegIndex) {
-			for(int i : accessedIn.get(atomicSegIndex)) {
-				for(int j : outOfScope.get(atomicSegIndex)) {
-					scopeConstraints = ctx.mkAnd(scopeConstraints,
-												 ctx.mkNot(local[i][j]));
+		int numMoved = 0;
+		for(List<Integer> group : aliased.getClasses()) {
+			boolean violated = false;
+			int sharedLock = -1;
+			for(int i : group) {
+				violated |= !lock.get(i).equals(lock.get(group.get(0)))
+							|| !global.get(i).equals(global.get(group.get(0)));
+				if(sharedLock < 0 && global.get(i)) {
+					sharedLock = lock.get(i);
 				}
 			}
-		}
-		constraints = ctx.mkAnd(constraints, scopeConstraints);
-		if(log.isDebugEnabled() && logZ3) {
-			Solver debugSolv = ctx.mkSolver();
-			debugSolv.add(scopeConstraints);
-			log.debug("Scope constraints: \n" + debugSolv.toString().replace("\n", "    \n"));
-		}
-		
-		// Add ordering constraints
-		BoolExpr orderingConstraints = ctx.mkTrue();
-		for(int i = 0; i < n; ++i) {
-			for(int j : mtrAnalysis.getTopoAccBefore().get(i)) {
-				orderingConstraints = ctx.mkAnd(orderingConstraints,
-											    ctx.mkNot(local[i][j]));
+			if(!violated) continue;
+			for(int i : group) {
+				if(sharedLock < 0 || !candidates.isGlobalCandidate(i, sharedLock)) {
+					throw new SolveTimeoutException("Out of time before satisfying the alias constraints");
+				}
+				lock.set(i, sharedLock);
+				global.set(i, true);
 			}
+			numMoved += group.size();
 		}
-		constraints = ctx.mkAnd(constraints, orderingConstraints);
-		if(log.isDebugEnabled() && logZ3) {
-			Solver debugSolv = ctx.mkSolver();
-			debugSolv.add(orderingConstraints);
-			log.debug("Ordering constraints: \n" + debugSolv.toString().replace("\n", "    \n"));
+		boolean values[] = instance.isFeasible(lock, global) ? encoding.encode(lock, global) : null;
+		if(values == null) {
+			throw new SolveTimeoutException("Out of time before satisfying the alias constraints");
 		}
-		
-		return constraints;
+		log.debug("Moved " + numMoved + " aliased LValues onto shared global locks");
+		PseudoBooleanProblem problem = encoding.getProblem();
+		return new PseudoBooleanSolution(values,
+										 problem.objectiveValue(values),
+										 solution.getLowerBound(),
+										 solution.getSolverName());
 	}
 	
 	/**
+	 * Fill in the LValues warmStart does not cover: copy the lock of
+	 * the MUST_ALIAS representative or of a MAY_ALIAS'ed LValue if it
+	 * has one, else use the first candidate lock.
 	 * 
-	 * @param ctx
-	 * @param mtrAnalysis
-	 * @param localCost
-	 * @param globalCost
-	 * @param local
-	 * @param global
-	 * @return
+	 * @return the completed warm start as an assignment of the
+	 *         encoded problem, or null if it is infeasible
 	 */
-	// TODO : coument localcost/globalcost
-	private ArithExpr buildCost(Context ctx,
-							    MonitorAnalysis mtrAnalysis,
-							    int localCost,
-							    int globalCost,
-							    BoolExpr local[][],
-							    BoolExpr global[][]) {
-		int n = mtrAnalysis.getLValues().size();
-		IntExpr localCostExp = ctx.mkInt(localCost);
-		IntExpr globalCostExp = ctx.mkInt(globalCost);
-
-		// numLocks
-		ArithExpr numLocks = ctx.mkInt(0);
-		for(int j = 0; j < n; ++j) {
-			BoolExpr someiAssignedToLocj = ctx.mkFalse(),
-				someiAssignedToGlobj = ctx.mkFalse();
-			for(int i = 0; i < n; ++i) {
-				someiAssignedToLocj = ctx.mkOr(someiAssignedToLocj, local[i][j]);
-				someiAssignedToGlobj = ctx.mkOr(someiAssignedToGlobj, global[i][j]);
-			}
-			numLocks = ctx.mkAdd(numLocks, 
-							     ctx.mkMul(localCostExp, boolToInt(ctx, someiAssignedToLocj)),
-								 ctx.mkMul(globalCostExp, boolToInt(ctx, someiAssignedToGlobj)));
+	private static boolean[] completeWarmStart(LockPlacementInstance instance,
+											   CandidateLocks candidates,
+											   LockPlacement warmStart,
+											   LockPlacementEncoding encoding) {
+		int n = instance.getNumLValues();
+		List<Integer> lock = new ArrayList<>(warmStart.getLockAssignment());
+		List<Boolean> global = new ArrayList<>(warmStart.getAssignedToGlobal());
+		if(lock.size() != n || global.size() != n) {
+			return null;
 		}
-		
-		// conflict(lock assignment) (cost(i,j) * do they share a lock for all i<=j)
-		ArithExpr conflict = ctx.mkInt(0);
-		int numAtomic = mtrAnalysis.getAtomicSegments().size();
-		for(int a1 = 0; a1 < numAtomic; ++a1) {
-			List<Integer> accessedIn1 = mtrAnalysis.getAccessedLValues().get(a1);
-			for(int a2 = a1+1; a2 < numAtomic; ++a2) {
-				List<Integer> accessedIn2 = mtrAnalysis.getAccessedLValues().get(a2);
-				
-				// Do seg1 and seg2 share any locks?
-				BoolExpr shareLocLock = ctx.mkFalse(),
-						 shareGlobLock = ctx.mkFalse();
-				for(int k = 0; k < n; ++k) {
-					// Is an lval accessed in atomic seg1 assigned to lock k?
-					BoolExpr kLocLock1 = ctx.mkFalse(), kGlobLock1 = ctx.mkFalse();
-					for(Integer i1 : accessedIn1) {
-						kLocLock1 = ctx.mkOr(kLocLock1, local[i1][k]);
-						kGlobLock1 = ctx.mkOr(kGlobLock1, global[i1][k]);
-					}
-					// Is an lVal accessed in atomic seg2 assigned to lock k?
-					BoolExpr kLocLock2 = ctx.mkFalse(), kGlobLock2 = ctx.mkFalse();
-					for(Integer i2 : accessedIn2) {
-						kLocLock2 = ctx.mkOr(kLocLock2, local[i2][k]);
-						kGlobLock2 = ctx.mkOr(kGlobLock2, global[i2][k]);
-					}
-					// Do atomic segs1 and 2 both use lock k?
-					BoolExpr kLocLockBoth = ctx.mkAnd(kLocLock1, kLocLock2),
-							 kGlobLockBoth = ctx.mkAnd(kGlobLock1, kGlobLock2);
-					
-					shareLocLock = ctx.mkOr(shareLocLock, kLocLockBoth);
-					shareGlobLock = ctx.mkOr(shareGlobLock, kGlobLockBoth);
+		for(int i = 0; i < n; ++i) {
+			if(lock.get(i) != null && global.get(i) != null) continue;
+			int copyFrom = -1;
+			int rep = candidates.getRepresentative(i);
+			if(rep != i && lock.get(rep) != null) {
+				copyFrom = rep;
+			}
+			for(int k = 0; k < n && copyFrom < 0; ++k) {
+				if(lock.get(k) != null && Boolean.TRUE.equals(global.get(k))
+				   && instance.getAliasRelation(i, k) == AliasRelation.MAY_ALIAS) {
+					copyFrom = k;
+				}
+			}
+			if(copyFrom >= 0) {
+				lock.set(i, lock.get(copyFrom));
+				global.set(i, global.get(copyFrom));
+				continue;
+			}
+			for(int j = 0; j < n && lock.get(i) == null; ++j) {
+				if(candidates.isLocalCandidate(i, j)) {
+					lock.set(i, j);
+					global.set(i, false);
+				}
+				else if(candidates.isGlobalCandidate(i, j)) {
+					lock.set(i, j);
+					global.set(i, true);
 				}
-				// Add conflict of seg1, seg2 to cost
-				conflict = ctx.mkAdd(conflict,
-									 boolToInt(ctx, shareLocLock),
-									 boolToInt(ctx, shareGlobLock));
+			}
+			if(lock.get(i) == null) {
+				return null;
 			}
 		}
-		
-		ArithExpr cost = ctx.mkAdd(numLocks, conflict);
-		return cost;
-	}
-	
-	private IntExpr boolToInt(Context ctx, BoolExpr b) {
-		return (IntExpr) ctx.mkITE(b, ctx.mkInt(1), ctx.mkInt(0));
+		if(!instance.isFeasible(lock, global)) {
+			return null;
+		}
+		return encoding.encode(lock, global);
 	}
 	
-	private String getLocalName(int i, int j, boolean alt) {
-		String name = "local__" + i + "_" + j;
-		if(alt) {
-			name = alt(name);
-		}
-		return name;
+	/**
+	 * @return the cost of the lock assignment
+	 */
+	public long getCost() {
+		return cost;
 	}
 	
-	private String getGlobalName(int i, int j, boolean alt) {
-		String name = "global_" + i + "_" + j;
-		if(alt) {
-			name = alt(name);
-		}
-		return name;
+	/**
+	 * @return a lower bound on the cost of every lock assignment
+	 */
+	public long getLowerBound() {
+		return lowerBound;
 	}
 	
-	private String alt(String s) {
-		return s + "_alt";
+	/**
+	 * @return true iff the lock assignment is proven to be of minimal cost
+	 */
+	public boolean isOptimal() {
+		return cost <= lowerBound;
 	}
 
 	/**
 	 * @return the lockAssignment: i assigned to lockAssignment.get(i)
 	 */
+	@Override
 	public List<Integer> getLockAssignment() {
 		return lockAssignment;
 	}
@@ -423,6 +357,7 @@ public class LockConstraintProblem {
 	/**
 	 * @return i given a global lock iff assignedToGlobal.get(i)
 	 */
+	@Override
 	public List<Boolean> getAssignedToGlobal() {
 		return assignedToGlobal;
 	}
@@ -0,0 +1,23 @@
+package edu.utexas.cs.utopia.lockPlacementBenchmarks.zeroOneILPPlacement;
+
+import java.util.List;
+
+/**
+ * An assignment of each LValue to a local or global lock.
+ * 
+ * Lock j is the local or global lock associated to LValue j
+ * 
+ * @author Ben_Sepanski
+ *
+ */
+public interface LockPlacement {
+	/**
+	 * @return the lockAssignment: i assigned to lockAssignment.get(i)
+	 */
+	public List<Integer> getLockAssignment();
+	
+	/**
+	 * @return i given a global lock iff assignedToGlobal.get(i)
+	 */
+	public List<Boolean> getAssignedToGlobal();
+}
@@ -0,0 +1,278 @@
+package edu.utexas.cs.utopia.lockPlacementBenchmarks.zeroOneILPPlacement;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An on-disk cache of solved lock placement problems, keyed by
+ * {@link LockPlacementInstance#fingerprint(int, int)} and a
+ * description of how the problem was solved.
+ * 
+ * Each entry is a small text file
+ *   lockPlacement (fingerprint)
+ *   (lock of LValue 0)(L or G) ... (lock of LValue n-1)(L or G)
+ * where L marks a local lock and G a global lock.
+ * 
+ * Entries are checked against the constraints of the instance
+ * before they are used, so a stale or corrupt entry is just a
+ * cache miss. Failing to read or write the cache is never fatal.
+ * 
+ * The cache also keeps the latest lock placement of each monitor,
+ * keyed by {@link LockPlacementInstance#getLValueKey(int)} rather than
+ * LValue ID, to warm start the solve after the monitor is edited:
+ *   previousLockPlacement
+ *   (key of LValue)\t(key of its lock)\t(L or G)
+ *   ...
+ * Keys are not guaranteed to be unique (e.g. the names Soot gives
+ * locals may collide), so LValues and locks whose key is shared
+ * with another LValue are left out of the warm start.
+ * 
+ * @author Ben_Sepanski
+ *
+ */
+public class LockPlacementCache {
+	private static Logger log = LoggerFactory.getLogger(LockPlacementCache.class);
+	private static final String HEADER = "lockPlacement",
+								PREVIOUS_HEADER = "previousLockPlacement";
+	
+	private final Path cacheDir;
+	
+	/**
+	 * @param cacheDir the directory holding the cache files
+	 */
+	public LockPlacementCache(Path cacheDir) {
+		this.cacheDir = cacheDir;
+	}
+	
+	/**
+	 * Look up the lock placement of instance
+	 * 
+	 * @param instance the lock placement problem
+	 * @param fingerprint the fingerprint of instance
+	 * @param method how the problem is solved, e.g. "ilp-optimize"
+	 * @return the cached lock placement, or null if there is none
+	 *         or it is not a feasible placement of instance
+	 */
+	public LockPlacement load(LockPlacementInstance instance, String fingerprint, String method) {
+		Path file = getFile(fingerprint, method);
+		if(!Files.exists(file)) {
+			return null;
+		}
+		final List<Integer> lockAssignment = new ArrayList<>();
+		final List<Boolean> assignedToGlobal = new ArrayList<>();
+		try(BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			String header = reader.readLine(),
+				   assignment = reader.readLine();
+			if(!(HEADER + " " + fingerprint).equals(header) || assignment == null) {
+				log.warn("Ignoring malformed cache file " + file);
+				return null;
+			}
+			for(String lock : assignment.trim().split(" ")) {
+				if(lock.isEmpty()) continue;
+				char kind = lock.charAt(lock.length() - 1);
+				if(kind != 'L' && kind != 'G') {
+					log.warn("Ignoring malformed cache file " + file);
+					return null;
+				}
+				lockAssignment.add(Integer.parseInt(lock.substring(0, lock.length() - 1)));
+				assignedToGlobal.add(kind == 'G');
+			}
+		}
+		catch(IOException | NumberFormatException e) {
+			log.warn("Failed to read cache file " + file + ": " + e.getMessage());
+			return null;
+		}
+		
+		if(!instance.isFeasible(lockAssignment, assignedToGlobal)) {
+			log.warn("Ignoring infeasible cached lock placement " + file);
+			return null;
+		}
+		log.debug("Using cached lock placement " + file);
+		return new LockPlacement() {
+			@Override
+			public List<Integer> getLockAssignment() {
+				return lockAssignment;
+			}
+
+			@Override
+			public List<Boolean> getAssignedToGlobal() {
+				return assignedToGlobal;
+			}
+		};
+	}
+	
+	/**
+	 * Store the lock placement of a problem
+	 * 
+	 * @param fingerprint the fingerprint of the problem
+	 * @param method how the problem was solved
+	 * @param placement the lock placement
+	 */
+	public void store(String fingerprint, String method, LockPlacement placement) {
+		Path file = getFile(fingerprint, method);
+		StringBuilder assignment = new StringBuilder();
+		for(int i = 0; i < placement.getLockAssignment().size(); ++i) {
+			if(i > 0) {
+				assignment.append(' ');
+			}
+			assignment.append(placement.getLockAssignment().get(i))
+					  .append(placement.getAssignedToGlobal().get(i) ? 'G' : 'L');
+		}
+		writeAtomically(file, Arrays.asList(HEADER + " " + fingerprint, assignment.toString()));
+	}
+	
+	/**
+	 * Look up the latest lock placement of a monitor, matching its
+	 * LValues to those of instance by key
+	 * 
+	 * @param className the monitor
+	 * @param instance the lock placement problem of the monitor
+	 * @return the previous lock placement, with null entries for
+	 *         LValues (or locks) which are new in instance, or
+	 *         null if there is none
+	 */
+	public LockPlacement loadPrevious(String className, LockPlacementInstance instance) {
+		Path file = cacheDir.resolve(className + ".previous");
+		if(!Files.exists(file)) {
+			return null;
+		}
+		Set<String> duplicateKeys = getDuplicateKeys(instance);
+		Map<String, Integer> idOfKey = new HashMap<>();
+		for(int i = 0; i < instance.getNumLValues(); ++i) {
+			if(!duplicateKeys.contains(instance.getLValueKey(i))) {
+				idOfKey.put(instance.getLValueKey(i), i);
+			}
+		}
+		final List<Integer> lockAssignment = new ArrayList<>();
+		final List<Boolean> assignedToGlobal = new ArrayList<>();
+		for(int i = 0; i < instance.getNumLValues(); ++i) {
+			lockAssignment.add(null);
+			assignedToGlobal.add(null);
+		}
+		int numMatched = 0;
+		Set<String> seenKeys = new HashSet<>();
+		try(BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			if(!PREVIOUS_HEADER.equals(reader.readLine())) {
+				log.warn("Ignoring malformed cache file " + file);
+				return null;
+			}
+			String line;
+			while((line = reader.readLine()) != null) {
+				String fields[] = line.split("\t");
+				if(fields.length != 3) {
+					log.warn("Ignoring malformed cache file " + file);
+					return null;
+				}
+				Integer id = idOfKey.get(fields[0]),
+						lock = idOfKey.get(fields[1]);
+				if(!seenKeys.add(fields[0]) && id != null) {
+					// An ambiguous entry, e.g. from an older cache
+					idOfKey.remove(fields[0]);
+					if(lockAssignment.get(id) != null) --numMatched;
+					lockAssignment.set(id, null);
+					assignedToGlobal.set(id, null);
+					continue;
+				}
+				if(id == null || lock == null) continue;
+				lockAssignment.set(id, lock);
+				assignedToGlobal.set(id, fields[2].equals("G"));
+				++numMatched;
+			}
+		}
+		catch(IOException e) {
+			log.warn("Failed to read cache file " + file + ": " + e.getMessage());
+			return null;
+		}
+		log.debug("Matched " + numMatched + " of " + instance.getNumLValues() +
+				  " LValues to the previous lock placement " + file);
+		return new LockPlacement() {
+			@Override
+			public List<Integer> getLockAssignment() {
+				return lockAssignment;
+			}
+
+			@Override
+			public List<Boolean> getAssignedToGlobal() {
+				return assignedToGlobal;
+			}
+		};
+	}
+	
+	/**
+	 * Record placement as the latest lock placement of a monitor
+	 * 
+	 * @param className the monitor
+	 * @param instance the lock placement problem of the monitor
+	 * @param placement the lock placement
+	 */
+	public void storePrevious(String className, LockPlacementInstance instance, LockPlacement placement) {
+		Set<String> duplicateKeys = getDuplicateKeys(instance);
+		List<String> lines = new ArrayList<>();
+		lines.add(PREVIOUS_HEADER);
+		for(int i = 0; i < instance.getNumLValues(); ++i) {
+			int lock = placement.getLockAssignment().get(i);
+			if(duplicateKeys.contains(instance.getLValueKey(i))
+			   || duplicateKeys.contains(instance.getLValueKey(lock))) {
+				continue;
+			}
+			lines.add(instance.getLValueKey(i) + "\t" + instance.getLValueKey(lock) + "\t"
+					  + (placement.getAssignedToGlobal().get(i) ? 'G' : 'L'));
+		}
+		writeAtomically(cacheDir.resolve(className + ".previous"), lines);
+	}
+	
+	/**
+	 * @return the keys shared by more than one LValue of instance
+	 */
+	private static Set<String> getDuplicateKeys(LockPlacementInstance instance) {
+		Set<String> keys = new HashSet<>(),
+					duplicateKeys = new HashSet<>();
+		for(int i = 0; i < instance.getNumLValues(); ++i) {
+			if(!keys.add(instance.getLValueKey(i))) {
+				duplicateKeys.add(instance.getLValueKey(i));
+			}
+		}
+		if(!duplicateKeys.isEmpty()) {
+			log.debug("Leaving LValues with duplicate keys " + duplicateKeys + " out of the warm start");
+		}
+		return duplicateKeys;
+	}
+	
+	/**
+	 * Write lines to file, replacing it atomically so that
+	 * concurrent runs never see a partially written file
+	 */
+	private void writeAtomically(Path file, List<String> lines) {
+		try {
+			Files.createDirectories(cacheDir);
+			Path tmp = Files.createTempFile(cacheDir, file.getFileName().toString(), ".tmp");
+			Files.write(tmp, lines, StandardCharsets.UTF_8);
+			Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING,
+								  StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch(IOException e) {
+			log.warn("Failed to write cache file " + file + ": " + e.getMessage());
+		}
+	}
+	
+	/**
+	 * @return the cache file of the problem with fingerprint solved by method
+	 */
+	private Path getFile(String fingerprint, String method) {
+		return cacheDir.resolve(fingerprint + "." + method);
+	}
+}
@@ -0,0 +1,492 @@
+package edu.utexas.cs.utopia.lockPlacementBenchmarks.zeroOneILPPlacement;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import edu.utexas.cs.utopia.lockPlacementBenchmarks.zeroOneILPPlacement.analysis.AliasRelation;
+
+/**
+ * Ranjit's 0-1 ILP for a {@link LockPlacementInstance}, as a
+ * {@link PseudoBooleanProblem}.
+ *
+ * There is a variable "i assigned to local (global) lock j" for each
+ * candidate pair (see {@link CandidateLocks}). All other pairs are
+ * {@link PseudoBooleanProblem#FALSE}, and the only candidate of a
+ * fixed LValue is {@link PseudoBooleanProblem#TRUE}. MUST_ALIAS'ed
+ * LValues share the row of their representative, so every LValue
+ * has a row to decode even though only representatives have variables.
+ *
+ * The constraints are
+ *   - each LValue is assigned exactly one lock
+ *   - MAY_ALIAS'ed LValues are assigned the same global lock
+ * and the objective is
+ *   localCost * (number of local locks used)
+ *   + globalCost * (number of global locks used)
+ *   + sum over pairs of atomic segments a, b of
+ *       (weight of a) * (weight of b) *
+ *       ((1 if they share a local lock) + (1 if they share a global lock))
+ * where segments only share a lock if at least one of them writes
+ * to an LValue assigned to it (see {@link LockPlacementInstance#cost}).
+ *
+ * Atomic segments accessing (and writing to) the same LValues use the
+ * same locks, so we sum over pairs of segment classes
+ * (see {@link LockPlacementInstance#getSegmentClasses()}) instead:
+ * classes c1 != c2 conflict with weight W(c1) * W(c2) if they share
+ * a lock, where W(c) is the total weight of the segments in c, and
+ * the segments within a class c conflict with weight
+ * (W(c)^2 - sum of squared weights in c) / 2 if c writes through any lock.
+ *
+ * To keep the problem small, this introduces shared auxiliary
+ * variables:
+ *   - (lock, local/global) is used by some LValue
+ *   - (segment class, lock, local/global) is used (written through)
+ *     by the class
+ *   - (class pair, lock, local/global) is used by both classes
+ * Each auxiliary is only made if it can possibly be true
+ * given the candidate locks.
+ *
+ * If the global locks are bounded to interchangeable slots (see
+ * {@link CandidateLocks#getGlobalSlots()}), relabeling the slots of a
+ * solution gives another solution of the same cost. To avoid searching
+ * all of these, slots are used in order of first use: a representative
+ * may only use slot s > 0 if a smaller representative uses slot s-1.
+ *
+ * Few of the MAY_ALIAS constraints are tight at the optimum, so they
+ * may be added lazily: the problem starts without them, and
+ * {@link #addViolatedAliasConstraints(PseudoBooleanSolution)} adds
+ * those violated by a solution before re-solving.
+ *
+ * @author Ben_Sepanski
+ *
+ */
+class LockPlacementEncoding {
+	private final int n;
+	private final PseudoBooleanProblem problem = new PseudoBooleanProblem();
+	// local[i][j] is the literal "i assigned to local lock j",
+	// global[i][j] the literal "i assigned to global lock j"
+	private final int local[][], global[][];
+	// pairs of representatives whose MAY_ALIAS constraint
+	// is not yet in the problem
+	private final List<int[]> untiedPairs = new ArrayList<>();
+	// labels of the global lock slots, or null if they are not bounded
+	private final int globalSlots[];
+
+	/**
+	 * Encode instance
+	 *
+	 * @param instance the lock placement problem
+	 * @param candidates the candidate locks of instance
+	 * @param localCost the cost of each local lock
+	 * @param globalCost the cost of each global lock
+	 * @param lazyAlias true iff the MAY_ALIAS constraints should be
+	 *                  left out until they are violated
+	 */
+	public LockPlacementEncoding(LockPlacementInstance instance,
+								 CandidateLocks candidates,
+								 int localCost,
+								 int globalCost,
+								 boolean lazyAlias) {
+		this.n = instance.getNumLValues();
+		this.local = new int[n][];
+		this.global = new int[n][];
+		this.globalSlots = candidates.getGlobalSlots();
+		buildLockVars(candidates);
+		buildConstraints(instance, candidates, lazyAlias);
+		if(globalSlots != null) {
+			breakSlotSymmetry(candidates);
+		}
+		buildCost(instance, candidates, localCost, globalCost);
+	}
+
+	/**
+	 * Make variables for the candidate (lvalue, lock) pairs of
+	 * representatives which are not fixed
+	 */
+	private void buildLockVars(CandidateLocks candidates) {
+		for(int i = 0; i < n; ++i) {
+			int rep = candidates.getRepresentative(i);
+			if(rep != i) {
+				// rep < i, so its row is already built
+				local[i] = local[rep];
+				global[i] = global[rep];
+				continue;
+			}
+			local[i] = new int[n];
+			global[i] = new int[n];
+			boolean isFixed = candidates.isFixed(i);
+			for(int j = 0; j < n; ++j) {
+				if(candidates.isLocalCandidate(i, j)) {
+					local[i][j] = isFixed ? PseudoBooleanProblem.TRUE
+										  : problem.newVar("local__" + i + "_" + j);
+				}
+				if(candidates.isGlobalCandidate(i, j)) {
+					global[i][j] = isFixed ? PseudoBooleanProblem.TRUE
+										   : problem.newVar("global_" + i + "_" + j);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Build the constraints which are not already decided
+	 * by the candidate locks. The primitive, array, scope,
+	 * and ordering constraints, as well as the rule that
+	 * MAY_ALIAS'ed LValues have no local locks, are all
+	 * encoded in which pairs are candidates.
+	 * 
+	 * If lazyAlias, the MAY_ALIAS constraints are only recorded.
+	 */
+	private void buildConstraints(LockPlacementInstance instance,
+								  CandidateLocks candidates,
+								  boolean lazyAlias) {
+		// each lVal must have exactly one lock
+		for(int i = 0; i < n; ++i) {
+			if(candidates.isFixed(i) || candidates.getRepresentative(i) != i) continue;
+			List<Integer> locksFori = new ArrayList<>();
+			for(int j = 0; j < n; ++j) {
+				if(candidates.isLocalCandidate(i, j)) {
+					locksFori.add(local[i][j]);
+				}
+				if(candidates.isGlobalCandidate(i, j)) {
+					locksFori.add(global[i][j]);
+				}
+			}
+			problem.addExactlyOne(locksFori);
+		}
+
+		// if two lValues are may-aliased they must have the same
+		// global lock. MUST-aliased lValues share their variables,
+		// so already have identical locks.
+		// Only tie each pair of representatives once.
+		boolean tied[][] = new boolean[n][n];
+		for(int i1 = 0; i1 < n; ++i1) {
+			for(int i2 = i1+1; i2 < n; ++i2) {
+				if(instance.getAliasRelation(i1, i2) != AliasRelation.MAY_ALIAS) continue;
+				int r1 = candidates.getRepresentative(i1),
+					r2 = candidates.getRepresentative(i2);
+				if(r1 == r2 || tied[r1][r2]) continue;
+				tied[r1][r2] = tied[r2][r1] = true;
+				// Presolve already gave both their only candidate
+				if(candidates.isFixed(r1) && candidates.isFixed(r2)) continue;
+				if(lazyAlias) {
+					untiedPairs.add(new int[] {r1, r2});
+				}
+				else {
+					tieGlobalLocks(r1, r2);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Require the global lock slots to be used in order of first use
+	 * by the representatives (see the class description)
+	 */
+	private void breakSlotSymmetry(CandidateLocks candidates) {
+		// prevUsed[s] is "slot s is used by a representative
+		// smaller than the current one"
+		int prevUsed[] = new int[globalSlots.length];
+		for(int i = 0; i < n; ++i) {
+			if(candidates.getRepresentative(i) != i) continue;
+			for(int s = 1; s < globalSlots.length; ++s) {
+				// global[i][slot s] -> prevUsed[s-1]
+				List<Integer> clause = new ArrayList<>();
+				clause.add(PseudoBooleanProblem.not(global[i][globalSlots[s]]));
+				clause.add(prevUsed[s-1]);
+				problem.addClause(clause);
+			}
+			for(int s = 0; s < globalSlots.length; ++s) {
+				List<Integer> used = new ArrayList<>();
+				used.add(prevUsed[s]);
+				used.add(global[i][globalSlots[s]]);
+				prevUsed[s] = problem.defineOr("slotUsed_" + s + "_" + i, used);
+			}
+		}
+	}
+
+	/**
+	 * Require representatives r1 and r2 to have the same global lock
+	 */
+	private void tieGlobalLocks(int r1, int r2) {
+		for(int j = 0; j < n; ++j) {
+			if(global[r1][j] == PseudoBooleanProblem.FALSE
+			   && global[r2][j] == PseudoBooleanProblem.FALSE) continue;
+			addIff(global[r1][j], global[r2][j]);
+		}
+	}
+
+	/**
+	 * Add the MAY_ALIAS constraints left out of the problem
+	 * which solution violates
+	 *
+	 * @param solution a solution of the problem
+	 * @return the number of constraints added
+	 */
+	public int addViolatedAliasConstraints(PseudoBooleanSolution solution) {
+		int numAdded = 0;
+		Iterator<int[]> pairIter = untiedPairs.iterator();
+		while(pairIter.hasNext()) {
+			int pair[] = pairIter.next();
+			int r1 = pair[0], r2 = pair[1];
+			boolean sameLock = true;
+			for(int j = 0; j < n && sameLock; ++j) {
+				sameLock = solution.isTrue(global[r1][j]) == solution.isTrue(global[r2][j]);
+			}
+			if(!sameLock) {
+				tieGlobalLocks(r1, r2);
+				pairIter.remove();
+				++numAdded;
+			}
+		}
+		return numAdded;
+	}
+
+	/**
+	 * Require lit1 iff lit2
+	 */
+	private void addIff(int lit1, int lit2) {
+		List<Integer> clause = new ArrayList<>();
+		clause.add(PseudoBooleanProblem.not(lit1));
+		clause.add(lit2);
+		problem.addClause(clause);
+		clause.clear();
+		clause.add(lit1);
+		clause.add(PseudoBooleanProblem.not(lit2));
+		problem.addClause(clause);
+	}
+
+	/**
+	 * Build the objective (see the class description)
+	 */
+	private void buildCost(LockPlacementInstance instance,
+						   CandidateLocks candidates,
+						   int localCost,
+						   int globalCost) {
+		// numLocks
+		for(int j = 0; j < n; ++j) {
+			BitSet localUsers = candidates.getLocalUsers(j),
+				   globalUsers = candidates.getGlobalUsers(j);
+			List<Integer> assignedToLocj = new ArrayList<>(),
+						  assignedToGlobj = new ArrayList<>();
+			for(int i = localUsers.nextSetBit(0); i >= 0; i = localUsers.nextSetBit(i+1)) {
+				if(candidates.getRepresentative(i) != i) continue;
+				assignedToLocj.add(local[i][j]);
+			}
+			for(int i = globalUsers.nextSetBit(0); i >= 0; i = globalUsers.nextSetBit(i+1)) {
+				if(candidates.getRepresentative(i) != i) continue;
+				assignedToGlobj.add(global[i][j]);
+			}
+			problem.addObjective(localCost,
+								 problem.defineOr("lockUsed_local_" + j, assignedToLocj));
+			problem.addObjective(globalCost,
+								 problem.defineOr("lockUsed_global_" + j, assignedToGlobj));
+		}
+
+		// Is lock k used (written through) by segment class c?
+		List<List<Integer>> segClasses = instance.getSegmentClasses();
+		int numClasses = segClasses.size();
+		int segUsesLoc[][] = new int[numClasses][],
+			segUsesGlob[][] = new int[numClasses][],
+			segWritesLoc[][] = new int[numClasses][],
+			segWritesGlob[][] = new int[numClasses][];
+		// readsOnly[c] iff class c reads some LValue it does not write to
+		boolean readsOnly[] = new boolean[numClasses];
+		for(int c = 0; c < numClasses; ++c) {
+			// Every segment in the class accesses (and writes to) the same LValues
+			int seg = segClasses.get(c).get(0);
+			List<Integer> accessedIn = instance.getAccessedLValues().get(seg),
+						  writtenIn = instance.getWrittenLValues().get(seg);
+			segUsesLoc[c] = new int[n];
+			segUsesGlob[c] = new int[n];
+			buildSegUses("segUses", c, accessedIn, candidates, segUsesLoc[c], segUsesGlob[c]);
+			readsOnly[c] = writtenIn.size() < accessedIn.size();
+			if(readsOnly[c]) {
+				segWritesLoc[c] = new int[n];
+				segWritesGlob[c] = new int[n];
+				buildSegUses("segWrites", c, writtenIn, candidates, segWritesLoc[c], segWritesGlob[c]);
+			}
+			else {
+				// everything the class uses, it writes through
+				segWritesLoc[c] = segUsesLoc[c];
+				segWritesGlob[c] = segUsesGlob[c];
+			}
+		}
+
+		// total weight of each class
+		long classWeight[] = new long[numClasses];
+		for(int c = 0; c < numClasses; ++c) {
+			for(int a : segClasses.get(c)) {
+				classWeight[c] += instance.getSegmentWeight(a);
+			}
+		}
+
+		// conflict within a class: all its segments use the same locks
+		for(int c = 0; c < numClasses; ++c) {
+			long sumOfSquares = 0;
+			for(int a : segClasses.get(c)) {
+				sumOfSquares += (long) instance.getSegmentWeight(a) * instance.getSegmentWeight(a);
+			}
+			long pairWeight = (classWeight[c] * classWeight[c] - sumOfSquares) / 2;
+			if(pairWeight == 0) continue;
+			List<Integer> writesLocLock = new ArrayList<>(),
+						  writesGlobLock = new ArrayList<>();
+			for(int k = 0; k < n; ++k) {
+				writesLocLock.add(segWritesLoc[c][k]);
+				writesGlobLock.add(segWritesGlob[c][k]);
+			}
+			problem.addObjective(pairWeight,
+								 problem.defineOr("segUsesAny_local_" + c, writesLocLock));
+			problem.addObjective(pairWeight,
+								 problem.defineOr("segUsesAny_global_" + c, writesGlobLock));
+		}
+
+		// conflict(lock assignment) (cost(i,j) * do they share a lock for all i<=j)
+		for(int c1 = 0; c1 < numClasses; ++c1) {
+			for(int c2 = c1+1; c2 < numClasses; ++c2) {
+				// Do class1 and class2 share any locks, with one of them writing?
+				List<Integer> shareLocLock = new ArrayList<>(),
+							  shareGlobLock = new ArrayList<>();
+				for(int k = 0; k < n; ++k) {
+					shareLocLock.add(problem.defineAnd(
+							"segsShare_local_" + c1 + "_" + c2 + "_" + k,
+							segUsesLoc[c1][k], segWritesLoc[c2][k]));
+					shareGlobLock.add(problem.defineAnd(
+							"segsShare_global_" + c1 + "_" + c2 + "_" + k,
+							segUsesGlob[c1][k], segWritesGlob[c2][k]));
+					// Otherwise the conflict is symmetric, and already added
+					if(readsOnly[c1] || readsOnly[c2]) {
+						shareLocLock.add(problem.defineAnd(
+								"segsShare_local_" + c2 + "_" + c1 + "_" + k,
+								segWritesLoc[c1][k], segUsesLoc[c2][k]));
+						shareGlobLock.add(problem.defineAnd(
+								"segsShare_global_" + c2 + "_" + c1 + "_" + k,
+								segWritesGlob[c1][k], segUsesGlob[c2][k]));
+					}
+				}
+				// Add conflict of every segment pair across the classes to cost
+				long pairWeight = classWeight[c1] * classWeight[c2];
+				problem.addObjective(pairWeight,
+									 problem.defineOr("segsConflict_local_" + c1 + "_" + c2,
+											 		  shareLocLock));
+				problem.addObjective(pairWeight,
+									 problem.defineOr("segsConflict_global_" + c1 + "_" + c2,
+											 		  shareGlobLock));
+			}
+		}
+	}
+
+	/**
+	 * Define usesLoc[k] (usesGlob[k]) as "some LValue of lValues is
+	 * assigned local (global) lock k"
+	 *
+	 * @param prefix prefix of the auxiliary variable names
+	 * @param c the segment class
+	 * @param lValues the LValues
+	 * @param candidates the candidate locks
+	 * @param usesLoc filled with the local lock auxiliaries
+	 * @param usesGlob filled with the global lock auxiliaries
+	 */
+	private void buildSegUses(String prefix,
+							  int c,
+							  List<Integer> lValues,
+							  CandidateLocks candidates,
+							  int usesLoc[],
+							  int usesGlob[]) {
+		BitSet reps = new BitSet(n);
+		for(int i : lValues) {
+			reps.set(candidates.getRepresentative(i));
+		}
+		for(int k = 0; k < n; ++k) {
+			List<Integer> locLock = new ArrayList<>(),
+						  globLock = new ArrayList<>();
+			for(int i = reps.nextSetBit(0); i >= 0; i = reps.nextSetBit(i+1)) {
+				if(candidates.isLocalCandidate(i, k)) {
+					locLock.add(local[i][k]);
+				}
+				if(candidates.isGlobalCandidate(i, k)) {
+					globLock.add(global[i][k]);
+				}
+			}
+			usesLoc[k] = problem.defineOr(prefix + "_local_" + c + "_" + k, locLock);
+			usesGlob[k] = problem.defineOr(prefix + "_global_" + c + "_" + k, globLock);
+		}
+	}
+
+	/**
+	 * @return the problem
+	 */
+	public PseudoBooleanProblem getProblem() {
+		return problem;
+	}
+
+	/**
+	 * Translate a lock assignment into an assignment of the problem.
+	 * If the global locks are bounded to slots, they are first
+	 * relabeled to slots in order of first use.
+	 *
+	 * @param lockAssignment i is assigned to lock lockAssignment.get(i)
+	 * @param assignedToGlobal i is assigned a global lock iff
+	 *                         assignedToGlobal.get(i)
+	 * @return values[v] is the value of variable v, or null if
+	 *         the lock assignment violates the constraints
+	 */
+	public boolean[] encode(List<Integer> lockAssignment, List<Boolean> assignedToGlobal) {
+		boolean values[] = new boolean[problem.getNumVars() + 1];
+		Map<Integer, Integer> slotOf = new HashMap<>();
+		for(int i = 0; i < n; ++i) {
+			int j = lockAssignment.get(i);
+			if(globalSlots != null && assignedToGlobal.get(i)) {
+				if(!slotOf.containsKey(j)) {
+					if(slotOf.size() == globalSlots.length) {
+						return null;
+					}
+					slotOf.put(j, globalSlots[slotOf.size()]);
+				}
+				j = slotOf.get(j);
+			}
+			int lit = assignedToGlobal.get(i) ? global[i][j] : local[i][j];
+			if(lit == PseudoBooleanProblem.FALSE) {
+				return null;
+			}
+			if(lit != PseudoBooleanProblem.TRUE) {
+				values[lit] = true;
+			}
+		}
+		problem.evaluateDefinitions(values);
+		// catches MUST_ALIAS'ed LValues with different locks
+		// and MAY_ALIAS violations
+		return problem.isSatisfied(values) ? values : null;
+	}
+
+	/**
+	 * Read the lock assignment out of a solution
+	 *
+	 * @param solution a solution of the problem
+	 * @param lockAssignment lock of LValue i is added at position i
+	 * @param assignedToGlobal whether LValue i has a global lock
+	 *                         is added at position i
+	 */
+	public void decode(PseudoBooleanSolution solution,
+					   List<Integer> lockAssignment,
+					   List<Boolean> assignedToGlobal) {
+		// The constraints assign each LValue exactly one lock
+		for(int i = 0; i < n; ++i) {
+			for(int j = 0; j < n; ++j) {
+				if(solution.isTrue(local[i][j])) {
+					lockAssignment.add(j);
+					assignedToGlobal.add(false);
+					break;
+				}
+				else if(solution.isTrue(global[i][j])) {
+					lockAssignment.add(j);
+					assignedToGlobal.add(true);
+					break;
+				}
+			}
+		}
+	}
+}
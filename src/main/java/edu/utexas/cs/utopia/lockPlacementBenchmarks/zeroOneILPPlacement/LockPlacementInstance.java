@@ -0,0 +1,524 @@
+package edu.utexas.cs.utopia.lockPlacementBenchmarks.zeroOneILPPlacement;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import edu.utexas.cs.utopia.lockPlacementBenchmarks.zeroOneILPPlacement.analysis.AliasMatrix;
+import edu.utexas.cs.utopia.lockPlacementBenchmarks.zeroOneILPPlacement.analysis.AliasRelation;
+import edu.utexas.cs.utopia.lockPlacementBenchmarks.zeroOneILPPlacement.analysis.BitMatrix;
+import edu.utexas.cs.utopia.lockPlacementBenchmarks.zeroOneILPPlacement.analysis.LValueBox;
+import edu.utexas.cs.utopia.lockPlacementBenchmarks.zeroOneILPPlacement.analysis.MonitorAnalysis;
+import soot.PrimType;
+import soot.jimple.ArrayRef;
+
+/**
+ * Everything about a monitor the lock placement problem
+ * depends on, with LValues and atomic segments replaced
+ * by their IDs.
+ *
+ * Unlike a {@link MonitorAnalysis}, an instance holds no
+ * references into Soot, so it can be split into sub-problems
+ * and solved off of the thread which ran the analysis.
+ *
+ * @author Ben_Sepanski
+ *
+ */
+public class LockPlacementInstance {
+	private final int numLValues;
+	// keys of the LValues which are stable across edits to the monitor
+	private final List<String> lValueKeys;
+	// isArrayRef[i] iff LValue i is an ArrayRef
+	private final boolean isArrayRef[];
+	// isPrimitive[i] iff LValue i has primitive type
+	private final boolean isPrimitive[];
+	// alias[i][j] is the alias relation of LValues i and j
+	private final AliasRelation alias[][];
+	// see MonitorAnalysis
+	private final List<List<Integer>> accessedLValues;
+	// the *a*th entry is the subset of accessedLValues.get(a)
+	// which atomic segment *a* may write to
+	private final List<List<Integer>> writtenLValues;
+	// the conflict of atomic segments a and b is weighted
+	// by segmentWeights[a] * segmentWeights[b]
+	private final int segmentWeights[];
+	// atomic segments x LValues
+	private final BitMatrix outOfScope;
+	// LValues x LValues
+	private final BitMatrix topoAccBefore;
+
+	/**
+	 * Extract the lock placement problem with exclusive locks
+	 * from the analysis of a monitor
+	 *
+	 * @param mtrAnalysis
+	 */
+	public LockPlacementInstance(MonitorAnalysis mtrAnalysis) {
+		this(mtrAnalysis, false, null);
+	}
+
+	/**
+	 * Extract the lock placement problem from the analysis of
+	 * a monitor
+	 *
+	 * With read/write locks, atomic segments which only read
+	 * through a shared lock do not conflict. With exclusive
+	 * locks, every access is treated as a write.
+	 *
+	 * Each atomic segment may be weighted by how often it runs
+	 * (see {@link SegmentProfile}).
+	 *
+	 * @param mtrAnalysis
+	 * @param readWrite true iff locks are read/write locks
+	 * @param segmentWeights the weight of each atomic segment,
+	 *                       or null to weight them all 1
+	 */
+	public LockPlacementInstance(MonitorAnalysis mtrAnalysis,
+								 boolean readWrite,
+								 int segmentWeights[]) {
+		List<LValueBox> lValues = mtrAnalysis.getLValues();
+		this.numLValues = lValues.size();
+		this.lValueKeys = mtrAnalysis.getLValueKeys();
+		this.isArrayRef = new boolean[numLValues];
+		this.isPrimitive = new boolean[numLValues];
+		for(int i = 0; i < numLValues; ++i) {
+			LValueBox lvb = lValues.get(i);
+			isArrayRef[i] = lvb.getValue() instanceof ArrayRef;
+			isPrimitive[i] = lvb.getValue().getType() instanceof PrimType;
+		}
+
+		this.alias = new AliasRelation[numLValues][numLValues];
+		AliasMatrix aliasMatrix = mtrAnalysis.getAliasMatrix();
+		for(int i1 = 0; i1 < numLValues; ++i1) {
+			for(int i2 = 0; i2 < numLValues; ++i2) {
+				alias[i1][i2] = aliasMatrix.get(i1, i2);
+			}
+		}
+
+		this.accessedLValues = mtrAnalysis.getAccessedLValues();
+		this.writtenLValues = readWrite ? mtrAnalysis.getWrittenLValues()
+										: mtrAnalysis.getAccessedLValues();
+		if(segmentWeights == null) {
+			segmentWeights = new int[accessedLValues.size()];
+			Arrays.fill(segmentWeights, 1);
+		}
+		else if(segmentWeights.length != accessedLValues.size()) {
+			throw new IllegalArgumentException("Expected " + accessedLValues.size() +
+											   " segment weights, not " + segmentWeights.length);
+		}
+		this.segmentWeights = segmentWeights;
+		this.outOfScope = mtrAnalysis.getOutOfScope();
+		this.topoAccBefore = mtrAnalysis.getTopoAccBefore();
+	}
+
+	/**
+	 * Make an instance from its parts, e.g. a restriction of
+	 * another instance or a small problem to test a solver on
+	 */
+	LockPlacementInstance(List<String> lValueKeys,
+						  boolean isArrayRef[],
+						  boolean isPrimitive[],
+						  AliasRelation alias[][],
+						  List<List<Integer>> accessedLValues,
+						  List<List<Integer>> writtenLValues,
+						  int segmentWeights[],
+						  BitMatrix outOfScope,
+						  BitMatrix topoAccBefore) {
+		this.numLValues = isArrayRef.length;
+		this.lValueKeys = lValueKeys;
+		this.isArrayRef = isArrayRef;
+		this.isPrimitive = isPrimitive;
+		this.alias = alias;
+		this.accessedLValues = accessedLValues;
+		this.writtenLValues = writtenLValues;
+		this.segmentWeights = segmentWeights;
+		this.outOfScope = outOfScope;
+		this.topoAccBefore = topoAccBefore;
+	}
+
+	/**
+	 * Restrict this instance to a subset of the LValues and
+	 * the atomic segments which access them.
+	 *
+	 * LValue lValueIDs.get(i) of this instance is LValue i of the
+	 * returned instance. Locks are restricted in the same way,
+	 * so only locks of LValues in lValueIDs are available.
+	 *
+	 * @param lValueIDs the LValues to keep
+	 * @return the restricted instance
+	 */
+	public LockPlacementInstance restrict(List<Integer> lValueIDs) {
+		int m = lValueIDs.size();
+		Map<Integer, Integer> newID = new HashMap<>();
+		for(int i = 0; i < m; ++i) {
+			newID.put(lValueIDs.get(i), i);
+		}
+
+		List<String> subKeys = new ArrayList<>();
+		boolean subIsArrayRef[] = new boolean[m],
+				subIsPrimitive[] = new boolean[m];
+		AliasRelation subAlias[][] = new AliasRelation[m][m];
+		for(int i = 0; i < m; ++i) {
+			int oldI = lValueIDs.get(i);
+			subKeys.add(lValueKeys.get(oldI));
+			subIsArrayRef[i] = isArrayRef[oldI];
+			subIsPrimitive[i] = isPrimitive[oldI];
+			for(int j = 0; j < m; ++j) {
+				subAlias[i][j] = alias[oldI][lValueIDs.get(j)];
+			}
+		}
+
+		List<List<Integer>> subAccessed = new ArrayList<>(),
+							subWritten = new ArrayList<>();
+		List<Integer> subWeights = new ArrayList<>(),
+					  keptSegments = new ArrayList<>();
+		for(int a = 0; a < getNumAtomicSegments(); ++a) {
+			List<Integer> accessed = translate(accessedLValues.get(a), newID);
+			if(accessed.isEmpty()) continue;
+			subAccessed.add(accessed);
+			subWritten.add(translate(writtenLValues.get(a), newID));
+			subWeights.add(segmentWeights[a]);
+			keptSegments.add(a);
+		}
+
+		return new LockPlacementInstance(subKeys,
+										 subIsArrayRef,
+										 subIsPrimitive,
+										 subAlias,
+										 subAccessed,
+										 subWritten,
+										 toArray(subWeights),
+										 outOfScope.select(keptSegments, lValueIDs),
+										 topoAccBefore.select(lValueIDs, lValueIDs));
+	}
+
+	private static int[] toArray(List<Integer> list) {
+		int arr[] = new int[list.size()];
+		for(int i = 0; i < arr.length; ++i) {
+			arr[i] = list.get(i);
+		}
+		return arr;
+	}
+
+	/**
+	 * @return the IDs in ids which are keys of newID, translated by newID
+	 */
+	private static List<Integer> translate(List<Integer> ids, Map<Integer, Integer> newID) {
+		List<Integer> translated = new ArrayList<>();
+		for(int id : ids) {
+			Integer n = newID.get(id);
+			if(n != null) {
+				translated.add(n);
+			}
+		}
+		return translated;
+	}
+
+	/**
+	 * Compute the cost of a lock assignment, i.e.
+	 *   localCost * (number of local locks used)
+	 *   + globalCost * (number of global locks used)
+	 *   + sum over pairs of atomic segments a, b of
+	 *       (weight of a) * (weight of b) *
+	 *       ((1 if they share a local lock) + (1 if they share a global lock))
+	 * where two segments only share a lock if at least one of them
+	 * holds it in write mode, i.e. writes to an LValue assigned to it.
+	 *
+	 * @param lockAssignment i is assigned to lock lockAssignment.get(i)
+	 * @param assignedToGlobal i is assigned a global lock iff assignedToGlobal.get(i)
+	 * @param localCost the cost of each local lock
+	 * @param globalCost the cost of each global lock
+	 * @return the cost
+	 */
+	public long cost(List<Integer> lockAssignment,
+					 List<Boolean> assignedToGlobal,
+					 int localCost,
+					 int globalCost) {
+		BitSet localUsed = new BitSet(numLValues),
+			   globalUsed = new BitSet(numLValues);
+		for(int i = 0; i < numLValues; ++i) {
+			if(assignedToGlobal.get(i)) {
+				globalUsed.set(lockAssignment.get(i));
+			}
+			else {
+				localUsed.set(lockAssignment.get(i));
+			}
+		}
+		long cost = (long) localCost * localUsed.cardinality()
+				  + (long) globalCost * globalUsed.cardinality();
+
+		int numAtomic = getNumAtomicSegments();
+		BitSet segLocal[] = new BitSet[numAtomic],
+			   segGlobal[] = new BitSet[numAtomic],
+			   segWritesLocal[] = new BitSet[numAtomic],
+			   segWritesGlobal[] = new BitSet[numAtomic];
+		for(int a = 0; a < numAtomic; ++a) {
+			segLocal[a] = locksOf(accessedLValues.get(a), lockAssignment, assignedToGlobal, false);
+			segGlobal[a] = locksOf(accessedLValues.get(a), lockAssignment, assignedToGlobal, true);
+			segWritesLocal[a] = locksOf(writtenLValues.get(a), lockAssignment, assignedToGlobal, false);
+			segWritesGlobal[a] = locksOf(writtenLValues.get(a), lockAssignment, assignedToGlobal, true);
+		}
+		for(int a1 = 0; a1 < numAtomic; ++a1) {
+			for(int a2 = a1+1; a2 < numAtomic; ++a2) {
+				long pairWeight = (long) segmentWeights[a1] * segmentWeights[a2];
+				if(segLocal[a1].intersects(segWritesLocal[a2])
+				   || segWritesLocal[a1].intersects(segLocal[a2])) cost += pairWeight;
+				if(segGlobal[a1].intersects(segWritesGlobal[a2])
+				   || segWritesGlobal[a1].intersects(segGlobal[a2])) cost += pairWeight;
+			}
+		}
+		return cost;
+	}
+
+	/**
+	 * @return the global (if global) or local locks of the LValues ids
+	 */
+	private BitSet locksOf(List<Integer> ids,
+						   List<Integer> lockAssignment,
+						   List<Boolean> assignedToGlobal,
+						   boolean global) {
+		BitSet locks = new BitSet(numLValues);
+		for(int i : ids) {
+			if(assignedToGlobal.get(i) == global) {
+				locks.set(lockAssignment.get(i));
+			}
+		}
+		return locks;
+	}
+
+	/**
+	 * Check that a lock assignment satisfies the constraints:
+	 * every LValue has a candidate lock (see {@link CandidateLocks}),
+	 * MUST_ALIAS'ed LValues have identical locks, and MAY_ALIAS'ed
+	 * LValues have the same global lock.
+	 * 
+	 * @param lockAssignment i is assigned to lock lockAssignment.get(i)
+	 * @param assignedToGlobal i is assigned a global lock iff assignedToGlobal.get(i)
+	 * @return true iff the assignment is feasible
+	 */
+	public boolean isFeasible(List<Integer> lockAssignment, List<Boolean> assignedToGlobal) {
+		if(lockAssignment.size() != numLValues || assignedToGlobal.size() != numLValues) {
+			return false;
+		}
+		CandidateLocks candidates = new CandidateLocks(this);
+		for(int i = 0; i < numLValues; ++i) {
+			int j = lockAssignment.get(i);
+			if(j < 0 || j >= numLValues) return false;
+			boolean isCandidate = assignedToGlobal.get(i)
+					? candidates.isGlobalCandidate(i, j)
+					: candidates.isLocalCandidate(i, j);
+			if(!isCandidate) return false;
+		}
+		for(int i1 = 0; i1 < numLValues; ++i1) {
+			for(int i2 = i1+1; i2 < numLValues; ++i2) {
+				boolean sameLock = lockAssignment.get(i1).equals(lockAssignment.get(i2))
+						&& assignedToGlobal.get(i1).equals(assignedToGlobal.get(i2));
+				switch(alias[i1][i2]) {
+				case MAY_ALIAS:
+					// Candidates already rule out local locks
+				case MUST_ALIAS:
+					if(!sameLock) return false;
+					break;
+				default:
+				}
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * A SHA-256 digest of everything the lock placement depends on:
+	 * the kinds of the LValues, the alias matrix, the accessed-in,
+	 * written-in, and out-of-scope sets and the weight of each
+	 * atomic segment, the topo-accessed-before relation, and the
+	 * lock costs. Sets are sorted first, so equal problems have
+	 * equal fingerprints.
+	 * 
+	 * @param localCost the cost of a local lock
+	 * @param globalCost the cost of a global lock
+	 * @return the fingerprint as a hex string
+	 */
+	public String fingerprint(int localCost, int globalCost) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try(DataOutputStream out = new DataOutputStream(bytes)) {
+			out.writeInt(numLValues);
+			for(int i = 0; i < numLValues; ++i) {
+				out.writeBoolean(isArrayRef[i]);
+				out.writeBoolean(isPrimitive[i]);
+				for(int j = i+1; j < numLValues; ++j) {
+					out.writeByte(alias[i][j].ordinal());
+				}
+			}
+			out.writeInt(getNumAtomicSegments());
+			for(int a = 0; a < getNumAtomicSegments(); ++a) {
+				writeSet(out, accessedLValues.get(a));
+				writeSet(out, writtenLValues.get(a));
+				out.writeInt(segmentWeights[a]);
+				writeRow(out, outOfScope, a);
+			}
+			for(int i = 0; i < numLValues; ++i) {
+				writeRow(out, topoAccBefore, i);
+			}
+			out.writeInt(localCost);
+			out.writeInt(globalCost);
+		}
+		catch(IOException e) {
+			throw new RuntimeException("Failed to serialize lock placement instance", e);
+		}
+		
+		try {
+			byte digest[] = MessageDigest.getInstance("SHA-256").digest(bytes.toByteArray());
+			StringBuilder hex = new StringBuilder();
+			for(byte b : digest) {
+				hex.append(String.format("%02x", b));
+			}
+			return hex.toString();
+		}
+		catch(NoSuchAlgorithmException e) {
+			throw new RuntimeException("SHA-256 unavailable", e);
+		}
+	}
+	
+	/**
+	 * Write the size and the sorted elements of ids to out
+	 */
+	private static void writeSet(DataOutputStream out, List<Integer> ids) throws IOException {
+		List<Integer> sorted = new ArrayList<>(ids);
+		Collections.sort(sorted);
+		out.writeInt(sorted.size());
+		for(int id : sorted) {
+			out.writeInt(id);
+		}
+	}
+
+	/**
+	 * Write row i of matrix to out in the same format as writeSet
+	 */
+	private static void writeRow(DataOutputStream out, BitMatrix matrix, int i) throws IOException {
+		out.writeInt(matrix.rowCardinality(i));
+		for(int j = matrix.nextInRow(i, 0); j >= 0; j = matrix.nextInRow(i, j+1)) {
+			out.writeInt(j);
+		}
+	}
+
+	/**
+	 * Group the atomic segments which access exactly the same
+	 * (non-empty) set of LValues and write to exactly the same
+	 * subset of them. Any two segments of a group use the same
+	 * locks in the same modes in every lock assignment.
+	 * 
+	 * @return the groups of atomic segment indices, in order of
+	 *         their first segment
+	 */
+	public List<List<Integer>> getSegmentClasses() {
+		Map<List<List<Integer>>, List<Integer>> classOf = new HashMap<>();
+		List<List<Integer>> classes = new ArrayList<>();
+		for(int a = 0; a < getNumAtomicSegments(); ++a) {
+			List<Integer> accessed = new ArrayList<>(accessedLValues.get(a)),
+						  written = new ArrayList<>(writtenLValues.get(a));
+			if(accessed.isEmpty()) continue;
+			Collections.sort(accessed);
+			Collections.sort(written);
+			List<List<Integer>> key = Arrays.asList(accessed, written);
+			List<Integer> segClass = classOf.get(key);
+			if(segClass == null) {
+				segClass = new ArrayList<>();
+				classOf.put(key, segClass);
+				classes.add(segClass);
+			}
+			segClass.add(a);
+		}
+		return classes;
+	}
+
+	/**
+	 * @return the number of LValues
+	 */
+	public int getNumLValues() {
+		return numLValues;
+	}
+
+	/**
+	 * @return the number of atomic segments
+	 */
+	public int getNumAtomicSegments() {
+		return accessedLValues.size();
+	}
+
+	/**
+	 * @return the key of LValue i, which is stable across edits
+	 *         to the monitor (unlike i)
+	 */
+	public String getLValueKey(int i) {
+		return lValueKeys.get(i);
+	}
+
+	/**
+	 * @return true iff LValue i is an ArrayRef
+	 */
+	public boolean isArrayRef(int i) {
+		return isArrayRef[i];
+	}
+
+	/**
+	 * @return true iff LValue i has primitive type
+	 */
+	public boolean isPrimitive(int i) {
+		return isPrimitive[i];
+	}
+
+	/**
+	 * @return the alias relation between LValues i and j
+	 */
+	public AliasRelation getAliasRelation(int i, int j) {
+		return alias[i][j];
+	}
+
+	/**
+	 * @return the *a*th entry is the IDs of the LValues accessed in
+	 *         atomic segment *a*
+	 */
+	public List<List<Integer>> getAccessedLValues() {
+		return accessedLValues;
+	}
+
+	/**
+	 * @return the *a*th entry is the IDs of the LValues atomic
+	 *         segment *a* may write to, a subset of its accessed
+	 *         LValues. With exclusive locks, this is all of them.
+	 */
+	public List<List<Integer>> getWrittenLValues() {
+		return writtenLValues;
+	}
+
+	/**
+	 * @return the weight of atomic segment a
+	 */
+	public int getSegmentWeight(int a) {
+		return segmentWeights[a];
+	}
+
+	/**
+	 * @return entry (a, i) is set iff LValue *i* is out of scope
+	 *         at the beginning of atomic segment *a*
+	 */
+	public BitMatrix getOutOfScope() {
+		return outOfScope;
+	}
+
+	/**
+	 * @return the topo-accessed-before relation (see MonitorAnalysis)
+	 */
+	public BitMatrix getTopoAccBefore() {
+		return topoAccBefore;
+	}
+}
@@ -0,0 +1,16 @@
+package edu.utexas.cs.utopia.lockPlacementBenchmarks.zeroOneILPPlacement;
+
+/**
+ * Which engine computes the lock placement
+ * 
+ * @author Ben_Sepanski
+ *
+ */
+public enum PlacementEngine {
+	/** The exact 0-1 ILP, solved by Z3 ({@link LockConstraintProblem}) */
+	ILP,
+	/** Greedy assignment plus local search ({@link HeuristicLockPlacement}) */
+	HEURISTIC,
+	/** ILP for small monitors, HEURISTIC above an LValue count threshold */
+	AUTO
+}
@@ -0,0 +1,16 @@
+package edu.utexas.cs.utopia.lockPlacementBenchmarks.zeroOneILPPlacement;
+
+/**
+ * Which pointer analysis decides the alias relation between LValues
+ *
+ * @author Ben_Sepanski
+ *
+ */
+public enum PointerAnalysisType {
+	/** Every pair MAY_ALIAS ({@link PessimisticPointerAnalysis}) */
+	PESSIMISTIC,
+	/** Only equal LValues alias, unsound ({@link OptimisticPointerAnalysis}) */
+	OPTIMISTIC,
+	/** Soot's Spark points-to sets ({@link SparkPointerAnalysis}) */
+	SPARK
+}
@@ -0,0 +1,199 @@
+package edu.utexas.cs.utopia.lockPlacementBenchmarks.zeroOneILPPlacement;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Race several {@link SolverBackend}s on the same problem, each on
+ * its own thread.
+ *
+ * The first proven-optimal solution wins, and the other backends are
+ * interrupted. If no backend proves optimality (e.g. they all time out),
+ * the cheapest solution found is used.
+ *
+ * No single strategy is fastest on every monitor, so racing
+ * differently configured backends makes the solve time
+ * that of the best one.
+ *
+ * @author Ben_Sepanski
+ *
+ */
+public class PortfolioBackend implements SolverBackend {
+	private static Logger log = LoggerFactory.getLogger(PortfolioBackend.class);
+
+	private final List<SolverBackend> backends;
+	// The racers of the solve running on each thread
+	private final Map<Thread, List<Racer>> running = new HashMap<>();
+
+	/**
+	 * A backend solving on some thread
+	 */
+	private static class Racer implements Callable<PseudoBooleanSolution> {
+		private final SolverBackend backend;
+		private final PseudoBooleanProblem problem;
+		private final long timeoutMillis;
+		// the thread running backend, once started
+		private Thread thread = null;
+		private boolean interrupted = false;
+
+		Racer(SolverBackend backend, PseudoBooleanProblem problem, long timeoutMillis) {
+			this.backend = backend;
+			this.problem = problem;
+			this.timeoutMillis = timeoutMillis;
+		}
+
+		@Override
+		public PseudoBooleanSolution call() {
+			synchronized(this) {
+				if(interrupted) {
+					throw new RuntimeException("Interrupted before solving");
+				}
+				thread = Thread.currentThread();
+			}
+			try {
+				return backend.solve(problem, timeoutMillis);
+			}
+			finally {
+				synchronized(this) {
+					thread = null;
+				}
+			}
+		}
+
+		/**
+		 * Make backend give up as soon as possible
+		 */
+		synchronized void interrupt() {
+			interrupted = true;
+			if(thread != null) {
+				backend.interrupt(thread);
+			}
+		}
+	}
+
+	/**
+	 * @param backends the backends to race
+	 */
+	public PortfolioBackend(List<SolverBackend> backends) {
+		if(backends.isEmpty()) {
+			throw new IllegalArgumentException("Empty portfolio");
+		}
+		this.backends = new ArrayList<>(backends);
+	}
+
+	@Override
+	public String getName() {
+		StringBuilder name = new StringBuilder("portfolio");
+		for(SolverBackend backend : backends) {
+			name.append("-").append(backend.getName());
+		}
+		return name.toString();
+	}
+
+	@Override
+	public PseudoBooleanSolution solve(PseudoBooleanProblem problem, long timeoutMillis) {
+		ExecutorService pool = Executors.newFixedThreadPool(backends.size());
+		CompletionService<PseudoBooleanSolution> completion = new ExecutorCompletionService<>(pool);
+		List<Racer> racers = new ArrayList<>();
+		List<Future<PseudoBooleanSolution>> futures = new ArrayList<>();
+		synchronized(running) {
+			if(Thread.currentThread().isInterrupted()) {
+				throw new RuntimeException("Interrupted before solving");
+			}
+			running.put(Thread.currentThread(), racers);
+		}
+		long startTime = System.nanoTime();
+		try {
+			for(SolverBackend backend : backends) {
+				Racer racer = new Racer(backend, problem, timeoutMillis);
+				synchronized(racers) {
+					racers.add(racer);
+				}
+				futures.add(completion.submit(racer));
+			}
+
+			PseudoBooleanSolution best = null;
+			RuntimeException failure = null;
+			for(int finished = 0; finished < backends.size(); ++finished) {
+				PseudoBooleanSolution solution;
+				try {
+					solution = completion.take().get();
+				}
+				catch(ExecutionException e) {
+					// Remember the failure, but prefer reporting a timeout
+					if(e.getCause() instanceof SolveTimeoutException || failure == null) {
+						failure = e.getCause() instanceof RuntimeException
+								? (RuntimeException) e.getCause()
+								: new RuntimeException(e.getCause());
+					}
+					log.debug("Portfolio: a backend failed: " + e.getCause().getMessage());
+					continue;
+				}
+				if(best == null || solution.getCost() < best.getCost()) {
+					best = solution;
+				}
+				if(solution.isOptimal()) {
+					break;
+				}
+			}
+
+			if(best == null) {
+				throw failure;
+			}
+			log.info("Portfolio: " + best.getSolverName() + " won with cost " + best.getCost() +
+					 (best.isOptimal() ? " (optimal)" : "") + " after " +
+					 (System.nanoTime() - startTime) / 1000000L + " ms");
+			return best;
+		}
+		catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while racing solvers", e);
+		}
+		finally {
+			// Stop the losers. Z3 does not notice thread interrupts,
+			// so each backend is asked to stop itself.
+			synchronized(racers) {
+				for(Racer racer : racers) {
+					racer.interrupt();
+				}
+			}
+			for(Future<PseudoBooleanSolution> future : futures) {
+				future.cancel(true);
+			}
+			pool.shutdownNow();
+			synchronized(running) {
+				running.remove(Thread.currentThread());
+			}
+		}
+	}
+
+	@Override
+	public void interrupt(Thread solvingThread) {
+		List<Racer> racers;
+		synchronized(running) {
+			racers = running.get(solvingThread);
+			if(racers == null) {
+				// The solve has not registered its racers yet
+				solvingThread.interrupt();
+				return;
+			}
+		}
+		synchronized(racers) {
+			for(Racer racer : racers) {
+				racer.interrupt();
+			}
+		}
+	}
+}
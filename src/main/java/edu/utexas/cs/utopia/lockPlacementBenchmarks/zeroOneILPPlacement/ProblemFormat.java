@@ -0,0 +1,30 @@
+package edu.utexas.cs.utopia.lockPlacementBenchmarks.zeroOneILPPlacement;
+
+/**
+ * File formats a {@link PseudoBooleanProblem} can be written in
+ * (see {@link ProblemWriter})
+ *
+ * @author Ben_Sepanski
+ *
+ */
+public enum ProblemFormat {
+	/** The OPB format of the pseudo-boolean competitions */
+	OPB("opb"),
+	/** The (pre-2022) weighted partial MaxSAT format of the MaxSAT evaluations */
+	WCNF("wcnf"),
+	/** The CPLEX LP format, read by most MIP solvers */
+	LP("lp");
+
+	private final String extension;
+
+	private ProblemFormat(String extension) {
+		this.extension = extension;
+	}
+
+	/**
+	 * @return the file extension of the format
+	 */
+	public String getExtension() {
+		return extension;
+	}
+}
@@ -0,0 +1,169 @@
+package edu.utexas.cs.utopia.lockPlacementBenchmarks.zeroOneILPPlacement;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Write {@link PseudoBooleanProblem}s in standard file formats.
+ *
+ * Variable v is called x(v) in OPB and LP files, and v in WCNF files,
+ * so that any solver's output can be mapped back to the problem.
+ *
+ * @author Ben_Sepanski
+ *
+ */
+public class ProblemWriter {
+	private ProblemWriter() { }
+
+	/**
+	 * Write problem to out in format
+	 *
+	 * @throws IOException
+	 */
+	public static void write(PseudoBooleanProblem problem,
+							 ProblemFormat format,
+							 Writer out) throws IOException {
+		switch(format) {
+		case OPB:
+			writeOPB(problem, out);
+			break;
+		case WCNF:
+			writeWCNF(problem, out);
+			break;
+		case LP:
+			writeLP(problem, out);
+			break;
+		default:
+			throw new IllegalArgumentException("Unrecognized format " + format);
+		}
+		out.flush();
+	}
+
+	/**
+	 * A clause l_1 or ... or l_k is the linear constraint
+	 * 		sum_{positive l} x_l - sum_{negative l} x_-l >= 1 - (number of negative l)
+	 * and exactly-one constraints are equalities.
+	 */
+	private static void writeOPB(PseudoBooleanProblem problem, Writer out) throws IOException {
+		int numConstraints = problem.getClauses().size() + problem.getExactlyOne().size();
+		out.write("* #variable= " + problem.getNumVars() + " #constraint= " + numConstraints + "\n");
+		out.write("* objective offset " + problem.getObjectiveOffset() + "\n");
+		if(problem.getNumObjectiveTerms() > 0) {
+			out.write("min:");
+			for(int t = 0; t < problem.getNumObjectiveTerms(); ++t) {
+				out.write(" +" + problem.getObjectiveWeight(t) + " x" + problem.getObjectiveVar(t));
+			}
+			out.write(" ;\n");
+		}
+		for(int clause[] : problem.getClauses()) {
+			int numNegative = 0;
+			for(int lit : clause) {
+				out.write(lit > 0 ? "+1 x" + lit + " " : "-1 x" + (-lit) + " ");
+				if(lit < 0) ++numNegative;
+			}
+			out.write(">= " + (1 - numNegative) + " ;\n");
+		}
+		for(int exactlyOne[] : problem.getExactlyOne()) {
+			int numNegative = 0;
+			for(int lit : exactlyOne) {
+				out.write(lit > 0 ? "+1 x" + lit + " " : "-1 x" + (-lit) + " ");
+				if(lit < 0) ++numNegative;
+			}
+			out.write("= " + (1 - numNegative) + " ;\n");
+		}
+	}
+
+	/**
+	 * Clauses are hard, and each objective term w * x is the soft
+	 * clause (not x) of weight w. Exactly-one constraints become
+	 * an at-least-one clause and a sequential counter for at-most-one,
+	 * whose auxiliary variables are numbered after the problem's.
+	 */
+	private static void writeWCNF(PseudoBooleanProblem problem, Writer out) throws IOException {
+		List<int[]> hard = new ArrayList<>(problem.getClauses());
+		int numVars = problem.getNumVars();
+		for(int exactlyOne[] : problem.getExactlyOne()) {
+			hard.add(exactlyOne);
+			// s_l iff one of the first l+1 literals is true
+			int k = exactlyOne.length;
+			int prevS = 0;
+			for(int l = 0; l < k; ++l) {
+				int lit = exactlyOne[l];
+				if(l > 0) {
+					// at most one: not (s_{l-1} and lit)
+					hard.add(new int[] {-prevS, -lit});
+				}
+				if(l < k - 1) {
+					int s = ++numVars;
+					hard.add(new int[] {-lit, s});
+					if(l > 0) {
+						hard.add(new int[] {-prevS, s});
+					}
+					prevS = s;
+				}
+			}
+		}
+
+		long top = 1;
+		for(int t = 0; t < problem.getNumObjectiveTerms(); ++t) {
+			top += problem.getObjectiveWeight(t);
+		}
+		out.write("c objective offset " + problem.getObjectiveOffset() + "\n");
+		out.write("p wcnf " + numVars + " "
+				  + (hard.size() + problem.getNumObjectiveTerms()) + " " + top + "\n");
+		for(int clause[] : hard) {
+			out.write(Long.toString(top));
+			for(int lit : clause) {
+				out.write(" " + lit);
+			}
+			out.write(" 0\n");
+		}
+		for(int t = 0; t < problem.getNumObjectiveTerms(); ++t) {
+			out.write(problem.getObjectiveWeight(t) + " -" + problem.getObjectiveVar(t) + " 0\n");
+		}
+	}
+
+	/**
+	 * Constraints are written as in {@link #writeOPB(PseudoBooleanProblem, Writer)},
+	 * and every variable is binary.
+	 */
+	private static void writeLP(PseudoBooleanProblem problem, Writer out) throws IOException {
+		out.write("\\ objective offset " + problem.getObjectiveOffset() + "\n");
+		out.write("Minimize\n obj:");
+		if(problem.getNumObjectiveTerms() == 0) {
+			// x1 need not exist, so write a constant objective
+			out.write(" 0");
+		}
+		for(int t = 0; t < problem.getNumObjectiveTerms(); ++t) {
+			out.write(" + " + problem.getObjectiveWeight(t) + " x" + problem.getObjectiveVar(t));
+		}
+		out.write("\nSubject To\n");
+		int c = 0;
+		for(int clause[] : problem.getClauses()) {
+			writeLPRow(out, "c" + c++, clause, ">=");
+		}
+		for(int exactlyOne[] : problem.getExactlyOne()) {
+			writeLPRow(out, "c" + c++, exactlyOne, "=");
+		}
+		out.write("Binary\n");
+		for(int v = 1; v <= problem.getNumVars(); ++v) {
+			out.write(" x" + v + "\n");
+		}
+		out.write("End\n");
+	}
+
+	/**
+	 * Write sum of lits (op) 1 as a row of an LP file
+	 */
+	private static void writeLPRow(Writer out, String name, int lits[], String op) throws IOException {
+		out.write(" " + name + ":");
+		int numNegative = 0;
+		for(int lit : lits) {
+			out.write(lit > 0 ? " + x" + lit : " - x" + (-lit));
+			if(lit < 0) ++numNegative;
+		}
+		out.write(" " + op + " " + (1 - numNegative) + "\n");
+	}
+}
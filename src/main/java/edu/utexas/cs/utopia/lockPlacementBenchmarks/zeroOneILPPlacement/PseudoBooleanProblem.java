@@ -0,0 +1,354 @@
+package edu.utexas.cs.utopia.lockPlacementBenchmarks.zeroOneILPPlacement;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A solver-neutral 0-1 minimization problem
+ *
+ * 		minimize    offset + w_1 * x_1 + ... + w_m * x_m
+ * 		subject to  clauses
+ * 		            exactly-one constraints
+ *
+ * over boolean variables 1, ..., numVars. Literals are written
+ * as in DIMACS: v for variable v, -v for its negation.
+ *
+ * The constants {@link #TRUE} and {@link #FALSE} may be passed
+ * wherever a literal is expected. They are simplified away, so
+ * they never appear in the stored constraints.
+ *
+ * A problem may carry a hint: a feasible assignment (e.g. a
+ * previous solution) which backends may start from or use
+ * as an upper bound on the optimum.
+ *
+ * @author Ben_Sepanski
+ *
+ */
+public class PseudoBooleanProblem {
+	/** The literal which is always true */
+	public static final int TRUE = Integer.MAX_VALUE;
+	/** The literal which is always false */
+	public static final int FALSE = 0;
+
+	// names.get(v-1) is the name of variable v
+	private final List<String> names = new ArrayList<>();
+	private final List<int[]> clauses = new ArrayList<>();
+	private final List<int[]> exactlyOne = new ArrayList<>();
+	private final List<Long> objWeights = new ArrayList<>();
+	private final List<Integer> objVars = new ArrayList<>();
+	private long objOffset = 0;
+	// Set if a constraint simplified to false
+	private boolean triviallyInfeasible = false;
+	// definitions.get(v-1) are the operands of variable v if it was
+	// made by defineOr (or defineAnd, if v is in conjunctions), else null
+	private final List<int[]> definitions = new ArrayList<>();
+	private final BitSet conjunctions = new BitSet();
+	// a feasible assignment, or null
+	private boolean hint[] = null;
+
+	/**
+	 * @param name a name for the variable (used by backends which
+	 *             name variables, and for debugging)
+	 * @return a fresh variable
+	 */
+	public int newVar(String name) {
+		names.add(name);
+		definitions.add(null);
+		return names.size();
+	}
+
+	/**
+	 * @return the negation of literal lit
+	 */
+	public static int not(int lit) {
+		if(lit == TRUE) return FALSE;
+		if(lit == FALSE) return TRUE;
+		return -lit;
+	}
+
+	/**
+	 * Require at least one of lits to be true
+	 */
+	public void addClause(List<Integer> lits) {
+		List<Integer> simplified = new ArrayList<>();
+		for(int lit : lits) {
+			if(lit == TRUE) return;
+			if(lit != FALSE) simplified.add(lit);
+		}
+		if(simplified.isEmpty()) {
+			triviallyInfeasible = true;
+			return;
+		}
+		clauses.add(toArray(simplified));
+	}
+
+	/**
+	 * Require exactly one of lits to be true
+	 */
+	public void addExactlyOne(List<Integer> lits) {
+		List<Integer> simplified = new ArrayList<>();
+		boolean hasTrue = false;
+		for(int lit : lits) {
+			if(lit == TRUE) {
+				if(hasTrue) {
+					triviallyInfeasible = true;
+					return;
+				}
+				hasTrue = true;
+			}
+			else if(lit != FALSE) {
+				simplified.add(lit);
+			}
+		}
+		if(hasTrue) {
+			for(int lit : simplified) {
+				addClause(Collections.singletonList(not(lit)));
+			}
+		}
+		else if(simplified.size() == 1) {
+			addClause(simplified);
+		}
+		else if(simplified.isEmpty()) {
+			triviallyInfeasible = true;
+		}
+		else {
+			exactlyOne.add(toArray(simplified));
+		}
+	}
+
+	/**
+	 * Add weight * [lit] to the objective
+	 *
+	 * @param weight a non-negative weight
+	 * @param lit
+	 */
+	public void addObjective(long weight, int lit) {
+		if(weight < 0) {
+			throw new IllegalArgumentException("Negative weight " + weight);
+		}
+		if(weight == 0 || lit == FALSE) return;
+		if(lit == TRUE) {
+			objOffset += weight;
+			return;
+		}
+		if(lit < 0) {
+			// w * [not x] = w - w * [x] would need a negative weight,
+			// so name the negation instead
+			lit = defineOr("not_" + (-lit), Collections.singletonList(lit));
+		}
+		objWeights.add(weight);
+		objVars.add(lit);
+	}
+
+	/**
+	 * Make a variable equivalent to the disjunction of lits
+	 *
+	 * @param name the name of the variable
+	 * @param lits
+	 * @return the variable, or a constant if the disjunction
+	 *         simplifies to one. A single literal is returned as is.
+	 */
+	public int defineOr(String name, List<Integer> lits) {
+		List<Integer> simplified = new ArrayList<>();
+		for(int lit : lits) {
+			if(lit == TRUE) return TRUE;
+			if(lit != FALSE) simplified.add(lit);
+		}
+		if(simplified.isEmpty()) return FALSE;
+		if(simplified.size() == 1 && simplified.get(0) > 0) return simplified.get(0);
+		int aux = newVar(name);
+		definitions.set(aux - 1, toArray(simplified));
+		// aux -> lit_1 or ... or lit_k
+		List<Integer> clause = new ArrayList<>(simplified);
+		clause.add(-aux);
+		clauses.add(toArray(clause));
+		// lit_i -> aux
+		for(int lit : simplified) {
+			clauses.add(new int[] {-lit, aux});
+		}
+		return aux;
+	}
+
+	/**
+	 * Make a variable equivalent to lit1 and lit2
+	 *
+	 * @return the variable, or a constant if the conjunction
+	 *         simplifies to one
+	 * @see #defineOr(String, List)
+	 */
+	public int defineAnd(String name, int lit1, int lit2) {
+		if(lit1 == FALSE || lit2 == FALSE) return FALSE;
+		if(lit1 == TRUE) return lit2;
+		if(lit2 == TRUE) return lit1;
+		int aux = newVar(name);
+		definitions.set(aux - 1, new int[] {lit1, lit2});
+		conjunctions.set(aux);
+		clauses.add(new int[] {-aux, lit1});
+		clauses.add(new int[] {-aux, lit2});
+		clauses.add(new int[] {aux, -lit1, -lit2});
+		return aux;
+	}
+
+	/**
+	 * Set every variable made by {@link #defineOr(String, List)} or
+	 * {@link #defineAnd(String, int, int)} to the value of its
+	 * definition, given the values of the variables it depends on
+	 *
+	 * @param values values[v] is the value of variable v
+	 */
+	public void evaluateDefinitions(boolean values[]) {
+		// operands are always made before the variables they define
+		for(int v = 1; v <= getNumVars(); ++v) {
+			int operands[] = definitions.get(v - 1);
+			if(operands == null) continue;
+			boolean isAnd = conjunctions.get(v);
+			boolean value = isAnd;
+			for(int lit : operands) {
+				if(value(values, lit) != isAnd) {
+					value = !isAnd;
+					break;
+				}
+			}
+			values[v] = value;
+		}
+	}
+
+	/**
+	 * Hint a feasible assignment to backends
+	 *
+	 * @param values values[v] is the value of variable v
+	 * @throws IllegalArgumentException if values is infeasible
+	 */
+	public void setHint(boolean values[]) {
+		if(!isSatisfied(values)) {
+			throw new IllegalArgumentException("Infeasible hint");
+		}
+		this.hint = values;
+	}
+
+	/**
+	 * @return the hinted feasible assignment, or null if there is none.
+	 *         Do not modify.
+	 */
+	public boolean[] getHint() {
+		return hint;
+	}
+
+	/**
+	 * @return true iff values satisfies every constraint
+	 *
+	 * @param values values[v] is the value of variable v
+	 */
+	public boolean isSatisfied(boolean values[]) {
+		if(triviallyInfeasible) return false;
+		for(int clause[] : clauses) {
+			boolean sat = false;
+			for(int lit : clause) {
+				sat |= value(values, lit);
+			}
+			if(!sat) return false;
+		}
+		for(int lits[] : exactlyOne) {
+			int numTrue = 0;
+			for(int lit : lits) {
+				if(value(values, lit)) ++numTrue;
+			}
+			if(numTrue != 1) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @return the value of the objective under values
+	 */
+	public long objectiveValue(boolean values[]) {
+		long value = objOffset;
+		for(int t = 0; t < objVars.size(); ++t) {
+			if(values[objVars.get(t)]) {
+				value += objWeights.get(t);
+			}
+		}
+		return value;
+	}
+
+	/**
+	 * @return the value of lit under values
+	 */
+	public static boolean value(boolean values[], int lit) {
+		return lit > 0 ? values[lit] : !values[-lit];
+	}
+
+	private static int[] toArray(List<Integer> list) {
+		int arr[] = new int[list.size()];
+		for(int i = 0; i < arr.length; ++i) {
+			arr[i] = list.get(i);
+		}
+		return arr;
+	}
+
+	/**
+	 * @return the number of variables
+	 */
+	public int getNumVars() {
+		return names.size();
+	}
+
+	/**
+	 * @return the name of variable v
+	 */
+	public String getName(int v) {
+		return names.get(v - 1);
+	}
+
+	/**
+	 * @return the clauses. Do not modify.
+	 */
+	public List<int[]> getClauses() {
+		return clauses;
+	}
+
+	/**
+	 * @return the exactly-one constraints, each of at least two
+	 *         literals. Do not modify.
+	 */
+	public List<int[]> getExactlyOne() {
+		return exactlyOne;
+	}
+
+	/**
+	 * @return the number of terms in the objective
+	 */
+	public int getNumObjectiveTerms() {
+		return objVars.size();
+	}
+
+	/**
+	 * @return the weight of objective term t
+	 */
+	public long getObjectiveWeight(int t) {
+		return objWeights.get(t);
+	}
+
+	/**
+	 * @return the variable of objective term t
+	 */
+	public int getObjectiveVar(int t) {
+		return objVars.get(t);
+	}
+
+	/**
+	 * @return the constant part of the objective
+	 */
+	public long getObjectiveOffset() {
+		return objOffset;
+	}
+
+	/**
+	 * @return true iff some constraint simplified to false
+	 */
+	public boolean isTriviallyInfeasible() {
+		return triviallyInfeasible;
+	}
+}
@@ -0,0 +1,67 @@
+package edu.utexas.cs.utopia.lockPlacementBenchmarks.zeroOneILPPlacement;
+
+/**
+ * A feasible assignment of a {@link PseudoBooleanProblem}, with
+ * its objective value and the best lower bound the backend proved
+ *
+ * @author Ben_Sepanski
+ *
+ */
+public class PseudoBooleanSolution {
+	// values[v] is the value of variable v (values[0] is unused)
+	private final boolean values[];
+	private final long cost, lowerBound;
+	private final String solverName;
+
+	/**
+	 * @param values values[v] is the value of variable v
+	 * @param cost the objective value of values
+	 * @param lowerBound a lower bound on the objective value of
+	 *                   any feasible assignment
+	 * @param solverName the name of the backend which found values
+	 */
+	public PseudoBooleanSolution(boolean values[], long cost, long lowerBound, String solverName) {
+		this.values = values;
+		this.cost = cost;
+		this.lowerBound = Math.min(cost, lowerBound);
+		this.solverName = solverName;
+	}
+
+	/**
+	 * @return the value of literal lit
+	 */
+	public boolean isTrue(int lit) {
+		if(lit == PseudoBooleanProblem.TRUE) return true;
+		if(lit == PseudoBooleanProblem.FALSE) return false;
+		return PseudoBooleanProblem.value(values, lit);
+	}
+
+	/**
+	 * @return the objective value
+	 */
+	public long getCost() {
+		return cost;
+	}
+
+	/**
+	 * @return a lower bound on the objective value of any
+	 *         feasible assignment
+	 */
+	public long getLowerBound() {
+		return lowerBound;
+	}
+
+	/**
+	 * @return true iff the assignment is proven optimal
+	 */
+	public boolean isOptimal() {
+		return cost <= lowerBound;
+	}
+
+	/**
+	 * @return the name of the backend which found the assignment
+	 */
+	public String getSolverName() {
+		return solverName;
+	}
+}
@@ -0,0 +1,103 @@
+package edu.utexas.cs.utopia.lockPlacementBenchmarks.zeroOneILPPlacement;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.microsoft.z3.ArithExpr;
+import com.microsoft.z3.BoolExpr;
+import com.microsoft.z3.Context;
+
+/**
+ * A weighted sum of boolean literals
+ * 		w_1 * [b_1] + ... + w_m * [b_m]
+ * with positive integer weights, which Z3 can handle
+ * with its pseudo-boolean and MaxSAT engines instead of
+ * as integer arithmetic.
+ *
+ * @author Ben_Sepanski
+ *
+ */
+class PseudoBooleanSum {
+	private final List<Long> weights = new ArrayList<>();
+	private final List<BoolExpr> literals = new ArrayList<>();
+
+	/**
+	 * Add weight * [literal] to the sum
+	 *
+	 * @param weight a non-negative weight. Zero weights are dropped.
+	 * @param literal
+	 */
+	public void add(long weight, BoolExpr literal) {
+		if(weight < 0) {
+			throw new IllegalArgumentException("Negative weight " + weight);
+		}
+		if(weight == 0) return;
+		weights.add(weight);
+		literals.add(literal);
+	}
+
+	/**
+	 * @return the number of terms in the sum
+	 */
+	public int size() {
+		return literals.size();
+	}
+
+	/**
+	 * @return the weight of term t
+	 */
+	public long getWeight(int t) {
+		return weights.get(t);
+	}
+
+	/**
+	 * @return the literal of term t
+	 */
+	public BoolExpr getLiteral(int t) {
+		return literals.get(t);
+	}
+
+	/**
+	 * @return the constraint that the sum is at most bound. This is a
+	 *         pseudo-boolean constraint when the weights and bound fit
+	 *         in an int, since that is all Z3 accepts, and otherwise
+	 *         a constraint on {@link #toArith(Context)}.
+	 */
+	public BoolExpr mkLe(Context ctx, long bound) {
+		boolean fitsInInt = bound <= Integer.MAX_VALUE;
+		for(int t = 0; t < weights.size() && fitsInInt; ++t) {
+			fitsInInt = weights.get(t) <= Integer.MAX_VALUE;
+		}
+		if(!fitsInInt) {
+			return ctx.mkLe(toArith(ctx), ctx.mkInt(bound));
+		}
+		int w[] = new int[weights.size()];
+		for(int t = 0; t < w.length; ++t) {
+			w[t] = (int) (long) weights.get(t);
+		}
+		return ctx.mkPBLe(w, getLiterals(), (int) bound);
+	}
+
+	/**
+	 * @return the literals as an array
+	 */
+	public BoolExpr[] getLiterals() {
+		return literals.toArray(new BoolExpr[literals.size()]);
+	}
+
+	/**
+	 * @return the sum as an integer expression
+	 */
+	public ArithExpr toArith(Context ctx) {
+		if(literals.isEmpty()) {
+			return ctx.mkInt(0);
+		}
+		ArithExpr terms[] = new ArithExpr[literals.size()];
+		for(int t = 0; t < terms.length; ++t) {
+			terms[t] = (ArithExpr) ctx.mkITE(literals.get(t),
+											 ctx.mkInt(weights.get(t)),
+											 ctx.mkInt(0));
+		}
+		return ctx.mkAdd(terms);
+	}
+}
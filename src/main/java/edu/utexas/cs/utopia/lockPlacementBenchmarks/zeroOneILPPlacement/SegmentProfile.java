@@ -0,0 +1,117 @@
+package edu.utexas.cs.utopia.lockPlacementBenchmarks.zeroOneILPPlacement;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import edu.utexas.cs.utopia.lockPlacementBenchmarks.zeroOneILPPlacement.instrumentation.TwoPhaseLockManager;
+
+/**
+ * The number of entries to each atomic segment, measured by running
+ * a monitor instrumented for profiling (see {@link TwoPhaseLockManager}).
+ *
+ * Two segments are expected to hold a lock at the same time in
+ * proportion to the product of their utilizations, i.e. frequency times
+ * hold time, so each segment gets a weight proportional to its utilization
+ * (see {@link #toWeights(double[], int)}), and the conflict of a pair of
+ * segments is weighted by the product of their weights
+ * (see {@link LockPlacementInstance#cost}). Without a profile,
+ * segments are assumed to be equally frequent, and with no
+ * hold time estimate, equally long.
+ *
+ * @author Ben_Sepanski
+ *
+ */
+public class SegmentProfile {
+	// The largest weight of a segment
+	public static final int MAX_WEIGHT = 100;
+
+	// map (key of atomic segment) -> number of entries
+	private final Map<String, Long> entryCounts;
+
+	private SegmentProfile(Map<String, Long> entryCounts) {
+		this.entryCounts = entryCounts;
+	}
+
+	/**
+	 * Read a profile written by {@link TwoPhaseLockManager}
+	 *
+	 * @param file the profile
+	 * @return the profile
+	 */
+	public static SegmentProfile load(Path file) {
+		Map<String, Long> entryCounts = new HashMap<>();
+		try(BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			String line;
+			while((line = reader.readLine()) != null) {
+				if(line.isEmpty()) continue;
+				String fields[] = line.split("\t");
+				if(fields.length != 2) {
+					throw new RuntimeException("Malformed line in profile " + file + ": " + line);
+				}
+				Long prev = entryCounts.get(fields[0]);
+				entryCounts.put(fields[0], (prev == null ? 0 : prev) + Long.parseLong(fields[1]));
+			}
+		}
+		catch(IOException | NumberFormatException e) {
+			throw new RuntimeException("Failed to read profile " + file, e);
+		}
+		return new SegmentProfile(entryCounts);
+	}
+
+	/**
+	 * @return the number of entries to the atomic segment with
+	 *         key segmentKey, 0 if it never ran
+	 */
+	public long getEntryCount(String segmentKey) {
+		Long count = entryCounts.get(segmentKey);
+		return count == null ? 0 : count;
+	}
+
+	/**
+	 * @param segmentKeys the keys of the atomic segments of a monitor
+	 * @return the *a*th entry is the number of entries to atomic segment *a*
+	 */
+	public double[] getEntryCounts(List<String> segmentKeys) {
+		double counts[] = new double[segmentKeys.size()];
+		for(int a = 0; a < counts.length; ++a) {
+			counts[a] = getEntryCount(segmentKeys.get(a));
+		}
+		return counts;
+	}
+
+	/**
+	 * Weight the atomic segments of a monitor by scale times their
+	 * utilization relative to the mean utilization of its segments,
+	 * rounded and clamped to [scale, scale * {@link #MAX_WEIGHT}].
+	 * Segments of average (or lower) utilization keep the weight
+	 * scale they have without a profile, so no conflict is ever ignored.
+	 *
+	 * @param utilizations the *a*th entry is the utilization
+	 *                     of atomic segment *a*, in any unit
+	 * @param scale the weight of a segment of average utilization,
+	 *              at least 1
+	 * @return the *a*th entry is the weight of atomic segment *a*
+	 */
+	public static int[] toWeights(double utilizations[], int scale) {
+		if(scale < 1 || (long) scale * MAX_WEIGHT > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Invalid segment weight scale " + scale);
+		}
+		int weights[] = new int[utilizations.length];
+		double total = 0;
+		for(double utilization : utilizations) {
+			total += utilization;
+		}
+		for(int a = 0; a < weights.length; ++a) {
+			double relative = total == 0 ? 0 : utilizations[a] * weights.length / total;
+			weights[a] = (int) Math.max(scale, Math.min((long) scale * MAX_WEIGHT,
+														Math.round(scale * relative)));
+		}
+		return weights;
+	}
+}
@@ -0,0 +1,44 @@
+package edu.utexas.cs.utopia.lockPlacementBenchmarks.zeroOneILPPlacement;
+
+/**
+ * How a {@link LockConstraintProblem} asks Z3 for a minimum-cost
+ * lock assignment
+ *
+ * @author Ben_Sepanski
+ *
+ */
+public enum SolveStrategy {
+	/**
+	 * Ranjit's formulation: duplicate every lock variable and assert
+	 * that any alternative assignment satisfying the constraints costs
+	 * at least as much. Requires quantifier instantiation.
+	 *
+	 * This is the default, although {@link #OPTIMIZE} is usually much
+	 * faster, because
+	 *   - OPTIMIZE only switches over once it gives the same lock
+	 *     assignments on the examples, and that has not been checked
+	 *     yet (run examples/make_examples.sh with -s quantified and
+	 *     with -s optimize, and diff -r the two directories in
+	 *     examples/modifiedClasses)
+	 *   - both find a minimum-cost assignment, but when several
+	 *     assignments cost the same they may pick different ones,
+	 *     which would change the instrumented benchmarks
+	 *   - with a timeout, OPTIMIZE uses the cheapest assignment found
+	 *     so far, while QUANTIFIED throws a {@link SolveTimeoutException}
+	 *     (or falls back on a warm start) rather than place locks which
+	 *     are not proven optimal
+	 */
+	QUANTIFIED,
+	/**
+	 * Minimize the cost directly with Z3's Optimize engine, keeping
+	 * the constraints as hard clauses
+	 */
+	OPTIMIZE,
+	/**
+	 * Find any assignment, then bisect between the best proven lower
+	 * bound and the cheapest assignment found so far by asserting
+	 * pseudo-boolean bounds on the cost. If time runs out, the
+	 * cheapest assignment found so far is used.
+	 */
+	BOUND_TIGHTENING
+}
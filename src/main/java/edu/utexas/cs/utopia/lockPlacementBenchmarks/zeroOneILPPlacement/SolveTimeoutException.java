@@ -0,0 +1,16 @@
+package edu.utexas.cs.utopia.lockPlacementBenchmarks.zeroOneILPPlacement;
+
+/**
+ * Thrown when a solver runs out of time before finding
+ * any lock assignment at all
+ * 
+ * @author Ben_Sepanski
+ *
+ */
+public class SolveTimeoutException extends RuntimeException {
+	private static final long serialVersionUID = 1L;
+
+	public SolveTimeoutException(String message) {
+		super(message);
+	}
+}
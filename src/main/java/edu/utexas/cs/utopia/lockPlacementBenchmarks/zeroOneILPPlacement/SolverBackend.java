@@ -0,0 +1,44 @@
+package edu.utexas.cs.utopia.lockPlacementBenchmarks.zeroOneILPPlacement;
+
+/**
+ * An engine which minimizes {@link PseudoBooleanProblem}s.
+ *
+ * Implementations must be safe to call from several threads
+ * at once on different problems.
+ *
+ * @author Ben_Sepanski
+ *
+ */
+public interface SolverBackend {
+	/**
+	 * Minimize the objective of problem
+	 *
+	 * @param problem the problem to solve
+	 * @param timeoutMillis how long to solve for in milliseconds,
+	 *                      or 0 for no timeout. When time runs out, the
+	 *                      best assignment found so far is returned.
+	 * @return the best assignment found
+	 * @throws SolveTimeoutException if no assignment was found in time
+	 */
+	PseudoBooleanSolution solve(PseudoBooleanProblem problem, long timeoutMillis);
+
+	/**
+	 * @return a short name of the backend and its settings,
+	 *         e.g. "z3-optimize"
+	 */
+	String getName();
+
+	/**
+	 * Make the solve running on solvingThread (if any) give up
+	 * as soon as possible. The interrupted solve fails, or returns
+	 * the best assignment found so far.
+	 *
+	 * The solve may not have registered what it runs yet, so if
+	 * there is nothing to stop, solvingThread is interrupted, and
+	 * a solve which starts on an interrupted thread fails.
+	 *
+	 * @param solvingThread the thread which called
+	 *                      {@link #solve(PseudoBooleanProblem, long)}
+	 */
+	void interrupt(Thread solvingThread);
+}
@@ -0,0 +1,328 @@
+package edu.utexas.cs.utopia.lockPlacementBenchmarks.zeroOneILPPlacement;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import edu.utexas.cs.utopia.lockPlacementBenchmarks.zeroOneILPPlacement.analysis.AliasRelation;
+import edu.utexas.cs.utopia.lockPlacementBenchmarks.zeroOneILPPlacement.analysis.LValueBox;
+import edu.utexas.cs.utopia.lockPlacementBenchmarks.zeroOneILPPlacement.analysis.PointerAnalysis;
+import soot.ArrayType;
+import soot.Body;
+import soot.DoubleType;
+import soot.FloatType;
+import soot.Local;
+import soot.LongType;
+import soot.Modifier;
+import soot.PhaseOptions;
+import soot.PointsToAnalysis;
+import soot.PointsToSet;
+import soot.RefLikeType;
+import soot.RefType;
+import soot.Scene;
+import soot.SootClass;
+import soot.SootField;
+import soot.SootMethod;
+import soot.Type;
+import soot.Unit;
+import soot.Value;
+import soot.ValueBox;
+import soot.VoidType;
+import soot.jimple.ArrayRef;
+import soot.jimple.DoubleConstant;
+import soot.jimple.FloatConstant;
+import soot.jimple.InstanceFieldRef;
+import soot.jimple.IntConstant;
+import soot.jimple.InvokeExpr;
+import soot.jimple.Jimple;
+import soot.jimple.JimpleBody;
+import soot.jimple.LongConstant;
+import soot.jimple.StaticFieldRef;
+import soot.jimple.spark.SparkTransformer;
+import soot.util.Chain;
+
+/**
+ * A pointer analysis backed by the points-to sets of Soot's Spark.
+ *
+ * An LValue names a memory cell: a local variable, this, a parameter,
+ * a static field, a field of some object, or an element of some array.
+ * Two LValues alias if they name the same cell, so
+ *      - locals, this, and parameters only alias themselves,
+ *        since no heap access can modify them
+ *      - static fields only alias themselves
+ *      - instance fields alias if they are the same field of objects
+ *        which may be the same, according to the points-to sets of
+ *        their bases. The same field of this in two methods of a
+ *        monitor MUST_ALIAS, since the analysis of a monitor
+ *        describes a single instance of it (global locks are
+ *        attributes of this)
+ *      - array elements alias if their arrays may be the same,
+ *        since indices are not tracked
+ * A base with an empty points-to set, e.g. a local in a method Spark
+ * did not reach, may alias anything.
+ *
+ * Monitors have no main method, and Spark gives the receiver and
+ * parameters of entry points empty points-to sets, so Spark runs from
+ * a generated harness instead. The harness allocates each monitor,
+ * then calls each of its methods. Reference arguments are drawn from
+ * a static field standing for the objects outside the monitor, which
+ * holds one object of each (concrete) parameter type, the monitors,
+ * and every object a monitor method returns.
+ *
+ * Soot must be run in whole-program mode, so that Spark can
+ * retrieve the bodies of library methods.
+ *
+ * @author Ben_Sepanski
+ *
+ */
+public class SparkPointerAnalysis implements PointerAnalysis {
+	private static Logger log = LoggerFactory.getLogger(SparkPointerAnalysis.class);
+	public static final String HARNESS_CLASS = "lockPlacement$PointsToHarness",
+							   EXTERNAL_FIELD = "external";
+
+	private final PointsToAnalysis pta;
+	// map (this local of an instance method of a monitor) -> monitor
+	private final Map<Local, SootClass> thisLocalOf = new HashMap<>();
+
+	/**
+	 * Run Spark on a harness which uses monitorClasses
+	 *
+	 * @param monitorClasses the monitors, whose methods must have
+	 *                       active bodies
+	 */
+	public SparkPointerAnalysis(List<SootClass> monitorClasses) {
+		if(Scene.v().containsClass(HARNESS_CLASS)) {
+			throw new RuntimeException("Spark has already been run on a harness " + HARNESS_CLASS);
+		}
+		log.debug("Building points-to harness for " + monitorClasses.size() + " monitors");
+		SootMethod main = buildHarness(monitorClasses);
+		Scene.v().setEntryPoints(Collections.singletonList(main));
+
+		log.debug("Running Spark");
+		Map<String, String> sparkOptions = new HashMap<>(PhaseOptions.v().getPhaseOptions("cg.spark"));
+		sparkOptions.put("enabled", "true");
+		SparkTransformer.v().transform("cg.spark", sparkOptions);
+		this.pta = Scene.v().getPointsToAnalysis();
+
+		for(SootClass monitorClass : monitorClasses) {
+			for(SootMethod meth : monitorClass.getMethods()) {
+				if(meth.isStatic() || !meth.hasActiveBody()) continue;
+				Local thisLocal = meth.getActiveBody().getThisLocal();
+				if(isOnlyIdentityDef(meth.getActiveBody(), thisLocal)) {
+					thisLocalOf.put(thisLocal, monitorClass);
+				}
+			}
+		}
+	}
+
+	@Override
+	public AliasRelation getAliasRelation(LValueBox lValue1, LValueBox lValue2) {
+		Value v1 = lValue1.getValue(),
+			  v2 = lValue2.getValue();
+		if(v1.equivTo(v2)) {
+			return AliasRelation.MUST_ALIAS;
+		}
+		if(v1 instanceof StaticFieldRef && v2 instanceof StaticFieldRef) {
+			SootField field1 = ((StaticFieldRef) v1).getField(),
+					  field2 = ((StaticFieldRef) v2).getField();
+			return field1.equals(field2) ? AliasRelation.MUST_ALIAS : AliasRelation.NOT_ALIAS;
+		}
+		if(v1 instanceof ArrayRef && v2 instanceof ArrayRef) {
+			return mayBeSameObject((Local) ((ArrayRef) v1).getBase(),
+								   (Local) ((ArrayRef) v2).getBase())
+					? AliasRelation.MAY_ALIAS
+					: AliasRelation.NOT_ALIAS;
+		}
+		if(v1 instanceof InstanceFieldRef && v2 instanceof InstanceFieldRef) {
+			InstanceFieldRef ref1 = (InstanceFieldRef) v1,
+							 ref2 = (InstanceFieldRef) v2;
+			if(!ref1.getField().equals(ref2.getField())) {
+				return AliasRelation.NOT_ALIAS;
+			}
+			Local base1 = (Local) ref1.getBase(),
+				  base2 = (Local) ref2.getBase();
+			SootClass monitor1 = thisLocalOf.get(base1);
+			if(monitor1 != null && monitor1.equals(thisLocalOf.get(base2))) {
+				return AliasRelation.MUST_ALIAS;
+			}
+			return mayBeSameObject(base1, base2)
+					? AliasRelation.MAY_ALIAS
+					: AliasRelation.NOT_ALIAS;
+		}
+		// Different kinds of cells, or a local/this/parameter
+		return AliasRelation.NOT_ALIAS;
+	}
+
+	/**
+	 * @return false iff Spark shows base1 and base2 never point
+	 *         to the same object
+	 */
+	private boolean mayBeSameObject(Local base1, Local base2) {
+		PointsToSet pts1 = pta.reachingObjects(base1),
+					pts2 = pta.reachingObjects(base2);
+		if(pts1.isEmpty() || pts2.isEmpty()) {
+			return true;
+		}
+		return pts1.hasNonEmptyIntersection(pts2);
+	}
+
+	/**
+	 * @return true iff the only definition of local in b is its
+	 *         identity statement
+	 */
+	private static boolean isOnlyIdentityDef(Body b, Local local) {
+		int numDefs = 0;
+		for(Unit ut : b.getUnits()) {
+			for(ValueBox vb : ut.getDefBoxes()) {
+				if(vb.getValue() == local) {
+					++numDefs;
+				}
+			}
+		}
+		return numDefs == 1;
+	}
+
+	/**
+	 * Build the harness class, with a static field holding the
+	 * objects outside the monitors, and a main method which
+	 * uses the monitors
+	 *
+	 * @param monitorClasses the monitors
+	 * @return the main method of the harness
+	 */
+	private static SootMethod buildHarness(List<SootClass> monitorClasses) {
+		RefType objectType = Scene.v().getObjectType();
+		SootClass harness = new SootClass(HARNESS_CLASS, Modifier.PUBLIC);
+		harness.setSuperclass(Scene.v().getSootClass(objectType.getClassName()));
+		Scene.v().addClass(harness);
+		harness.setLibraryClass();
+		SootField external = new SootField(EXTERNAL_FIELD, objectType,
+										   Modifier.PUBLIC | Modifier.STATIC);
+		harness.addField(external);
+
+		List<Type> mainParams = new ArrayList<>();
+		mainParams.add(ArrayType.v(RefType.v("java.lang.String"), 1));
+		SootMethod main = new SootMethod("main", mainParams, VoidType.v(),
+										 Modifier.PUBLIC | Modifier.STATIC);
+		harness.addMethod(main);
+		JimpleBody body = Jimple.v().newBody(main);
+		main.setActiveBody(body);
+		HarnessBuilder builder = new HarnessBuilder(body, external);
+
+		for(SootClass monitorClass : monitorClasses) {
+			if(monitorClass.isInterface() || monitorClass.isAbstract()) continue;
+			Local monitor = builder.newLocal(monitorClass.getType());
+			builder.add(Jimple.v().newAssignStmt(monitor,
+												 Jimple.v().newNewExpr(monitorClass.getType())));
+			builder.storeExternal(monitor);
+			for(SootMethod meth : new ArrayList<>(monitorClass.getMethods())) {
+				if(!meth.isConcrete() || meth.isStaticInitializer()) continue;
+				builder.addCall(monitor, meth);
+			}
+		}
+		builder.add(Jimple.v().newReturnVoidStmt());
+		return main;
+	}
+
+	/**
+	 * Appends the statements of the harness
+	 */
+	private static class HarnessBuilder {
+		private final Body body;
+		private final Chain<Unit> units;
+		private final SootField external;
+		private int numLocals = 0;
+
+		HarnessBuilder(Body body, SootField external) {
+			this.body = body;
+			this.units = body.getUnits();
+			this.external = external;
+		}
+
+		Local newLocal(Type type) {
+			Local local = Jimple.v().newLocal("$h" + (numLocals++), type);
+			body.getLocals().add(local);
+			return local;
+		}
+
+		void add(Unit ut) {
+			units.add(ut);
+		}
+
+		/**
+		 * Add value to the objects outside the monitors
+		 */
+		void storeExternal(Value value) {
+			add(Jimple.v().newAssignStmt(Jimple.v().newStaticFieldRef(external.makeRef()), value));
+		}
+
+		/**
+		 * Call meth (on monitor if it is an instance method), and
+		 * add the returned object to the objects outside the monitors
+		 */
+		void addCall(Local monitor, SootMethod meth) {
+			List<Value> args = new ArrayList<>();
+			for(Type paramType : meth.getParameterTypes()) {
+				args.add(makeArgument(paramType));
+			}
+			InvokeExpr call;
+			if(meth.isStatic()) {
+				call = Jimple.v().newStaticInvokeExpr(meth.makeRef(), args);
+			}
+			else if(meth.isConstructor() || meth.isPrivate()) {
+				call = Jimple.v().newSpecialInvokeExpr(monitor, meth.makeRef(), args);
+			}
+			else {
+				call = Jimple.v().newVirtualInvokeExpr(monitor, meth.makeRef(), args);
+			}
+			if(meth.getReturnType() instanceof RefLikeType) {
+				Local result = newLocal(meth.getReturnType());
+				add(Jimple.v().newAssignStmt(result, call));
+				storeExternal(result);
+			}
+			else {
+				add(Jimple.v().newInvokeStmt(call));
+			}
+		}
+
+		/**
+		 * @return an argument of type paramType: zero for primitives,
+		 *         otherwise an object outside the monitors
+		 */
+		private Value makeArgument(Type paramType) {
+			if(paramType instanceof LongType) return LongConstant.v(0);
+			if(paramType instanceof FloatType) return FloatConstant.v(0);
+			if(paramType instanceof DoubleType) return DoubleConstant.v(0);
+			if(!(paramType instanceof RefLikeType)) return IntConstant.v(0);
+			// Make sure there is some outside object of this type
+			Value fresh = null;
+			if(paramType instanceof ArrayType) {
+				fresh = Jimple.v().newNewArrayExpr(((ArrayType) paramType).getElementType(),
+												   IntConstant.v(1));
+			}
+			else if(paramType instanceof RefType) {
+				SootClass cls = ((RefType) paramType).getSootClass();
+				if(!cls.isPhantom() && !cls.isInterface() && !cls.isAbstract()) {
+					fresh = Jimple.v().newNewExpr((RefType) paramType);
+				}
+			}
+			if(fresh != null) {
+				Local freshLocal = newLocal(paramType);
+				add(Jimple.v().newAssignStmt(freshLocal, fresh));
+				storeExternal(freshLocal);
+			}
+			// Pass any outside object of this type
+			Local outside = newLocal(Scene.v().getObjectType());
+			add(Jimple.v().newAssignStmt(outside,
+										 Jimple.v().newStaticFieldRef(external.makeRef())));
+			Local arg = newLocal(paramType);
+			add(Jimple.v().newAssignStmt(arg, Jimple.v().newCastExpr(outside, paramType)));
+			return arg;
+		}
+	}
+}
@@ -0,0 +1,73 @@
+package edu.utexas.cs.utopia.lockPlacementBenchmarks.zeroOneILPPlacement;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Union-find over the integers 0,...,n-1 with path compression
+ * and union by size
+ * 
+ * @author Ben_Sepanski
+ *
+ */
+class UnionFind {
+	private final int parent[];
+	private final int size[];
+	
+	public UnionFind(int n) {
+		parent = new int[n];
+		size = new int[n];
+		for(int i = 0; i < n; ++i) {
+			parent[i] = i;
+			size[i] = 1;
+		}
+	}
+	
+	/**
+	 * @return the representative of i's class
+	 */
+	public int find(int i) {
+		int root = i;
+		while(parent[root] != root) {
+			root = parent[root];
+		}
+		while(parent[i] != root) {
+			int next = parent[i];
+			parent[i] = root;
+			i = next;
+		}
+		return root;
+	}
+	
+	/**
+	 * Merge the classes of i and j
+	 */
+	public void union(int i, int j) {
+		int ri = find(i), rj = find(j);
+		if(ri == rj) return;
+		if(size[ri] < size[rj]) {
+			int tmp = ri; ri = rj; rj = tmp;
+		}
+		parent[rj] = ri;
+		size[ri] += size[rj];
+	}
+	
+	/**
+	 * @return the classes, each in increasing order, ordered
+	 *         by their least element
+	 */
+	public List<List<Integer>> getClasses() {
+		int classIndex[] = new int[parent.length];
+		List<List<Integer>> classes = new ArrayList<>();
+		for(int i = 0; i < parent.length; ++i) {
+			int root = find(i);
+			// classIndex is offset by one so 0 means unassigned
+			if(classIndex[root] == 0) {
+				classes.add(new ArrayList<Integer>());
+				classIndex[root] = classes.size();
+			}
+			classes.get(classIndex[root] - 1).add(i);
+		}
+		return classes;
+	}
+}
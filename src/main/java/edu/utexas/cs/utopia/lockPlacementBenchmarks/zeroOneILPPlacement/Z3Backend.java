@@ -0,0 +1,571 @@
+package edu.utexas.cs.utopia.lockPlacementBenchmarks.zeroOneILPPlacement;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.microsoft.z3.ArithExpr;
+import com.microsoft.z3.BoolExpr;
+import com.microsoft.z3.Context;
+import com.microsoft.z3.IntNum;
+import com.microsoft.z3.Model;
+import com.microsoft.z3.Optimize;
+import com.microsoft.z3.Params;
+import com.microsoft.z3.Solver;
+import com.microsoft.z3.Status;
+import com.microsoft.z3.Z3Exception;
+
+/**
+ * Solve {@link PseudoBooleanProblem}s with Z3, according to
+ * a {@link SolveStrategy}.
+ *
+ * Each solve gets its own Z3 Context, which is closed afterwards.
+ * A solve may be stopped from another thread with
+ * {@link #interrupt(Thread)}.
+ * 
+ * Besides the strategy, the MaxSAT engine used by Optimize and the
+ * random seed may be set, so that differently configured backends
+ * can race in a {@link PortfolioBackend}.
+ *
+ * Given a timeout, the Optimize and bound tightening strategies
+ * are anytime: when time runs out they return the cheapest
+ * assignment found so far, along with the best proven lower bound
+ * on the cost. If no assignment was found at all, a
+ * {@link SolveTimeoutException} is thrown.
+ *
+ * A hint on the problem (see {@link PseudoBooleanProblem#getHint()})
+ * bounds the cost from above: Optimize and the quantified strategy
+ * only search for assignments at most as costly, and bound tightening
+ * starts bisecting from it instead of looking for a first solution.
+ * If time runs out before anything better is found, the hint is
+ * returned.
+ *
+ * @author Ben_Sepanski
+ *
+ */
+public class Z3Backend implements SolverBackend {
+	private static Logger log = LoggerFactory.getLogger(Z3Backend.class);
+
+	private final SolveStrategy strategy;
+	private final boolean logZ3;
+	// Optimize's maxsat_engine, or null for Z3's default
+	private final String maxSatEngine;
+	// the random_seed, or -1 for Z3's default
+	private final int randomSeed;
+	// The Context of the solve running on each thread
+	private final Map<Thread, Context> running = new HashMap<>();
+
+	/**
+	 * @param strategy how to minimize the objective
+	 * @param logZ3 true iff the Z3 formulas should be logged
+	 */
+	public Z3Backend(SolveStrategy strategy, boolean logZ3) {
+		this(strategy, logZ3, null, -1);
+	}
+
+	/**
+	 * @param strategy how to minimize the objective
+	 * @param logZ3 true iff the Z3 formulas should be logged
+	 * @param maxSatEngine the MaxSAT engine of Optimize (e.g. maxres,
+	 *                     pd-maxres, wmax), or null for the default
+	 * @param randomSeed a random seed, or -1 for the default
+	 */
+	public Z3Backend(SolveStrategy strategy, boolean logZ3, String maxSatEngine, int randomSeed) {
+		this.strategy = strategy;
+		this.logZ3 = logZ3;
+		this.maxSatEngine = maxSatEngine;
+		this.randomSeed = randomSeed;
+	}
+
+	/**
+	 * Build a backend from a description
+	 * 		strategy[:engine=maxSatEngine][:seed=randomSeed]
+	 * e.g. "optimize:engine=pd-maxres:seed=3"
+	 * 
+	 * @param spec the description
+	 * @param logZ3 true iff the Z3 formulas should be logged
+	 * @return the backend
+	 * @throws IllegalArgumentException if spec is malformed
+	 */
+	public static Z3Backend parse(String spec, boolean logZ3) {
+		String parts[] = spec.trim().split(":");
+		SolveStrategy strategy = SolveStrategy.valueOf(parts[0].toUpperCase());
+		String maxSatEngine = null;
+		int randomSeed = -1;
+		for(int p = 1; p < parts.length; ++p) {
+			String keyValue[] = parts[p].split("=", 2);
+			if(keyValue.length != 2) {
+				throw new IllegalArgumentException("Expected key=value, not " + parts[p]);
+			}
+			switch(keyValue[0]) {
+			case "engine":
+				maxSatEngine = keyValue[1];
+				break;
+			case "seed":
+				randomSeed = Integer.parseInt(keyValue[1]);
+				break;
+			default:
+				throw new IllegalArgumentException("Unrecognized Z3 setting " + keyValue[0]);
+			}
+		}
+		return new Z3Backend(strategy, logZ3, maxSatEngine, randomSeed);
+	}
+
+	@Override
+	public String getName() {
+		StringBuilder name = new StringBuilder("z3-");
+		name.append(strategy.toString().toLowerCase());
+		if(maxSatEngine != null) {
+			name.append(":engine=").append(maxSatEngine);
+		}
+		if(randomSeed >= 0) {
+			name.append(":seed=").append(randomSeed);
+		}
+		return name.toString();
+	}
+
+	/**
+	 * Make the solve running on solvingThread give up as
+	 * soon as possible (it then fails)
+	 */
+	@Override
+	public void interrupt(Thread solvingThread) {
+		synchronized(running) {
+			Context ctx = running.get(solvingThread);
+			if(ctx != null) {
+				ctx.interrupt();
+			}
+			else {
+				// The solve has not registered its Context yet
+				solvingThread.interrupt();
+			}
+		}
+	}
+
+	@Override
+	public PseudoBooleanSolution solve(PseudoBooleanProblem problem, long timeoutMillis) {
+		if(problem.isTriviallyInfeasible()) {
+			throw new RuntimeException("Infeasible 0-1 ILP problem");
+		}
+		try(Context ctx = new Context()) {
+			synchronized(running) {
+				if(Thread.currentThread().isInterrupted()) {
+					throw new RuntimeException("Interrupted before solving");
+				}
+				running.put(Thread.currentThread(), ctx);
+			}
+			try {
+				return new Z3Solve(ctx, problem, timeoutMillis).run();
+			}
+			finally {
+				// No interrupts once the Context is closed
+				synchronized(running) {
+					running.remove(Thread.currentThread());
+				}
+			}
+		}
+	}
+
+	/**
+	 * The state of a single solve
+	 */
+	private class Z3Solve {
+		private final Context ctx;
+		private final PseudoBooleanProblem problem;
+		// System.nanoTime() at which to give up, or -1 for no deadline
+		private final long deadline;
+		private final BoolExpr vars[];
+		private final BoolExpr constraints;
+		private final PseudoBooleanSum cost;
+		// best proven lower bound on the cost, excluding the offset
+		private long lowerBound = 0;
+		// the cost of the hint excluding the offset, or -1 if there is none
+		private final long hintCost;
+
+		Z3Solve(Context ctx, PseudoBooleanProblem problem, long timeoutMillis) {
+			this.ctx = ctx;
+			this.problem = problem;
+			this.deadline = timeoutMillis > 0
+					? System.nanoTime() + timeoutMillis * 1000000L
+					: -1;
+			log.debug("Building constraints in z3");
+			this.vars = mkVars("");
+			this.constraints = mkConstraints(vars);
+			this.cost = mkCost(vars);
+			this.hintCost = problem.getHint() != null
+					? problem.objectiveValue(problem.getHint()) - problem.getObjectiveOffset()
+					: -1;
+		}
+
+		PseudoBooleanSolution run() {
+			Model model;
+			switch(strategy) {
+			case QUANTIFIED:
+				model = solveQuantified();
+				break;
+			case OPTIMIZE:
+				model = solveOptimize();
+				break;
+			case BOUND_TIGHTENING:
+				model = solveBoundTightening();
+				break;
+			default:
+				throw new IllegalArgumentException("Unrecognized solve strategy " + strategy);
+			}
+			long offset = problem.getObjectiveOffset();
+			if(model == null) {
+				log.debug("Found nothing better than the hint");
+				return new PseudoBooleanSolution(problem.getHint().clone(),
+												 offset + hintCost,
+												 offset + lowerBound,
+												 getName());
+			}
+			if(log.isDebugEnabled() && logZ3) {
+				log.debug("Model : \n" + model.toString());
+			}
+			boolean values[] = new boolean[problem.getNumVars() + 1];
+			for(int v = 1; v <= problem.getNumVars(); ++v) {
+				values[v] = isTrue(model, vars[v]);
+			}
+			return new PseudoBooleanSolution(values,
+											 offset + evalCost(model, cost),
+											 offset + lowerBound,
+											 getName());
+		}
+
+		/**
+		 * @return the constraint that the cost is at most the
+		 *         cost of the hint, or null if there is no hint
+		 *         (or the cost has no terms)
+		 */
+		private BoolExpr mkHintBound() {
+			if(hintCost < 0 || cost.size() == 0) {
+				return null;
+			}
+			return cost.mkLe(ctx, hintCost);
+		}
+
+		/**
+		 * Minimize cost subject to constraints by asserting that any
+		 * alternative assignment satisfying the constraints
+		 * must cost at least as much.
+		 *
+		 * This needs a full copy of the variables, constraints,
+		 * and cost, as well as quantifier instantiation.
+		 *
+		 * @return a model of the minimal solution
+		 */
+		private Model solveQuantified() {
+			log.debug("Building alternate vars");
+			BoolExpr altVars[] = mkVars("_alt");
+			BoolExpr altConstraints = mkConstraints(altVars);
+			PseudoBooleanSum altCost = mkCost(altVars);
+
+			// Our solution must minimize the lock cost (conflict + numLocks),
+			// i.e. any other setting satisfying the constraints
+			// must cost at least as much
+			BoolExpr allAlts[] = new BoolExpr[problem.getNumVars()];
+			for(int v = 1; v <= problem.getNumVars(); ++v) {
+				allAlts[v-1] = altVars[v];
+			}
+			Solver solver = ctx.mkSolver();
+			setParameters(solver);
+			BoolExpr minimal = ctx.mkImplies(altConstraints,
+											 ctx.mkLe(cost.toArith(ctx), altCost.toArith(ctx)));
+			if(allAlts.length > 0) {
+				minimal = ctx.mkForall(allAlts,
+									   minimal,
+									   1, null, null,
+									   ctx.mkSymbol("MinimizingQuant"),
+									   ctx.mkSymbol("minimizingSkolem"));
+			}
+			solver.add(constraints, minimal);
+			BoolExpr hintBound = mkHintBound();
+			if(hintBound != null) {
+				solver.add(hintBound);
+			}
+
+			log.debug("Checking satisfiability");
+			if(log.isDebugEnabled() && logZ3) {
+				log.debug("Solver: \n" + solver.toString());
+			}
+			checkStatus(solver.check());
+			Model model = solver.getModel();
+			lowerBound = evalCost(model, cost);
+			return model;
+		}
+
+		/**
+		 * Minimize cost subject to constraints using Z3's Optimize
+		 * engine, with the constraints as hard clauses.
+		 *
+		 * Each term w * [b] of the cost is a soft constraint (not b)
+		 * of weight w, so that Z3 minimizes with its MaxSAT engine
+		 * rather than over integer arithmetic.
+		 *
+		 * If Z3 runs out of time, we use the best model it found
+		 * (if it satisfies the constraints) and the lower bound
+		 * it proved on the soft constraint penalty.
+		 *
+		 * @return a model of the minimal solution, or of the
+		 *         best solution found in time, or null if the hint
+		 *         is the best solution found in time
+		 */
+		private Model solveOptimize() {
+			Optimize opt = ctx.mkOptimize();
+			setParameters(opt);
+			opt.Add(constraints);
+			BoolExpr hintBound = mkHintBound();
+			if(hintBound != null) {
+				opt.Add(hintBound);
+			}
+			Optimize.Handle penalty = null;
+			for(int t = 0; t < cost.size(); ++t) {
+				// Soft constraints take int weights, so split larger ones
+				long weight = cost.getWeight(t);
+				while(weight > 0) {
+					int part = (int) Math.min(weight, Integer.MAX_VALUE);
+					penalty = opt.AssertSoft(ctx.mkNot(cost.getLiteral(t)), part, "cost");
+					weight -= part;
+				}
+			}
+
+			log.debug("Optimizing");
+			if(log.isDebugEnabled() && logZ3) {
+				log.debug("Optimize: \n" + opt.toString());
+			}
+			Status status = opt.Check();
+			if(status == Status.UNKNOWN && outOfTime()) {
+				Model best = null;
+				try {
+					best = opt.getModel();
+				}
+				catch(Z3Exception e) {
+					log.debug("No model after timeout: " + e.getMessage());
+				}
+				if(penalty != null) {
+					ArithExpr lower = penalty.getLower();
+					if(lower instanceof IntNum) {
+						lowerBound = Math.max(0, ((IntNum) lower).getInt64());
+					}
+				}
+				if(best == null || !isTrue(best, constraints)) {
+					if(hintCost >= 0) {
+						return null;
+					}
+					throw new SolveTimeoutException("Optimize found no lock assignment in time");
+				}
+				return best;
+			}
+			checkStatus(status);
+			Model model = opt.getModel();
+			lowerBound = evalCost(model, cost);
+			return model;
+		}
+
+		/**
+		 * Minimize cost subject to constraints by bisection:
+		 * find any solution, then repeatedly ask for a solution
+		 * of cost at most halfway between the best proven lower bound
+		 * and the cheapest solution so far. Each bound is a
+		 * pseudo-boolean constraint on the cost terms, asserted
+		 * in its own scope.
+		 *
+		 * @return a model of the minimal solution, or of the
+		 *         cheapest solution found in time, or null if the
+		 *         hint is the cheapest solution found in time
+		 */
+		private Model solveBoundTightening() {
+			Solver solver = ctx.mkSolver();
+			solver.add(constraints);
+			if(log.isDebugEnabled() && logZ3) {
+				log.debug("Solver: \n" + solver.toString());
+			}
+
+			Status status;
+			Model best = null;
+			long upperBound = hintCost;
+			if(upperBound < 0) {
+				log.debug("Finding an initial solution");
+				setParameters(solver);
+				status = solver.check();
+				if(status == Status.UNKNOWN && outOfTime()) {
+					throw new SolveTimeoutException("Found no lock assignment in time");
+				}
+				checkStatus(status);
+				best = solver.getModel();
+				upperBound = evalCost(best, cost);
+			}
+
+			while(lowerBound < upperBound && !outOfTime()) {
+				long mid = lowerBound + (upperBound - lowerBound) / 2;
+				log.debug("Cost is in [" + lowerBound + ", " + upperBound + "], trying " + mid);
+				solver.push();
+				solver.add(cost.mkLe(ctx, mid));
+				setParameters(solver);
+				status = solver.check();
+				if(status == Status.SATISFIABLE) {
+					best = solver.getModel();
+					upperBound = evalCost(best, cost);
+				}
+				else if(status == Status.UNSATISFIABLE) {
+					lowerBound = mid + 1;
+				}
+				solver.pop();
+				if(status == Status.UNKNOWN) {
+					if(!outOfTime()) {
+						throw new RuntimeException("0-1 ILP solve failed: " + solver.getReasonUnknown());
+					}
+					break;
+				}
+			}
+			return best;
+		}
+
+		/**
+		 * @return vars[v] is a boolean constant for variable v,
+		 *         named after it with suffix appended
+		 */
+		private BoolExpr[] mkVars(String suffix) {
+			BoolExpr vars[] = new BoolExpr[problem.getNumVars() + 1];
+			for(int v = 1; v <= problem.getNumVars(); ++v) {
+				vars[v] = ctx.mkBoolConst(problem.getName(v) + suffix);
+			}
+			return vars;
+		}
+
+		/**
+		 * @return the literal lit over vars
+		 */
+		private BoolExpr mkLit(BoolExpr vars[], int lit) {
+			return lit > 0 ? vars[lit] : ctx.mkNot(vars[-lit]);
+		}
+
+		/**
+		 * @return the conjunction of the constraints over vars. Each
+		 *         exactly-one constraint is a pseudo-boolean equality.
+		 */
+		private BoolExpr mkConstraints(BoolExpr vars[]) {
+			BoolExpr all[] = new BoolExpr[problem.getClauses().size()
+			                              + problem.getExactlyOne().size()];
+			int index = 0;
+			for(int clause[] : problem.getClauses()) {
+				BoolExpr lits[] = new BoolExpr[clause.length];
+				for(int l = 0; l < clause.length; ++l) {
+					lits[l] = mkLit(vars, clause[l]);
+				}
+				all[index++] = lits.length == 1 ? lits[0] : ctx.mkOr(lits);
+			}
+			for(int exactlyOne[] : problem.getExactlyOne()) {
+				BoolExpr lits[] = new BoolExpr[exactlyOne.length];
+				int ones[] = new int[exactlyOne.length];
+				for(int l = 0; l < exactlyOne.length; ++l) {
+					lits[l] = mkLit(vars, exactlyOne[l]);
+					ones[l] = 1;
+				}
+				all[index++] = ctx.mkPBEq(ones, lits, 1);
+			}
+			return ctx.mkAnd(all);
+		}
+
+		/**
+		 * @return the objective over vars, excluding the offset
+		 */
+		private PseudoBooleanSum mkCost(BoolExpr vars[]) {
+			PseudoBooleanSum cost = new PseudoBooleanSum();
+			for(int t = 0; t < problem.getNumObjectiveTerms(); ++t) {
+				cost.add(problem.getObjectiveWeight(t), vars[problem.getObjectiveVar(t)]);
+			}
+			return cost;
+		}
+
+		/**
+		 * Throw an exception unless status is satisfiable
+		 *
+		 * @param status the result of a check
+		 */
+		private void checkStatus(Status status) {
+			if(status == Status.UNKNOWN) {
+				if(outOfTime()) {
+					throw new SolveTimeoutException("0-1 ILP solve ran out of time");
+				}
+				throw new RuntimeException("0-1 ILP solve failed");
+			}
+			else if(status == Status.UNSATISFIABLE) {
+				throw new RuntimeException("Infeasible 0-1 ILP problem");
+			}
+		}
+
+		/**
+		 * @return true iff there is a deadline and it has passed
+		 */
+		private boolean outOfTime() {
+			return deadline >= 0 && System.nanoTime() >= deadline;
+		}
+
+		/**
+		 * @return the milliseconds left until the deadline (at least 1)
+		 */
+		private int remainingMillis() {
+			long remaining = (deadline - System.nanoTime()) / 1000000L;
+			return (int) Math.max(1, Math.min(remaining, Integer.MAX_VALUE));
+		}
+
+		/**
+		 * @return the timeout (if there is a deadline) and random seed
+		 */
+		private Params mkParams() {
+			Params params = ctx.mkParams();
+			if(deadline >= 0) {
+				params.add("timeout", remainingMillis());
+			}
+			if(randomSeed >= 0) {
+				params.add("random_seed", randomSeed);
+			}
+			return params;
+		}
+
+		/**
+		 * Make solver give up at the deadline, if there is one,
+		 * and use our random seed
+		 */
+		private void setParameters(Solver solver) {
+			solver.setParameters(mkParams());
+		}
+
+		/**
+		 * Make opt give up at the deadline, if there is one,
+		 * and use our random seed and MaxSAT engine
+		 */
+		private void setParameters(Optimize opt) {
+			Params params = mkParams();
+			if(maxSatEngine != null) {
+				params.add("maxsat_engine", ctx.mkSymbol(maxSatEngine));
+			}
+			opt.setParameters(params);
+		}
+
+		/**
+		 * @return the value of cost in m
+		 */
+		private long evalCost(Model m, PseudoBooleanSum cost) {
+			long value = 0;
+			for(int t = 0; t < cost.size(); ++t) {
+				if(isTrue(m, cost.getLiteral(t))) {
+					value += cost.getWeight(t);
+				}
+			}
+			return value;
+		}
+
+		/**
+		 * @return true iff b evaluates to true in m. Variables which
+		 *         m does not constrain are treated as false
+		 */
+		private boolean isTrue(Model m, BoolExpr b) {
+			return m.eval(b, true).isTrue();
+		}
+	}
+}
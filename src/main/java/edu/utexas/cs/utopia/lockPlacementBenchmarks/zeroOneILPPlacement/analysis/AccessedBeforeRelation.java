@@ -1,18 +1,20 @@
 package edu.utexas.cs.utopia.lockPlacementBenchmarks.zeroOneILPPlacement.analysis;
 
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
-import java.util.Stack;
+import java.util.concurrent.ForkJoinPool;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import soot.Body;
+import soot.toolkits.graph.BriefUnitGraph;
 
 /**
  * Builds an accessed before relation.
@@ -40,150 +42,153 @@ import soot.Body;
  */
 class AccessedBeforeRelation {
 	private static Logger log = LoggerFactory.getLogger(AccessedBeforeRelation.class);
-	private List<List<Integer>> topoAccessedBefore;
+	private BitMatrix accessedBefore;
+	private BitMatrix topoAccessedBefore;
+	private List<List<Integer>> writtenIn;
 	
 	/**
-	 * Get a map from each LValueBox v to {w | v TopoAccessedBefore w}
+	 * Get the relation v accessedBefore w
 	 * @return
 	 */
-	public List<List<Integer>> getTopoAccessedBefore() {
+	public BitMatrix getAccessedBefore() {
+		return accessedBefore;
+	}
+	
+	/**
+	 * Get the relation v TopoAccessedBefore w. All members of
+	 * a nontrivial SCC share one row.
+	 * @return
+	 */
+	public BitMatrix getTopoAccessedBefore() {
 		return topoAccessedBefore;
 	}
 	
-	public AccessedBeforeRelation(PointerAnalysis ptrAnalysis,
-							      List<AtomicSegment> atomicSegments,
-							      List<List<Integer>> lValuesAccessedIn,
-							      List<LValueBox> lValues) {
+	/**
+	 * Get the LValues each atomic segment may write to, i.e. those
+	 * accessed in the segment which may alias an LValue appearing
+	 * in a def box of the segment or which a method is invoked on.
+	 * 
+	 * A segment holding a read lock cannot obtain it in write mode
+	 * in a nested segment (the upgrade would deadlock), so a segment
+	 * which invokes a monitor method that may write writes to every
+	 * LValue it accesses.
+	 * @return
+	 */
+	public List<List<Integer>> getWrittenIn() {
+		return writtenIn;
+	}
+	
+	public AccessedBeforeRelation(final AliasMatrix aliasMatrix,
+							      final List<AtomicSegment> atomicSegments,
+							      final List<List<Integer>> lValuesAccessedIn,
+							      final List<LValueBox> lValues,
+							      ForkJoinPool pool) {
 		// Initialize access graph with no edges
-		Map<Integer, Set<Integer>> edgeList = new HashMap<>();
-		for(int i = 0; i < lValues.size(); ++i) {
-			edgeList.put(i,  new HashSet<Integer>());
-		}
+		accessedBefore = new BitMatrix(lValues.size(), lValues.size());
 		
-		/// loop over all atomic segments and compute on all bodies found /////
+		/// compute on all bodies with an atomic segment, in parallel /////////
 		log.debug("Building access graph from atomic segments in class methods");
-		// used to  sure we don't compute on a body more than once
-		Set<Body> accessedBeforeOnBodyComputed = new HashSet<>();  
-		AccessedBeforeRelationOnBody accOnBody;
+		// Unit graphs are built here, only the flow analyses run in parallel
+		final Map<Body, BriefUnitGraph> graphOf = new HashMap<>();
+		for(Body b : ParallelAnalysis.groupByBody(atomicSegments).keySet()) {
+			graphOf.put(b, new BriefUnitGraph(b));
+		}
+		ParallelAnalysis.BodyAnalysis<AccessedBeforeRelationOnBody> perBody
+			= new ParallelAnalysis.BodyAnalysis<AccessedBeforeRelationOnBody>() {
+				@Override
+				public AccessedBeforeRelationOnBody analyze(Body b, List<Integer> segmentIDs) {
+					return new AccessedBeforeRelationOnBody(graphOf.get(b),
+															aliasMatrix,
+															atomicSegments,
+															lValuesAccessedIn,
+															lValues);
+				}
+			};
+		// Map atomic segment index -> {LVals in a def box of the segment}
+		Map<Integer, BitSet> definedIn = new HashMap<>();
+		// Map atomic segment index -> {names of monitor methods it invokes}
+		Map<Integer, Set<String>> monitorMethodsCalledIn = new HashMap<>();
 
-		for(AtomicSegment atSeg : atomicSegments) {
-			Body b = atSeg.getBody();
-			if(accessedBeforeOnBodyComputed.contains(b)) continue;
-			else accessedBeforeOnBodyComputed.add(b);
-			
-			accOnBody = new AccessedBeforeRelationOnBody(b,
-												 ptrAnalysis,
-											     atomicSegments,
-											     lValuesAccessedIn,
-											     lValues);
-			Map<Integer, Set<Integer>> accBefore = accOnBody.getAccessedBefore();
+		for(AccessedBeforeRelationOnBody accOnBody : ParallelAnalysis.forEachBody(pool, atomicSegments, perBody)) {
+			BitSet accBefore[] = accOnBody.getAccessedBefore();
 			// add edges (id of v) -> (id of w) iff v accessed-Before w
-			for(Entry<Integer, Set<Integer>> edges : accBefore.entrySet()) {
-				edgeList.get(edges.getKey()).addAll(edges.getValue());
+			for(int v = 0; v < accBefore.length; ++v) {
+				if(accBefore[v] == null) continue;
+				accessedBefore.orRow(v, accBefore[v]);
+			}
+			definedIn.putAll(accOnBody.getDefinedIn());
+			monitorMethodsCalledIn.putAll(accOnBody.getMonitorMethodsCalledIn());
+		}
+		///////////////////////////////////////////////////////////////////////
+		
+		/// Compute the LValues written in each atomic segment ////////////////
+		log.debug("Classifying accesses in atomic segments as reads or writes");
+		writtenIn = new ArrayList<>();
+		for(int i = 0; i < atomicSegments.size(); ++i) {
+			List<Integer> written = new ArrayList<>();
+			BitSet defined = definedIn.get(i);
+			for(int lValueID : lValuesAccessedIn.get(i)) {
+				for(int defID = defined.nextSetBit(0); defID >= 0; defID = defined.nextSetBit(defID+1)) {
+					// If they may alias, a def of defID may write to lValueID
+					AliasRelation aliasQ = aliasMatrix.get(defID, lValueID);
+					if(!aliasQ.equals(AliasRelation.NOT_ALIAS)) {
+						written.add(lValueID);
+						break;
+					}
+				}
+			}
+			writtenIn.add(written);
+		}
+		// Find the monitor methods which may write, i.e. which have
+		// a segment which writes or invokes a method which may write
+		Set<String> writers = new HashSet<>();
+		boolean changed = true;
+		while(changed) {
+			changed = false;
+			for(int i = 0; i < atomicSegments.size(); ++i) {
+				String name = atomicSegments.get(i).getBody().getMethod().getName();
+				if(writers.contains(name)) continue;
+				if(!writtenIn.get(i).isEmpty()
+				   || !Collections.disjoint(monitorMethodsCalledIn.get(i), writers)) {
+					writers.add(name);
+					changed = true;
+				}
+			}
+		}
+		// Segments which may nest a writer take all their locks in write mode
+		for(int i = 0; i < atomicSegments.size(); ++i) {
+			if(!Collections.disjoint(monitorMethodsCalledIn.get(i), writers)) {
+				writtenIn.set(i, new ArrayList<>(lValuesAccessedIn.get(i)));
 			}
 		}
 		///////////////////////////////////////////////////////////////////////
 		
 		/// Compute topo accessed before relation /////////////////////////////
 		log.debug("Computing SCCs and topo sort of access graph");
-		TarjanAlgorithm<Integer> tarjans = new TarjanAlgorithm<Integer>(edgeList);
-		List<Set<Integer>> reverseTopoSCCs = tarjans.getReverseTopoSCCs();
+		StronglyConnectedComponents sccs = StronglyConnectedComponents.of(accessedBefore);
 		
 		log.debug("Building accessedBefore relation from SCCs");
 		// initialize topoAccessedBefore to an empty graph
-		topoAccessedBefore = new ArrayList<>();
-		for(int i = 0; i < lValues.size(); ++i) {
-			topoAccessedBefore.add(new ArrayList<Integer>());
-		}
+		topoAccessedBefore = new BitMatrix(lValues.size(), lValues.size());
 		// We're going in reverse topo order, so at first there
 		// are no sccs later in the topo sort
-		List<Integer> descendants = new ArrayList<>();
+		BitSet descendants = new BitSet(lValues.size());
 		
-		for(Set<Integer> scc : reverseTopoSCCs) {
+		for(int scc = 0; scc < sccs.getNumSCCs(); ++scc) {
+			int sccSize = sccs.getSCCSize(scc);
 			// Add this scc to the descendants
-			descendants.addAll(scc);
-			// If a non-trivial scc, need to add descendants
-			// into topoAccessedBefore relation
-			if(scc.size() > 1) {
-				for(int lValueID : scc) {
-					topoAccessedBefore.get(lValueID).addAll(descendants);
+			for(int k = 0; k < sccSize; ++k) {
+				descendants.set(sccs.getMember(scc, k));
+			}
+			// If a non-trivial scc, its members all share one
+			// snapshot of the descendants as their row
+			if(sccSize > 1) {
+				BitSet sccRow = (BitSet) descendants.clone();
+				for(int k = 0; k < sccSize; ++k) {
+					topoAccessedBefore.shareRow(sccs.getMember(scc, k), sccRow);
 				}	
 			}
 		}
 		///////////////////////////////////////////////////////////////////////
 	}
 }
-
-/**
- * Just an implementation of Tarjan's algorithm....
- * @author Ben_Sepanski
- *
- * @param <N> node class
- */
-class TarjanAlgorithm<N> {
-	private List<Set<N>> reverseTopoSCCs = new ArrayList<>();
-	private HashMap<N, Integer> discoveryIndex = new HashMap<>(),
-		leastDescendant = new HashMap<>();
-	private Set<N> onStack = new HashSet<>();
-	private Stack<N> sccBeingDetermined = new Stack<>();
-	private Map<N, Set<N>> edgeList;
-	
-	/**
-	 * Runs Tarjan's algorithm on a graph
-	 * 
-	 * @param edgeList
-	 */
-	public TarjanAlgorithm(Map<N, Set<N>> edgeList) {
-		this.edgeList = edgeList;
-		for(N n : edgeList.keySet()) {
-			// If already visited, we know its SCC and have nothing to do
-			if(this.discoveryIndex.containsKey(n)) continue;
-			this.tarjan(n);
-		}
-	}
-	
-	private void tarjan(N curNode) {
-		// Mark this node's discovery number, which is also its
-		// current least neighbor and put it on the stack
-		leastDescendant.put(curNode, discoveryIndex.size());
-		discoveryIndex.put(curNode, discoveryIndex.size());
-		sccBeingDetermined.push(curNode);
-		onStack.add(curNode);
-		// Visit all of the node's neighbors
-		for(N neighbor : edgeList.get(curNode)) {
-			// if neighbor has not been seen before, visit it 
-			if(!discoveryIndex.containsKey(neighbor)) {
-				tarjan(neighbor);
-				// update least descendant if necessary
-				if(leastDescendant.get(neighbor) < leastDescendant.get(curNode)) {
-					leastDescendant.put(curNode, leastDescendant.get(neighbor));
-				}
-			}// Otherwise possibly update least descendant
-			else if (onStack.contains(neighbor)) {
-				if(leastDescendant.get(neighbor) < leastDescendant.get(curNode)) {
-					leastDescendant.put(curNode, leastDescendant.get(neighbor));
-				}
-			}
-		}
-
-		// Now check if this node is a root of an SCC
-		if(leastDescendant.get(curNode).equals(discoveryIndex.get(curNode))) {
-			HashSet<N> curSCC = new HashSet<>();
-			N top;
-			do {
-				top = sccBeingDetermined.pop();
-				curSCC.add(top);
-				onStack.remove(top);
-			} while(!top.equals(curNode));
-			reverseTopoSCCs.add(curSCC);
-		}
-	}
-	
-	/**
-	 * Get the SCCs of the graph in reverse topological order
-	 * @return 
-	 */
-	public List<Set<N>> getReverseTopoSCCs() {
-		return this.reverseTopoSCCs;
-	}
-}
@@ -1,57 +1,86 @@
 package edu.utexas.cs.utopia.lockPlacementBenchmarks.zeroOneILPPlacement.analysis;
 
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
 import java.util.Set;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import soot.Body;
+import soot.SootClass;
 import soot.Unit;
 import soot.ValueBox;
-import soot.toolkits.graph.BriefUnitGraph;
-import soot.toolkits.scalar.ArrayPackedSet;
-import soot.toolkits.scalar.CollectionFlowUniverse;
-import soot.toolkits.scalar.FlowUniverse;
+import soot.jimple.InstanceInvokeExpr;
+import soot.jimple.InvokeExpr;
+import soot.jimple.Stmt;
+import soot.toolkits.graph.UnitGraph;
 import soot.toolkits.scalar.ForwardFlowAnalysis;
 
 /**
  * Determine for two LValues v1, v2 if there
- * exists a path in an atomic section where 
+ * exists a path in an atomic section where
  * 		v1 is accessed
  * 	    v1 is possibly modified
  * 		v2 is accessed
  * then we say v1 accessedBefore v2
- * 
+ *
+ * Before the flow analysis, the LValues each unit of an atomic segment
+ * accesses and may modify are resolved into BitSets of LValue IDs, so
+ * the fixed-point iterations only do word-level bit operations.
+ *
+ * An LValue is modified by a unit if it appears in a def box.
+ * Invoking a method on an LValue (e.g. $r1.add(x) where $r1 holds
+ * this.q) does not change what it names, so it is not modified, but
+ * the object it names may be written to: the segment counts as
+ * defining it when accesses are classified as reads or writes.
+ *
  * @author Ben_Sepanski
  *
  */
-class AccessedBeforeRelationOnBody extends ForwardFlowAnalysis<Unit, AccessedThenModifiedSet> {	
+class AccessedBeforeRelationOnBody extends ForwardFlowAnalysis<Unit, AccessedThenModifiedSet> {
 	private static Logger log = LoggerFactory.getLogger(AccessedBeforeRelationOnBody.class);
 
-	private static final CollectionFlowUniverse<Integer>
-		emptyUniv = new CollectionFlowUniverse<>(new HashSet<Integer>());
-	
-	private PointerAnalysis ptrAnalysis;
-	private final List<LValueBox> lValues;
-	private final CollectionFlowUniverse<Integer> univ;
-	// Map LVal to set{LVals w | v accessedBefore w}
-	private final Map<Integer, Set<Integer>> accessedBefore = new HashMap<>();
-	// all the lvalues as ids
-	private final Map<LValueBox, Integer> lValueIDs = new HashMap<>();
-	// atomic segment beginnings and endings
-	private final Set<Unit> startAtomicSegment = new HashSet<>(),
-							afterAtomicSegment = new HashSet<>();
+	// Map LVal ID v to {LVal IDs w | v accessedBefore w}, null if
+	// v is not accessed in an atomic segment of this body
+	private final BitSet accessedBefore[];
+	// Map unit in an atomic segment, or right after one -> what it does
+	private final Map<Unit, UnitAccesses> unitAccesses = new HashMap<>();
+	// Map atomic segment index -> {LVals appearing in a def box in the
+	// segment, or which a method is invoked on}
+	private final Map<Integer, BitSet> definedIn = new HashMap<>();
+	// Map atomic segment index -> {names of the monitor methods it invokes}
+	private final Map<Integer, Set<String>> monitorMethodsCalledIn = new HashMap<>();
+
+	/**
+	 * The LValues a unit of an atomic segment accesses and may modify
+	 */
+	private static class UnitAccesses {
+		// marks the unit after an atomic segment
+		static final UnitAccesses afterSegment = new UnitAccesses(false, new BitSet(), new BitSet());
+
+		final boolean startsSegment;
+		// LVals in a use or def box of the unit
+		final BitSet accessed;
+		// LVals which may alias an LVal in a def box of the unit
+		final BitSet modified;
+
+		UnitAccesses(boolean startsSegment, BitSet accessed, BitSet modified) {
+			this.startsSegment = startsSegment;
+			this.accessed = accessed;
+			this.modified = modified;
+		}
+	}
 
 	/**
-	 * 
-	 * @param b the method body
-	 * @param ptrAnalysis oracle for alias relaation
+	 *
+	 * @param graph the unit graph of the method body b
+	 * @param aliasMatrix the alias relation between lValues
 	 * @param atomicSegments a list of atomic segments (possibly including
 	 *                       atomic segments in some other body).
 	 *                       We will use the sublist of atomic segments
@@ -61,114 +90,185 @@ class AccessedBeforeRelationOnBody extends ForwardFlowAnalysis<Unit, AccessedThe
 	 * 							atomicSegments.get(i)
 	 * @param lValues A map from ID -> LValueBox
 	 */
-	public AccessedBeforeRelationOnBody(Body b,
-								PointerAnalysis ptrAnalysis,
+	public AccessedBeforeRelationOnBody(UnitGraph graph,
+								AliasMatrix aliasMatrix,
 							    List<AtomicSegment> atomicSegments,
 							    List<List<Integer>> lValuesAccessedIn,
 							    List<LValueBox> lValues)
 	{
-		super(new BriefUnitGraph(b));  // Operating on body b		
-		this.ptrAnalysis = ptrAnalysis;
-		this.lValues = lValues;
-		
-		// Grab all the atomic segments corresponding to this body,
-		// as well as the LValues
+		super(graph);  // Operating on body b
+		Body b = graph.getBody();
+
+		// Record all the lValues that we might need to look out for,
+		// as well as their index
+		Map<LValueBox, Integer> lValueIDs = new HashMap<>();
+		BitSet inBody = new BitSet(lValues.size());
+		for(int i = 0; i < atomicSegments.size(); ++i) {
+			if(!b.equals(atomicSegments.get(i).getBody())) continue;
+			for(int j : lValuesAccessedIn.get(i)) {
+				lValueIDs.put(lValues.get(j), j);
+				inBody.set(j);
+			}
+		}
+
+		// Map each LVal v of the body to the LVals of the body which
+		// a def of v may modify
+		BitSet mayModify[] = new BitSet[lValues.size()];
+		this.accessedBefore = new BitSet[lValues.size()];
+		for(int v = inBody.nextSetBit(0); v >= 0; v = inBody.nextSetBit(v+1)) {
+			mayModify[v] = new BitSet(lValues.size());
+			for(int w = inBody.nextSetBit(0); w >= 0; w = inBody.nextSetBit(w+1)) {
+				if(!aliasMatrix.get(v, w).equals(AliasRelation.NOT_ALIAS)) {
+					mayModify[v].set(w);
+				}
+			}
+			this.accessedBefore[v] = new BitSet(lValues.size());
+		}
+
+		// Resolve the units of each atomic segment corresponding to this body
+		SootClass monitor = b.getMethod().getDeclaringClass();
 		for(int i = 0; i < atomicSegments.size(); ++i) {
 			AtomicSegment atSeg = atomicSegments.get(i);
-			if(b.equals(atSeg.getBody())) {
-				startAtomicSegment.add(atSeg.getFirstUnit());
-				// THIS RELIES ON THE FACT THAT ATOMIC SEGMENTS ARE
-				// AT THE TOP LEVEL: only have one successor in CFG
-				afterAtomicSegment.add(b.getUnits().getSuccOf(atSeg.getLastUnit()));
-				// Record all the lValues that we might need to look out for,
-				// as well as their index
-				for(int j : lValuesAccessedIn.get(i)) {
-					lValueIDs.put(lValues.get(j), j);
+			if(!b.equals(atSeg.getBody())) continue;
+			BitSet defined = new BitSet(lValues.size());
+			Set<String> monitorMethodsCalled = new HashSet<>();
+			Iterator<Unit> unitIter = b.getUnits().iterator(atSeg.getFirstUnit(),
+															atSeg.getLastUnit());
+			while(unitIter.hasNext()) {
+				Unit ut = unitIter.next();
+				BitSet used = resolve(ut.getUseBoxes(), lValueIDs),
+					   def = resolve(ut.getDefBoxes(), lValueIDs),
+					   modified = new BitSet(lValues.size());
+				if(((Stmt) ut).containsInvokeExpr()) {
+					InvokeExpr invk = ((Stmt) ut).getInvokeExpr();
+					// The invoked method may write to the object the base names
+					if(invk instanceof InstanceInvokeExpr) {
+						ValueBox baseBox = ((InstanceInvokeExpr) invk).getBaseBox();
+						defined.or(resolve(Collections.singletonList(baseBox), lValueIDs));
+					}
+					if(mayInvokeMonitorMethod(invk, monitor)) {
+						// Only read the name, resolving the method may touch the Scene
+						monitorMethodsCalled.add(invk.getMethodRef().getName());
+					}
+				}
+				for(int v = def.nextSetBit(0); v >= 0; v = def.nextSetBit(v+1)) {
+					modified.or(mayModify[v]);
 				}
+				defined.or(def);
+				used.or(def);
+				unitAccesses.put(ut, new UnitAccesses(ut == atSeg.getFirstUnit(), used, modified));
 			}
+			definedIn.put(i, defined);
+			monitorMethodsCalledIn.put(i, monitorMethodsCalled);
 		}
-		
-		this.univ = new CollectionFlowUniverse<Integer>(lValueIDs.values());
-		for(Integer lvbID : lValueIDs.values()) {
-			this.accessedBefore.put(lvbID, new HashSet<Integer>());
+		// THIS RELIES ON THE FACT THAT ATOMIC SEGMENTS ARE
+		// AT THE TOP LEVEL: only have one successor in CFG.
+		// The unit after a segment may start another one
+		for(AtomicSegment atSeg : atomicSegments) {
+			if(!b.equals(atSeg.getBody())) continue;
+			Unit after = b.getUnits().getSuccOf(atSeg.getLastUnit());
+			if(after != null && !unitAccesses.containsKey(after)) {
+				unitAccesses.put(after, UnitAccesses.afterSegment);
+			}
 		}
+
 		log.debug("Begnning flow analysis on " + b.getMethod().getName());
 		this.doAnalysis();
 		log.debug("Flow analysis complete");
 	}
-	
+
 	/**
-	 * @return a map (id of v) -> {id of w | v accessed before w}
+	 * @return the IDs of the LValues of the body in boxes
 	 */
-	public Map<Integer, Set<Integer>> getAccessedBefore() {
+	private static BitSet resolve(List<ValueBox> boxes, Map<LValueBox, Integer> lValueIDs) {
+		BitSet ids = new BitSet();
+		LValueBox lvb = new LValueBox();
+		for(ValueBox vb : boxes) {
+			if(lvb.canContainValue(vb.getValue())) {
+				lvb.setValue(vb.getValue());
+				Integer id = lValueIDs.get(lvb);
+				if(id != null) {
+					ids.set(id);
+				}
+			}
+		}
+		return ids;
+	}
+
+	/**
+	 * @return true iff invk may invoke a method of monitor, i.e. the
+	 *         method is declared in monitor or invoked on a monitor
+	 */
+	private static boolean mayInvokeMonitorMethod(InvokeExpr invk, SootClass monitor) {
+		if(invk.getMethodRef().getDeclaringClass().equals(monitor)) return true;
+		return invk instanceof InstanceInvokeExpr
+			   && ((InstanceInvokeExpr) invk).getBase().getType().equals(monitor.getType());
+	}
+
+	/**
+	 * @return a map (id of v) -> {id of w | v accessed before w},
+	 *         which is null at LValues not accessed in b
+	 */
+	public BitSet[] getAccessedBefore() {
 		return accessedBefore;
 	}
 
 	/**
-	 * If we are at the start/end of an atomic section, change
-	 * the universe to the lvalues/the empty universe.
-	 * 
+	 * @return a map (index of atomic segment in b) -> {id of v | v
+	 *         appears in a def box of the atomic segment, or a method
+	 *         is invoked on v}
+	 */
+	public Map<Integer, BitSet> getDefinedIn() {
+		return definedIn;
+	}
+
+	/**
+	 * @return a map (index of atomic segment in b) -> {names of the
+	 *         methods of the monitor the atomic segment may invoke}
+	 */
+	public Map<Integer, Set<String>> getMonitorMethodsCalledIn() {
+		return monitorMethodsCalledIn;
+	}
+
+	/**
+	 * If we are at the start/after the end of an atomic section, enter
+	 * the atomic section with nothing accessed/leave it.
+	 *
 	 * Then, if inside an atomic segment record reads and possible
 	 * modifies.
 	 */
 	@Override
 	protected void flowThrough(AccessedThenModifiedSet in, Unit d, AccessedThenModifiedSet out) {
-		// If at the start of an atomic segment, make sure the universe is
-		// the universe of lvalues and return.
-		if(this.startAtomicSegment.contains(d)) {
-			if(out.getUniverse().equals(emptyUniv)) {
-				out.setUniverse(this.univ);
-			}
+		UnitAccesses accesses = this.unitAccesses.get(d);
+		// Not in an atomic segment, or not in an atomic section
+		// (i.e. we jumped into the middle of one): leave it as-is
+		if(accesses == null || (!accesses.startsSegment && !in.isInAtomic())) {
+			in.copy(out);
 			return;
 		}
-		// If leaving, make sure the universe is empty and return
-		else if(this.afterAtomicSegment.contains(d)) {
-			if(!out.getUniverse().equals(emptyUniv)) {
-				out.setUniverse(emptyUniv);
-			}
-		}
-		// If in was not in the atomic segment, neither is out. Leave it as-is
-		if(in.getUniverse().equals(emptyUniv)) {
+		if(accesses == UnitAccesses.afterSegment) {
+			out.leaveAtomic();
 			return;
 		}
-		// Now we know we are inside an atomic segment: do our analysis
-		in.copy(out);
-		// Look at use and def to record what gets accessed and possibly
-		// modified
-		Set<Integer> usedLVals = new HashSet<>(),
-					 defLVals = new HashSet<>();
-		LValueBox lvb = new LValueBox();
-		for(ValueBox vb : d.getUseBoxes()) {
-			if(lvb.canContainValue(vb.getValue())) {
-				lvb.setValue(vb.getValue());
-				if(lValueIDs.containsKey(lvb)) {
-					usedLVals.add(lValueIDs.get(lvb));
-				}
-			}
+		if(accesses.startsSegment) {
+			out.enterAtomic();
 		}
-		for(ValueBox vb : d.getDefBoxes()) {
-			if(lvb.canContainValue(vb.getValue())) {
-				lvb.setValue(vb.getValue());
-				if(lValueIDs.containsKey(lvb)) {
-					defLVals.add(lValueIDs.get(lvb));
-				}
-			}
+		else {
+			in.copy(out);
 		}
 		// Record what got accessed and possibly modified
-		out.recordAccess(usedLVals, accessedBefore);
-		out.recordAccess(defLVals, accessedBefore);
-		// Look at defs to record what might get modified
-		out.recordPossibleMod(defLVals, this.ptrAnalysis, this.lValues);
+		out.recordAccess(accesses.accessed, accessedBefore);
+		out.recordPossibleMod(accesses.modified);
 	}
 
 	/**
-	 * Start with an empty universe
+	 * Start outside of an atomic section
 	 */
 	@Override
 	protected AccessedThenModifiedSet newInitialFlow() {
-		return new AccessedThenModifiedSet(emptyUniv);
+		return new AccessedThenModifiedSet();
 	}
-	
+
 	@Override
 	protected void merge(AccessedThenModifiedSet in1, AccessedThenModifiedSet in2, AccessedThenModifiedSet out) {
 		out.merge(in1, in2);  // merge in1, in2 into out
@@ -184,30 +284,18 @@ class AccessedBeforeRelationOnBody extends ForwardFlowAnalysis<Unit, AccessedThe
 /**
  * Just a struct basically keeping track of lvalues that
  * have been accessed inside an atomic and of lvalues
- * that have been accessed then modified inside an atomic 
- * 
+ * that have been accessed then modified inside an atomic
+ *
  * @author Ben_Sepanski
  */
 class AccessedThenModifiedSet {
-	private ArrayPackedSet<Integer> accessedInAtomic;
-	private ArrayPackedSet<Integer> accessedThenModInAtomic;
-	private FlowUniverse<Integer> universe;
-	
-	/**
-	 * Build a ReadThenModifiedSet
-	 * 
-	 * @param univ The universe of LValues
-	 * @param _ptrAnalysis tells us what might be aliased
-	 */
-	public AccessedThenModifiedSet(FlowUniverse<Integer> univ) {
-		accessedInAtomic = new ArrayPackedSet<Integer>(univ);
-		accessedThenModInAtomic = new ArrayPackedSet<Integer>(univ);
-		universe = univ;
-	}
-	
+	private boolean inAtomic = false;
+	private final BitSet accessedInAtomic = new BitSet();
+	private final BitSet accessedThenModInAtomic = new BitSet();
+
 	/**
 	 * Overload equals to just check that have same
-	 * flowsets and universe
+	 * flowsets and are both in/out of an atomic section
 	 * @param that
 	 * @return
 	 */
@@ -216,104 +304,103 @@ class AccessedThenModifiedSet {
 		if(that == this) return true;
 		if(!(that instanceof AccessedThenModifiedSet)) return false;
 		AccessedThenModifiedSet other = (AccessedThenModifiedSet) that;
-		return Objects.equals(accessedInAtomic, other.accessedInAtomic)
-			   && Objects.equals(accessedThenModInAtomic, other.accessedThenModInAtomic)
-			   && Objects.equals(universe, other.universe);
+		return inAtomic == other.inAtomic
+			   && accessedInAtomic.equals(other.accessedInAtomic)
+			   && accessedThenModInAtomic.equals(other.accessedThenModInAtomic);
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * accessedInAtomic.hashCode() + accessedThenModInAtomic.hashCode()
+			   + (inAtomic ? 1 : 0);
 	}
-	
+
 	/**
-	 * Get the current universe
-	 * @return
+	 * @return true iff inside an atomic section
 	 */
-	public FlowUniverse<Integer> getUniverse() {
-		return this.universe;
+	public boolean isInAtomic() {
+		return this.inAtomic;
 	}
-	
+
 	/**
-	 * Sets the universe, re-initializes accessedInAtomic and
-	 * accessedThenModInAtomic to empty sets in the new universe
-	 * 
-	 * @param newUniverse
+	 * Enter an atomic section, in which nothing has been accessed
 	 */
-	public void setUniverse(FlowUniverse<Integer> newUniverse) {
-		this.universe = newUniverse;
-		accessedInAtomic = new ArrayPackedSet<Integer>(newUniverse);
-		accessedThenModInAtomic = new ArrayPackedSet<Integer>(newUniverse);
+	public void enterAtomic() {
+		this.inAtomic = true;
+		accessedInAtomic.clear();
+		accessedThenModInAtomic.clear();
 	}
-	
+
+	/**
+	 * Leave the atomic section
+	 */
+	public void leaveAtomic() {
+		this.inAtomic = false;
+		accessedInAtomic.clear();
+		accessedThenModInAtomic.clear();
+	}
+
 	/**
 	 * Deep copy this into that
-	 * 
+	 *
 	 * @param that
 	 */
 	public void copy(AccessedThenModifiedSet that) {
-		that.universe = this.universe;
-		this.accessedInAtomic.copy(that.accessedInAtomic);
-		this.accessedThenModInAtomic.copy(that.accessedThenModInAtomic);
+		if(that == this) return;
+		that.inAtomic = this.inAtomic;
+		that.accessedInAtomic.clear();
+		that.accessedInAtomic.or(this.accessedInAtomic);
+		that.accessedThenModInAtomic.clear();
+		that.accessedThenModInAtomic.or(this.accessedThenModInAtomic);
 	}
 	/**
 	 * Store union of in1 and in2 in this.
-	 * We assume that in1 and in2 have the same universe
-	 * (which is fine if our atomic segments are placed reasonably)
-	 * 
+	 *
 	 * @param in1
 	 * @param in2
-	 * @param out
 	 */
 	public void merge(AccessedThenModifiedSet in1, AccessedThenModifiedSet in2) {
-		assert(in1.getUniverse().equals(in2.getUniverse()));
-		this.universe = in1.universe;
-		in1.accessedInAtomic.union(in2.accessedInAtomic, this.accessedInAtomic);
-		in1.accessedThenModInAtomic.union(in2.accessedThenModInAtomic, this.accessedThenModInAtomic);
+		if(this == in2) {
+			in2 = in1;
+		}
+		else {
+			in1.copy(this);
+		}
+		this.inAtomic |= in2.inAtomic;
+		this.accessedInAtomic.or(in2.accessedInAtomic);
+		this.accessedThenModInAtomic.or(in2.accessedThenModInAtomic);
 	}
 	/**
 	 * Record all the LValues w1,...,wn in accessedLVals as accessed
 	 * in the atomic section, and for any LValues v1
 	 * that have already been accessed then possibly modified
 	 * put w1,...,wn in accessedBefore[v1]
-	 * 
+	 *
 	 * @param accessedLVals The lvals accessed in a unit
 	 * @param accessedBefore the mapping v -> {w | v accessedbefore w}
 	 */
-	public void recordAccess(Set<Integer> accessedLVals,
-							 Map<Integer, Set<Integer>> accessedBefore) {
-		for(int lValID : accessedLVals) {
-			this.accessedInAtomic.add(lValID);
-		}
-		Iterator<Integer> accThenMod = accessedThenModInAtomic.iterator();
-		while(accThenMod.hasNext()) {
-			accessedBefore.get(accThenMod.next()).addAll(accessedLVals);
+	public void recordAccess(BitSet accessedLVals,
+							 BitSet accessedBefore[]) {
+		if(accessedLVals.isEmpty()) return;
+		this.accessedInAtomic.or(accessedLVals);
+		for(int v = accessedThenModInAtomic.nextSetBit(0); v >= 0;
+				v = accessedThenModInAtomic.nextSetBit(v+1)) {
+			accessedBefore[v].or(accessedLVals);
 		}
 	}
 	/**
-	 * Mark all the LValues in possibleModLVals which have
+	 * Mark all the LValues which may be modified (i.e. which may
+	 * alias an LValue in a def box of the unit) and which have
 	 * already been accessed in the atomic section
 	 * as possibly modified.
-	 * 
-	 * Use the alias analysis to be sure we don't miss
-	 * anything
-	 * 
-	 * @param possibleModLVals
-	 * @param PointerAnalysis an oracle for the alias relation
-	 * @param lValues a map from ID -> LValueBox
+	 *
+	 * @param possiblyModLVals the lvals a unit may modify
 	 */
-	public void recordPossibleMod(Set<Integer> possibleModLVals,
-								  PointerAnalysis ptrAnalysis,
-								  List<LValueBox> lValues) {
-		// For each already accessed element
-		Iterator<Integer> alreadyAccessed = accessedInAtomic.iterator();
-		while(alreadyAccessed.hasNext()) {
-			int lvbID = alreadyAccessed.next();
-			LValueBox lvb = lValues.get(lvbID);
-			// For each possibly modified value
-			for(int possModID : possibleModLVals) {
-				LValueBox possMod = lValues.get(possModID);
-				// If they may alias, record lvb as accessed then possibly modified
-				AliasRelation aliasQ = ptrAnalysis.getAliasRelation(possMod, lvb);
-				if(!aliasQ.equals(AliasRelation.NOT_ALIAS)) {
-					accessedThenModInAtomic.add(lvbID);
-					break;
-				}
+	public void recordPossibleMod(BitSet possiblyModLVals) {
+		for(int v = possiblyModLVals.nextSetBit(0); v >= 0;
+				v = possiblyModLVals.nextSetBit(v+1)) {
+			if(accessedInAtomic.get(v)) {
+				accessedThenModInAtomic.set(v);
 			}
 		}
 	}
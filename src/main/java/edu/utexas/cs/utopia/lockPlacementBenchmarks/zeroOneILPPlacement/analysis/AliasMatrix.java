@@ -0,0 +1,69 @@
+package edu.utexas.cs.utopia.lockPlacementBenchmarks.zeroOneILPPlacement.analysis;
+
+import java.util.List;
+
+/**
+ * The alias relation between every pair of LValues of a monitor,
+ * queried once from a {@link PointerAnalysis} so that later
+ * queries are array lookups.
+ *
+ * The relation is symmetric and every LValue MUST_ALIAS's itself,
+ * so only pairs (i, j) with i < j are stored, one byte each.
+ *
+ * @author Ben_Sepanski
+ *
+ */
+public class AliasMatrix {
+	private static final AliasRelation relations[] = AliasRelation.values();
+
+	private final int numLValues;
+	// ordinal of the relation of each pair (i, j) with i < j, row by row
+	private final byte upper[];
+
+	/**
+	 * Compute the alias relation of every pair of lValues
+	 *
+	 * @param ptrAnalysis oracle for the alias relation
+	 * @param lValues A map from ID -> LValueBox
+	 */
+	public AliasMatrix(PointerAnalysis ptrAnalysis, List<LValueBox> lValues) {
+		this.numLValues = lValues.size();
+		long numPairs = (long) numLValues * (numLValues - 1) / 2;
+		if(numPairs > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Too many LValues for an alias matrix: " + numLValues);
+		}
+		this.upper = new byte[(int) numPairs];
+		int index = 0;
+		for(int i = 0; i < numLValues; ++i) {
+			LValueBox lvb = lValues.get(i);
+			for(int j = i+1; j < numLValues; ++j) {
+				upper[index++] = (byte) ptrAnalysis.getAliasRelation(lvb, lValues.get(j))
+												   .ordinal();
+			}
+		}
+	}
+
+	/**
+	 * @return the number of LValues
+	 */
+	public int getNumLValues() {
+		return numLValues;
+	}
+
+	/**
+	 * @return the alias relation between the LValues with ids i and j
+	 */
+	public AliasRelation get(int i, int j) {
+		if(i == j) {
+			return AliasRelation.MUST_ALIAS;
+		}
+		if(i > j) {
+			int tmp = i;
+			i = j;
+			j = tmp;
+		}
+		// Rows 0,...,i-1 hold (n-1) + ... + (n-i) pairs
+		long rowStart = (long) i * (2L * numLValues - i - 1) / 2;
+		return relations[upper[(int) (rowStart + j - i - 1)]];
+	}
+}
@@ -3,6 +3,8 @@ package edu.utexas.cs.utopia.lockPlacementBenchmarks.zeroOneILPPlacement.analysi
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
 
 import soot.Body;
 import soot.SootClass;
@@ -34,7 +36,9 @@ import soot.jimple.JimpleBody;
  * 		  function or <a call to another predicate method followed
  * 		  by a call to waituntil>
  * 
- * Records all atomic segments in methods of a given class
+ * Records all atomic segments in methods of a given class.
+ * The methods are searched in parallel, but the segments are
+ * recorded in the order of the methods.
  * 
  * @author Ben_Sepanski
  */
@@ -42,10 +46,19 @@ class AtomicSegmentExtractor {
 	public static final String PREDICATE_PREFIX = "waituntil$";
 	private final List<AtomicSegment> atomicSegments;
 	
-	public AtomicSegmentExtractor(SootClass sClass) {
+	public AtomicSegmentExtractor(SootClass sClass, ForkJoinPool pool) {
+		List<Callable<List<AtomicSegment>>> extractions = new ArrayList<>();
+		for(final SootMethod meth : sClass.getMethods()) {
+			extractions.add(new Callable<List<AtomicSegment>>() {
+				@Override
+				public List<AtomicSegment> call() {
+					return extractAtomicSegments(meth);
+				}
+			});
+		}
 		atomicSegments = new ArrayList<AtomicSegment>();
-		for(SootMethod meth : sClass.getMethods()) {
-			extractAtomicSegments(meth);
+		for(List<AtomicSegment> methSegments : ParallelAnalysis.invokeAll(pool, extractions)) {
+			atomicSegments.addAll(methSegments);
 		}
 	}
 	
@@ -53,23 +66,26 @@ class AtomicSegmentExtractor {
 	 * If has no body, is static, or a constructor
 	 * method then has no atomic segments.
 	 * 
-	 * Otherwise records all atomic segments according to
+	 * Otherwise finds all atomic segments according to
 	 * nextAtomicSegment
 	 * 
 	 * @param mthd
+	 * @return the atomic segments of mthd, in order
 	 */
-	private void extractAtomicSegments(SootMethod mthd) {
+	private List<AtomicSegment> extractAtomicSegments(SootMethod mthd) {
+		List<AtomicSegment> methSegments = new ArrayList<>();
 		if(!mthd.hasActiveBody() || mthd.isStatic() || mthd.isConstructor()) {
-			return;
+			return methSegments;
 		}	
 		Body b = mthd.getActiveBody();
 		
 		// Collect all atomic sections
 		AtomicSegment atomicSegment = this.nextAtomicSegment(b, null);
 		while(atomicSegment != null) {
-			atomicSegments.add(atomicSegment);
+			methSegments.add(atomicSegment);
 			atomicSegment = this.nextAtomicSegment(b, atomicSegment);
 		}
+		return methSegments;
 	}
 	
 	/**
@@ -82,7 +98,8 @@ class AtomicSegmentExtractor {
 		Value rightOp = asgn.getRightOp();
 		if(!(rightOp instanceof InvokeExpr)) return false;
 		InvokeExpr invk = (InvokeExpr) rightOp;
-		return invk.getMethod().getName().startsWith(PREDICATE_PREFIX);
+		// Only read the name, resolving the method may touch the Scene
+		return invk.getMethodRef().getName().startsWith(PREDICATE_PREFIX);
 	}
 	
 	/**
@@ -91,7 +108,7 @@ class AtomicSegmentExtractor {
 	 */
 	private boolean isWaitUntil(Unit ut) {
 		if(!(ut instanceof InvokeStmt)) return false;
-		return "waituntil".equals(((InvokeStmt) ut).getInvokeExpr().getMethod().getName());
+		return "waituntil".equals(((InvokeStmt) ut).getInvokeExpr().getMethodRef().getName());
 	}
 	
 	/**
@@ -0,0 +1,149 @@
+package edu.utexas.cs.utopia.lockPlacementBenchmarks.zeroOneILPPlacement.analysis;
+
+import java.util.BitSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A boolean matrix, e.g. a relation between LValues or between atomic
+ * segments and LValues, stored as one BitSet per row.
+ *
+ * Several rows may share one BitSet (e.g. every member of an SCC
+ * has the same topo-accessed-before row, see
+ * {@link AccessedBeforeRelation}), so a row returned by
+ * {@link #getRow(int)} must not be modified.
+ *
+ * Rows are iterated like BitSets:
+ * 	for(int j = m.nextInRow(i, 0); j >= 0; j = m.nextInRow(i, j+1))
+ * and columns likewise with {@link #nextInColumn(int, int)}.
+ *
+ * @author Ben_Sepanski
+ *
+ */
+public class BitMatrix {
+	private static final BitSet emptyRow = new BitSet(0);
+
+	private final int numRows, numCols;
+	// null rows are empty
+	private final BitSet rows[];
+
+	/**
+	 * Make an empty numRows x numCols matrix
+	 */
+	public BitMatrix(int numRows, int numCols) {
+		this.numRows = numRows;
+		this.numCols = numCols;
+		this.rows = new BitSet[numRows];
+	}
+
+	/**
+	 * @return the number of rows
+	 */
+	public int getNumRows() {
+		return numRows;
+	}
+
+	/**
+	 * @return the number of columns
+	 */
+	public int getNumCols() {
+		return numCols;
+	}
+
+	/**
+	 * @return true iff entry (i, j) is set
+	 */
+	public boolean get(int i, int j) {
+		return rows[i] != null && rows[i].get(j);
+	}
+
+	/**
+	 * Set entry (i, j). Row i must not be shared with another row.
+	 */
+	public void set(int i, int j) {
+		if(rows[i] == null) {
+			rows[i] = new BitSet(numCols);
+		}
+		rows[i].set(j);
+	}
+
+	/**
+	 * Set row i to all the entries set in rowBits. Row i must not
+	 * be shared with another row.
+	 */
+	public void orRow(int i, BitSet rowBits) {
+		if(rowBits.isEmpty()) return;
+		if(rows[i] == null) {
+			rows[i] = new BitSet(numCols);
+		}
+		rows[i].or(rowBits);
+	}
+
+	/**
+	 * Make row i share row, which must no longer be modified
+	 */
+	public void shareRow(int i, BitSet row) {
+		rows[i] = row;
+	}
+
+	/**
+	 * @return row i, which must not be modified
+	 */
+	public BitSet getRow(int i) {
+		return rows[i] == null ? emptyRow : rows[i];
+	}
+
+	/**
+	 * @return the least j >= from such that (i, j) is set, or -1
+	 */
+	public int nextInRow(int i, int from) {
+		return rows[i] == null ? -1 : rows[i].nextSetBit(from);
+	}
+
+	/**
+	 * @return the least i >= from such that (i, j) is set, or -1
+	 */
+	public int nextInColumn(int j, int from) {
+		for(int i = from; i < numRows; ++i) {
+			if(get(i, j)) return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * @return the number of entries set in row i
+	 */
+	public int rowCardinality(int i) {
+		return rows[i] == null ? 0 : rows[i].cardinality();
+	}
+
+	/**
+	 * Select a submatrix, keeping shared rows shared
+	 *
+	 * @param rowIDs the rows to keep
+	 * @param colIDs the columns to keep
+	 * @return the matrix whose entry (r, c) is entry
+	 *         (rowIDs.get(r), colIDs.get(c)) of this matrix
+	 */
+	public BitMatrix select(List<Integer> rowIDs, List<Integer> colIDs) {
+		BitMatrix sub = new BitMatrix(rowIDs.size(), colIDs.size());
+		Map<BitSet, BitSet> selectedRow = new IdentityHashMap<>();
+		for(int r = 0; r < rowIDs.size(); ++r) {
+			BitSet row = rows[rowIDs.get(r)];
+			if(row == null) continue;
+			BitSet subRow = selectedRow.get(row);
+			if(subRow == null) {
+				subRow = new BitSet(colIDs.size());
+				for(int c = 0; c < colIDs.size(); ++c) {
+					if(row.get(colIDs.get(c))) {
+						subRow.set(c);
+					}
+				}
+				selectedRow.put(row, subRow);
+			}
+			sub.rows[r] = subRow;
+		}
+		return sub;
+	}
+}
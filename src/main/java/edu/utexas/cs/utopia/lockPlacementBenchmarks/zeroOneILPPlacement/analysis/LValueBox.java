@@ -4,7 +4,6 @@ import soot.AbstractValueBox;
 import soot.Local;
 import soot.PrimType;
 import soot.Value;
-import soot.jimple.AbstractJimpleValueSwitch;
 import soot.jimple.ArrayRef;
 import soot.jimple.InstanceFieldRef;
 import soot.jimple.ParameterRef;
@@ -25,38 +24,21 @@ import soot.jimple.ThisRef;
 @SuppressWarnings("serial")
 public class LValueBox extends AbstractValueBox {	
 	/**
-	 * An anonymous class which can quickly test if a Value
-	 * is an LValue
+	 * Stateless, so any number of threads may classify
+	 * values at once
+	 * 
+	 * @param v value to test
+	 * @return True iff Value is an LValue
 	 */
-	private static AbstractJimpleValueSwitch 
-		lValueTest = new AbstractJimpleValueSwitch() {
-			boolean result = false;
-			@Override public Object getResult() {
-				return result;
-			}
-			
-			@Override public void caseLocal(Local v) {
-				result = !(v.getType() instanceof PrimType);
-			}
-			@Override public void caseInstanceFieldRef(InstanceFieldRef v) {
-				result = true;
-			}
-			@Override public void caseParameterRef(ParameterRef v) {
-				result = !(v.getType() instanceof PrimType);
-			}
-			@Override public void caseStaticFieldRef(StaticFieldRef v) {
-				result = true;
-			}
-			@Override public void caseArrayRef(ArrayRef v) {
-				result = true;
-			}
-			@Override public void caseThisRef(ThisRef v) {
-				result = true;
-			}
-			@Override public void defaultCase(Object v) {
-				result = false;
-			}
-		};
+	public static boolean isLValue(Value v) {
+		if(v instanceof Local || v instanceof ParameterRef) {
+			return !(v.getType() instanceof PrimType);
+		}
+		return v instanceof InstanceFieldRef
+			|| v instanceof StaticFieldRef
+			|| v instanceof ArrayRef
+			|| v instanceof ThisRef;
+	}
 
 	/**
 	 * 
@@ -65,8 +47,7 @@ public class LValueBox extends AbstractValueBox {
 	 */
 	@Override
 	public boolean canContainValue(Value v) {
-		v.apply(lValueTest);
-		return (Boolean) lValueTest.getResult();
+		return isLValue(v);
 	}
 	
 	/**
@@ -4,13 +4,16 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 
 import soot.Body;
 import soot.Unit;
 import soot.ValueBox;
+import soot.jimple.StaticFieldRef;
 
 /**
  * Extract all LValues
@@ -19,48 +22,110 @@ import soot.ValueBox;
  * We assume shared LValues are only accessed within
  * atomic segments.
  * 
+ * Each LValue also gets a key which does not depend on the order
+ * in which LValues are found, so that lock assignments can be
+ * matched up across runs on edited code: static fields are keyed
+ * by their signature, everything else by the signature of its
+ * method and its Jimple representation.
+ * 
+ * Each body gets its own table of LValues, built in parallel.
+ * The tables are then merged in the order of the atomic segments,
+ * so IDs are the same as if the segments were scanned one
+ * after the other.
+ * 
  * @author Ben_Sepanski
  */
 class LValueExtractor {
 	private final Map<LValueBox, Integer> lValueID = new HashMap<>();
 	private final List<LValueBox> lValues = new ArrayList<>();
+	private final List<String> lValueKeys = new ArrayList<>();
+	private final Set<String> usedKeys = new HashSet<>();
 	private final List<List<Integer>> 
 		lValuesInAtomicSegment = new ArrayList<>();
 	
+	/**
+	 * The LValues of one body
+	 */
+	private static class BodyLValues {
+		// LValues in the order they are first found in the body
+		final List<LValueBox> lValues = new ArrayList<>();
+		final Map<LValueBox, Integer> localID = new HashMap<>();
+		// entry *k* is the local IDs accessed in the body's *k*th segment,
+		// in the order they are first found
+		final List<Set<Integer>> accessedInSegment = new ArrayList<>();
+	}
+	
 	/**
 	 * Extract all the lValues accessed in each of the atomic segments
 	 * 
 	 * @param atomicSegments the list of atomic segments
+	 * @param pool the pool to extract from the bodies on
 	 */
-	public LValueExtractor(List<AtomicSegment> atomicSegments) {
-		for(AtomicSegment atomicSeg : atomicSegments) {
-			Set<Integer> accessedLValues = this.extractSharedLValues(atomicSeg);
-			List<Integer> asList = new ArrayList<>(accessedLValues);
-			this.lValuesInAtomicSegment.add(asList);
+	public LValueExtractor(final List<AtomicSegment> atomicSegments, ForkJoinPool pool) {
+		List<List<Integer>> accessedIn = new ArrayList<>();
+		for(int i = 0; i < atomicSegments.size(); ++i) {
+			accessedIn.add(null);
 		}
+		ParallelAnalysis.BodyAnalysis<BodyLValues> extraction = new ParallelAnalysis.BodyAnalysis<BodyLValues>() {
+			@Override
+			public BodyLValues analyze(Body b, List<Integer> segmentIDs) {
+				BodyLValues bodyLValues = new BodyLValues();
+				for(int segID : segmentIDs) {
+					bodyLValues.accessedInSegment.add(extractSharedLValues(atomicSegments.get(segID),
+																		   bodyLValues));
+				}
+				return bodyLValues;
+			}
+		};
+		Map<Body, List<Integer>> segmentsOf = ParallelAnalysis.groupByBody(atomicSegments);
+		List<BodyLValues> tables = ParallelAnalysis.forEachBody(pool, atomicSegments, extraction);
+		
+		// Merge the tables in the order of the bodies' first segments
+		int bodyIndex = 0;
+		for(Map.Entry<Body, List<Integer>> bodySegs : segmentsOf.entrySet()) {
+			BodyLValues table = tables.get(bodyIndex++);
+			int globalID[] = new int[table.lValues.size()];
+			for(int localID = 0; localID < globalID.length; ++localID) {
+				globalID[localID] = getOrMakeID(table.lValues.get(localID), bodySegs.getKey());
+			}
+			List<Integer> segmentIDs = bodySegs.getValue();
+			for(int k = 0; k < segmentIDs.size(); ++k) {
+				Set<Integer> accessedLValues = new HashSet<>();
+				for(int localID : table.accessedInSegment.get(k)) {
+					accessedLValues.add(globalID[localID]);
+				}
+				accessedIn.set(segmentIDs.get(k), new ArrayList<>(accessedLValues));
+			}
+		}
+		this.lValuesInAtomicSegment.addAll(accessedIn);
 	}
 
 	/**
 	 * Extract all the LValues from a particular atomic segment
 	 * 
 	 * @param atomicSeg
+	 * @param bodyLValues the table of LValues of atomicSeg's body
+	 * @return the local IDs of the LValues in atomicSeg
 	 */
-	private Set<Integer> extractSharedLValues(AtomicSegment atomicSeg) {
+	private static Set<Integer> extractSharedLValues(AtomicSegment atomicSeg, BodyLValues bodyLValues) {
 		Body b = atomicSeg.getBody();
 		Iterator<Unit> unitsInSeg = b.getUnits().iterator(atomicSeg.getFirstUnit(),
 														  atomicSeg.getLastUnit());
 		// For each unit in segment, for each use/def box in unit, check if
 		// is an lValue
-		Set<Integer> lValueIDs = new HashSet<>();
-		LValueBox lVal = new LValueBox();
-		int id;
+		Set<Integer> lValueIDs = new LinkedHashSet<>();
 		while(unitsInSeg.hasNext()) {
 			for(ValueBox vb : unitsInSeg.next().getUseAndDefBoxes()) {
-				if(lVal.canContainValue(vb.getValue())) {
+				if(LValueBox.isLValue(vb.getValue())) {
+					LValueBox lVal = new LValueBox();
 					lVal.setValue(vb.getValue());
-					id = getOrMakeID(lVal);
+					Integer id = bodyLValues.localID.get(lVal);
+					if(id == null) {
+						id = bodyLValues.lValues.size();
+						bodyLValues.localID.put(lVal, id);
+						bodyLValues.lValues.add(lVal);
+					}
 					lValueIDs.add(id);
-					lVal = new LValueBox();
 				}
 			}
 		}
@@ -71,15 +136,25 @@ class LValueExtractor {
 	 * get lvb's id or make an id for lvb and return it
 	 * 
 	 * @param lvb
+	 * @param b the body lvb appears in
 	 * @return lvb's id
 	 */
-	private int getOrMakeID(LValueBox lvb) {
+	private int getOrMakeID(LValueBox lvb, Body b) {
 		if(this.lValueID.containsKey(lvb)) {
 			return this.lValueID.get(lvb);
 		}
 		int id = this.lValues.size();
 		this.lValueID.put(lvb, id);
 		this.lValues.add(lvb);
+		String key = lvb.getValue() instanceof StaticFieldRef
+				? lvb.getValue().toString()
+				: b.getMethod().getSignature() + " " + lvb.getValue();
+		// Keep keys unique even if two LValues print the same
+		String uniqueKey = key;
+		for(int copy = 1; !usedKeys.add(uniqueKey); ++copy) {
+			uniqueKey = key + "#" + copy;
+		}
+		this.lValueKeys.add(uniqueKey);
 		return id;
 	}
 
@@ -90,6 +165,13 @@ class LValueExtractor {
 		return lValues;
 	}
 
+	/**
+	 * @return the keys of the lValues (ID -> key)
+	 */
+	public List<String> getLValueKeys() {
+		return lValueKeys;
+	}
+
 	/**
 	 * @return A list whose *i*th entry is the set of LValues
 	 *         accessed in atomic segment *i*
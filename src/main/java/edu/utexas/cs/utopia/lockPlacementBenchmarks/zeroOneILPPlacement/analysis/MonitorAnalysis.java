@@ -1,10 +1,15 @@
 package edu.utexas.cs.utopia.lockPlacementBenchmarks.zeroOneILPPlacement.analysis;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import soot.Body;
 import soot.SootClass;
 
 /**
@@ -26,38 +31,62 @@ public class MonitorAnalysis {
 	private static Logger log = LoggerFactory.getLogger(MonitorAnalysis.class);
 
 	private final PointerAnalysis ptrAnalysis;
+	private final AliasMatrix aliasMatrix;
 	private final List<AtomicSegment> atomicSegments;
+	private final List<String> atomicSegmentKeys;
 	private final List<List<Integer>> accessedLValues;
+	private final List<List<Integer>> writtenLValues;
 	private final List<LValueBox> lValues;
-	private final List<List<Integer>> outOfScope;
+	private final List<String> lValueKeys;
+	private final BitMatrix outOfScope;
 	/*
 	 *  Define TC(accessed-Before) to be the transitive closure
 	 *  of the accessed before relation.
 	 *  
-	 *  This maps (id of v) 
-	 *        -> {} if v is in a non-trivial SCC in the accessed-before graph
-	 *  	  -> { (id of w) | v TC(accessed-Before) w} 
+	 *  Row (id of v) of this matrix is
+	 *        {} if v is in a non-trivial SCC in the accessed-before graph
+	 *  	  { (id of w) | v TC(accessed-Before) w} 
 	 *  
-	 *  i.e. maps (id of v) -> {(id of w) | v cannot be assigned local lock
-	 *  									w due to accessed-before constraints
-	 *  									in Ranjit's algorithm}
+	 *  i.e. row (id of v) is {(id of w) | v cannot be assigned local lock
+	 *  								   w due to accessed-before constraints
+	 *  								   in Ranjit's algorithm}
 	 */
-	private final List<List<Integer>> topoAccBefore;
+	private final BitMatrix topoAccBefore;
 	
-	public MonitorAnalysis(SootClass monitorClass, PointerAnalysis ptrAnalysis) {
+	/**
+	 * Analyze a monitor. The analyses of its methods are independent
+	 * up to merging their results, so they run in parallel on pool,
+	 * except for building unit graphs, which changes global Soot state
+	 * 
+	 * @param monitorClass the monitor
+	 * @param ptrAnalysis oracle for the alias relation
+	 * @param pool the pool to analyze the methods of the monitor on
+	 */
+	public MonitorAnalysis(SootClass monitorClass, PointerAnalysis ptrAnalysis, ForkJoinPool pool) {
 		log.info("Beginning analysis of " + monitorClass.getName());
 		this.ptrAnalysis = ptrAnalysis;
 		
 		log.debug("Extracting atomic segments");
 		AtomicSegmentExtractor 
-			atomicExtractor = new AtomicSegmentExtractor(monitorClass);
+			atomicExtractor = new AtomicSegmentExtractor(monitorClass, pool);
 		this.atomicSegments = atomicExtractor.getAtomicSegments();
+		// Segments of a body are extracted in order, so number
+		// them within their method
+		this.atomicSegmentKeys = new ArrayList<>();
+		Map<Body, Integer> numSegsInBody = new HashMap<>();
+		for(AtomicSegment atSeg : this.atomicSegments) {
+			Body b = atSeg.getBody();
+			int ordinal = numSegsInBody.containsKey(b) ? numSegsInBody.get(b) : 0;
+			numSegsInBody.put(b, ordinal + 1);
+			this.atomicSegmentKeys.add(b.getMethod().getSignature() + "#" + ordinal);
+		}
 		
 		log.debug("Extracting LValues from atomic segments");
 		LValueExtractor 
-			lValExtractor = new LValueExtractor(this.atomicSegments);
+			lValExtractor = new LValueExtractor(this.atomicSegments, pool);
 		this.accessedLValues = lValExtractor.getLValuesInAtomicSegment();
 		this.lValues = lValExtractor.getLValues();
+		this.lValueKeys = lValExtractor.getLValueKeys();
 		
 		if(log.isDebugEnabled()) {
 			log.debug("LValueIDs:");
@@ -66,18 +95,24 @@ public class MonitorAnalysis {
 			}
 		}
 		
+		log.debug("Computing alias relation between LValues");
+		this.aliasMatrix = new AliasMatrix(ptrAnalysis, this.lValues);
+		
 		log.debug("Determining LValues which are out of scope");
 		OutOfScopeCalculator oosc = new OutOfScopeCalculator(this.atomicSegments,
-														 	this.lValues);
+														 	this.lValues,
+														 	pool);
 		this.outOfScope = oosc.getOutOfScope();
 		
 		log.debug("Creating accessed-before relation");
 		AccessedBeforeRelation 
-			accBefore = new AccessedBeforeRelation(ptrAnalysis,
+			accBefore = new AccessedBeforeRelation(this.aliasMatrix,
 												   this.atomicSegments,
 												   this.accessedLValues,
-												   this.lValues);
+												   this.lValues,
+												   pool);
 		this.topoAccBefore = accBefore.getTopoAccessedBefore();
+		this.writtenLValues = accBefore.getWrittenIn();
 		
 		log.info("Finished analyzing monitor class " + monitorClass.getName());
 	}
@@ -90,6 +125,13 @@ public class MonitorAnalysis {
 		return ptrAnalysis;
 	}
 
+	/**
+	 * @return the alias relation between each pair of lValues
+	 */
+	public AliasMatrix getAliasMatrix() {
+		return aliasMatrix;
+	}
+
 	/**
 	 * @return the atomic segments
 	 */
@@ -97,6 +139,15 @@ public class MonitorAnalysis {
 		return atomicSegments;
 	}
 
+	/**
+	 * @return the map (atomic segment index) -> key of the atomic segment,
+	 *         i.e. its method and position in the method, which is
+	 *         stable across runs
+	 */
+	public List<String> getAtomicSegmentKeys() {
+		return atomicSegmentKeys;
+	}
+
 	/**
 	 * @return the accessedLValues in the atomic segments
 	 */
@@ -104,6 +155,14 @@ public class MonitorAnalysis {
 		return accessedLValues;
 	}
 
+	/**
+	 * @return the lValues the atomic segments may write to (a
+	 *         subset of the accessedLValues in each segment)
+	 */
+	public List<List<Integer>> getWrittenLValues() {
+		return writtenLValues;
+	}
+
 	/**
 	 * @return the map (lvalue id) -> lValue
 	 */
@@ -111,22 +170,30 @@ public class MonitorAnalysis {
 		return lValues;
 	}
 
+	/**
+	 * @return the map (lvalue id) -> key of the lValue which is
+	 *         stable across edits to the monitor
+	 */
+	public List<String> getLValueKeys() {
+		return lValueKeys;
+	}
+
 	/**
 	 * @return the lValues which are out of scope at the beginning of each
 	 * 			   atomic segment
 	 */
-	public List<List<Integer>> getOutOfScope() {
+	public BitMatrix getOutOfScope() {
 		return outOfScope;
 	}
 
 	/**
-	 * maps (id of v) -> {(id of w) | v cannot be assigned local lock
-	 *  							  w due to accessed-before constraints
-	 *  							  in Ranjit's algorithm}
+	 * row (id of v) is {(id of w) | v cannot be assigned local lock
+	 *  							 w due to accessed-before constraints
+	 *  							 in Ranjit's algorithm}
 	 * 
 	 * @return the topoAccBefore relation
 	 */
-	public List<List<Integer>> getTopoAccBefore() {
+	public BitMatrix getTopoAccBefore() {
 		return topoAccBefore;
 	}
 }
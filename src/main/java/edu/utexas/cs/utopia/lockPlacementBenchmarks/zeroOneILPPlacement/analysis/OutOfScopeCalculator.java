@@ -1,11 +1,13 @@
 package edu.utexas.cs.utopia.lockPlacementBenchmarks.zeroOneILPPlacement.analysis;
 
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
-
-import com.google.common.base.Objects;
+import java.util.concurrent.ForkJoinPool;
 
 import soot.Body;
 import soot.Local;
@@ -13,6 +15,7 @@ import soot.SootClass;
 import soot.SootMethod;
 import soot.jimple.AbstractJimpleValueSwitch;
 import soot.jimple.ArrayRef;
+import soot.jimple.FieldRef;
 import soot.jimple.InstanceFieldRef;
 import soot.jimple.Jimple;
 import soot.jimple.ParameterRef;
@@ -27,35 +30,73 @@ import soot.toolkits.scalar.GuaranteedDefs;
  * as well as a set of LValues, determine which LValues
  * are out of scope at the beginning of each atomic segment
  * 
+ * The guaranteed definitions of each body are computed on the
+ * calling thread, then the scope of the LValues at each
+ * segment is checked one body at a time in parallel.
+ * 
  * @author Ben_Sepanski
  *
  */
 class OutOfScopeCalculator {
 	
-	private final List<List<Integer>> outOfScope = new ArrayList<>();
+	private final BitMatrix outOfScope;
 	
 	/**
 	 * Compute which shared lValues are out of scope
-	 * at the beginning of the given atomic segments.
-	 * 
-	 * This will run faster if atomic segments from the same
-	 * body are adjacent in atomicSegments
+	 * at the beginning of the given atomic segments,
+	 * checking one body at a time on pool
 	 * 
 	 * @param atomicSegments the atomic segments
 	 * @param lValues the list of all lvalues
+	 * @param pool the pool to analyze the bodies on
 	 */
-	public OutOfScopeCalculator(List<AtomicSegment> atomicSegments,
-							    List<LValueBox> lValues) {
-		GuaranteedDefs bodyGuaranteedDefs = null;
-		Body prevBody = null;
-		for(AtomicSegment atomicSeg : atomicSegments) {
-			// Get guaranteed defs (re-use if already have it)
-			final Body b = atomicSeg.getBody();
-			if(!Objects.equal(prevBody, b)) {
-				prevBody = b;
-				ExceptionalUnitGraph euGraph = new ExceptionalUnitGraph(b);
-				bodyGuaranteedDefs = new GuaranteedDefs(euGraph);
+	public OutOfScopeCalculator(final List<AtomicSegment> atomicSegments,
+							    final List<LValueBox> lValues,
+							    ForkJoinPool pool) {
+		outOfScope = new BitMatrix(atomicSegments.size(), lValues.size());
+		Map<Body, List<Integer>> segmentsOf = ParallelAnalysis.groupByBody(atomicSegments);
+		// Building the exceptional unit graph changes global Soot state,
+		// so it is not done in parallel
+		final Map<Body, GuaranteedDefs> guaranteedDefsOf = new HashMap<>();
+		for(Body b : segmentsOf.keySet()) {
+			guaranteedDefsOf.put(b, new GuaranteedDefs(new ExceptionalUnitGraph(b)));
+		}
+		ParallelAnalysis.BodyAnalysis<List<BitSet>> perBody = new ParallelAnalysis.BodyAnalysis<List<BitSet>>() {
+			@Override
+			public List<BitSet> analyze(Body b, List<Integer> segmentIDs) {
+				return outOfScopeInBody(b, guaranteedDefsOf.get(b), segmentIDs, atomicSegments, lValues);
+			}
+		};
+		List<List<BitSet>> bodyRows = ParallelAnalysis.forEachBody(pool, atomicSegments, perBody);
+		int bodyIndex = 0;
+		for(List<Integer> segmentIDs : segmentsOf.values()) {
+			List<BitSet> rows = bodyRows.get(bodyIndex++);
+			for(int k = 0; k < segmentIDs.size(); ++k) {
+				outOfScope.shareRow(segmentIDs.get(k), rows.get(k));
 			}
+		}
+	}
+	
+	/**
+	 * Compute which shared lValues are out of scope
+	 * at the beginning of the atomic segments of b
+	 * 
+	 * @param b the body
+	 * @param bodyGuaranteedDefs the guaranteed definitions of b
+	 * @param segmentIDs the indices of b's atomic segments
+	 * @param atomicSegments the atomic segments
+	 * @param lValues the list of all lvalues
+	 * @return the *k*th entry is the lValues out of scope at the
+	 *         beginning of atomic segment segmentIDs.get(k)
+	 */
+	private static List<BitSet> outOfScopeInBody(final Body b,
+												 GuaranteedDefs bodyGuaranteedDefs,
+												 List<Integer> segmentIDs,
+												 List<AtomicSegment> atomicSegments,
+												 List<LValueBox> lValues) {
+		List<BitSet> rows = new ArrayList<>();
+		for(int segID : segmentIDs) {
+			AtomicSegment atomicSeg = atomicSegments.get(segID);
 			
 			/// Make a switch to test inScope /////////////////////////////////////
 			final SootMethod bMethod = b.getMethod();
@@ -73,16 +114,18 @@ class OutOfScopeCalculator {
 					isInScope = guaranteedDefs.contains(v);
 				}
 				@Override public void caseInstanceFieldRef(InstanceFieldRef v) {
-					isInScope = AccessManager.isAccessLegal(bMethod, v.getField());
+					// The base must be defined too
+					v.getBase().apply(this);
+					isInScope = isInScope && isAccessLegal(bMethod, v);
 				}
 				@Override public void caseParameterRef(ParameterRef v) {
 					isInScope = b.getParameterRefs().contains(v);
 				}
 				@Override public void caseStaticFieldRef(StaticFieldRef v) {
-					isInScope = AccessManager.isAccessLegal(bMethod, v.getField());
+					isInScope = isAccessLegal(bMethod, v);
 				}
 				@Override public void caseThisRef(ThisRef v) {
-					v.equivTo(Jimple.v().newThisRef(bClass.getType()));
+					isInScope = v.equivTo(Jimple.v().newThisRef(bClass.getType()));
 				}
 				@Override public void caseArrayRef(ArrayRef v) {
 					v.getBase().apply(this);
@@ -93,24 +136,35 @@ class OutOfScopeCalculator {
 			};
 			///////////////////////////////////////////////////////////////////////
 			// Determine which values are out of scope
-			List<Integer> atomicSegOutOfScope = new ArrayList<>();
+			BitSet segOutOfScope = new BitSet(lValues.size());
 			for(int i = 0; i < lValues.size(); ++i) {
 				lValues.get(i).getValue().apply(inScope);
 				boolean defined = (Boolean) inScope.getResult();
 				if(!defined) {
-					atomicSegOutOfScope.add(i);
+					segOutOfScope.set(i);
 				}
 			}
-			this.outOfScope.add(atomicSegOutOfScope);
+			rows.add(segOutOfScope);
+		}
+		return rows;
+	}
+	
+	/**
+	 * Resolving the field and AccessManager may modify the Scene
+	 * (e.g. build its class hierarchy on first use), so bodies
+	 * analyzed in parallel take turns
+	 */
+	private static boolean isAccessLegal(SootMethod container, FieldRef target) {
+		synchronized(OutOfScopeCalculator.class) {
+			return AccessManager.isAccessLegal(container, target.getField());
 		}
 	}
 	
 	/**
-	 * @return the *i*th entry is the set of all lValues *j*
-	 *         which are out of scope at the beginning of
-	 *         atomic segment *i*
+	 * @return entry (i, j) is set iff lValue *j* is out of scope
+	 *         at the beginning of atomic segment *i*
 	 */
-	public List<List<Integer>> getOutOfScope() {
+	public BitMatrix getOutOfScope() {
 		return outOfScope;
 	}
 }
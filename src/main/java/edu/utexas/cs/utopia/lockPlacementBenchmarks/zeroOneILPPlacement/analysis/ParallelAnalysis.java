@@ -0,0 +1,116 @@
+package edu.utexas.cs.utopia.lockPlacementBenchmarks.zeroOneILPPlacement.analysis;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+import soot.Body;
+
+/**
+ * Runs independent analyses, e.g. one per method body of a monitor,
+ * as fork/join tasks.
+ *
+ * Results are always returned in the order the analyses were given,
+ * no matter which finishes first, so that anything built from
+ * them (e.g. LValue IDs) does not depend on the number of threads.
+ *
+ * The analyses may only read the Soot IR they are given and
+ * build their own state. Much of Soot changes global state without
+ * synchronization, e.g. an ExceptionalUnitGraph memoizes ThrowableSets
+ * and resolving a type may load classes into the Scene, so unit graphs
+ * and the Soot analyses on them (e.g. GuaranteedDefs) must be built
+ * on the calling thread, and only passes over them run in parallel.
+ *
+ * @author Ben_Sepanski
+ *
+ */
+class ParallelAnalysis {
+	/**
+	 * An analysis of one body and its atomic segments
+	 *
+	 * @param <R> the result of the analysis
+	 */
+	interface BodyAnalysis<R> {
+		/**
+		 * @param b the body
+		 * @param segmentIDs the indices of the atomic segments of b, in
+		 *                   increasing order
+		 * @return the result of analyzing b
+		 */
+		R analyze(Body b, List<Integer> segmentIDs);
+	}
+
+	/**
+	 * Run each of the analyses as a fork/join task in pool
+	 *
+	 * @param pool the pool to run the analyses on
+	 * @param analyses the analyses
+	 * @return the *i*th entry is the result of analyses.get(i)
+	 */
+	static <R> List<R> invokeAll(ForkJoinPool pool, final List<? extends Callable<R>> analyses) {
+		return pool.invoke(new RecursiveTask<List<R>>() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected List<R> compute() {
+				List<ForkJoinTask<R>> tasks = new ArrayList<>();
+				for(Callable<R> analysis : analyses) {
+					tasks.add(ForkJoinTask.adapt(analysis));
+				}
+				invokeAll(tasks);
+				List<R> results = new ArrayList<>();
+				for(ForkJoinTask<R> task : tasks) {
+					results.add(task.join());
+				}
+				return results;
+			}
+		});
+	}
+
+	/**
+	 * Run the analysis on each body which has an atomic segment,
+	 * one fork/join task per body
+	 *
+	 * @param pool the pool to run the analyses on
+	 * @param atomicSegments the atomic segments
+	 * @param analysis the analysis to run on each body
+	 * @return the results on each body, ordered by the first atomic
+	 *         segment of the body
+	 */
+	static <R> List<R> forEachBody(ForkJoinPool pool,
+								   List<AtomicSegment> atomicSegments,
+								   final BodyAnalysis<R> analysis) {
+		List<Callable<R>> analyses = new ArrayList<>();
+		for(final Map.Entry<Body, List<Integer>> bodySegs : groupByBody(atomicSegments).entrySet()) {
+			analyses.add(new Callable<R>() {
+				@Override
+				public R call() {
+					return analysis.analyze(bodySegs.getKey(), bodySegs.getValue());
+				}
+			});
+		}
+		return invokeAll(pool, analyses);
+	}
+
+	/**
+	 * @return a map from each body to the indices of its
+	 *         atomic segments, ordered by the first atomic
+	 *         segment of the body
+	 */
+	static Map<Body, List<Integer>> groupByBody(List<AtomicSegment> atomicSegments) {
+		Map<Body, List<Integer>> segmentsOf = new LinkedHashMap<>();
+		for(int i = 0; i < atomicSegments.size(); ++i) {
+			Body b = atomicSegments.get(i).getBody();
+			if(!segmentsOf.containsKey(b)) {
+				segmentsOf.put(b, new ArrayList<Integer>());
+			}
+			segmentsOf.get(b).add(i);
+		}
+		return segmentsOf;
+	}
+}
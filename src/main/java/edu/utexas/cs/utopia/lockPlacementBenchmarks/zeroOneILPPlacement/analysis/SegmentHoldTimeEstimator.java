@@ -0,0 +1,148 @@
+package edu.utexas.cs.utopia.lockPlacementBenchmarks.zeroOneILPPlacement.analysis;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import soot.Body;
+import soot.Unit;
+import soot.Value;
+import soot.jimple.AssignStmt;
+import soot.jimple.NewArrayExpr;
+import soot.jimple.NewExpr;
+import soot.jimple.NewMultiArrayExpr;
+import soot.jimple.Stmt;
+import soot.toolkits.graph.BriefUnitGraph;
+import soot.toolkits.graph.MHGDominatorsFinder;
+
+/**
+ * Statically estimate how long each atomic segment holds its locks.
+ *
+ * Each unit of an atomic segment costs
+ * 		INVOKE_COST if it invokes a method,
+ * 		ALLOCATION_COST if it allocates an object or array,
+ * 		1 otherwise
+ * times LOOP_FACTOR for each loop containing it (up to MAX_LOOP_DEPTH).
+ * Loops are found from the back edges of the BriefUnitGraph,
+ * i.e. edges u -> h where h dominates u. The loop of a back edge
+ * u -> h is h together with every unit which reaches u without
+ * passing through h.
+ *
+ * The estimate of a segment is the sum of the costs of its units.
+ *
+ * @author Ben_Sepanski
+ *
+ */
+public class SegmentHoldTimeEstimator {
+	private static Logger log = LoggerFactory.getLogger(SegmentHoldTimeEstimator.class);
+	public static final int INVOKE_COST = 10,
+							ALLOCATION_COST = 5,
+							LOOP_FACTOR = 10,
+							MAX_LOOP_DEPTH = 3;
+
+	private final double holdTimes[];
+
+	/**
+	 * Estimate the hold time of each atomic segment
+	 *
+	 * @param atomicSegments the atomic segments
+	 */
+	public SegmentHoldTimeEstimator(List<AtomicSegment> atomicSegments) {
+		this.holdTimes = new double[atomicSegments.size()];
+		// Loop depths are computed once per body
+		Map<Body, Map<Unit, Integer>> loopDepthsOf = new HashMap<>();
+		for(int i = 0; i < atomicSegments.size(); ++i) {
+			AtomicSegment atSeg = atomicSegments.get(i);
+			Body b = atSeg.getBody();
+			if(!loopDepthsOf.containsKey(b)) {
+				loopDepthsOf.put(b, computeLoopDepths(b));
+			}
+			Map<Unit, Integer> loopDepths = loopDepthsOf.get(b);
+
+			Iterator<Unit> unitIter = b.getUnits().iterator(atSeg.getFirstUnit(),
+															atSeg.getLastUnit());
+			while(unitIter.hasNext()) {
+				Unit ut = unitIter.next();
+				int depth = Math.min(MAX_LOOP_DEPTH,
+									 loopDepths.containsKey(ut) ? loopDepths.get(ut) : 0);
+				holdTimes[i] += unitCost(ut) * Math.pow(LOOP_FACTOR, depth);
+			}
+			log.debug("Estimated hold time of atomic segment " + i + " in " +
+					  b.getMethod().getName() + ": " + holdTimes[i]);
+		}
+	}
+
+	/**
+	 * @return the cost of ut, ignoring loops
+	 */
+	private static int unitCost(Unit ut) {
+		if(ut instanceof Stmt && ((Stmt) ut).containsInvokeExpr()) {
+			return INVOKE_COST;
+		}
+		if(ut instanceof AssignStmt) {
+			Value rightOp = ((AssignStmt) ut).getRightOp();
+			if(rightOp instanceof NewExpr
+			   || rightOp instanceof NewArrayExpr
+			   || rightOp instanceof NewMultiArrayExpr) {
+				return ALLOCATION_COST;
+			}
+		}
+		return 1;
+	}
+
+	/**
+	 * @return a map from each unit of b in some loop to the number
+	 *         of loops containing it
+	 */
+	private static Map<Unit, Integer> computeLoopDepths(Body b) {
+		BriefUnitGraph graph = new BriefUnitGraph(b);
+		MHGDominatorsFinder<Unit> dominators = new MHGDominatorsFinder<>(graph);
+		// Back edges with the same head make up one loop
+		Map<Unit, Set<Unit>> loopOf = new HashMap<>();
+		for(Unit u : graph) {
+			for(Unit h : graph.getSuccsOf(u)) {
+				if(!dominators.isDominatedBy(u, h)) continue;
+				Set<Unit> loop = loopOf.get(h);
+				if(loop == null) {
+					loop = new HashSet<>();
+					loop.add(h);
+					loopOf.put(h, loop);
+				}
+				// Walk backwards from u, stopping at h
+				Deque<Unit> toVisit = new ArrayDeque<>();
+				if(loop.add(u)) {
+					toVisit.push(u);
+				}
+				while(!toVisit.isEmpty()) {
+					for(Unit pred : graph.getPredsOf(toVisit.pop())) {
+						if(loop.add(pred)) {
+							toVisit.push(pred);
+						}
+					}
+				}
+			}
+		}
+		Map<Unit, Integer> loopDepths = new HashMap<>();
+		for(Set<Unit> loop : loopOf.values()) {
+			for(Unit ut : loop) {
+				loopDepths.put(ut, (loopDepths.containsKey(ut) ? loopDepths.get(ut) : 0) + 1);
+			}
+		}
+		return loopDepths;
+	}
+
+	/**
+	 * @return the *i*th entry is the estimated hold time of atomic segment *i*
+	 */
+	public double[] getHoldTimes() {
+		return holdTimes;
+	}
+}
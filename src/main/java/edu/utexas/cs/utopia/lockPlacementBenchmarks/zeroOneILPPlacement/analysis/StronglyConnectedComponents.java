@@ -0,0 +1,170 @@
+package edu.utexas.cs.utopia.lockPlacementBenchmarks.zeroOneILPPlacement.analysis;
+
+import java.util.Arrays;
+
+/**
+ * The strongly connected components of a directed graph on
+ * nodes 0,...,n-1, computed with Tarjan's algorithm.
+ *
+ * The graph is given in compressed sparse row (CSR) form:
+ * the successors of node v are
+ * 		edgeTargets[edgeStart[v]], ..., edgeTargets[edgeStart[v+1]-1]
+ * The DFS keeps its own stack, so long paths cannot overflow
+ * the Java stack.
+ *
+ * SCCs are given IDs 0,...,getNumSCCs()-1 in reverse topological
+ * order, i.e. if there is an edge from SCC s to a different SCC t,
+ * then t < s.
+ *
+ * @author Ben_Sepanski
+ *
+ */
+public class StronglyConnectedComponents {
+	private final int numSCCs;
+	// sccOf[v] is the ID of the SCC containing v
+	private final int sccOf[];
+	// the members of SCC s are members[memberStart[s]], ...,
+	// members[memberStart[s+1]-1], in increasing order
+	private final int memberStart[], members[];
+
+	/**
+	 * Run Tarjan's algorithm on a graph in CSR form
+	 *
+	 * @param numNodes the number of nodes n
+	 * @param edgeStart an array of length n+1 indexing into edgeTargets
+	 * @param edgeTargets the successors of each node
+	 */
+	public StronglyConnectedComponents(int numNodes, int edgeStart[], int edgeTargets[]) {
+		if(edgeStart.length != numNodes + 1) {
+			throw new IllegalArgumentException("edgeStart must have length " + (numNodes + 1));
+		}
+		sccOf = new int[numNodes];
+		int discoveryIndex[] = new int[numNodes],
+			leastDescendant[] = new int[numNodes],
+			// index of the next edge to visit from each node on the DFS stack
+			nextEdge[] = new int[numNodes],
+			dfsStack[] = new int[numNodes],
+			sccBeingDetermined[] = new int[numNodes];
+		boolean onStack[] = new boolean[numNodes];
+		Arrays.fill(discoveryIndex, -1);
+		int numDiscovered = 0, dfsTop = 0, sccTop = 0, nextSCC = 0;
+
+		for(int root = 0; root < numNodes; ++root) {
+			// If already visited, we know its SCC and have nothing to do
+			if(discoveryIndex[root] >= 0) continue;
+			discoveryIndex[root] = leastDescendant[root] = numDiscovered++;
+			nextEdge[root] = edgeStart[root];
+			dfsStack[dfsTop++] = root;
+			sccBeingDetermined[sccTop++] = root;
+			onStack[root] = true;
+
+			while(dfsTop > 0) {
+				int curNode = dfsStack[dfsTop - 1];
+				// Visit the next neighbor of the node, if any
+				if(nextEdge[curNode] < edgeStart[curNode + 1]) {
+					int neighbor = edgeTargets[nextEdge[curNode]++];
+					// if neighbor has not been seen before, visit it
+					if(discoveryIndex[neighbor] < 0) {
+						discoveryIndex[neighbor] = leastDescendant[neighbor] = numDiscovered++;
+						nextEdge[neighbor] = edgeStart[neighbor];
+						dfsStack[dfsTop++] = neighbor;
+						sccBeingDetermined[sccTop++] = neighbor;
+						onStack[neighbor] = true;
+					}// Otherwise possibly update least descendant
+					else if(onStack[neighbor]) {
+						leastDescendant[curNode] = Math.min(leastDescendant[curNode],
+															discoveryIndex[neighbor]);
+					}
+					continue;
+				}
+
+				// All neighbors are visited, check if this node is a root of an SCC
+				--dfsTop;
+				if(leastDescendant[curNode] == discoveryIndex[curNode]) {
+					int top;
+					do {
+						top = sccBeingDetermined[--sccTop];
+						onStack[top] = false;
+						sccOf[top] = nextSCC;
+					} while(top != curNode);
+					++nextSCC;
+				}
+				// pass the least descendant up to the parent
+				if(dfsTop > 0) {
+					int parent = dfsStack[dfsTop - 1];
+					leastDescendant[parent] = Math.min(leastDescendant[parent],
+													   leastDescendant[curNode]);
+				}
+			}
+		}
+		numSCCs = nextSCC;
+
+		// Bucket the nodes by SCC
+		memberStart = new int[numSCCs + 1];
+		for(int v = 0; v < numNodes; ++v) {
+			++memberStart[sccOf[v] + 1];
+		}
+		for(int s = 0; s < numSCCs; ++s) {
+			memberStart[s + 1] += memberStart[s];
+		}
+		members = new int[numNodes];
+		int fill[] = Arrays.copyOf(memberStart, numSCCs);
+		for(int v = 0; v < numNodes; ++v) {
+			members[fill[sccOf[v]]++] = v;
+		}
+	}
+
+	/**
+	 * Compute the SCCs of the graph with an edge i -> j
+	 * iff entry (i, j) of graph is set
+	 *
+	 * @param graph a square matrix
+	 * @return the SCCs of graph
+	 */
+	public static StronglyConnectedComponents of(BitMatrix graph) {
+		int n = graph.getNumRows();
+		if(graph.getNumCols() != n) {
+			throw new IllegalArgumentException("Adjacency matrix must be square");
+		}
+		int edgeStart[] = new int[n + 1];
+		for(int i = 0; i < n; ++i) {
+			edgeStart[i + 1] = edgeStart[i] + graph.rowCardinality(i);
+		}
+		int edgeTargets[] = new int[edgeStart[n]];
+		for(int i = 0; i < n; ++i) {
+			int e = edgeStart[i];
+			for(int j = graph.nextInRow(i, 0); j >= 0; j = graph.nextInRow(i, j+1)) {
+				edgeTargets[e++] = j;
+			}
+		}
+		return new StronglyConnectedComponents(n, edgeStart, edgeTargets);
+	}
+
+	/**
+	 * @return the number of SCCs
+	 */
+	public int getNumSCCs() {
+		return numSCCs;
+	}
+
+	/**
+	 * @return the ID of the SCC containing node v
+	 */
+	public int getSCC(int v) {
+		return sccOf[v];
+	}
+
+	/**
+	 * @return the number of nodes in SCC s
+	 */
+	public int getSCCSize(int s) {
+		return memberStart[s + 1] - memberStart[s];
+	}
+
+	/**
+	 * @return the *k*th smallest node in SCC s
+	 */
+	public int getMember(int s, int k) {
+		return members[memberStart[s] + k];
+	}
+}
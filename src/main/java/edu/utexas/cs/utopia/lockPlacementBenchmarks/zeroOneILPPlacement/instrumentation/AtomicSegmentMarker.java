@@ -31,6 +31,7 @@ import soot.jimple.NewExpr;
 import soot.jimple.ReturnStmt;
 import soot.jimple.ReturnVoidStmt;
 import soot.jimple.SpecialInvokeExpr;
+import soot.jimple.StringConstant;
 
 /**
  * Assumes that the class has at least one <init> method
@@ -42,6 +43,9 @@ import soot.jimple.SpecialInvokeExpr;
  * and exitAtomicSegment() after each atomic segment,
  * and immediately before any return statement inside an atomic segment
  * 
+ * If profiling, enterAtomicSegment(key) is used instead so that
+ * entries to each atomic segment are counted (see TwoPhaseLockManager)
+ * 
  * Adds initialization of the new field to each <init> method
  * 
  * @author Ben_Sepanski
@@ -59,11 +63,25 @@ public class AtomicSegmentMarker extends BodyTransformer {
 	
 	// list of all atomic segments
 	private final List<AtomicSegment> atomicSegments;
+	// keys of the atomic segments, or null if not profiling
+	private final List<String> profiledSegmentKeys;
 	// map class to its 2-phase lock manager
 	private final Map<SootClass, SootField> classTo2PhaseLM = new HashMap<>();
 	
 	public AtomicSegmentMarker(List<AtomicSegment> atomicSegments) {
+		this(atomicSegments, null);
+	}
+	
+	/**
+	 * @param atomicSegments the atomic segments
+	 * @param profiledSegmentKeys the keys of the atomic segments
+	 *                            to count entries by, or null to
+	 *                            not profile
+	 */
+	public AtomicSegmentMarker(List<AtomicSegment> atomicSegments,
+							   List<String> profiledSegmentKeys) {
 		this.atomicSegments = atomicSegments;
+		this.profiledSegmentKeys = profiledSegmentKeys;
 	}
 	
 	/**
@@ -155,7 +173,8 @@ public class AtomicSegmentMarker extends BodyTransformer {
 		UnitPatchingChain units = body.getUnits();
 		/// For each atomic section in this body //////////////////////////////
 		boolean hasAtomicSegment = false;
-		for(AtomicSegment atSeg : atomicSegments) {
+		for(int i = 0; i < atomicSegments.size(); ++i) {
+			AtomicSegment atSeg = atomicSegments.get(i);
 			if(!body.equals(atSeg.getBody())) continue;
 			// atomic segment is in this body
 			hasAtomicSegment = true;
@@ -163,7 +182,8 @@ public class AtomicSegmentMarker extends BodyTransformer {
 				 last = atSeg.getLastUnit();
 			
 			// insert enter atomic
-			units.insertBefore(getNewEnterAtomicStmt(lockManagerLocal), first);
+			String segmentKey = profiledSegmentKeys == null ? null : profiledSegmentKeys.get(i);
+			units.insertBefore(getNewEnterAtomicStmt(lockManagerLocal, segmentKey), first);
 			
 			// insert exit atomic immediately before return statements
 			// and after the last unit in the atomic segment (if the
@@ -199,13 +219,24 @@ public class AtomicSegmentMarker extends BodyTransformer {
 	 * given lockManagerLocal
 	 * 
 	 * @param lockManagerLocal a TwoPhaseLockManager
+	 * @param segmentKey the key to count the entry by, or null to not count it
 	 * @return
 	 */
-	private InvokeStmt getNewEnterAtomicStmt(Local lockManagerLocal) {
-		SootMethodRef lockManagerEnterRef  = 
-				lockManagerClass.getMethod("void enterAtomicSegment()").makeRef();
-		InvokeExpr lockManagerEnter = Jimple.v()
-				.newVirtualInvokeExpr(lockManagerLocal, lockManagerEnterRef);
+	private InvokeStmt getNewEnterAtomicStmt(Local lockManagerLocal, String segmentKey) {
+		InvokeExpr lockManagerEnter;
+		if(segmentKey == null) {
+			SootMethodRef lockManagerEnterRef  = 
+					lockManagerClass.getMethod("void enterAtomicSegment()").makeRef();
+			lockManagerEnter = Jimple.v()
+					.newVirtualInvokeExpr(lockManagerLocal, lockManagerEnterRef);
+		}
+		else {
+			SootMethodRef lockManagerEnterRef  = 
+					lockManagerClass.getMethod("void enterAtomicSegment(java.lang.String)").makeRef();
+			lockManagerEnter = Jimple.v()
+					.newVirtualInvokeExpr(lockManagerLocal, lockManagerEnterRef,
+										  StringConstant.v(segmentKey));
+		}
 		return Jimple.v().newInvokeStmt(lockManagerEnter);
 	}
 	
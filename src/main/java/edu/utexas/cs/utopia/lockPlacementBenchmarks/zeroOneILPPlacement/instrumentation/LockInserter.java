@@ -4,7 +4,6 @@ import java.lang.reflect.Modifier;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -17,8 +16,10 @@ import com.google.common.base.Objects;
 
 import edu.utexas.cs.utopia.lockPlacementBenchmarks.Driver;
 import edu.utexas.cs.utopia.lockPlacementBenchmarks.zeroOneILPPlacement.analysis.AtomicSegment;
+import edu.utexas.cs.utopia.lockPlacementBenchmarks.zeroOneILPPlacement.analysis.BitMatrix;
 import edu.utexas.cs.utopia.lockPlacementBenchmarks.zeroOneILPPlacement.analysis.LValueBox;
 import edu.utexas.cs.utopia.lockPlacementBenchmarks.zeroOneILPPlacement.analysis.MonitorAnalysis;
+import edu.utexas.cs.utopia.lockPlacementBenchmarks.zeroOneILPPlacement.analysis.StronglyConnectedComponents;
 import soot.Body;
 import soot.BodyTransformer;
 import soot.Local;
@@ -37,13 +38,19 @@ import soot.jimple.InvokeExpr;
 import soot.jimple.InvokeStmt;
 import soot.jimple.Jimple;
 import soot.jimple.JimpleBody;
+import soot.jimple.ParameterRef;
 import soot.jimple.SpecialInvokeExpr;
 import soot.jimple.Stmt;
+import soot.jimple.ThisRef;
 
 /**
  * We assert any classes which are given a local lock
  * must have a constructor
  * 
+ * Locks are exclusive ReentrantLocks, or ReentrantReadWriteLocks
+ * obtained in write mode by atomic segments which write to an
+ * LValue assigned to the lock and in read mode otherwise.
+ * 
  * @author Ben_Sepanski
  *
  */
@@ -53,13 +60,17 @@ public class LockInserter extends BodyTransformer {
 	private static final SootClass 
 		lockManagerClass = Scene.v().getSootClass(TwoPhaseLockManager.class.getName());
 	private static final SootMethod
-		obtainLockMethod = lockManagerClass.getMethod("void obtainLock(java.util.concurrent.locks.ReentrantLock)");
+		obtainLockMethod = lockManagerClass.getMethod("void obtainLock(java.util.concurrent.locks.ReentrantLock)"),
+		obtainReadLockMethod = lockManagerClass.getMethod("void obtainReadLock(java.util.concurrent.locks.ReentrantReadWriteLock)"),
+		obtainWriteLockMethod = lockManagerClass.getMethod("void obtainWriteLock(java.util.concurrent.locks.ReentrantReadWriteLock)");
 	
-	// We will be using reentrant locks
+	// We will be using reentrant (read/write) locks
 	private static final SootClass 
-		lockClass = Scene.v().getSootClass("java.util.concurrent.locks.ReentrantLock");
+		lockClass = Scene.v().getSootClass("java.util.concurrent.locks.ReentrantLock"),
+		rwLockClass = Scene.v().getSootClass("java.util.concurrent.locks.ReentrantReadWriteLock");
 	private static final SootMethodRef
-		lockInit = lockClass.getMethod("void <init>()").makeRef();
+		lockInit = lockClass.getMethod("void <init>()").makeRef(),
+		rwLockInit = rwLockClass.getMethod("void <init>()").makeRef();
 	// prefix of lock fields which we'll be adding to classes
 	private static final String lockFieldPrefix = "$reent$lock";
 	
@@ -72,11 +83,13 @@ public class LockInserter extends BodyTransformer {
 	private final List<AtomicSegment> atomicSegments;
 	// the lvalues accessed in the atomic segments
 	private final List<List<Integer>> accessedIn;
-	// topoAccBefore (see MonitorAnalysis)
-	private final List<List<Integer>> topoAccBefore;
+	// the lvalues written to in the atomic segments
+	private final List<List<Integer>> writtenIn;
+	// true iff we use read/write locks
+	private final boolean readWrite;
 	
 	// We will order locks to avoid deadlock
-	private final HashMap<Integer, Integer> lockOrder = new HashMap<>();
+	private final int lockOrder[];
 	// comparator which imposes lockOrder
 	private final Comparator<Integer> lockComparator;
 	
@@ -87,67 +100,66 @@ public class LockInserter extends BodyTransformer {
 	 * @param lockAssignment Indicate which local or global lock to use for each lValue
 	 * @param atomicSegs Give the atomic segments
 	 * @param accessedBefore z -> {w | z accessedBefore w}, used to order locks
+	 * @param readWrite true iff we should use read/write locks
 	 */
 	public LockInserter(List<Integer> lockAssignment,
 						List<Boolean> assignedToGlobal,
-						MonitorAnalysis mtrAnalysis
+						MonitorAnalysis mtrAnalysis,
+						boolean readWrite
 						) {
 		this.lockAssignment = lockAssignment;
 		this.assignedToGlobal = assignedToGlobal;
 		this.lValues = mtrAnalysis.getLValues();
 		this.atomicSegments = mtrAnalysis.getAtomicSegments();
 		this.accessedIn = mtrAnalysis.getAccessedLValues();
-		this.topoAccBefore = mtrAnalysis.getTopoAccBefore();
+		this.writtenIn = mtrAnalysis.getWrittenLValues();
+		this.readWrite = readWrite;
 		
-		int nextNumber = this.topoAccBefore.size();
-		for(int i = 0; i < this.topoAccBefore.size(); ++i) {
-			nextNumber = this.buildTopoSortOrder(i, nextNumber);
-		}
+		this.lockOrder = buildTopoSortOrder(mtrAnalysis.getTopoAccBefore());
 		lockComparator = new Comparator<Integer>() {
 			@Override
 			public int compare(Integer o1, Integer o2) {
-				return lockOrder.get(o1) - lockOrder.get(o2);
+				return lockOrder[o1] - lockOrder[o2];
 			}
 		};
 	}
 
 	
 	/**
-	 * Use a DFS to build a lock ordering such that
+	 * Build a lock ordering such that
 	 * if v Topo-accessedBefore w and w not Topo-accessedBefore v,
 	 * v < w
 	 * 
 	 * See AccessedBeforeRelation for a definition
 	 * of topo-accessed before
 	 * 
-	 * @param curNode
 	 * @param topoAccBefore
-	 * @param nextNumber the number to be assigned, decreasing from n,n-1,...,1
+	 * @return the position of each lValue in the lock order
 	 */
-	private int buildTopoSortOrder(int curNode,
-								   int nextNumber) {
-		if(this.lockOrder.containsKey(curNode)) return nextNumber;
-		// Mark this node as being visited and visit its neighbors
-		this.lockOrder.put(curNode, -1);
-		for(int nbr : this.topoAccBefore.get(curNode)) {
-			if(this.lockOrder.containsKey(nbr)) continue;
-			nextNumber = buildTopoSortOrder(nbr, nextNumber);
+	private static int[] buildTopoSortOrder(BitMatrix topoAccBefore) {
+		StronglyConnectedComponents sccs = StronglyConnectedComponents.of(topoAccBefore);
+		int order[] = new int[topoAccBefore.getNumRows()];
+		int nextNumber = 0;
+		// SCCs are in reverse topological order, so number them backwards
+		for(int scc = sccs.getNumSCCs() - 1; scc >= 0; --scc) {
+			for(int k = 0; k < sccs.getSCCSize(scc); ++k) {
+				order[sccs.getMember(scc, k)] = nextNumber++;
+			}
 		}
-		// Now that everything after this node has been given a number,
-		// give this node the next number
-		this.lockOrder.put(curNode, nextNumber--);
-		return nextNumber;
+		return order;
 	}
 
 	@Override
 	protected void internalTransform(Body b, String phaseName, Map<String, String> options) {
 		// Get all the atomic segments in this body
 		List<AtomicSegment> atSegsInBody = new ArrayList<>();
-		List<List<Integer>> accessedInAtSeg = new ArrayList<>();
+		List<List<Integer>> accessedInAtSeg = new ArrayList<>(),
+							writtenInAtSeg = new ArrayList<>();
 		for(int i = 0; i < this.atomicSegments.size(); ++i) {
 			if(b.equals(this.atomicSegments.get(i).getBody())) {
 				atSegsInBody.add(this.atomicSegments.get(i));
 				accessedInAtSeg.add(this.accessedIn.get(i));
+				writtenInAtSeg.add(this.writtenIn.get(i));
 			}
 		}
 		// If no atomic segments, there is nothing to insert!
@@ -196,21 +208,35 @@ public class LockInserter extends BodyTransformer {
 					localLocks.add(lockID);
 				}
 			}
+			// Store which ones we write through
+			Set<Integer> localWriteLocks = new HashSet<>(),
+						 globalWriteLocks = new HashSet<>();
+			for(int lValID : writtenInAtSeg.get(i)) {
+				int lockID = this.lockAssignment.get(lValID);
+				if(this.assignedToGlobal.get(lValID)) {
+					globalWriteLocks.add(lockID);
+				}
+				else {
+					localWriteLocks.add(lockID);
+				}
+			}
 			List<Integer> orderedLocks = new ArrayList<Integer>(neededLocks);
 			orderedLocks.sort(lockComparator);
 			// Invocations can only accept locals: https://mailman.cs.mcgill.ca/pipermail/soot-list/2010-April/002938.html
 			// So we need to store each lock in some local
 			Local localReentrantLockVar = Jimple.v().newLocal("$localReentrantLockVar",
-															  lockClass.getType());
+															  getLockClass().getType());
 			b.getLocals().add(localReentrantLockVar);
 			// Make statements to obtain each lock
 			Unit first = atSegsInBody.get(i).getFirstUnit();
 			for(int lockID : orderedLocks) {
 				if(globalLocks.contains(lockID)) {
-					insertObtainLock(b, first, lockManager, localReentrantLockVar, lockID, true);
+					insertObtainLock(b, first, lockManager, localReentrantLockVar, lockID, true,
+									 globalWriteLocks.contains(lockID));
 				}
 				if(localLocks.contains(lockID)) {
-					insertObtainLock(b, first, lockManager, localReentrantLockVar, lockID, false);
+					insertObtainLock(b, first, lockManager, localReentrantLockVar, lockID, false,
+									 localWriteLocks.contains(lockID));
 				}
 			}
 		}
@@ -230,38 +256,77 @@ public class LockInserter extends BodyTransformer {
 	 * @param localLockVar the local which will hold the lock
 	 * @param lockID the LValue ID of the LValue associated to the lock
 	 * @param global true iff the lock is global
+	 * @param write true iff a read/write lock should be obtained in write mode
 	 */
 	private void insertObtainLock(Body b,
 								  Unit unitBefore,
 								  Local localLockManager,
 								  Local localLockVar,
 								  int lockID,
-								  boolean global) {
+								  boolean global,
+								  boolean write) {
 		// Get a reference to the field
 		SootClass cls = b.getMethod().getDeclaringClass();
 		SootFieldRef lockFieldRef = this.createOrGetLockField(cls, lockID, global).makeRef();
+		List<Stmt> toInsert = new ArrayList<>();
 		Value lockVal;
 		if(global) {
 			lockVal = Jimple.v().newInstanceFieldRef(b.getThisLocal(),
 												     lockFieldRef);
 		}
 		else {
-			lockVal = Jimple.v().newInstanceFieldRef(this.lValues.get(lockID).getValue(),
+			lockVal = Jimple.v().newInstanceFieldRef(getLockBase(b, lockID, toInsert),
 													 lockFieldRef);
 		}
 		// Store the lock field in our local lock variable
 		AssignStmt storeInLoc = Jimple.v().newAssignStmt(localLockVar, lockVal);
 		// Obtain the lock
+		SootMethod obtainMethod = obtainLockMethod;
+		if(this.readWrite) {
+			obtainMethod = write ? obtainWriteLockMethod : obtainReadLockMethod;
+		}
 		InvokeExpr obtainLock = Jimple.v().newVirtualInvokeExpr(localLockManager,
-																obtainLockMethod.makeRef(),
+																obtainMethod.makeRef(),
 																localLockVar
 																);
 		InvokeStmt obtainLockStmt = Jimple.v().newInvokeStmt(obtainLock);
 		// add those statements to b
-		List<Stmt> toInsert = Arrays.asList(storeInLoc, obtainLockStmt);
+		toInsert.add(storeInLoc);
+		toInsert.add(obtainLockStmt);
 		b.getUnits().insertBefore(toInsert, unitBefore);
 	}
 	
+	/**
+	 * Field references only accept local bases, so get a local
+	 * holding the object whose local lock belongs to the LValue
+	 * with id lockID: this or a parameter local of b, the LValue
+	 * itself if it is a local, and otherwise a new local which
+	 * the LValue is loaded into.
+	 * 
+	 * @param b the body
+	 * @param lockID the LValue ID of the LValue associated to the lock
+	 * @param toInsert statements to insert before obtaining the lock,
+	 *                 to which the load of the LValue is appended
+	 * @return the local
+	 */
+	private Local getLockBase(Body b, int lockID, List<Stmt> toInsert) {
+		Value lValue = this.lValues.get(lockID).getValue();
+		if(lValue instanceof Local) {
+			return (Local) lValue;
+		}
+		if(lValue instanceof ThisRef) {
+			return b.getThisLocal();
+		}
+		if(lValue instanceof ParameterRef) {
+			return b.getParameterLocal(((ParameterRef) lValue).getIndex());
+		}
+		Local lockBase = Jimple.v().newLocal("$localLockBase" + b.getLocalCount(),
+											 lValue.getType());
+		b.getLocals().add(lockBase);
+		toInsert.add(Jimple.v().newAssignStmt(lockBase, lValue));
+		return lockBase;
+	}
+	
 	/**
 	 * If global, createOrGetLockField on globalClass with suffix
 	 * "$<lockID>". Otherwise is local, so createOrGetLockField
@@ -298,7 +363,7 @@ public class LockInserter extends BodyTransformer {
 	 *         the lock corresponding to this object.
 	 */
 	private SootField createOrGetLockField(SootClass cls, String fieldSuffix) {
-		RefType fieldType = lockClass.getType();
+		RefType fieldType = getLockClass().getType();
 		String lockFieldName = lockFieldPrefix + fieldSuffix;
 		// Make the field if it does not already have one
 		if(!cls.declaresField(lockFieldName, fieldType)) {
@@ -329,7 +394,7 @@ public class LockInserter extends BodyTransformer {
     			AssignStmt localReentLockNew = Jimple.v()
     				.newAssignStmt(localReentLock, Jimple.v().newNewExpr(fieldType));
     			SpecialInvokeExpr initExpr = Jimple.v()
-    				.newSpecialInvokeExpr(localReentLock, lockInit);
+    				.newSpecialInvokeExpr(localReentLock, this.readWrite ? rwLockInit : lockInit);
     			InvokeStmt initLocalReentLock = Jimple.v().newInvokeStmt(initExpr);
     			// assign the field to that initialized local
     			JimpleBody body = (JimpleBody) meth.getActiveBody();
@@ -353,5 +418,12 @@ public class LockInserter extends BodyTransformer {
 		}
 		return cls.getField(lockFieldName, fieldType);
 	}
+	
+	/**
+	 * @return the class of the locks we insert
+	 */
+	private SootClass getLockClass() {
+		return this.readWrite ? rwLockClass : lockClass;
+	}
 
 }
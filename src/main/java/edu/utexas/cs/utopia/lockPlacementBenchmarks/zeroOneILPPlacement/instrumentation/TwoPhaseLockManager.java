@@ -1,7 +1,20 @@
 package edu.utexas.cs.utopia.lockPlacementBenchmarks.zeroOneILPPlacement.instrumentation;
 
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Map;
 import java.util.Stack;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * Manage a 2-phase locking protocol for implementing nested atomic sections
@@ -10,19 +23,41 @@ import java.util.concurrent.locks.ReentrantLock;
  *      - Once outside of all atomic sections, all obtained locks 
  *        are released
  * 
- * All fields are "ThreadLocal", so all the methods are thread-safe
+ * All fields but the profile counters are "ThreadLocal", so all the methods are thread-safe
  * and will not be affected by other threads entering/exiting
  * atomic sections
  * 
  * Note that we rely on the user to avoid deadlock by obtaining
  * locks in a safe order.
+ * 
+ * Read/write locks may be obtained in read or write mode. A thread
+ * holding the write lock may also obtain the read lock, but a
+ * read lock cannot be upgraded: this would deadlock. The
+ * {@link LockInserter} never asks for an upgrade, since an atomic
+ * segment which invokes a monitor method that may write obtains
+ * all its locks in write mode.
+ * 
+ * When instrumented for profiling, entries to each atomic segment are
+ * counted by one atomic counter per segment, shared by all threads (so
+ * no per-thread state outlives its thread), and the counts are written to the file named by the system property
+ * {@value #PROFILE_PROPERTY} (default {@value #DEFAULT_PROFILE}) at exit:
+ *   (key of atomic segment)\t(number of entries)
+ *   ...
  */
 public class TwoPhaseLockManager {
+	public static final String PROFILE_PROPERTY = "lockPlacement.profile",
+							   DEFAULT_PROFILE = "lockPlacement.profile";
+	// map (atomic segment key) -> number of entries, over all threads
+	private static final ConcurrentMap<String, AtomicLong> entryCounts = new ConcurrentHashMap<>();
+	// true once the profile is written at exit
+	private static final AtomicBoolean profiling = new AtomicBoolean(false);
+	
+
 	// A thread local stack of locks, initializing to empty stack
-	private ThreadLocal<Stack<ReentrantLock>> 
-		obtainedLocks = new ThreadLocal<Stack<ReentrantLock>>() {
-			@Override protected Stack<ReentrantLock> initialValue() {
-				return new Stack<ReentrantLock>();
+	private ThreadLocal<Stack<Lock>> 
+		obtainedLocks = new ThreadLocal<Stack<Lock>>() {
+			@Override protected Stack<Lock> initialValue() {
+				return new Stack<Lock>();
 			}
 		};
 	// A thread local nesting count, initializing to 0
@@ -41,6 +76,52 @@ public class TwoPhaseLockManager {
 		nestedLevel.set(nestedLevel.get()+1);
 	}
 	
+	/**
+	 * Count an entry to an atomic section, then enter it
+	 * 
+	 * @param segmentKey the key of the atomic section
+	 */
+	public void enterAtomicSegment(String segmentKey) {
+		AtomicLong count = entryCounts.get(segmentKey);
+		if(count == null) {
+			AtomicLong prev = entryCounts.putIfAbsent(segmentKey, count = new AtomicLong());
+			if(prev != null) {
+				count = prev;
+			}
+			else if(profiling.compareAndSet(false, true)) {
+				Runtime.getRuntime().addShutdownHook(new Thread() {
+					@Override public void run() {
+						writeProfile();
+					}
+				});
+			}
+		}
+		count.incrementAndGet();
+		enterAtomicSegment();
+	}
+	
+	/**
+	 * Write the entry counts to the profile.
+	 * Threads may still be running, so the counts
+	 * are approximate.
+	 */
+	private static void writeProfile() {
+		Map<String, Long> total = new TreeMap<>();
+		for(Map.Entry<String, AtomicLong> entry : entryCounts.entrySet()) {
+			total.put(entry.getKey(), entry.getValue().get());
+		}
+		String file = System.getProperty(PROFILE_PROPERTY, DEFAULT_PROFILE);
+		try(PrintWriter out = new PrintWriter(Files.newBufferedWriter(Paths.get(file),
+																	  StandardCharsets.UTF_8))) {
+			for(Map.Entry<String, Long> entry : total.entrySet()) {
+				out.println(entry.getKey() + "\t" + entry.getValue());
+			}
+		}
+		catch(IOException e) {
+			System.err.println("Failed to write atomic segment profile " + file + ": " + e.getMessage());
+		}
+	}
+	
 	/**
 	 * Exit an atomic section, and if we are no longer in
 	 * any atomic segments (i.e. nested level is 0) then
@@ -54,7 +135,7 @@ public class TwoPhaseLockManager {
 		}
 		nestedLevel.set(prevNestedLevel-1);
 		if(prevNestedLevel == 1) {
-			Stack<ReentrantLock> localObtainedLocks = obtainedLocks.get();
+			Stack<Lock> localObtainedLocks = obtainedLocks.get();
 			while(!localObtainedLocks.isEmpty()) {
 				localObtainedLocks.pop().unlock();
 			}
@@ -67,6 +148,37 @@ public class TwoPhaseLockManager {
 	 * @param lock the lock to obtain
 	 */
 	public void obtainLock(ReentrantLock lock) {
+		obtain(lock);
+	}
+	
+	/**
+	 * Obtain the read lock of a read/write lock and record that we have it
+	 * 
+	 * @param lock the read/write lock to obtain in read mode
+	 */
+	public void obtainReadLock(ReentrantReadWriteLock lock) {
+		obtain(lock.readLock());
+	}
+	
+	/**
+	 * Obtain the write lock of a read/write lock and record that we have it
+	 * 
+	 * @param lock the read/write lock to obtain in write mode
+	 * @throws IllegalStateException if this thread holds the lock only in read
+	 *                               mode, instead of deadlocking
+	 */
+	public void obtainWriteLock(ReentrantReadWriteLock lock) {
+		if(lock.getReadHoldCount() > 0 && !lock.isWriteLockedByCurrentThread()) {
+			throw new IllegalStateException("Cannot upgrade a read lock to a write lock " +
+											"in a nested atomic section");
+		}
+		obtain(lock.writeLock());
+	}
+	
+	/**
+	 * Obtain a lock and record that we have it
+	 */
+	private void obtain(Lock lock) {
 		lock.lock();
 		obtainedLocks.get().push(lock);
 	}
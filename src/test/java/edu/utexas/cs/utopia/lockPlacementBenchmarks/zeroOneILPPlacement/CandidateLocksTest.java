@@ -0,0 +1,140 @@
+package edu.utexas.cs.utopia.lockPlacementBenchmarks.zeroOneILPPlacement;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import edu.utexas.cs.utopia.lockPlacementBenchmarks.zeroOneILPPlacement.analysis.AliasRelation;
+
+/**
+ * Tests of {@link CandidateLocks}
+ *
+ * @author Ben_Sepanski
+ *
+ */
+public class CandidateLocksTest {
+	@Test
+	public void testUnconstrained() {
+		LockPlacementInstance instance = new InstanceBuilder(3).segment(0, 1, 2).build();
+		CandidateLocks candidates = new CandidateLocks(instance);
+		for(int i = 0; i < 3; ++i) {
+			for(int j = 0; j < 3; ++j) {
+				assertTrue(candidates.isLocalCandidate(i, j));
+				assertTrue(candidates.isGlobalCandidate(i, j));
+			}
+			assertFalse(candidates.isFixed(i));
+			assertEquals(i, candidates.getRepresentative(i));
+		}
+		assertEquals(18, candidates.numCandidates());
+		assertEquals(18, candidates.numVariables());
+		assertNull(candidates.getGlobalSlots());
+	}
+
+	@Test
+	public void testArrayRefsAndPrimitives() {
+		// 0 has no locks, 1 only a global lock
+		LockPlacementInstance instance = new InstanceBuilder(3).arrayRef(0)
+															   .primitive(1)
+															   .segment(0, 1, 2)
+															   .build();
+		CandidateLocks candidates = new CandidateLocks(instance);
+		for(int i = 0; i < 3; ++i) {
+			assertFalse(candidates.isLocalCandidate(i, 0));
+			assertFalse(candidates.isGlobalCandidate(i, 0));
+			assertFalse(candidates.isLocalCandidate(i, 1));
+			assertTrue(candidates.isGlobalCandidate(i, 1));
+			assertTrue(candidates.isLocalCandidate(i, 2));
+		}
+		assertTrue(candidates.getLocalUsers(1).isEmpty());
+		assertEquals(3, candidates.getGlobalUsers(1).cardinality());
+	}
+
+	@Test
+	public void testFixed() {
+		// Only global lock 1 exists
+		LockPlacementInstance instance = new InstanceBuilder(2).arrayRef(0)
+															   .primitive(1)
+															   .segment(0, 1)
+															   .build();
+		CandidateLocks candidates = new CandidateLocks(instance);
+		assertTrue(candidates.isFixed(0));
+		assertTrue(candidates.isFixed(1));
+		assertEquals(2, candidates.numCandidates());
+		assertEquals(0, candidates.numVariables());
+	}
+
+	@Test
+	public void testMayAliasHasNoLocalLocks() {
+		LockPlacementInstance instance = new InstanceBuilder(3).alias(0, 1, AliasRelation.MAY_ALIAS)
+															   .segment(0, 1, 2)
+															   .build();
+		CandidateLocks candidates = new CandidateLocks(instance);
+		for(int j = 0; j < 3; ++j) {
+			assertFalse(candidates.isLocalCandidate(0, j));
+			assertFalse(candidates.isLocalCandidate(1, j));
+			assertTrue(candidates.isLocalCandidate(2, j));
+			assertTrue(candidates.isGlobalCandidate(0, j));
+		}
+	}
+
+	@Test
+	public void testOutOfScopeAndTopoOrder() {
+		LockPlacementInstance instance = new InstanceBuilder(3).segment(0, 1).outOfScope(2)
+															   .segment(2)
+															   .topoAccessedBefore(2, 0)
+															   .build();
+		CandidateLocks candidates = new CandidateLocks(instance);
+		// 2 is out of scope where 0 and 1 are accessed
+		assertFalse(candidates.isLocalCandidate(0, 2));
+		assertFalse(candidates.isLocalCandidate(1, 2));
+		assertTrue(candidates.isGlobalCandidate(0, 2));
+		assertTrue(candidates.isLocalCandidate(2, 2));
+		// 2 TopoAccessedBefore 0
+		assertFalse(candidates.isLocalCandidate(2, 0));
+		assertTrue(candidates.isLocalCandidate(2, 1));
+		assertTrue(candidates.isGlobalCandidate(2, 0));
+	}
+
+	@Test
+	public void testMustAliasSharesCandidates() {
+		LockPlacementInstance instance = new InstanceBuilder(3).alias(1, 2, AliasRelation.MUST_ALIAS)
+															   .segment(0, 1).outOfScope(0)
+															   .segment(2)
+															   .build();
+		CandidateLocks candidates = new CandidateLocks(instance);
+		assertEquals(1, candidates.getRepresentative(2));
+		for(int j = 0; j < 3; ++j) {
+			assertEquals(candidates.isLocalCandidate(1, j), candidates.isLocalCandidate(2, j));
+			assertEquals(candidates.isGlobalCandidate(1, j), candidates.isGlobalCandidate(2, j));
+		}
+		// 0 is out of scope where 1 is accessed, so neither may use it
+		assertFalse(candidates.isLocalCandidate(2, 0));
+		// Only the representative's row needs variables
+		assertEquals(candidates.numCandidates() - 5, candidates.numVariables());
+	}
+
+	@Test
+	public void testBoundedGlobalLocks() {
+		LockPlacementInstance instance = new InstanceBuilder(4).arrayRef(0)
+															   .alias(1, 2, AliasRelation.MAY_ALIAS)
+															   .segment(0, 1, 2, 3)
+															   .build();
+		// 0 is an ArrayRef, so the slots start at 1
+		CandidateLocks bounded = new CandidateLocks(instance, 2);
+		assertArrayEquals(new int[] {1, 2}, bounded.getGlobalSlots());
+		for(int i = 0; i < 4; ++i) {
+			assertTrue(bounded.isGlobalCandidate(i, 2));
+			assertFalse(bounded.isGlobalCandidate(i, 3));
+		}
+		// {0}, {1, 2} and {3} are the alias-connected groups
+		CandidateLocks auto = new CandidateLocks(instance, CandidateLocks.AUTO_GLOBAL_LOCKS);
+		assertArrayEquals(new int[] {1, 2, 3}, auto.getGlobalSlots());
+		// more slots than locks
+		CandidateLocks many = new CandidateLocks(instance, 10);
+		assertArrayEquals(new int[] {1, 2, 3}, many.getGlobalSlots());
+	}
+}
@@ -0,0 +1,32 @@
+package edu.utexas.cs.utopia.lockPlacementBenchmarks.zeroOneILPPlacement;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+/**
+ * A stand-in for a solver binary run by {@link ExternalSolverBackend}:
+ * prints the lines of the file given as its first argument,
+ * ignoring the problem file.
+ *
+ * @author Ben_Sepanski
+ *
+ */
+public class CannedSolver {
+	public static void main(String[] args) throws IOException {
+		for(String line : Files.readAllLines(Paths.get(args[0]), StandardCharsets.UTF_8)) {
+			System.out.println(line);
+		}
+	}
+
+	/**
+	 * @param output the file whose lines the solver prints
+	 * @return a command running the solver on the problem file
+	 */
+	static String command(String output) {
+		String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+		return java + " -cp " + System.getProperty("java.class.path") + " " +
+			   CannedSolver.class.getName() + " " + output + " {file}";
+	}
+}
@@ -0,0 +1,103 @@
+package edu.utexas.cs.utopia.lockPlacementBenchmarks.zeroOneILPPlacement;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Minimizes a {@link PseudoBooleanProblem} made by
+ * {@link LockPlacementEncoding} by trying every assignment
+ * of its (lvalue, lock) variables. An exactly-one constraint
+ * over them is enumerated as a choice of its true variable.
+ *
+ * @author Ben_Sepanski
+ *
+ */
+class ExhaustiveBackend implements SolverBackend {
+	// true iff solutions are reported as optimal
+	private final boolean provesOptimality;
+
+	ExhaustiveBackend() {
+		this(true);
+	}
+
+	/**
+	 * @param provesOptimality false to report every solution as
+	 *                         not proven optimal, as if out of time
+	 */
+	ExhaustiveBackend(boolean provesOptimality) {
+		this.provesOptimality = provesOptimality;
+	}
+
+	@Override
+	public PseudoBooleanSolution solve(PseudoBooleanProblem problem, long timeoutMillis) {
+		// Each choice sets at most one of its variables (0 for none)
+		List<int[]> choices = new ArrayList<>();
+		BitSet chosen = new BitSet();
+		for(int lits[] : problem.getExactlyOne()) {
+			boolean isLockChoice = true;
+			for(int lit : lits) {
+				isLockChoice &= lit > 0 && isLockVar(problem, lit) && !chosen.get(lit);
+			}
+			if(!isLockChoice) continue;
+			choices.add(lits);
+			for(int lit : lits) {
+				chosen.set(lit);
+			}
+		}
+		for(int v = 1; v <= problem.getNumVars(); ++v) {
+			if(isLockVar(problem, v) && !chosen.get(v)) {
+				choices.add(new int[] {0, v});
+			}
+		}
+		boolean best[] = null,
+				values[] = new boolean[problem.getNumVars() + 1];
+		long bestCost = Long.MAX_VALUE;
+		int choice[] = new int[choices.size()];
+		while(true) {
+			for(int c = 0; c < choice.length; ++c) {
+				int vars[] = choices.get(c);
+				for(int k = 0; k < vars.length; ++k) {
+					values[vars[k]] = k == choice[c];
+				}
+			}
+			problem.evaluateDefinitions(values);
+			if(problem.isSatisfied(values)) {
+				long cost = problem.objectiveValue(values);
+				if(cost < bestCost) {
+					best = values.clone();
+					bestCost = cost;
+				}
+			}
+			int c = 0;
+			while(c < choice.length && ++choice[c] == choices.get(c).length) {
+				choice[c++] = 0;
+			}
+			if(c == choice.length) break;
+		}
+		if(best == null) {
+			throw new RuntimeException("Infeasible 0-1 ILP problem");
+		}
+		return new PseudoBooleanSolution(best,
+										 bestCost,
+										 provesOptimality ? bestCost : problem.getObjectiveOffset(),
+										 getName());
+	}
+
+	/**
+	 * @return true iff v is an (lvalue, lock) variable
+	 */
+	private static boolean isLockVar(PseudoBooleanProblem problem, int v) {
+		String name = problem.getName(v);
+		return name.startsWith("local__") || name.startsWith("global_");
+	}
+
+	@Override
+	public String getName() {
+		return "exhaustive";
+	}
+
+	@Override
+	public void interrupt(Thread solvingThread) {
+	}
+}
@@ -0,0 +1,132 @@
+package edu.utexas.cs.utopia.lockPlacementBenchmarks.zeroOneILPPlacement;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests of {@link ExternalSolverBackend}, running a
+ * {@link CannedSolver} in place of a solver binary.
+ *
+ * @author Ben_Sepanski
+ *
+ */
+public class ExternalSolverBackendTest {
+	private Path output;
+
+	@Before
+	public void createOutput() throws IOException {
+		output = Files.createTempFile("cannedSolver", ".out");
+	}
+
+	@After
+	public void deleteOutput() throws IOException {
+		Files.deleteIfExists(output);
+	}
+
+	/**
+	 * minimize 3 * x1 + 2 * x2 subject to x1 or x2
+	 */
+	private static PseudoBooleanProblem orProblem() {
+		PseudoBooleanProblem problem = new PseudoBooleanProblem();
+		int x1 = problem.newVar("x1"),
+			x2 = problem.newVar("x2");
+		problem.addClause(Arrays.asList(x1, x2));
+		problem.addObjective(3, x1);
+		problem.addObjective(2, x2);
+		return problem;
+	}
+
+	private PseudoBooleanSolution solve(ProblemFormat format, String... lines) throws IOException {
+		Files.write(output, Arrays.asList(lines), StandardCharsets.UTF_8);
+		ExternalSolverBackend backend = new ExternalSolverBackend(format,
+																  CannedSolver.command(output.toString()));
+		return backend.solve(orProblem(), 0);
+	}
+
+	/**
+	 * Check that solve fails on the output lines
+	 */
+	private void checkFails(ProblemFormat format, String... lines) throws IOException {
+		try {
+			solve(format, lines);
+			fail("Accepted " + Arrays.toString(lines));
+		}
+		catch(SolveTimeoutException e) {
+			throw e;
+		}
+		catch(RuntimeException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testCompetitionOutput() throws IOException {
+		PseudoBooleanSolution optimal = solve(ProblemFormat.OPB, "s OPTIMUM FOUND", "v -x1 x2");
+		assertEquals(2, optimal.getCost());
+		assertTrue(optimal.isOptimal());
+
+		PseudoBooleanSolution satisfiable = solve(ProblemFormat.OPB, "s SATISFIABLE", "v x1 -x2");
+		assertEquals(3, satisfiable.getCost());
+		assertFalse(satisfiable.isOptimal());
+
+		// MaxSAT solvers print plain literals, or one bit per variable
+		assertEquals(2, solve(ProblemFormat.WCNF, "s OPTIMUM FOUND", "v -1 2").getCost());
+		assertEquals(3, solve(ProblemFormat.WCNF, "s OPTIMUM FOUND", "v 10").getCost());
+	}
+
+	@Test
+	public void testLPOutput() throws IOException {
+		PseudoBooleanSolution cbc = solve(ProblemFormat.LP,
+										  "Optimal - objective value 2",
+										  "      0 x1                     0                       3",
+										  "      1 x2                     1                       2");
+		assertEquals(2, cbc.getCost());
+		assertTrue(cbc.isOptimal());
+
+		PseudoBooleanSolution glpk = solve(ProblemFormat.LP,
+										   "Status:     INTEGER NON-OPTIMAL",
+										   "x1 1",
+										   "x2 0");
+		assertEquals(3, glpk.getCost());
+		assertFalse(glpk.isOptimal());
+		assertFalse(solve(ProblemFormat.LP, "solution is not optimal", "x1 1").isOptimal());
+		assertFalse(solve(ProblemFormat.LP, "Status: suboptimal", "x1 1").isOptimal());
+	}
+
+	@Test
+	public void testBadOutput() throws IOException {
+		checkFails(ProblemFormat.OPB, "s UNSATISFIABLE");
+		checkFails(ProblemFormat.OPB, "s OPTIMUM FOUND");
+		// x1 or x2 is violated
+		checkFails(ProblemFormat.OPB, "s OPTIMUM FOUND", "v -x1 -x2");
+	}
+
+	@Test
+	public void testInterruptBeforeSolve() throws IOException {
+		Files.write(output, Arrays.asList("s OPTIMUM FOUND", "v -x1 x2"), StandardCharsets.UTF_8);
+		ExternalSolverBackend backend = new ExternalSolverBackend(ProblemFormat.OPB,
+																  CannedSolver.command(output.toString()));
+		// Nothing is running yet, so the interrupt must not be lost
+		backend.interrupt(Thread.currentThread());
+		try {
+			backend.solve(orProblem(), 0);
+			fail("Solve ignored an interrupt before it started");
+		}
+		catch(RuntimeException e) {
+			assertTrue(Thread.interrupted());
+		}
+		assertEquals(2, backend.solve(orProblem(), 0).getCost());
+	}
+}
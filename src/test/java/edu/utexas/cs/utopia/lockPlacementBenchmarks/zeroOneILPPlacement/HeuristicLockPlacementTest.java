@@ -0,0 +1,185 @@
+package edu.utexas.cs.utopia.lockPlacementBenchmarks.zeroOneILPPlacement;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import edu.utexas.cs.utopia.lockPlacementBenchmarks.zeroOneILPPlacement.analysis.AliasRelation;
+
+/**
+ * Check that on small instances the {@link HeuristicLockPlacement}
+ * and the 0-1 ILP of {@link LockConstraintProblem} find feasible
+ * lock placements of the optimal cost, which is found by trying
+ * every lock assignment.
+ *
+ * The ILP is solved by enumerating its lock variables, so these
+ * tests need no solver.
+ *
+ * @author Ben_Sepanski
+ *
+ */
+public class HeuristicLockPlacementTest {
+	private static final int LOCAL_COST = 1,
+							 GLOBAL_COST = 2,
+							 BUDGET_MILLIS = 50;
+
+	/**
+	 * @return the least cost of a feasible lock assignment
+	 */
+	private static long optimalCost(LockPlacementInstance instance) {
+		int n = instance.getNumLValues();
+		// lock code 2j is local lock j, 2j+1 is global lock j
+		int code[] = new int[n];
+		long best = Long.MAX_VALUE;
+		while(true) {
+			List<Integer> lockAssignment = new ArrayList<>();
+			List<Boolean> assignedToGlobal = new ArrayList<>();
+			for(int i = 0; i < n; ++i) {
+				lockAssignment.add(code[i] / 2);
+				assignedToGlobal.add(code[i] % 2 == 1);
+			}
+			if(instance.isFeasible(lockAssignment, assignedToGlobal)) {
+				best = Math.min(best, instance.cost(lockAssignment, assignedToGlobal,
+													LOCAL_COST, GLOBAL_COST));
+			}
+			int i = 0;
+			while(i < n && ++code[i] == 2 * n) {
+				code[i++] = 0;
+			}
+			if(i == n) return best;
+		}
+	}
+
+	/**
+	 * Check that placement is feasible, reports its true cost,
+	 * and that cost is optimalCost
+	 */
+	private static void checkOptimal(String name,
+									 LockPlacementInstance instance,
+									 LockPlacement placement,
+									 long reportedCost,
+									 long optimalCost) {
+		List<Integer> lockAssignment = placement.getLockAssignment();
+		List<Boolean> assignedToGlobal = placement.getAssignedToGlobal();
+		assertTrue(name + " placement is infeasible",
+				   instance.isFeasible(lockAssignment, assignedToGlobal));
+		assertEquals(name + " reports the wrong cost",
+					 instance.cost(lockAssignment, assignedToGlobal, LOCAL_COST, GLOBAL_COST),
+					 reportedCost);
+		assertEquals(name + " placement is not optimal", optimalCost, reportedCost);
+	}
+
+	/**
+	 * Check that the heuristic and the ILP both find optimal placements
+	 */
+	private static void checkInstance(LockPlacementInstance instance) {
+		long optimalCost = optimalCost(instance);
+		HeuristicLockPlacement heuristic = new HeuristicLockPlacement(instance,
+																	  LOCAL_COST,
+																	  GLOBAL_COST,
+																	  BUDGET_MILLIS);
+		checkOptimal("heuristic", instance, heuristic, heuristic.getCost(), optimalCost);
+		LockConstraintProblem ilp = new LockConstraintProblem(instance,
+															  LOCAL_COST,
+															  GLOBAL_COST,
+															  new ExhaustiveBackend(),
+															  0);
+		checkOptimal("ILP", instance, ilp, ilp.getCost(), optimalCost);
+		assertTrue(ilp.isOptimal());
+	}
+
+	@Test
+	public void testIndependentSegments() {
+		checkInstance(new InstanceBuilder(3).segment(0)
+											.segment(1, 2)
+											.build());
+	}
+
+	@Test
+	public void testSharedLValue() {
+		checkInstance(new InstanceBuilder(3).segment(0, 1)
+											.segment(1, 2)
+											.segment(2)
+											.build());
+	}
+
+	@Test
+	public void testReadOnlySegments() {
+		checkInstance(new InstanceBuilder(3).segment(1, new int[] {0, 1}, new int[] {})
+											.segment(1, new int[] {0, 2}, new int[] {2})
+											.segment(1, new int[] {1}, new int[] {})
+											.build());
+	}
+
+	@Test
+	public void testMayAliasNeedsGlobalLock() {
+		checkInstance(new InstanceBuilder(3).alias(0, 1, AliasRelation.MAY_ALIAS)
+											.alias(1, 2, AliasRelation.MUST_ALIAS)
+											.segment(0)
+											.segment(1, 2)
+											.build());
+	}
+
+	@Test
+	public void testOutOfScopeAndArrayRefs() {
+		checkInstance(new InstanceBuilder(4).arrayRef(1)
+											.primitive(2)
+											.segment(0, 1).outOfScope(3)
+											.segment(2, 3)
+											.topoAccessedBefore(0, 3)
+											.build());
+	}
+
+	@Test
+	public void testWeightedSegments() {
+		checkInstance(new InstanceBuilder(3).segment(5, new int[] {0, 1}, new int[] {0})
+											.segment(1, new int[] {1, 2}, new int[] {1, 2})
+											.segment(3, new int[] {0, 2}, new int[] {2})
+											.build());
+	}
+
+	@Test
+	public void testRandomInstances() {
+		Random random = new Random(42);
+		AliasRelation relations[] = AliasRelation.values();
+		for(int t = 0; t < 30; ++t) {
+			int n = 2 + random.nextInt(3),
+				numSegs = 1 + random.nextInt(3);
+			InstanceBuilder builder = new InstanceBuilder(n);
+			for(int i = 0; i < n; ++i) {
+				if(random.nextInt(6) == 0) builder.arrayRef(i);
+				if(random.nextInt(4) == 0) builder.primitive(i);
+				for(int j = i+1; j < n; ++j) {
+					if(random.nextInt(3) == 0) {
+						builder.alias(i, j, relations[random.nextInt(relations.length)]);
+					}
+				}
+			}
+			for(int a = 0; a < numSegs; ++a) {
+				List<Integer> accessed = new ArrayList<>(),
+							  written = new ArrayList<>();
+				for(int i = 0; i < n; ++i) {
+					if(random.nextBoolean()) {
+						accessed.add(i);
+						if(random.nextBoolean()) written.add(i);
+					}
+				}
+				builder.segment(1 + random.nextInt(3), toArray(accessed), toArray(written));
+			}
+			checkInstance(builder.build());
+		}
+	}
+
+	private static int[] toArray(List<Integer> list) {
+		int arr[] = new int[list.size()];
+		for(int i = 0; i < arr.length; ++i) {
+			arr[i] = list.get(i);
+		}
+		return arr;
+	}
+}
@@ -0,0 +1,129 @@
+package edu.utexas.cs.utopia.lockPlacementBenchmarks.zeroOneILPPlacement;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import edu.utexas.cs.utopia.lockPlacementBenchmarks.zeroOneILPPlacement.analysis.AliasRelation;
+import edu.utexas.cs.utopia.lockPlacementBenchmarks.zeroOneILPPlacement.analysis.BitMatrix;
+
+/**
+ * Builds small {@link LockPlacementInstance}s for tests, without
+ * analyzing a monitor.
+ *
+ * LValues are NOT_ALIAS'ed to each other unless set otherwise,
+ * and every LValue MUST_ALIAS'es itself. LValue i has key
+ * "lValue(i)" unless set otherwise.
+ *
+ * @author Ben_Sepanski
+ *
+ */
+class InstanceBuilder {
+	private final int n;
+	private final List<String> keys = new ArrayList<>();
+	private final boolean isArrayRef[], isPrimitive[];
+	private final AliasRelation alias[][];
+	private final List<List<Integer>> accessed = new ArrayList<>(),
+									  written = new ArrayList<>();
+	private final List<Integer> weights = new ArrayList<>();
+	private final List<int[]> outOfScope = new ArrayList<>();
+	private final BitMatrix topoAccBefore;
+
+	/**
+	 * @param numLValues the number of LValues
+	 */
+	InstanceBuilder(int numLValues) {
+		this.n = numLValues;
+		isArrayRef = new boolean[n];
+		isPrimitive = new boolean[n];
+		alias = new AliasRelation[n][n];
+		for(int i = 0; i < n; ++i) {
+			for(int j = 0; j < n; ++j) {
+				alias[i][j] = i == j ? AliasRelation.MUST_ALIAS : AliasRelation.NOT_ALIAS;
+			}
+		}
+		topoAccBefore = new BitMatrix(n, n);
+		for(int i = 0; i < n; ++i) {
+			keys.add("lValue" + i);
+		}
+	}
+
+	InstanceBuilder key(int i, String key) {
+		keys.set(i, key);
+		return this;
+	}
+
+	InstanceBuilder arrayRef(int i) {
+		isArrayRef[i] = true;
+		return this;
+	}
+
+	InstanceBuilder primitive(int i) {
+		isPrimitive[i] = true;
+		return this;
+	}
+
+	InstanceBuilder alias(int i, int j, AliasRelation relation) {
+		alias[i][j] = alias[j][i] = relation;
+		return this;
+	}
+
+	InstanceBuilder topoAccessedBefore(int i, int j) {
+		topoAccBefore.set(i, j);
+		return this;
+	}
+
+	/**
+	 * Add an atomic segment of weight 1 which writes to
+	 * every LValue it accesses
+	 */
+	InstanceBuilder segment(int... accessedIDs) {
+		return segment(1, accessedIDs, accessedIDs);
+	}
+
+	/**
+	 * Add an atomic segment
+	 *
+	 * @param weight the weight of the segment
+	 * @param accessedIDs the LValues it accesses
+	 * @param writtenIDs the LValues it writes to
+	 */
+	InstanceBuilder segment(int weight, int accessedIDs[], int writtenIDs[]) {
+		accessed.add(toList(accessedIDs));
+		written.add(toList(writtenIDs));
+		weights.add(weight);
+		outOfScope.add(new int[0]);
+		return this;
+	}
+
+	/**
+	 * Make the LValues out of scope at the beginning of the last
+	 * segment added
+	 */
+	InstanceBuilder outOfScope(int... ids) {
+		outOfScope.set(outOfScope.size() - 1, ids);
+		return this;
+	}
+
+	LockPlacementInstance build() {
+		int numSegs = accessed.size();
+		int segmentWeights[] = new int[numSegs];
+		BitMatrix oos = new BitMatrix(numSegs, n);
+		for(int a = 0; a < numSegs; ++a) {
+			segmentWeights[a] = weights.get(a);
+			for(int i : outOfScope.get(a)) {
+				oos.set(a, i);
+			}
+		}
+		return new LockPlacementInstance(keys, isArrayRef, isPrimitive, alias,
+										 accessed, written, segmentWeights,
+										 oos, topoAccBefore);
+	}
+
+	private static List<Integer> toList(int ids[]) {
+		List<Integer> list = new ArrayList<>();
+		for(int id : ids) {
+			list.add(id);
+		}
+		return list;
+	}
+}
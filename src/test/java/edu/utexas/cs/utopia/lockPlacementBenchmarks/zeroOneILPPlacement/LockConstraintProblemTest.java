@@ -0,0 +1,75 @@
+package edu.utexas.cs.utopia.lockPlacementBenchmarks.zeroOneILPPlacement;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import edu.utexas.cs.utopia.lockPlacementBenchmarks.zeroOneILPPlacement.analysis.AliasRelation;
+
+/**
+ * Tests of adding the MAY_ALIAS constraints of a
+ * {@link LockConstraintProblem} lazily, solved by an
+ * {@link ExhaustiveBackend}.
+ *
+ * @author Ben_Sepanski
+ *
+ */
+public class LockConstraintProblemTest {
+	private static final int LOCAL_COST = 1,
+							 GLOBAL_COST = 2;
+
+	/**
+	 * Two heavy segments, each accessing one of a MAY_ALIAS'ed pair
+	 * and a MUST_ALIAS'ed partner. Without the alias constraints the
+	 * pair is put on two global locks, so the first solve violates them.
+	 */
+	private static LockPlacementInstance mayAliasedPair() {
+		return new InstanceBuilder(3).alias(0, 1, AliasRelation.MAY_ALIAS)
+									 .alias(1, 2, AliasRelation.MUST_ALIAS)
+									 .segment(5, new int[] {0}, new int[] {0})
+									 .segment(5, new int[] {1, 2}, new int[] {1, 2})
+									 .build();
+	}
+
+	private static void checkFeasible(LockPlacementInstance instance, LockConstraintProblem ilp) {
+		List<Integer> lockAssignment = ilp.getLockAssignment();
+		List<Boolean> assignedToGlobal = ilp.getAssignedToGlobal();
+		assertTrue(instance.isFeasible(lockAssignment, assignedToGlobal));
+		assertEquals(instance.cost(lockAssignment, assignedToGlobal, LOCAL_COST, GLOBAL_COST),
+					 ilp.getCost());
+	}
+
+	@Test
+	public void testLazyAliasIsOptimal() {
+		LockPlacementInstance instance = mayAliasedPair();
+		LockConstraintProblem eager = new LockConstraintProblem(instance,
+																LOCAL_COST,
+																GLOBAL_COST,
+																new ExhaustiveBackend(),
+																0);
+		LockConstraintProblem lazy = new LockConstraintProblem(instance,
+															   LOCAL_COST,
+															   GLOBAL_COST,
+															   new ExhaustiveBackend(),
+															   0, true, null, 0);
+		checkFeasible(instance, lazy);
+		assertTrue(lazy.isOptimal());
+		assertEquals(eager.getCost(), lazy.getCost());
+	}
+
+	@Test
+	public void testUnprovenSolveIsRepaired() {
+		LockPlacementInstance instance = mayAliasedPair();
+		LockConstraintProblem lazy = new LockConstraintProblem(instance,
+															   LOCAL_COST,
+															   GLOBAL_COST,
+															   new ExhaustiveBackend(false),
+															   0, true, null, 0);
+		checkFeasible(instance, lazy);
+		assertFalse(lazy.isOptimal());
+	}
+}
@@ -0,0 +1,106 @@
+package edu.utexas.cs.utopia.lockPlacementBenchmarks.zeroOneILPPlacement;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests of {@link LockPlacementCache}
+ *
+ * @author Ben_Sepanski
+ *
+ */
+public class LockPlacementCacheTest {
+	private static final int LOCAL_COST = 1,
+							 GLOBAL_COST = 2;
+	private static final String METHOD = "ilp-test";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	private LockPlacementCache cache;
+
+	@Before
+	public void createCache() {
+		cache = new LockPlacementCache(folder.getRoot().toPath());
+	}
+
+	private static LockPlacement placement(final List<Integer> lockAssignment,
+										   final List<Boolean> assignedToGlobal) {
+		return new LockPlacement() {
+			@Override
+			public List<Integer> getLockAssignment() {
+				return lockAssignment;
+			}
+
+			@Override
+			public List<Boolean> getAssignedToGlobal() {
+				return assignedToGlobal;
+			}
+		};
+	}
+
+	@Test
+	public void testHitAndMiss() {
+		LockPlacementInstance instance = new InstanceBuilder(2).segment(0, 1).build(),
+							  edited = new InstanceBuilder(2).segment(0).segment(1).build();
+		String fingerprint = instance.fingerprint(LOCAL_COST, GLOBAL_COST);
+		assertEquals(fingerprint, new InstanceBuilder(2).segment(0, 1).build()
+														.fingerprint(LOCAL_COST, GLOBAL_COST));
+		assertNotEquals(fingerprint, instance.fingerprint(LOCAL_COST, GLOBAL_COST + 1));
+		assertNotEquals(fingerprint, edited.fingerprint(LOCAL_COST, GLOBAL_COST));
+
+		assertNull(cache.load(instance, fingerprint, METHOD));
+		cache.store(fingerprint, METHOD, placement(Arrays.asList(0, 0), Arrays.asList(false, false)));
+		LockPlacement cached = cache.load(instance, fingerprint, METHOD);
+		assertNotNull(cached);
+		assertEquals(Arrays.asList(0, 0), cached.getLockAssignment());
+		assertEquals(Arrays.asList(false, false), cached.getAssignedToGlobal());
+		assertNull(cache.load(instance, fingerprint, METHOD + "-other"));
+		assertNull(cache.load(edited, edited.fingerprint(LOCAL_COST, GLOBAL_COST), METHOD));
+	}
+
+	@Test
+	public void testInfeasibleEntryIsMiss() {
+		// LValue 1 is an ArrayRef, so it cannot be a lock
+		LockPlacementInstance instance = new InstanceBuilder(2).arrayRef(1).segment(0, 1).build();
+		String fingerprint = instance.fingerprint(LOCAL_COST, GLOBAL_COST);
+		cache.store(fingerprint, METHOD, placement(Arrays.asList(1, 1), Arrays.asList(true, true)));
+		assertNull(cache.load(instance, fingerprint, METHOD));
+	}
+
+	@Test
+	public void testWarmStartMatchesKeys() {
+		LockPlacementInstance before = new InstanceBuilder(3).key(0, "a").key(1, "b").key(2, "c")
+															 .segment(0, 1, 2).build();
+		// b is a local lock of a and b, c has global lock c
+		cache.storePrevious("Monitor", before, placement(Arrays.asList(1, 1, 2),
+														 Arrays.asList(false, false, true)));
+		// After the edit, a and c moved and b is gone
+		LockPlacementInstance after = new InstanceBuilder(3).key(0, "c").key(1, "new").key(2, "a")
+															.segment(0, 1, 2).build();
+		LockPlacement warmStart = cache.loadPrevious("Monitor", after);
+		assertEquals(Arrays.asList(0, null, null), warmStart.getLockAssignment());
+		assertEquals(Arrays.asList(true, null, null), warmStart.getAssignedToGlobal());
+		assertNull(cache.loadPrevious("OtherMonitor", after));
+	}
+
+	@Test
+	public void testDuplicateKeysAreLeftOut() {
+		LockPlacementInstance instance = new InstanceBuilder(3).key(0, "x").key(1, "x").key(2, "y")
+															   .segment(0, 1, 2).build();
+		cache.storePrevious("Monitor", instance, placement(Arrays.asList(0, 1, 2),
+														   Arrays.asList(false, false, true)));
+		LockPlacement warmStart = cache.loadPrevious("Monitor", instance);
+		assertEquals(Arrays.asList(null, null, 2), warmStart.getLockAssignment());
+		assertEquals(Arrays.asList(null, null, true), warmStart.getAssignedToGlobal());
+	}
+}
@@ -0,0 +1,250 @@
+package edu.utexas.cs.utopia.lockPlacementBenchmarks.zeroOneILPPlacement;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Round trip tests of {@link ProblemWriter}: each format is read back
+ * by a minimal reader, and must have the same feasible assignments and
+ * objective values as the problem written.
+ *
+ * @author Ben_Sepanski
+ *
+ */
+public class ProblemWriterTest {
+	/**
+	 * A constraint sum_k coefs[k] * x(vars[k]) (op) rhs, or a clause
+	 * of a WCNF file of weight rhs (vars negative for negated variables)
+	 */
+	private static class Row {
+		final List<Long> coefs = new ArrayList<>();
+		final List<Integer> vars = new ArrayList<>();
+		String op;
+		long rhs;
+
+		boolean isSatisfied(boolean values[]) {
+			long lhs = 0;
+			for(int k = 0; k < vars.size(); ++k) {
+				if(values[vars.get(k)]) lhs += coefs.get(k);
+			}
+			return op.equals("=") ? lhs == rhs : lhs >= rhs;
+		}
+
+		boolean isSatisfiedClause(boolean values[]) {
+			for(int lit : vars) {
+				if(values[Math.abs(lit)] == lit > 0) return true;
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * A problem read back from a file: minimize objective subject to
+	 * hard, with numVars variables (including auxiliary ones)
+	 */
+	private static class ReadProblem {
+		int numVars;
+		// weight of the hard clauses of a WCNF file
+		long top;
+		Row objective = new Row();
+		List<Row> hard = new ArrayList<>(),
+				  soft = new ArrayList<>();
+
+		/**
+		 * @return the least cost of an extension of values[1..n] to
+		 *         the auxiliary variables satisfying the hard rows,
+		 *         or -1 if there is none
+		 */
+		long bestCost(boolean values[], int n, boolean clauses) {
+			boolean all[] = Arrays.copyOf(values, numVars + 1);
+			long best = -1;
+			for(long aux = 0; aux < 1L << (numVars - n); ++aux) {
+				for(int v = n + 1; v <= numVars; ++v) {
+					all[v] = (aux >> (v - n - 1) & 1) == 1;
+				}
+				boolean feasible = true;
+				for(Row row : hard) {
+					feasible &= clauses ? row.isSatisfiedClause(all) : row.isSatisfied(all);
+				}
+				if(!feasible) continue;
+				long cost = 0;
+				for(int k = 0; k < objective.vars.size(); ++k) {
+					if(all[objective.vars.get(k)]) cost += objective.coefs.get(k);
+				}
+				for(Row clause : soft) {
+					if(!clause.isSatisfiedClause(all)) cost += clause.rhs;
+				}
+				if(best < 0 || cost < best) best = cost;
+			}
+			return best;
+		}
+	}
+
+	/**
+	 * Read terms "+w xv", "+ w xv", "- xv", ... into row, up to
+	 * an operator (or the end of the line)
+	 */
+	private static void readTerms(String tokens[], int start, Row row) {
+		// the coefficient of the next variable
+		long coef = 1;
+		for(int t = start; t < tokens.length; ++t) {
+			String token = tokens[t];
+			if(token.equals(">=") || token.equals("=")) {
+				row.op = token;
+				row.rhs = Long.parseLong(tokens[t+1]);
+				return;
+			}
+			else if(token.equals("-")) {
+				coef = -coef;
+			}
+			else if(token.startsWith("x")) {
+				row.coefs.add(coef);
+				row.vars.add(Integer.parseInt(token.substring(1)));
+				coef = 1;
+			}
+			else if(!token.equals("+") && !token.equals(";")) {
+				coef *= Long.parseLong(token);
+			}
+		}
+	}
+
+	private static ReadProblem read(String file, ProblemFormat format) {
+		ReadProblem read = new ReadProblem();
+		boolean inBinary = false;
+		for(String line : file.split("\n")) {
+			String tokens[] = line.trim().split("\\s+");
+			switch(format) {
+			case OPB:
+				if(tokens[0].equals("*")) {
+					if(tokens.length > 2 && tokens[1].equals("#variable=")) {
+						read.numVars = Integer.parseInt(tokens[2]);
+					}
+					continue;
+				}
+				if(tokens[0].equals("min:")) {
+					readTerms(tokens, 1, read.objective);
+					continue;
+				}
+				Row row = new Row();
+				readTerms(tokens, 0, row);
+				read.hard.add(row);
+				break;
+			case WCNF:
+				if(tokens[0].equals("c")) continue;
+				if(tokens[0].equals("p")) {
+					read.numVars = Integer.parseInt(tokens[2]);
+					read.top = Long.parseLong(tokens[4]);
+					continue;
+				}
+				Row clause = new Row();
+				clause.rhs = Long.parseLong(tokens[0]);
+				for(int t = 1; t < tokens.length - 1; ++t) {
+					clause.vars.add(Integer.parseInt(tokens[t]));
+				}
+				assertEquals("0", tokens[tokens.length - 1]);
+				(clause.rhs == read.top ? read.hard : read.soft).add(clause);
+				break;
+			case LP:
+				if(tokens[0].startsWith("\\") || tokens[0].equals("Minimize")
+				   || tokens[0].equals("Subject") || tokens[0].equals("End")) {
+					continue;
+				}
+				if(tokens[0].equals("Binary")) {
+					inBinary = true;
+					continue;
+				}
+				if(inBinary) {
+					read.numVars = Math.max(read.numVars, Integer.parseInt(tokens[0].substring(1)));
+					continue;
+				}
+				Row lpRow = tokens[0].equals("obj:") ? read.objective : new Row();
+				readTerms(tokens, 1, lpRow);
+				if(lpRow != read.objective) {
+					read.hard.add(lpRow);
+				}
+				break;
+			default:
+				throw new IllegalArgumentException("Unrecognized format " + format);
+			}
+		}
+		return read;
+	}
+
+	private static String write(PseudoBooleanProblem problem, ProblemFormat format) throws IOException {
+		StringWriter out = new StringWriter();
+		ProblemWriter.write(problem, format, out);
+		return out.toString();
+	}
+
+	/**
+	 * x1 or not x2, exactly one of x1, x2, x3, minimize
+	 * 3 * x1 + 2 * x2 + 3000000000 * x3 + 4
+	 */
+	private static PseudoBooleanProblem tinyProblem() {
+		PseudoBooleanProblem problem = new PseudoBooleanProblem();
+		int x1 = problem.newVar("x1"),
+			x2 = problem.newVar("x2"),
+			x3 = problem.newVar("x3");
+		problem.addClause(Arrays.asList(x1, -x2));
+		problem.addExactlyOne(Arrays.asList(x1, x2, x3));
+		problem.addObjective(3, x1);
+		problem.addObjective(2, x2);
+		problem.addObjective(3000000000L, x3);
+		problem.addObjective(4, PseudoBooleanProblem.TRUE);
+		return problem;
+	}
+
+	private static void checkRoundTrip(PseudoBooleanProblem problem, ProblemFormat format) throws IOException {
+		String file = write(problem, format);
+		ReadProblem read = read(file, format);
+		int n = problem.getNumVars();
+		assertTrue(format + " lost variables", read.numVars >= n);
+		boolean values[] = new boolean[n + 1];
+		for(int assignment = 0; assignment < 1 << n; ++assignment) {
+			for(int v = 1; v <= n; ++v) {
+				values[v] = (assignment >> (v - 1) & 1) == 1;
+			}
+			long cost = read.bestCost(values, n, format == ProblemFormat.WCNF);
+			if(problem.isSatisfied(values)) {
+				assertEquals(format + " objective of " + Arrays.toString(values) + "\n" + file,
+							 problem.objectiveValue(values) - problem.getObjectiveOffset(), cost);
+			}
+			else {
+				assertEquals(format + " accepts " + Arrays.toString(values) + "\n" + file, -1, cost);
+			}
+		}
+	}
+
+	@Test
+	public void testOPBRoundTrip() throws IOException {
+		checkRoundTrip(tinyProblem(), ProblemFormat.OPB);
+	}
+
+	@Test
+	public void testWCNFRoundTrip() throws IOException {
+		checkRoundTrip(tinyProblem(), ProblemFormat.WCNF);
+	}
+
+	@Test
+	public void testLPRoundTrip() throws IOException {
+		checkRoundTrip(tinyProblem(), ProblemFormat.LP);
+	}
+
+	@Test
+	public void testLPEmptyObjective() throws IOException {
+		PseudoBooleanProblem problem = new PseudoBooleanProblem();
+		int x1 = problem.newVar("x1");
+		problem.addClause(Arrays.asList(x1));
+		String file = write(problem, ProblemFormat.LP);
+		assertTrue(file, file.contains("obj: 0\n"));
+		checkRoundTrip(problem, ProblemFormat.LP);
+	}
+}
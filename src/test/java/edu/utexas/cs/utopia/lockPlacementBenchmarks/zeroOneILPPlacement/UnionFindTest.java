@@ -0,0 +1,60 @@
+package edu.utexas.cs.utopia.lockPlacementBenchmarks.zeroOneILPPlacement;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Tests of {@link UnionFind}
+ *
+ * @author Ben_Sepanski
+ *
+ */
+public class UnionFindTest {
+	@Test
+	public void testSingletons() {
+		UnionFind uf = new UnionFind(3);
+		for(int i = 0; i < 3; ++i) {
+			assertEquals(i, uf.find(i));
+		}
+		assertEquals(Arrays.asList(Arrays.asList(0), Arrays.asList(1), Arrays.asList(2)),
+					 uf.getClasses());
+	}
+
+	@Test
+	public void testUnion() {
+		UnionFind uf = new UnionFind(6);
+		uf.union(4, 1);
+		uf.union(5, 3);
+		uf.union(1, 5);
+		uf.union(3, 4);
+		assertEquals(uf.find(1), uf.find(3));
+		assertEquals(uf.find(4), uf.find(5));
+		assertNotEquals(uf.find(0), uf.find(1));
+		assertNotEquals(uf.find(2), uf.find(1));
+		// ordered by least element, each in increasing order
+		List<List<Integer>> expected = Arrays.asList(Arrays.asList(0),
+													 Arrays.asList(1, 3, 4, 5),
+													 Arrays.asList(2));
+		assertEquals(expected, uf.getClasses());
+	}
+
+	@Test
+	public void testLongChain() {
+		int n = 100000;
+		UnionFind uf = new UnionFind(n);
+		for(int i = 0; i + 1 < n; ++i) {
+			uf.union(i + 1, i);
+		}
+		int root = uf.find(0);
+		for(int i = 0; i < n; ++i) {
+			assertEquals(root, uf.find(i));
+		}
+		assertEquals(1, uf.getClasses().size());
+		assertEquals(n, uf.getClasses().get(0).size());
+	}
+}
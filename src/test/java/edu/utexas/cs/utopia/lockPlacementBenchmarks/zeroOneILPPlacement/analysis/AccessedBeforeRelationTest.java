@@ -0,0 +1,127 @@
+package edu.utexas.cs.utopia.lockPlacementBenchmarks.zeroOneILPPlacement.analysis;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import edu.utexas.cs.utopia.lockPlacementBenchmarks.zeroOneILPPlacement.OptimisticPointerAnalysis;
+import soot.G;
+import soot.Local;
+import soot.Scene;
+import soot.SootClass;
+import soot.SootMethod;
+import soot.Value;
+import soot.jimple.InstanceFieldRef;
+import soot.options.Options;
+
+/**
+ * Tests of {@link AccessedBeforeRelation} on {@link ExampleMonitor}.
+ *
+ * Classes of the JDK are loaded as phantoms, so the tests do not
+ * depend on the class files of the JDK running them.
+ *
+ * @author Ben_Sepanski
+ *
+ */
+public class AccessedBeforeRelationTest {
+	private static MonitorAnalysis analysis;
+	private static AccessedBeforeRelation accBefore;
+
+	@BeforeClass
+	public static void analyzeExampleMonitor() throws Exception {
+		G.reset();
+		File classes = new File(ExampleMonitor.class.getProtectionDomain()
+													.getCodeSource()
+													.getLocation()
+													.toURI());
+		Options.v().set_soot_classpath(classes.getPath());
+		Options.v().set_allow_phantom_refs(true);
+		for(String basicClass : Scene.v().getBasicClasses()) {
+			Scene.v().forceResolve(basicClass, SootClass.HIERARCHY);
+		}
+		SootClass monitor = Scene.v().forceResolve(ExampleMonitor.class.getName(),
+												   SootClass.BODIES);
+		monitor.setApplicationClass();
+		for(SootMethod meth : monitor.getMethods()) {
+			meth.retrieveActiveBody();
+		}
+		ForkJoinPool pool = new ForkJoinPool(2);
+		analysis = new MonitorAnalysis(monitor, new OptimisticPointerAnalysis(), pool);
+		accBefore = new AccessedBeforeRelation(analysis.getAliasMatrix(),
+											   analysis.getAtomicSegments(),
+											   analysis.getAccessedLValues(),
+											   analysis.getLValues(),
+											   pool);
+		pool.shutdown();
+	}
+
+	/**
+	 * @return the index of the atomic segment of the method
+	 */
+	private static int segmentOf(String methodName) {
+		List<AtomicSegment> atomicSegments = analysis.getAtomicSegments();
+		for(int i = 0; i < atomicSegments.size(); ++i) {
+			if(atomicSegments.get(i).getBody().getMethod().getName().equals(methodName)) {
+				return i;
+			}
+		}
+		throw new IllegalArgumentException("No atomic segment in " + methodName);
+	}
+
+	/**
+	 * @return the id of the LValue accessed in the atomic segment
+	 *         of the method which is the local of type typeName,
+	 *         or the field named fieldName
+	 */
+	private static int lValueOf(String methodName, String typeName, String fieldName) {
+		for(int id : analysis.getAccessedLValues().get(segmentOf(methodName))) {
+			Value v = analysis.getLValues().get(id).getValue();
+			if(typeName != null && v instanceof Local && v.getType().toString().equals(typeName)) {
+				return id;
+			}
+			if(fieldName != null && v instanceof InstanceFieldRef
+			   && ((InstanceFieldRef) v).getField().getName().equals(fieldName)) {
+				return id;
+			}
+		}
+		throw new IllegalArgumentException("No such LValue in " + methodName);
+	}
+
+	private static boolean isWritten(String methodName, int lValueID) {
+		return analysis.getWrittenLValues().get(segmentOf(methodName)).contains(lValueID);
+	}
+
+	@Test
+	public void testInvocationDoesNotModifyBase() {
+		int items = lValueOf("addTwice", "java.util.List", null),
+			count = lValueOf("addTwice", null, "count");
+		// items is never reassigned, so nothing is accessed after it is modified
+		assertTrue(accBefore.getAccessedBefore().getRow(items).isEmpty());
+		// count is modified, then items is accessed
+		assertTrue(accBefore.getAccessedBefore().get(count, items));
+		// so there is no cycle forbidding local locks
+		assertTrue(accBefore.getTopoAccessedBefore().getRow(items).isEmpty());
+		assertTrue(accBefore.getTopoAccessedBefore().getRow(count).isEmpty());
+	}
+
+	@Test
+	public void testInvocationIsWrite() {
+		assertTrue(isWritten("addTwice", lValueOf("addTwice", "java.util.List", null)));
+		assertTrue(isWritten("bump", lValueOf("bump", null, "count")));
+		assertFalse(isWritten("read", lValueOf("read", null, "count")));
+	}
+
+	@Test
+	public void testNestedWriterForcesWrite() {
+		// readAndBump only reads count, but bump writes to it
+		assertTrue(isWritten("readAndBump", lValueOf("readAndBump", null, "count")));
+		// read does not write, so readTwice may read count
+		assertFalse(isWritten("readTwice", lValueOf("readTwice", null, "count")));
+	}
+}
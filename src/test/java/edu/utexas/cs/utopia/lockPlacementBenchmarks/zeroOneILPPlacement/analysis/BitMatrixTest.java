@@ -0,0 +1,108 @@
+package edu.utexas.cs.utopia.lockPlacementBenchmarks.zeroOneILPPlacement.analysis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+import org.junit.Test;
+
+/**
+ * Tests of {@link BitMatrix}
+ *
+ * @author Ben_Sepanski
+ *
+ */
+public class BitMatrixTest {
+	private static BitSet bits(int... indices) {
+		BitSet bits = new BitSet();
+		for(int i : indices) {
+			bits.set(i);
+		}
+		return bits;
+	}
+
+	@Test
+	public void testSetAndIterate() {
+		BitMatrix m = new BitMatrix(3, 4);
+		m.set(0, 1);
+		m.set(0, 3);
+		m.set(2, 1);
+		assertTrue(m.get(0, 1));
+		assertFalse(m.get(1, 1));
+		assertEquals(2, m.rowCardinality(0));
+		assertEquals(0, m.rowCardinality(1));
+		assertEquals(1, m.nextInRow(0, 0));
+		assertEquals(3, m.nextInRow(0, 2));
+		assertEquals(-1, m.nextInRow(0, 4));
+		assertEquals(-1, m.nextInRow(1, 0));
+		assertEquals(0, m.nextInColumn(1, 0));
+		assertEquals(2, m.nextInColumn(1, 1));
+		assertEquals(-1, m.nextInColumn(2, 0));
+		assertTrue(m.getRow(1).isEmpty());
+	}
+
+	@Test
+	public void testOrRow() {
+		BitMatrix m = new BitMatrix(2, 4);
+		m.orRow(0, new BitSet());
+		assertEquals(0, m.rowCardinality(0));
+		BitSet rowBits = bits(0, 2);
+		m.orRow(0, rowBits);
+		m.orRow(0, bits(3));
+		assertEquals(bits(0, 2, 3), m.getRow(0));
+		// the given bits are copied, not shared
+		assertEquals(bits(0, 2), rowBits);
+	}
+
+	@Test
+	public void testSharedRow() {
+		BitMatrix m = new BitMatrix(3, 3);
+		BitSet row = bits(0, 2);
+		m.shareRow(0, row);
+		m.shareRow(2, row);
+		assertSame(m.getRow(0), m.getRow(2));
+		assertTrue(m.get(2, 2));
+		assertFalse(m.get(1, 2));
+		assertEquals(0, m.nextInColumn(2, 0));
+		assertEquals(2, m.nextInColumn(2, 1));
+	}
+
+	@Test
+	public void testSelect() {
+		BitMatrix m = new BitMatrix(4, 4);
+		m.set(0, 0);
+		m.set(0, 3);
+		m.set(1, 2);
+		m.set(3, 1);
+		m.set(3, 3);
+		BitMatrix sub = m.select(Arrays.asList(3, 1, 2), Arrays.asList(3, 1));
+		assertEquals(3, sub.getNumRows());
+		assertEquals(2, sub.getNumCols());
+		// sub(r, c) = m(rows[r], cols[c])
+		assertEquals(bits(0, 1), sub.getRow(0));
+		assertTrue(sub.getRow(1).isEmpty());
+		assertTrue(sub.getRow(2).isEmpty());
+	}
+
+	@Test
+	public void testSelectKeepsSharedRowsShared() {
+		BitMatrix m = new BitMatrix(4, 3);
+		BitSet shared = bits(0, 1);
+		m.shareRow(0, shared);
+		m.shareRow(2, shared);
+		m.shareRow(3, bits(0, 1));
+		BitMatrix sub = m.select(Arrays.asList(0, 2, 3), Arrays.asList(1, 2));
+		assertEquals(bits(0), sub.getRow(0));
+		assertSame(sub.getRow(0), sub.getRow(1));
+		// equal but distinct rows stay distinct
+		assertEquals(sub.getRow(0), sub.getRow(2));
+		assertNotSame(sub.getRow(0), sub.getRow(2));
+		// selecting does not change the original
+		assertEquals(bits(0, 1), m.getRow(0));
+	}
+}
@@ -0,0 +1,48 @@
+package edu.utexas.cs.utopia.lockPlacementBenchmarks.zeroOneILPPlacement.analysis;
+
+import java.util.List;
+
+/**
+ * A monitor analyzed by the tests. Each method is one
+ * atomic segment.
+ *
+ * @author Ben_Sepanski
+ *
+ */
+public class ExampleMonitor {
+	private int count = 0;
+
+	/**
+	 * Only mutates items through method calls
+	 */
+	public void addTwice(List<Object> items, Object o) {
+		items.add(o);
+		count = count + 1;
+		items.add(o);
+	}
+
+	public void bump() {
+		count = count + 1;
+	}
+
+	/**
+	 * Reads count, then writes to it in a nested segment
+	 */
+	public int readAndBump() {
+		int c = count;
+		bump();
+		return c + count;
+	}
+
+	public int read() {
+		return count;
+	}
+
+	/**
+	 * Only nests a segment which reads
+	 */
+	public int readTwice() {
+		int c = read();
+		return c + count;
+	}
+}
@@ -0,0 +1,149 @@
+package edu.utexas.cs.utopia.lockPlacementBenchmarks.zeroOneILPPlacement.analysis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Tests of {@link StronglyConnectedComponents}
+ *
+ * @author Ben_Sepanski
+ *
+ */
+public class StronglyConnectedComponentsTest {
+	// long enough to overflow the Java stack with a recursive DFS
+	private static final int LONG_CHAIN = 1000000;
+
+	/**
+	 * @param numNodes the number of nodes
+	 * @param edges pairs {source, target}
+	 * @return the SCCs of the graph
+	 */
+	private static StronglyConnectedComponents sccsOf(int numNodes, int edges[][]) {
+		BitMatrix graph = new BitMatrix(numNodes, numNodes);
+		for(int edge[] : edges) {
+			graph.set(edge[0], edge[1]);
+		}
+		StronglyConnectedComponents sccs = StronglyConnectedComponents.of(graph);
+		checkReverseTopological(sccs, edges);
+		return sccs;
+	}
+
+	/**
+	 * Check that every edge between different SCCs goes to a smaller SCC
+	 */
+	private static void checkReverseTopological(StronglyConnectedComponents sccs, int edges[][]) {
+		for(int edge[] : edges) {
+			int s = sccs.getSCC(edge[0]), t = sccs.getSCC(edge[1]);
+			assertTrue("edge " + Arrays.toString(edge) + " goes from SCC " + s + " to " + t,
+					   t <= s);
+		}
+	}
+
+	/**
+	 * @return the members of SCC s, in order
+	 */
+	private static List<Integer> members(StronglyConnectedComponents sccs, int s) {
+		List<Integer> members = new ArrayList<>();
+		for(int k = 0; k < sccs.getSCCSize(s); ++k) {
+			members.add(sccs.getMember(s, k));
+		}
+		return members;
+	}
+
+	@Test
+	public void testEmptyGraph() {
+		StronglyConnectedComponents sccs = sccsOf(0, new int[0][]);
+		assertEquals(0, sccs.getNumSCCs());
+	}
+
+	@Test
+	public void testKnownGraph() {
+		int edges[][] = {{0, 1}, {1, 2}, {2, 0}, {1, 3},
+						 {3, 4}, {4, 5}, {5, 3},
+						 {6, 5}, {6, 7}, {7, 6}};
+		StronglyConnectedComponents sccs = sccsOf(8, edges);
+		assertEquals(3, sccs.getNumSCCs());
+		assertEquals(Arrays.asList(0, 1, 2), members(sccs, sccs.getSCC(0)));
+		assertEquals(Arrays.asList(3, 4, 5), members(sccs, sccs.getSCC(3)));
+		assertEquals(Arrays.asList(6, 7), members(sccs, sccs.getSCC(6)));
+		// {3, 4, 5} is reachable from both other SCCs, so comes first
+		assertEquals(0, sccs.getSCC(3));
+	}
+
+	@Test
+	public void testSelfLoops() {
+		int edges[][] = {{0, 0}, {0, 1}, {1, 1}, {2, 2}};
+		StronglyConnectedComponents sccs = sccsOf(3, edges);
+		assertEquals(3, sccs.getNumSCCs());
+		for(int v = 0; v < 3; ++v) {
+			assertEquals(1, sccs.getSCCSize(sccs.getSCC(v)));
+		}
+		assertTrue(sccs.getSCC(1) < sccs.getSCC(0));
+	}
+
+	@Test
+	public void testCSRForm() {
+		// 0 -> 1, 0 -> 2, 1 -> 0, 2 -> 2
+		int edgeStart[] = {0, 2, 3, 4},
+			edgeTargets[] = {1, 2, 0, 2};
+		StronglyConnectedComponents sccs = new StronglyConnectedComponents(3, edgeStart, edgeTargets);
+		assertEquals(2, sccs.getNumSCCs());
+		assertEquals(sccs.getSCC(0), sccs.getSCC(1));
+		assertNotEquals(sccs.getSCC(0), sccs.getSCC(2));
+		assertEquals(0, sccs.getSCC(2));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testBadEdgeStart() {
+		new StronglyConnectedComponents(3, new int[] {0, 0, 0}, new int[0]);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNonSquareMatrix() {
+		StronglyConnectedComponents.of(new BitMatrix(2, 3));
+	}
+
+	@Test
+	public void testLongChain() {
+		int edgeStart[] = new int[LONG_CHAIN + 1],
+			edgeTargets[] = new int[LONG_CHAIN - 1];
+		for(int v = 0; v + 1 < LONG_CHAIN; ++v) {
+			edgeStart[v + 1] = v + 1;
+			edgeTargets[v] = v + 1;
+		}
+		edgeStart[LONG_CHAIN] = LONG_CHAIN - 1;
+		StronglyConnectedComponents sccs = new StronglyConnectedComponents(LONG_CHAIN,
+																		   edgeStart,
+																		   edgeTargets);
+		assertEquals(LONG_CHAIN, sccs.getNumSCCs());
+		// the end of the chain is a sink, so comes first
+		for(int v = 0; v < LONG_CHAIN; ++v) {
+			assertEquals(LONG_CHAIN - 1 - v, sccs.getSCC(v));
+		}
+	}
+
+	@Test
+	public void testLongCycle() {
+		int edgeStart[] = new int[LONG_CHAIN + 1],
+			edgeTargets[] = new int[LONG_CHAIN];
+		for(int v = 0; v < LONG_CHAIN; ++v) {
+			edgeStart[v + 1] = v + 1;
+			edgeTargets[v] = (v + 1) % LONG_CHAIN;
+		}
+		StronglyConnectedComponents sccs = new StronglyConnectedComponents(LONG_CHAIN,
+																		   edgeStart,
+																		   edgeTargets);
+		assertEquals(1, sccs.getNumSCCs());
+		assertEquals(LONG_CHAIN, sccs.getSCCSize(0));
+		for(int k = 0; k < LONG_CHAIN; ++k) {
+			assertEquals(k, sccs.getMember(0, k));
+		}
+	}
+}